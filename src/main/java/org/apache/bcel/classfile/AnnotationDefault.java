@@ -96,5 +96,6 @@ public class AnnotationDefault extends Attribute {
      */
     public final void setDefaultValue(final ElementValue defaultValue) {
         this.defaultValue = defaultValue;
+        clearOriginalBytes();
     }
 }
@@ -131,6 +131,7 @@ public abstract class Annotations extends Attribute implements Iterable<Annotati
      */
     public final void setAnnotationTable(final AnnotationEntry[] annotationTable) {
         this.annotationTable = annotationTable != null ? annotationTable : AnnotationEntry.EMPTY_ARRAY;
+        clearOriginalBytes();
     }
 
     /**
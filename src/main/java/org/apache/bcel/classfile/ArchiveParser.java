@@ -0,0 +1,233 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.classfile;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.function.IOSupplier;
+
+/**
+ * Parses all class files of a JAR file, JMOD file or directory on an {@link Executor}, handing the results to the caller's thread.
+ *
+ * @see ClassParser#parseAll(Path, Executor, ParseOptions, boolean, Consumer, BiConsumer)
+ */
+final class ArchiveParser {
+
+    /**
+     * The outcome of parsing one class file.
+     */
+    private static final class Result {
+
+        private final String name;
+        private final JavaClass javaClass;
+        private final Throwable failure;
+
+        Result(final String name, final JavaClass javaClass, final Throwable failure) {
+            this.name = name;
+            this.javaClass = javaClass;
+            this.failure = failure;
+        }
+    }
+
+    private static final String CLASS_SUFFIX = ".class";
+
+    /** The directory holding the class files in a JMOD file. */
+    private static final String JMOD_CLASSES = "classes/";
+
+    /** The number of class files read and parsed ahead of the caller, bounding the memory held by results not yet handed out. */
+    private static final int MAX_IN_FLIGHT = Math.max(16, 4 * Runtime.getRuntime().availableProcessors());
+
+    private final Executor executor;
+    private final ParseOptions options;
+    private final boolean ordered;
+    private final Consumer<? super JavaClass> action;
+    private final BiConsumer<String, ? super Exception> errorHandler;
+
+    /** The results in submission order, used when ordered. */
+    private final ArrayDeque<CompletableFuture<Result>> pending = new ArrayDeque<>();
+
+    /** The results in completion order, used when not ordered. */
+    private final BlockingQueue<Result> completed = new LinkedBlockingQueue<>();
+
+    private int inFlight;
+
+    ArchiveParser(final Executor executor, final ParseOptions options, final boolean ordered, final Consumer<? super JavaClass> action,
+        final BiConsumer<String, ? super Exception> errorHandler) {
+        this.executor = executor;
+        this.options = options;
+        this.ordered = ordered;
+        this.action = action;
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Waits for the class files in flight without handing out their results, so that the archive can be closed.
+     */
+    private void abandon() {
+        try {
+            while (inFlight > 0) {
+                if (ordered) {
+                    pending.remove().join();
+                } else {
+                    completed.take();
+                }
+                inFlight--;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Hands out the next result.
+     *
+     * @param wait whether to wait for a result if none is available yet.
+     * @return whether a result was handed out.
+     * @throws InterruptedIOException if the thread is interrupted while waiting.
+     */
+    private boolean deliver(final boolean wait) throws InterruptedIOException {
+        final Result result;
+        if (ordered) {
+            final CompletableFuture<Result> head = pending.peek();
+            if (head == null || !wait && !head.isDone()) {
+                return false;
+            }
+            result = pending.remove().join();
+        } else {
+            try {
+                result = wait ? completed.take() : completed.poll();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while parsing class files");
+            }
+            if (result == null) {
+                return false;
+            }
+        }
+        inFlight--;
+        if (result.failure == null) {
+            action.accept(result.javaClass);
+        } else if (result.failure instanceof Exception) {
+            errorHandler.accept(result.name, (Exception) result.failure);
+        } else {
+            throw (Error) result.failure;
+        }
+        return true;
+    }
+
+    /**
+     * Parses all class files of the given JAR file, JMOD file or directory.
+     *
+     * @param archive The archive.
+     * @throws IOException Thrown if the archive itself cannot be read.
+     */
+    void parse(final Path archive) throws IOException {
+        if (Files.isDirectory(archive)) {
+            try (Stream<Path> paths = Files.walk(archive)) {
+                try {
+                    final Iterator<Path> iterator = paths.filter(p -> p.toString().endsWith(CLASS_SUFFIX) && Files.isRegularFile(p)).iterator();
+                    while (iterator.hasNext()) {
+                        final Path file = iterator.next();
+                        submit(archive.relativize(file).toString().replace(File.separatorChar, '/'), () -> Files.readAllBytes(file));
+                    }
+                    while (inFlight > 0) {
+                        deliver(true);
+                    }
+                } finally {
+                    abandon();
+                }
+            }
+        } else {
+            try (ZipFile zip = new ZipFile(archive.toFile())) {
+                try {
+                    final String prefix = archive.toString().endsWith(".jmod") ? JMOD_CLASSES : "";
+                    final Enumeration<? extends ZipEntry> entries = zip.entries();
+                    while (entries.hasMoreElements()) {
+                        final ZipEntry entry = entries.nextElement();
+                        final String name = entry.getName();
+                        if (!entry.isDirectory() && name.startsWith(prefix) && name.endsWith(CLASS_SUFFIX)) {
+                            submit(name, () -> {
+                                try (InputStream in = zip.getInputStream(entry)) {
+                                    return IOUtils.toByteArray(in);
+                                }
+                            });
+                        }
+                    }
+                    while (inFlight > 0) {
+                        deliver(true);
+                    }
+                } finally {
+                    // Entries must not be read once the archive is closed
+                    abandon();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads and parses one class file.
+     */
+    private Result parse(final String name, final IOSupplier<byte[]> bytes) {
+        try {
+            return new Result(name, new ClassParser(ByteBuffer.wrap(bytes.get()), name).parse(options), null);
+        } catch (final IOException | RuntimeException e) {
+            return new Result(name, null, e);
+        }
+    }
+
+    /**
+     * Schedules one class file to be read and parsed, first handing out results as long as too many are in flight.
+     */
+    private void submit(final String name, final IOSupplier<byte[]> bytes) throws InterruptedIOException {
+        while (inFlight >= MAX_IN_FLIGHT) {
+            deliver(true);
+        }
+        final CompletableFuture<Result> future = CompletableFuture.supplyAsync(() -> parse(name, bytes), executor)
+            .handle((result, t) -> result != null ? result : new Result(name, null, t instanceof CompletionException ? t.getCause() : t));
+        inFlight++;
+        if (ordered) {
+            pending.add(future);
+        } else {
+            future.thenAccept(completed::add);
+        }
+        while (deliver(false)) {
+            // Hand out what is ready
+        }
+    }
+}
@@ -21,7 +21,11 @@ package org.apache.bcel.classfile;
 import java.io.DataInput;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -57,7 +61,8 @@ public abstract class Attribute implements Cloneable, Node {
 
     private static final boolean debug = Boolean.getBoolean(Attribute.class.getCanonicalName() + ".debug"); // Debugging on/off
 
-    private static final Map<String, Object> READERS = new HashMap<>();
+    /** The global attribute readers; replaced, never modified, so that parsers can use it without locking. */
+    private static volatile Map<String, Object> readers = Collections.emptyMap();
 
     /**
      * Empty array.
@@ -76,18 +81,49 @@ public abstract class Attribute implements Cloneable, Node {
      */
     @java.lang.Deprecated
     public static void addAttributeReader(final String name, final AttributeReader attributeReader) {
-        READERS.put(name, attributeReader);
+        putReader(name, attributeReader);
     }
 
     /**
      * Add an Attribute reader capable of parsing (user-defined) attributes named "name". You should not add readers for the
      * standard attributes such as "LineNumberTable", because those are handled internally.
+     * <p>
+     * The reader is used by all parsers; use {@link ParseOptions#addAttributeReader(String, UnknownAttributeReader)} for readers used by some parsers
+     * only.
+     * </p>
      *
      * @param name The name of the attribute as stored in the class file.
      * @param unknownAttributeReader The reader object.
      */
     public static void addAttributeReader(final String name, final UnknownAttributeReader unknownAttributeReader) {
-        READERS.put(name, unknownAttributeReader);
+        putReader(name, unknownAttributeReader);
+    }
+
+    /**
+     * Gets the size of the given attributes in binary format, including their count, as given by their lengths.
+     *
+     * @param attributes The attributes, may be null.
+     * @return The size in binary format.
+     */
+    static int getByteCount(final Attribute[] attributes) {
+        int count = 2;
+        if (attributes != null) {
+            for (final Attribute attribute : attributes) {
+                if (attribute != null) {
+                    count += 6 + attribute.getLength();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gets the global attribute readers.
+     *
+     * @return The global attribute readers, not to be modified.
+     */
+    static Map<String, Object> getReaders() {
+        return readers;
     }
 
     /**
@@ -114,36 +150,74 @@ public abstract class Attribute implements Cloneable, Node {
      * @since 6.0
      */
     public static Attribute readAttribute(final DataInput dataInput, final ConstantPool constantPool) throws IOException {
-        byte tag = Const.ATTR_UNKNOWN; // Unknown attribute
-        // Get class name from constant pool via 'name_index' indirection
+        return readAttribute(dataInput, constantPool, ParseOptions.DEFAULT);
+    }
+
+    /**
+     * Reads one attribute from the input data stream as {@link #readAttribute(DataInput, ConstantPool)} does, with the given options.
+     *
+     * @param dataInput Input stream.
+     * @param constantPool Array of constants.
+     * @param options How to read the attribute.
+     * @return Attribute, or null if skipped as told by the options.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    static Attribute readAttribute(final DataInput dataInput, final ConstantPool constantPool, final ParseOptions options) throws IOException {
+        // Get class name from constant pool via 'name_index' indirection, resolved once per class
         final int nameIndex = dataInput.readUnsignedShort();
-        final String name = constantPool.getConstantUtf8(nameIndex).getBytes();
+        final Object kind = AttributeResolver.resolve(constantPool, nameIndex, options);
 
         // Length of data in bytes
         final int length = dataInput.readInt();
 
-        // Compare strings to find known attribute
-        for (byte i = 0; i < Const.KNOWN_ATTRIBUTES; i++) {
-            if (name.equals(Const.getAttributeName(i))) {
-                tag = i; // found!
-                break;
+        if (kind instanceof UnknownAttributeReader) {
+            return ((UnknownAttributeReader) kind).createAttribute(nameIndex, length, dataInput, constantPool);
+        }
+        final byte tag = ((Byte) kind).byteValue();
+        if (options.isSkipped(tag)) {
+            skipFully(dataInput, length);
+            return null;
+        }
+        if (options.isRetainAttributeBytes()) {
+            final ByteBuffer bytes = readBytes(dataInput, length);
+            final Attribute attribute = readAttribute(new ByteBufferDataInput(bytes.duplicate()), constantPool, options, tag, nameIndex, length);
+            // Unless nested attributes were skipped
+            if (attribute.length == length) {
+                attribute.originalBytes = bytes;
+                attribute.originalModCount = constantPool.getModCount();
             }
+            return attribute;
         }
+        return readAttribute(dataInput, constantPool, options, tag, nameIndex, length);
+    }
 
+    /**
+     * Reads the contents of one attribute with a known tag.
+     *
+     * @param dataInput Input stream, positioned after the attribute header.
+     * @param constantPool Array of constants.
+     * @param options How to read the attribute.
+     * @param tag The attribute tag.
+     * @param nameIndex The index of the attribute name.
+     * @param length The length of the contents.
+     * @return Attribute.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    private static Attribute readAttribute(final DataInput dataInput, final ConstantPool constantPool, final ParseOptions options, final byte tag,
+        final int nameIndex, final int length) throws IOException {
         // Call proper constructor, depending on 'tag'
         switch (tag) {
         case Const.ATTR_UNKNOWN:
-            final Object r = READERS.get(name);
-            if (r instanceof UnknownAttributeReader) {
-                return ((UnknownAttributeReader) r).createAttribute(nameIndex, length, dataInput, constantPool);
-            }
             return new Unknown(nameIndex, length, dataInput, constantPool);
         case Const.ATTR_CONSTANT_VALUE:
             return new ConstantValue(nameIndex, length, dataInput, constantPool);
         case Const.ATTR_SOURCE_FILE:
             return new SourceFile(nameIndex, length, dataInput, constantPool);
         case Const.ATTR_CODE:
-            return new Code(nameIndex, length, dataInput, constantPool);
+            if (options.isLazyCode()) {
+                return new Code(nameIndex, length, readBytes(dataInput, length), constantPool, options);
+            }
+            return new Code(nameIndex, length, dataInput, constantPool, options);
         case Const.ATTR_EXCEPTIONS:
             return new ExceptionTable(nameIndex, length, dataInput, constantPool);
         case Const.ATTR_LINE_NUMBER_TABLE:
@@ -207,6 +281,46 @@ public abstract class Attribute implements Cloneable, Node {
         }
     }
 
+    /**
+     * Reads the next bytes, as a view of the class file bytes when parsing from a buffer given by the caller, or as a copy otherwise.
+     *
+     * @param dataInput Input stream.
+     * @param length The number of bytes to read.
+     * @return A buffer holding the bytes read.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    private static ByteBuffer readBytes(final DataInput dataInput, final int length) throws IOException {
+        if (dataInput instanceof ByteBufferDataInput) {
+            return ((ByteBufferDataInput) dataInput).readSlice(length);
+        }
+        final byte[] bytes = new byte[length];
+        dataInput.readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Reads a u2 count followed by that many attributes, leaving out those skipped as told by the options.
+     *
+     * @param dataInput Input stream.
+     * @param constantPool Array of constants.
+     * @param options How to read the attributes.
+     * @return The attributes read.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    static Attribute[] readAttributes(final DataInput dataInput, final ConstantPool constantPool, final ParseOptions options) throws IOException {
+        final int attributesCount = dataInput.readUnsignedShort();
+        final Attribute[] attributes = new Attribute[attributesCount];
+        int count = 0;
+        for (int i = 0; i < attributesCount; i++) {
+            final Attribute attribute = readAttribute(dataInput, constantPool, options);
+            // Only skipped attributes are left out; keep what a user-defined reader returns
+            if (attribute != null || !options.isSkipping()) {
+                attributes[count++] = attribute;
+            }
+        }
+        return count == attributesCount ? attributes : Arrays.copyOf(attributes, count);
+    }
+
     /**
      * Class method reads one attribute from the input data stream. This method must not be accessible from the outside. It
      * is called by the Field and Method constructor methods.
@@ -222,13 +336,57 @@ public abstract class Attribute implements Cloneable, Node {
         return readAttribute((DataInput) dataInputStream, constantPool);
     }
 
+    /**
+     * Replaces the global attribute readers with a copy that maps the given name to the given reader.
+     *
+     * @param name The name of the attribute as stored in the class file.
+     * @param reader The reader object, null to remove the reader.
+     */
+    private static synchronized void putReader(final String name, final Object reader) {
+        final Map<String, Object> copy = new HashMap<>(readers);
+        if (reader != null) {
+            copy.put(name, reader);
+        } else {
+            copy.remove(name);
+        }
+        readers = Collections.unmodifiableMap(copy);
+    }
+
+    private static void skipFully(final DataInput dataInput, final int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            final int skipped = dataInput.skipBytes(remaining);
+            if (skipped <= 0) {
+                throw new EOFException("Unexpected end of attribute data, " + remaining + " bytes missing");
+            }
+            remaining -= skipped;
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of a buffer, leaving its position unchanged.
+     *
+     * @param file Output file stream.
+     * @param bytes The bytes to write.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    static void write(final DataOutputStream file, final ByteBuffer bytes) throws IOException {
+        if (bytes.hasArray()) {
+            file.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+        } else {
+            final byte[] copy = new byte[bytes.remaining()];
+            bytes.duplicate().get(copy);
+            file.write(copy);
+        }
+    }
+
     /**
      * Remove attribute reader
      *
      * @param name The name of the attribute as stored in the class file.
      */
     public static void removeAttributeReader(final String name) {
-        READERS.remove(name);
+        putReader(name, null);
     }
 
     /**
@@ -255,6 +413,17 @@ public abstract class Attribute implements Cloneable, Node {
     @java.lang.Deprecated
     protected ConstantPool constant_pool; // TODO make private (has getter & setter).
 
+    /**
+     * The contents this attribute was parsed from, when retained as told by {@link ParseOptions#setRetainAttributeBytes(boolean)}; dropped once the
+     * attribute is modified through a setter. Never modified, so clones may share it.
+     */
+    private ByteBuffer originalBytes;
+
+    /**
+     * The modification count of the constant pool when the original bytes were read.
+     */
+    private int originalModCount;
+
     /**
      * Constructs an instance.
      *
@@ -311,6 +480,13 @@ public abstract class Attribute implements Cloneable, Node {
      */
     public abstract Attribute copy(ConstantPool constantPool);
 
+    /**
+     * Drops the contents this attribute was parsed from, so that it is dumped from its current state. Called whenever the attribute is modified.
+     */
+    final void clearOriginalBytes() {
+        originalBytes = null;
+    }
+
     /**
      * Dumps attribute to file stream in binary format.
      *
@@ -322,6 +498,41 @@ public abstract class Attribute implements Cloneable, Node {
         file.writeInt(length);
     }
 
+    /**
+     * Dumps attribute to file stream in binary format as part of a class file with the given constant pool. The contents this attribute was parsed from
+     * are copied as they are if retained, as long as the constant pool of this attribute was not modified and the given one holds the same entries, so
+     * that all indices in those contents still refer to the same constants.
+     *
+     * @param file Output file stream.
+     * @param constantPool The constant pool written to the class file.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    void dump(final DataOutputStream file, final ConstantPool constantPool) throws IOException {
+        if (!dumpOriginalBytes(file, constantPool)) {
+            dump(file);
+        }
+    }
+
+    /**
+     * Dumps this attribute by copying the contents it was parsed from, if possible, as described for {@link #dump(DataOutputStream, ConstantPool)}.
+     *
+     * @param file Output file stream.
+     * @param constantPool The constant pool written to the class file.
+     * @return whether this attribute was dumped.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    final boolean dumpOriginalBytes(final DataOutputStream file, final ConstantPool constantPool) throws IOException {
+        final ByteBuffer bytes = originalBytes;
+        if (bytes == null || !isUnmodified() || constantPool == null || constant_pool.getModCount() != originalModCount
+            || !constantPool.startsWith(constant_pool)) {
+            return false;
+        }
+        file.writeShort(name_index);
+        file.writeInt(bytes.remaining());
+        write(file, bytes);
+        return true;
+    }
+
     /**
      * Gets the constant pool used by this object.
      *
@@ -369,6 +580,16 @@ public abstract class Attribute implements Cloneable, Node {
         return tag;
     }
 
+    /**
+     * Tests whether this attribute still holds the contents it was parsed from, as told by {@link ParseOptions#setRetainAttributeBytes(boolean)}.
+     * Attributes holding other attributes also test these.
+     *
+     * @return whether this attribute holds the contents it was parsed from.
+     */
+    boolean isUnmodified() {
+        return originalBytes != null;
+    }
+
     /**
      * Sets the constant pool to be used for this object.
      *
@@ -377,6 +598,7 @@ public abstract class Attribute implements Cloneable, Node {
      */
     public final void setConstantPool(final ConstantPool constantPool) {
         this.constant_pool = constantPool;
+        clearOriginalBytes();
     }
 
     /**
@@ -386,6 +608,7 @@ public abstract class Attribute implements Cloneable, Node {
      */
     public final void setLength(final int length) {
         this.length = length;
+        clearOriginalBytes();
     }
 
     /**
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.classfile;
+
+import java.util.Map;
+
+import org.apache.bcel.Const;
+
+/**
+ * Resolves the attribute names of one constant pool to attribute tags and readers, once per name index.
+ * <p>
+ * A resolver is kept by its {@link ConstantPool} and serves all attributes of a class. It is tied to the reader registries it was created with, that is,
+ * those of the {@link ParseOptions} and the global ones of {@link Attribute}; both are replaced rather than modified when readers are added or removed, so
+ * a resolver for outdated registries is simply not used again. Racing threads may resolve the same index twice, with the same result.
+ * </p>
+ */
+final class AttributeResolver {
+
+    /**
+     * Gets the tag or reader for an attribute name.
+     *
+     * @param constantPool The constant pool holding the name.
+     * @param nameIndex The index of the name.
+     * @param options The options with the attribute readers to use.
+     * @return An {@link UnknownAttributeReader} for a non-standard attribute with a reader, otherwise the {@link Byte} attribute tag, which is
+     *         {@link Const#ATTR_UNKNOWN} for non-standard attributes without a reader.
+     * @throws ClassFormatException if the name index is invalid.
+     */
+    static Object resolve(final ConstantPool constantPool, final int nameIndex, final ParseOptions options) {
+        final Map<String, UnknownAttributeReader> readers = options.getAttributeReaders();
+        final Map<String, Object> globalReaders = Attribute.getReaders();
+        AttributeResolver resolver = constantPool.getAttributeResolver();
+        if (resolver == null || resolver.readers != readers || resolver.globalReaders != globalReaders) {
+            resolver = new AttributeResolver(readers, globalReaders, constantPool.getLength());
+            constantPool.setAttributeResolver(resolver);
+        }
+        if (nameIndex >= resolver.kinds.length) {
+            return resolver.lookup(constantPool, nameIndex);
+        }
+        Object kind = resolver.kinds[nameIndex];
+        if (kind == null) {
+            kind = resolver.lookup(constantPool, nameIndex);
+            resolver.kinds[nameIndex] = kind;
+        }
+        return kind;
+    }
+
+    private final Map<String, UnknownAttributeReader> readers;
+
+    private final Map<String, Object> globalReaders;
+
+    /** The resolved kinds by name index, null where not resolved yet. */
+    private final Object[] kinds;
+
+    private AttributeResolver(final Map<String, UnknownAttributeReader> readers, final Map<String, Object> globalReaders, final int length) {
+        this.readers = readers;
+        this.globalReaders = globalReaders;
+        this.kinds = new Object[length];
+    }
+
+    private Object lookup(final ConstantPool constantPool, final int nameIndex) {
+        final String name = constantPool.getConstantUtf8(nameIndex).getBytes();
+        // Compare strings to find known attribute
+        for (byte i = 0; i < Const.KNOWN_ATTRIBUTES; i++) {
+            if (name.equals(Const.getAttributeName(i))) {
+                return Byte.valueOf(i);
+            }
+        }
+        final UnknownAttributeReader reader = readers.get(name);
+        if (reader != null) {
+            return reader;
+        }
+        final Object globalReader = globalReaders.get(name);
+        return globalReader instanceof UnknownAttributeReader ? globalReader : Byte.valueOf(Const.ATTR_UNKNOWN);
+    }
+}
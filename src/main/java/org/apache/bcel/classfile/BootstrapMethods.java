@@ -145,6 +145,7 @@ public class BootstrapMethods extends Attribute implements Iterable<BootstrapMet
      */
     public final void setBootstrapMethods(final BootstrapMethod[] bootstrapMethods) {
         this.bootstrapMethods = bootstrapMethods != null ? bootstrapMethods : BootstrapMethod.EMPTY_ARRAY;
+        clearOriginalBytes();
     }
 
     /**
@@ -0,0 +1,225 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.classfile;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A {@link DataInput} that reads big-endian class file data directly from a {@link ByteBuffer}, without any stream layering or intermediate buffering.
+ * <p>
+ * The buffer is read from its position up to its limit. Reading past the limit throws an {@link EOFException}, just as a {@link DataInputStream} does at the
+ * end of its stream.
+ * </p>
+ */
+final class ByteBufferDataInput implements DataInput {
+
+    private final ByteBuffer buffer;
+
+    /** Whether {@link #readSlice(int)} copies the bytes, so that the results do not keep the buffer reachable. */
+    private final boolean copySlices;
+
+    /**
+     * Constructs a new instance reading from a view of the given buffer; the position of the given buffer is not changed.
+     *
+     * @param buffer The buffer to read.
+     */
+    ByteBufferDataInput(final ByteBuffer buffer) {
+        this(buffer, false);
+    }
+
+    /**
+     * Constructs a new instance reading from a view of the given buffer; the position of the given buffer is not changed.
+     *
+     * @param buffer The buffer to read.
+     * @param copySlices Whether {@link #readSlice(int)} copies the bytes instead of returning views, for example because the buffer is a mapping that
+     *        should be released once parsed.
+     */
+    ByteBufferDataInput(final ByteBuffer buffer, final boolean copySlices) {
+        this.buffer = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        this.copySlices = copySlices;
+    }
+
+    /**
+     * Gets the underlying buffer.
+     *
+     * @return The underlying buffer, positioned at the next byte to read.
+     */
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Gets the number of bytes read so far.
+     *
+     * @return The number of bytes read so far.
+     */
+    int getPosition() {
+        return buffer.position();
+    }
+
+    /**
+     * Reads the next bytes as a view of the underlying buffer, without copying them, unless told otherwise when constructed.
+     *
+     * @param length The number of bytes to read.
+     * @return A buffer holding the next {@code length} bytes.
+     * @throws EOFException if fewer than {@code length} bytes remain.
+     */
+    ByteBuffer readSlice(final int length) throws EOFException {
+        require(length);
+        if (copySlices) {
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            return ByteBuffer.wrap(bytes);
+        }
+        final ByteBuffer slice = buffer.slice();
+        slice.limit(length);
+        skipBytes(length);
+        return slice;
+    }
+
+    @Override
+    public boolean readBoolean() throws IOException {
+        return readByte() != 0;
+    }
+
+    @Override
+    public byte readByte() throws IOException {
+        require(1);
+        return buffer.get();
+    }
+
+    @Override
+    public char readChar() throws IOException {
+        require(2);
+        return buffer.getChar();
+    }
+
+    @Override
+    public double readDouble() throws IOException {
+        require(8);
+        return buffer.getDouble();
+    }
+
+    @Override
+    public float readFloat() throws IOException {
+        require(4);
+        return buffer.getFloat();
+    }
+
+    @Override
+    public void readFully(final byte[] b) throws IOException {
+        readFully(b, 0, b.length);
+    }
+
+    @Override
+    public void readFully(final byte[] b, final int off, final int len) throws IOException {
+        require(len);
+        buffer.get(b, off, len);
+    }
+
+    @Override
+    public int readInt() throws IOException {
+        require(4);
+        return buffer.getInt();
+    }
+
+    /**
+     * Reads a line like {@link DataInputStream#readLine()}: each byte is converted to a character, and the line ends at {@code \n}, {@code \r},
+     * {@code \r\n} or the end of the buffer.
+     *
+     * @return The line without its terminator, or null at the end of the buffer.
+     */
+    @Override
+    public String readLine() {
+        if (!buffer.hasRemaining()) {
+            return null;
+        }
+        final StringBuilder line = new StringBuilder();
+        while (buffer.hasRemaining()) {
+            final int c = buffer.get() & 0xff;
+            if (c == '\n') {
+                break;
+            }
+            if (c == '\r') {
+                if (buffer.hasRemaining() && buffer.get(buffer.position()) == '\n') {
+                    buffer.get();
+                }
+                break;
+            }
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    @Override
+    public long readLong() throws IOException {
+        require(8);
+        return buffer.getLong();
+    }
+
+    @Override
+    public short readShort() throws IOException {
+        require(2);
+        return buffer.getShort();
+    }
+
+    @Override
+    public int readUnsignedByte() throws IOException {
+        return readByte() & 0xff;
+    }
+
+    @Override
+    public int readUnsignedShort() throws IOException {
+        return readShort() & 0xffff;
+    }
+
+    @Override
+    public String readUTF() throws IOException {
+        final int length = readUnsignedShort();
+        require(length);
+        final String value;
+        if (buffer.hasArray()) {
+            value = ModifiedUtf8.decode(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+            skipBytes(length);
+        } else {
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = ModifiedUtf8.decode(bytes, 0, length);
+        }
+        return value;
+    }
+
+    private void require(final int n) throws EOFException {
+        if (n < 0 || buffer.remaining() < n) {
+            throw new EOFException("Unexpected end of class file data at offset " + buffer.position());
+        }
+    }
+
+    @Override
+    public int skipBytes(final int n) {
+        final int skip = Math.max(0, Math.min(n, buffer.remaining()));
+        buffer.position(buffer.position() + skip);
+        return skip;
+    }
+}
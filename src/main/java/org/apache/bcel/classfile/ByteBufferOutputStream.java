@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.classfile;
+
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link OutputStream} that writes into a {@link ByteBuffer}, without synchronization or growing.
+ * <p>
+ * Writing past the limit of the buffer throws a {@link BufferOverflowException}.
+ * </p>
+ */
+final class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBuffer buffer;
+
+    /**
+     * Constructs a new instance writing at the position of the given buffer.
+     *
+     * @param buffer The buffer to write.
+     */
+    ByteBufferOutputStream(final ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+        buffer.put(b, off, len);
+    }
+
+    @Override
+    public void write(final int b) {
+        buffer.put((byte) b);
+    }
+}
@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.classfile;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * A {@link ByteArrayOutputStream} of an expected size, which hands out its array without copying when exactly that size is written.
+ */
+final class ClassBytesOutputStream extends ByteArrayOutputStream {
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param size The expected number of bytes.
+     */
+    ClassBytesOutputStream(final int size) {
+        super(size);
+    }
+
+    /**
+     * Gets the written bytes, as the internal array if it is exactly full, or as a copy otherwise.
+     *
+     * @return The written bytes.
+     */
+    byte[] getBytes() {
+        return count == buf.length ? buf : toByteArray();
+    }
+}
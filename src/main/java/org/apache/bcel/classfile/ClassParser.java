@@ -24,10 +24,20 @@ import java.io.DataInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 import org.apache.bcel.Const;
+import org.apache.bcel.generic.Instruction;
+import org.apache.bcel.util.ByteSequence;
 import org.apache.commons.io.IOUtils;
 
 /**
@@ -43,6 +53,52 @@ public final class ClassParser {
 
     private static final int BUFSIZE = 8192;
 
+    /**
+     * Parses all class files of a JAR file, JMOD file or directory in parallel, as {@link #parseAll(Path, Executor, ParseOptions, boolean, Consumer, BiConsumer)}
+     * does, with default options and in no particular order.
+     *
+     * @param archive The JAR file, JMOD file or directory.
+     * @param executor Runs the reading and parsing of the class files.
+     * @param action Receives each parsed class.
+     * @param errorHandler Receives the name of each class file that cannot be read or parsed, with the cause.
+     * @throws IOException Thrown if the archive itself cannot be read.
+     * @since 6.13.0
+     */
+    public static void parseAll(final Path archive, final Executor executor, final Consumer<? super JavaClass> action,
+        final BiConsumer<String, ? super Exception> errorHandler) throws IOException {
+        parseAll(archive, executor, ParseOptions.DEFAULT, false, action, errorHandler);
+    }
+
+    /**
+     * Parses all class files of a JAR file, JMOD file or directory in parallel.
+     * <p>
+     * Class files are inflated or read and then parsed by tasks run on the given executor, for example a {@link java.util.concurrent.ForkJoinPool}. The
+     * results are handed to the given action and error handler on the calling thread, so neither needs to be thread-safe, and this method returns once all
+     * class files have been handled. Only a bounded number of class files are read ahead of the calling thread, so memory use does not grow with the size of
+     * the archive when the action is slower than parsing.
+     * </p>
+     * <p>
+     * The class files of a JMOD file are those in its {@code classes/} directory. Each class is named by the path of its class file relative to the
+     * archive, using {@code /} as separator.
+     * </p>
+     *
+     * @param archive The JAR file, JMOD file or directory.
+     * @param executor Runs the reading and parsing of the class files.
+     * @param options How to read the class files.
+     * @param ordered Whether to hand out the classes in the order of the archive entries, rather than as soon as each has been parsed.
+     * @param action Receives each parsed class.
+     * @param errorHandler Receives the name of each class file that cannot be read or parsed, with the cause, an {@link IOException} or a
+     *        {@link ClassFormatException}.
+     * @throws IOException Thrown if the archive itself cannot be read.
+     * @since 6.13.0
+     */
+    public static void parseAll(final Path archive, final Executor executor, final ParseOptions options, final boolean ordered,
+        final Consumer<? super JavaClass> action, final BiConsumer<String, ? super Exception> errorHandler) throws IOException {
+        Objects.requireNonNull(archive, "archive");
+        new ArchiveParser(Objects.requireNonNull(executor, "executor"), Objects.requireNonNull(options, "options"), ordered,
+            Objects.requireNonNull(action, "action"), Objects.requireNonNull(errorHandler, "errorHandler")).parse(archive);
+    }
+
     static int[] readU2U2Table(final DataInput dataInput) throws IOException {
         final int count = dataInput.readUnsignedShort();
         final int[] table = new int[count];
@@ -53,6 +109,9 @@ public final class ClassParser {
     }
 
     private DataInputStream dataInputStream;
+    private DataInput dataInput;
+    private ByteBuffer byteBuffer;
+    private Path path;
     private final boolean fileOwned;
     private final String fileName;
     private String zipFile;
@@ -66,9 +125,29 @@ public final class ClassParser {
     private Field[] fields; // class fields, that is, its variables
     private Method[] methods; // methods defined in the class
     private Attribute[] attributes; // attributes defined in the class
+    private ParseOptions options = ParseOptions.DEFAULT;
 
     private final boolean isZip; // Loaded from ZIP file
 
+    /**
+     * Parses class from the given buffer.
+     * <p>
+     * The class file is decoded directly from the bytes between the buffer's position and its limit, without copying them into an intermediate stream. The
+     * buffer may be a heap buffer, for example one created with {@link ByteBuffer#wrap(byte[])}, a direct buffer or a memory-mapped buffer. The buffer's
+     * position is not changed, and it must not be modified while {@link #parse()} is running.
+     * </p>
+     *
+     * @param byteBuffer The buffer holding a complete class file.
+     * @param fileName File name.
+     * @since 6.13.0
+     */
+    public ClassParser(final ByteBuffer byteBuffer, final String fileName) {
+        this.isZip = false;
+        this.fileName = fileName;
+        this.fileOwned = false;
+        this.byteBuffer = byteBuffer;
+    }
+
     /**
      * Parses class from the given stream.
      *
@@ -87,6 +166,23 @@ public final class ClassParser {
         }
     }
 
+    /**
+     * Parses class from given .class file, which is memory-mapped and decoded directly from the mapped buffer.
+     * <p>
+     * The parsed class does not refer to the mapping: the contents of deferred {@link Code} attributes and of retained attributes, as told by the
+     * {@link ParseOptions}, are copied out of it.
+     * </p>
+     *
+     * @param path The path of the .class file.
+     * @since 6.13.0
+     */
+    public ClassParser(final Path path) {
+        this.isZip = false;
+        this.fileName = path.toString();
+        this.fileOwned = true;
+        this.path = path;
+    }
+
     /**
      * Parses class from given .class file.
      *
@@ -121,22 +217,23 @@ public final class ClassParser {
      * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
      */
     public JavaClass parse() throws IOException, ClassFormatException {
+        return parse(ParseOptions.DEFAULT);
+    }
+
+    /**
+     * Parses the given Java class file as {@link #parse()} does, with the given options.
+     *
+     * @param options How to read the class file.
+     * @return Class object representing the parsed class file.
+     * @throws IOException Thrown if an I/O error occurs.
+     * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
+     * @since 6.13.0
+     */
+    public JavaClass parse(final ParseOptions options) throws IOException, ClassFormatException {
+        this.options = Objects.requireNonNull(options, "options");
         ZipFile zip = null;
         try {
-            if (fileOwned) {
-                if (isZip) {
-                    zip = new ZipFile(zipFile);
-                    final ZipEntry entry = zip.getEntry(fileName);
-
-                    if (entry == null) {
-                        throw new IOException("File " + fileName + " not found");
-                    }
-
-                    dataInputStream = new DataInputStream(new BufferedInputStream(zip.getInputStream(entry), BUFSIZE));
-                } else {
-                    dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), BUFSIZE));
-                }
-            }
+            zip = open();
             // -- Read headers --
             // Check magic tag of class file
             readID();
@@ -171,17 +268,231 @@ public final class ClassParser {
             // }
             // }
         } finally {
-            // Read everything of interest, so close the file
-            if (fileOwned) {
-                IOUtils.closeQuietly(dataInputStream);
-            }
-            IOUtils.closeQuietly(zip);
+            close(zip);
         }
         // Return the information we have gathered in a new object
         return new JavaClass(classNameIndex, superclassNameIndex, fileName, major, minor, accessFlags, constantPool, interfaces, fields, methods, attributes,
             isZip ? JavaClass.ZIP : JavaClass.FILE);
     }
 
+    /**
+     * Reads the given Java class file and applies the given visitor to its components while they are decoded, without building a complete
+     * {@link JavaClass}; instructions are not visited.
+     *
+     * @param visitor The visitor to apply.
+     * @throws IOException Thrown if an I/O error occurs.
+     * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
+     * @see #accept(Visitor, org.apache.bcel.generic.Visitor, ParseOptions)
+     * @since 6.13.0
+     */
+    public void accept(final Visitor visitor) throws IOException, ClassFormatException {
+        accept(visitor, null, ParseOptions.DEFAULT);
+    }
+
+    /**
+     * Reads the given Java class file and applies the given visitor to its components while they are decoded, without building a complete
+     * {@link JavaClass}.
+     * <p>
+     * Fields, methods and class attributes are handed to the visitor one at a time, right after each has been read, and are not kept afterwards, so that
+     * single-pass analyses of large numbers of classes do not hold the members of a whole class at once. Streaming stops at the member level: each field
+     * and method is read together with all of its attributes, so that the visitor sees a complete {@link Field} or {@link Method}, for example one whose
+     * {@link Method#getCode()} works in {@link Visitor#visitMethod(Method)}. The constant pool is read as a whole before anything else is visited, since all
+     * other components refer to it, and visiting its constants decodes them all, even with {@link ParseOptions#setLazyConstantPool(boolean)}. Memory use is
+     * thus proportional to the constant pool plus the largest member. The visitor is called in class file order:
+     * </p>
+     * <ol>
+     * <li>{@link Visitor#visitJavaClass(JavaClass)} with a class that holds the header information, that is, the version, access flags, class name, super
+     * class name, interfaces and constant pool, but no fields, methods or attributes;</li>
+     * <li>{@link Visitor#visitConstantPool(ConstantPool)}, followed by the visit method of each constant;</li>
+     * <li>{@link Visitor#visitField(Field)} for each field, followed by the visit methods of its attributes and their components, as
+     * {@link DescendingVisitor} calls them;</li>
+     * <li>{@link Visitor#visitMethod(Method)} for each method, followed by the visit methods of its attributes and their components. The visit method of a
+     * {@link Code} attribute is followed by the instructions of the method, if an instruction visitor is given, then by its exception table and its
+     * attributes;</li>
+     * <li>the visit method of each class attribute, followed by the visit methods of its components.</li>
+     * </ol>
+     * <p>
+     * Instructions are visited in the order of the byte code, each through {@link org.apache.bcel.generic.Instruction#accept(org.apache.bcel.generic.Visitor)};
+     * branch targets are not resolved.
+     * </p>
+     *
+     * @param visitor The visitor to apply.
+     * @param instructionVisitor The visitor to apply to the instructions of each method, may be null.
+     * @param options How to read the class file; attributes skipped by the options are not visited.
+     * @throws IOException Thrown if an I/O error occurs.
+     * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
+     * @since 6.13.0
+     */
+    public void accept(final Visitor visitor, final org.apache.bcel.generic.Visitor instructionVisitor, final ParseOptions options)
+        throws IOException, ClassFormatException {
+        Objects.requireNonNull(visitor, "visitor");
+        this.options = Objects.requireNonNull(options, "options");
+        ZipFile zip = null;
+        try {
+            zip = open();
+            readID();
+            readVersion();
+            readConstantPool();
+            readClassInfo();
+            readInterfaces();
+            final JavaClass header = new JavaClass(classNameIndex, superclassNameIndex, fileName, major, minor, accessFlags, constantPool, interfaces, null,
+                null, null, isZip ? JavaClass.ZIP : JavaClass.FILE);
+            final DescendingVisitor descender = new DescendingVisitor(header, visitor);
+            header.accept(visitor);
+            constantPool.accept(visitor);
+            for (final Constant constant : constantPool) {
+                if (constant != null) {
+                    constant.accept(visitor);
+                }
+            }
+            final int fieldsCount = dataInput.readUnsignedShort();
+            for (int i = 0; i < fieldsCount; i++) {
+                new Field(dataInput, constantPool, options).accept(descender);
+            }
+            final int methodsCount = dataInput.readUnsignedShort();
+            for (int i = 0; i < methodsCount; i++) {
+                final Method method = new Method(dataInput, constantPool, options);
+                method.accept(visitor);
+                for (final Attribute attribute : method.getAttributes()) {
+                    if (attribute instanceof Code && instructionVisitor != null) {
+                        acceptCode((Code) attribute, visitor, descender, instructionVisitor);
+                    } else {
+                        attribute.accept(descender);
+                    }
+                }
+            }
+            final int attributesCount = dataInput.readUnsignedShort();
+            for (int i = 0; i < attributesCount; i++) {
+                final Attribute attribute = Attribute.readAttribute(dataInput, constantPool, options);
+                if (attribute != null) {
+                    attribute.accept(descender);
+                }
+            }
+        } finally {
+            close(zip);
+            constantPool = null;
+            interfaces = null;
+        }
+    }
+
+    /**
+     * Visits a {@link Code} attribute, its instructions, exception table and attributes.
+     */
+    private void acceptCode(final Code code, final Visitor visitor, final DescendingVisitor descender, final org.apache.bcel.generic.Visitor instructionVisitor)
+        throws IOException {
+        code.accept(visitor);
+        try (ByteSequence bytes = new ByteSequence(code.getCode())) {
+            while (bytes.available() > 0) {
+                Instruction.readInstruction(bytes).accept(instructionVisitor);
+            }
+        }
+        for (final CodeException codeException : code.getExceptionTable()) {
+            codeException.accept(descender);
+        }
+        for (final Attribute attribute : code.getAttributes()) {
+            attribute.accept(descender);
+        }
+    }
+
+    /**
+     * Releases the resources acquired by {@link #open()}.
+     *
+     * @param zip The ZIP file opened by {@link #open()}, may be null.
+     */
+    private void close(final ZipFile zip) {
+        // Read everything of interest, so close the file
+        if (fileOwned) {
+            IOUtils.closeQuietly(dataInputStream);
+        }
+        IOUtils.closeQuietly(zip);
+        if (path != null) {
+            // Let go of the mapping, the parsed class does not refer to it
+            byteBuffer = null;
+        }
+        dataInput = null;
+    }
+
+    /**
+     * Opens the class file and sets up {@link #dataInput} to read it.
+     *
+     * @return The ZIP file to close when done, or null.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    private ZipFile open() throws IOException {
+        ZipFile zip = null;
+        try {
+            if (path != null) {
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    byteBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                }
+            } else if (fileOwned) {
+                if (isZip) {
+                    zip = new ZipFile(zipFile);
+                    final ZipEntry entry = zip.getEntry(fileName);
+
+                    if (entry == null) {
+                        throw new IOException("File " + fileName + " not found");
+                    }
+
+                    dataInputStream = new DataInputStream(new BufferedInputStream(zip.getInputStream(entry), BUFSIZE));
+                } else {
+                    dataInputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName), BUFSIZE));
+                }
+            }
+            if (byteBuffer != null) {
+                // Deferred and retained attributes copy their bytes out of a mapping of our own, so that it can be released once parsed
+                dataInput = new ByteBufferDataInput(byteBuffer, path != null);
+            } else {
+                dataInput = dataInputStream;
+            }
+        } catch (final IOException | RuntimeException e) {
+            close(zip);
+            throw e;
+        }
+        return zip;
+    }
+
+    /**
+     * Reads only the header of the given Java class file, that is, its version, access flags, class name, super class name and interface names.
+     * <p>
+     * Only the constant pool entries holding these names are decoded; the other entries are skipped over without being decoded, and reading stops at the
+     * end of the interfaces, before the fields. This makes building a class hierarchy of a whole class path much cheaper than with {@link #parse()}. When
+     * reading from a stream given by the caller, the stream is left positioned after the interfaces.
+     * </p>
+     *
+     * @return The header of the class file.
+     * @throws IOException Thrown if an I/O error occurs.
+     * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
+     * @since 6.13.0
+     */
+    public ClassSummary readSummary() throws IOException, ClassFormatException {
+        this.options = ParseOptions.DEFAULT;
+        ZipFile zip = null;
+        try {
+            zip = open();
+            readID();
+            readVersion();
+            // Entries are decoded on first access, that is, only the class names
+            constantPool = new ConstantPool(dataInput, true);
+            readClassInfo();
+            readInterfaces();
+            final String className = Utility.compactClassName(constantPool.getConstantString(classNameIndex, Const.CONSTANT_Class), false);
+            // May be zero -> class is java.lang.Object
+            final String superclassName = superclassNameIndex > 0
+                ? Utility.compactClassName(constantPool.getConstantString(superclassNameIndex, Const.CONSTANT_Class), false)
+                : JavaClass.CLASS_NAME_OBJECT;
+            final String[] interfaceNames = new String[interfaces.length];
+            for (int i = 0; i < interfaces.length; i++) {
+                interfaceNames[i] = Utility.compactClassName(constantPool.getConstantString(interfaces[i], Const.CONSTANT_Class), false);
+            }
+            return new ClassSummary(fileName, major, minor, accessFlags, className, superclassName, interfaceNames);
+        } finally {
+            close(zip);
+            constantPool = null;
+            interfaces = null;
+        }
+    }
+
     /**
      * Reads information about the attributes of the class.
      *
@@ -189,11 +500,7 @@ public final class ClassParser {
      * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
      */
     private void readAttributes() throws IOException, ClassFormatException {
-        final int attributesCount = dataInputStream.readUnsignedShort();
-        attributes = new Attribute[attributesCount];
-        for (int i = 0; i < attributesCount; i++) {
-            attributes[i] = Attribute.readAttribute(dataInputStream, constantPool);
-        }
+        attributes = Attribute.readAttributes(dataInput, constantPool, options);
     }
 
     /**
@@ -203,7 +510,7 @@ public final class ClassParser {
      * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
      */
     private void readClassInfo() throws IOException, ClassFormatException {
-        accessFlags = dataInputStream.readUnsignedShort();
+        accessFlags = dataInput.readUnsignedShort();
         /*
          * Interfaces are implicitly abstract, the flag should be set according to the JVM specification.
          */
@@ -213,8 +520,8 @@ public final class ClassParser {
         if ((accessFlags & Const.ACC_ABSTRACT) != 0 && (accessFlags & Const.ACC_FINAL) != 0) {
             throw new ClassFormatException("Class " + fileName + " can't be both final and abstract");
         }
-        classNameIndex = dataInputStream.readUnsignedShort();
-        superclassNameIndex = dataInputStream.readUnsignedShort();
+        classNameIndex = dataInput.readUnsignedShort();
+        superclassNameIndex = dataInput.readUnsignedShort();
     }
 
     /**
@@ -224,7 +531,7 @@ public final class ClassParser {
      * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
      */
     private void readConstantPool() throws IOException, ClassFormatException {
-        constantPool = new ConstantPool(dataInputStream);
+        constantPool = new ConstantPool(dataInput, options.isLazyConstantPool());
     }
 
     /**
@@ -234,10 +541,10 @@ public final class ClassParser {
      * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
      */
     private void readFields() throws IOException, ClassFormatException {
-        final int fieldsCount = dataInputStream.readUnsignedShort();
+        final int fieldsCount = dataInput.readUnsignedShort();
         fields = new Field[fieldsCount];
         for (int i = 0; i < fieldsCount; i++) {
-            fields[i] = new Field(dataInputStream, constantPool);
+            fields[i] = new Field(dataInput, constantPool, options);
         }
     }
 
@@ -248,7 +555,7 @@ public final class ClassParser {
      * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
      */
     private void readID() throws IOException, ClassFormatException {
-        if (dataInputStream.readInt() != Const.JVM_CLASSFILE_MAGIC) {
+        if (dataInput.readInt() != Const.JVM_CLASSFILE_MAGIC) {
             throw new ClassFormatException(fileName + " is not a Java .class file");
         }
     }
@@ -260,7 +567,7 @@ public final class ClassParser {
      * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
      */
     private void readInterfaces() throws IOException, ClassFormatException {
-        interfaces = readU2U2Table(dataInputStream);
+        interfaces = readU2U2Table(dataInput);
     }
 
     /**
@@ -270,10 +577,10 @@ public final class ClassParser {
      * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
      */
     private void readMethods() throws IOException {
-        final int methodsCount = dataInputStream.readUnsignedShort();
+        final int methodsCount = dataInput.readUnsignedShort();
         methods = new Method[methodsCount];
         for (int i = 0; i < methodsCount; i++) {
-            methods[i] = new Method(dataInputStream, constantPool);
+            methods[i] = new Method(dataInput, constantPool, options);
         }
     }
 
@@ -284,7 +591,7 @@ public final class ClassParser {
      * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
      */
     private void readVersion() throws IOException, ClassFormatException {
-        minor = dataInputStream.readUnsignedShort();
-        major = dataInputStream.readUnsignedShort();
+        minor = dataInput.readUnsignedShort();
+        major = dataInput.readUnsignedShort();
     }
 }
@@ -0,0 +1,132 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.classfile;
+
+import org.apache.commons.lang3.ArrayUtils;
+
+/**
+ * The header of a class file, that is, its version, access flags, class name, super class name and interface names, as read by
+ * {@link ClassParser#readSummary()}.
+ * <p>
+ * The names are the same as those of the {@link JavaClass} parsed from the same class file.
+ * </p>
+ *
+ * @since 6.13.0
+ */
+public final class ClassSummary extends AccessFlags {
+
+    private final String fileName;
+    private final int major;
+    private final int minor;
+    private final String className;
+    private final String superclassName;
+    private final String[] interfaceNames;
+
+    /**
+     * Constructs a ClassSummary.
+     *
+     * @param fileName The file name of the class file.
+     * @param major The major version number.
+     * @param minor The minor version number.
+     * @param accessFlags The access flags.
+     * @param className The fully-qualified class name.
+     * @param superclassName The fully-qualified super class name.
+     * @param interfaceNames The fully-qualified names of the implemented interfaces.
+     */
+    ClassSummary(final String fileName, final int major, final int minor, final int accessFlags, final String className, final String superclassName,
+        final String[] interfaceNames) {
+        super(accessFlags);
+        this.fileName = fileName;
+        this.major = major;
+        this.minor = minor;
+        this.className = className;
+        this.superclassName = superclassName;
+        this.interfaceNames = interfaceNames;
+    }
+
+    /**
+     * Gets the fully-qualified class name.
+     *
+     * @return The fully-qualified class name.
+     * @see JavaClass#getClassName()
+     */
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * Gets the file name of the class file.
+     *
+     * @return The file name of the class file.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * Gets the fully-qualified names of the implemented interfaces.
+     *
+     * @return The fully-qualified names of the implemented interfaces.
+     * @see JavaClass#getInterfaceNames()
+     */
+    public String[] getInterfaceNames() {
+        return interfaceNames.clone();
+    }
+
+    /**
+     * Gets the major version number of the class file.
+     *
+     * @return The major version number.
+     */
+    public int getMajor() {
+        return major;
+    }
+
+    /**
+     * Gets the minor version number of the class file.
+     *
+     * @return The minor version number.
+     */
+    public int getMinor() {
+        return minor;
+    }
+
+    /**
+     * Gets the fully-qualified super class name; {@code java.lang.Object} for classes without a super class, as for {@link JavaClass#getSuperclassName()}.
+     *
+     * @return The fully-qualified super class name.
+     */
+    public String getSuperclassName() {
+        return superclassName;
+    }
+
+    /**
+     * @return String representing the class summary.
+     */
+    @Override
+    public String toString() {
+        final String access = Utility.accessToString(super.getAccessFlags(), true);
+        final StringBuilder buf = new StringBuilder(access.isEmpty() ? "" : access + " ");
+        buf.append(Utility.classOrInterface(super.getAccessFlags())).append(' ').append(className).append(" extends ").append(superclassName);
+        if (ArrayUtils.isNotEmpty(interfaceNames)) {
+            buf.append(" implements ").append(String.join(", ", interfaceNames));
+        }
+        return buf.toString();
+    }
+}
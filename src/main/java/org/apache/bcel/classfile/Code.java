@@ -22,6 +22,7 @@ package org.apache.bcel.classfile;
 import java.io.DataInput;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import org.apache.bcel.Const;
@@ -56,6 +57,10 @@ import org.apache.commons.lang3.ArrayUtils;
  * }
  * </pre>
  *
+ * <p>
+ * When parsed with {@link ParseOptions#setLazyCode(boolean)}, the contents of this attribute are only decoded when first accessed.
+ * </p>
+ *
  * @see Attribute
  * @see CodeException
  * @see LineNumberTable
@@ -68,6 +73,8 @@ public final class Code extends Attribute {
     private byte[] code; // Actual byte code
     private CodeException[] exceptionTable; // Table of handled exceptions
     private Attribute[] attributes; // or LocalVariable
+    private volatile ByteBuffer deferred; // Contents not decoded yet, if any
+    private ParseOptions options; // How to decode the deferred contents
 
     /**
      * Initialize from another object. Note that both objects use the same references (shallow copy). Use copy() for a
@@ -90,33 +97,37 @@ public final class Code extends Attribute {
      * @throws ClassFormatException if the code array read from {@code file} is greater than {@link Const#MAX_CODE_SIZE}.
      */
     Code(final int nameIndex, final int length, final DataInput dataInput, final ConstantPool constantPool) throws IOException {
-        // Initialize with some default values which will be overwritten later
-        this(nameIndex, length, dataInput.readUnsignedShort(), dataInput.readUnsignedShort(), (byte[]) null, (CodeException[]) null, (Attribute[]) null,
-                constantPool);
-        final int codeLength = Args.requireU4(dataInput.readInt(), 0, Const.MAX_CODE_SIZE, "Code length attribute");
-        code = new byte[codeLength]; // Read byte code
-        dataInput.readFully(code);
-        /*
-         * Read exception table that contains all regions where an exception handler is active, that is, a try { ... } catch () block.
-         */
-        final int exceptionTableLength = dataInput.readUnsignedShort();
-        exceptionTable = new CodeException[exceptionTableLength];
-        for (int i = 0; i < exceptionTableLength; i++) {
-            exceptionTable[i] = new CodeException(dataInput);
-        }
-        /*
-         * Read all attributes, currently 'LineNumberTable' and 'LocalVariableTable'
-         */
-        final int attributesCount = dataInput.readUnsignedShort();
-        attributes = new Attribute[attributesCount];
-        for (int i = 0; i < attributesCount; i++) {
-            attributes[i] = readAttribute(dataInput, constantPool);
-        }
-        /*
-         * Adjust length, because of setAttributes in this(), s.b. length is incorrect, because it didn't take the internal attributes into account yet! Very
-         * subtle bug, fixed in 3.1.1.
-         */
-        super.setLength(length);
+        this(nameIndex, length, dataInput, constantPool, ParseOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs a Code attribute object from a DataInput.
+     *
+     * @param nameIndex    Index pointing to the name <em>Code</em>.
+     * @param length       Content length in bytes.
+     * @param dataInput    Data input.
+     * @param constantPool Array of constants.
+     * @param options      How to read nested attributes.
+     * @throws ClassFormatException if the code array read from {@code file} is greater than {@link Const#MAX_CODE_SIZE}.
+     */
+    Code(final int nameIndex, final int length, final DataInput dataInput, final ConstantPool constantPool, final ParseOptions options) throws IOException {
+        super(Const.ATTR_CODE, nameIndex, length, constantPool);
+        read(dataInput, options);
+    }
+
+    /**
+     * Constructs a Code attribute object whose contents are decoded on first access.
+     *
+     * @param nameIndex    Index pointing to the name <em>Code</em>.
+     * @param length       Content length in bytes.
+     * @param deferred     The undecoded contents, that is, the {@code length} bytes following the attribute header.
+     * @param constantPool Array of constants.
+     * @param options      How to read nested attributes.
+     */
+    Code(final int nameIndex, final int length, final ByteBuffer deferred, final ConstantPool constantPool, final ParseOptions options) {
+        super(Const.ATTR_CODE, nameIndex, length, constantPool);
+        this.deferred = deferred;
+        this.options = options;
     }
 
     /**
@@ -178,10 +189,14 @@ public final class Code extends Attribute {
     @Override
     public Attribute copy(final ConstantPool constantPool) {
         final Code c = (Code) clone();
+        c.setConstantPool(constantPool);
+        if (c.deferred != null) {
+            // Both copies decode the same, unmodifiable contents on their own
+            return c;
+        }
         if (code != null) {
             c.code = code.clone();
         }
-        c.setConstantPool(constantPool);
         c.exceptionTable = new CodeException[exceptionTable.length];
         Arrays.setAll(c.exceptionTable, i -> exceptionTable[i].copy());
         c.attributes = new Attribute[attributes.length];
@@ -189,6 +204,33 @@ public final class Code extends Attribute {
         return c;
     }
 
+    /**
+     * Decodes the contents of this attribute if that was deferred, and drops the undecoded bytes, so that this attribute no longer refers to the buffer
+     * it was parsed from. Does nothing otherwise.
+     *
+     * @throws ClassFormatException if the contents are malformed.
+     * @see ParseOptions#setLazyCode(boolean)
+     * @since 6.13.0
+     */
+    public void decode() {
+        if (deferred != null) {
+            decodeDeferred();
+        }
+    }
+
+    private synchronized void decodeDeferred() {
+        final ByteBuffer bytes = deferred;
+        if (bytes != null) {
+            try {
+                read(new ByteBufferDataInput(bytes), options);
+            } catch (final IOException e) {
+                throw new ClassFormatException("Invalid Code attribute: " + e.getMessage(), e);
+            }
+            options = null;
+            deferred = null;
+        }
+    }
+
     /**
      * Dumps code attribute to file stream in binary format.
      *
@@ -197,6 +239,32 @@ public final class Code extends Attribute {
      */
     @Override
     public void dump(final DataOutputStream file) throws IOException {
+        dumpContents(file, super.getConstantPool());
+    }
+
+    /**
+     * Dumps code attribute to file stream in binary format as part of a class file with the given constant pool, copying the contents it was parsed from
+     * if possible.
+     *
+     * @param file Output file stream.
+     * @param constantPool The constant pool written to the class file.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    @Override
+    void dump(final DataOutputStream file, final ConstantPool constantPool) throws IOException {
+        if (!dumpOriginalBytes(file, constantPool)) {
+            dumpContents(file, constantPool);
+        }
+    }
+
+    private void dumpContents(final DataOutputStream file, final ConstantPool constantPool) throws IOException {
+        final ByteBuffer bytes = deferred;
+        if (bytes != null) {
+            // Never decoded, thus unchanged
+            super.dump(file);
+            write(file, bytes);
+            return;
+        }
         super.dump(file);
         file.writeShort(maxStack);
         file.writeShort(maxLocals);
@@ -208,7 +276,7 @@ public final class Code extends Attribute {
         }
         file.writeShort(attributes.length);
         for (final Attribute attribute : attributes) {
-            attribute.dump(file);
+            attribute.dump(file, constantPool);
         }
     }
 
@@ -219,6 +287,7 @@ public final class Code extends Attribute {
      * @see Attribute
      */
     public Attribute[] getAttributes() {
+        decode();
         return attributes;
     }
 
@@ -228,6 +297,7 @@ public final class Code extends Attribute {
      * @return Actual byte code of the method.
      */
     public byte[] getCode() {
+        decode();
         return code;
     }
 
@@ -238,6 +308,7 @@ public final class Code extends Attribute {
      * @see CodeException
      */
     public CodeException[] getExceptionTable() {
+        decode();
         return exceptionTable;
     }
 
@@ -260,7 +331,7 @@ public final class Code extends Attribute {
      * @return LineNumberTable of Code, if it has one.
      */
     public LineNumberTable getLineNumberTable() {
-        for (final Attribute attribute : attributes) {
+        for (final Attribute attribute : getAttributes()) {
             if (attribute instanceof LineNumberTable) {
                 return (LineNumberTable) attribute;
             }
@@ -274,7 +345,7 @@ public final class Code extends Attribute {
      * @return LocalVariableTable of Code, if it has one.
      */
     public LocalVariableTable getLocalVariableTable() {
-        for (final Attribute attribute : attributes) {
+        for (final Attribute attribute : getAttributes()) {
             if (attribute instanceof LocalVariableTable) {
                 return (LocalVariableTable) attribute;
             }
@@ -289,7 +360,7 @@ public final class Code extends Attribute {
      * @since 6.10.0
      */
     public LocalVariableTypeTable getLocalVariableTypeTable() {
-        for (final Attribute attribute : attributes) {
+        for (final Attribute attribute : getAttributes()) {
             if (attribute instanceof LocalVariableTypeTable) {
                 return (LocalVariableTypeTable) attribute;
             }
@@ -303,6 +374,7 @@ public final class Code extends Attribute {
      * @return Number of local variables.
      */
     public int getMaxLocals() {
+        decode();
         return maxLocals;
     }
 
@@ -312,6 +384,7 @@ public final class Code extends Attribute {
      * @return Maximum size of stack used by this method.
      */
     public int getMaxStack() {
+        decode();
         return maxStack;
     }
 
@@ -322,7 +395,7 @@ public final class Code extends Attribute {
      * @since 6.8.0
      */
     public StackMap getStackMap() {
-        for (final Attribute attribute : attributes) {
+        for (final Attribute attribute : getAttributes()) {
             if (attribute instanceof StackMap) {
                 return (StackMap) attribute;
             }
@@ -330,12 +403,70 @@ public final class Code extends Attribute {
         return null;
     }
 
+    /**
+     * Tests whether the contents of this attribute have not been decoded yet.
+     *
+     * @return whether the contents of this attribute have not been decoded yet.
+     * @see ParseOptions#setLazyCode(boolean)
+     * @since 6.13.0
+     */
+    public boolean isDeferred() {
+        return deferred != null;
+    }
+
+    @Override
+    boolean isUnmodified() {
+        if (!super.isUnmodified()) {
+            return false;
+        }
+        if (deferred == null) {
+            for (final Attribute attribute : attributes) {
+                if (!attribute.isUnmodified()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the contents of this attribute following the attribute header.
+     *
+     * @param dataInput Data input.
+     * @param options   How to read nested attributes.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    private void read(final DataInput dataInput, final ParseOptions options) throws IOException {
+        maxStack = dataInput.readUnsignedShort();
+        maxLocals = dataInput.readUnsignedShort();
+        final int codeLength = Args.requireU4(dataInput.readInt(), 0, Const.MAX_CODE_SIZE, "Code length attribute");
+        code = new byte[codeLength]; // Read byte code
+        dataInput.readFully(code);
+        /*
+         * Read exception table that contains all regions where an exception handler is active, that is, a try { ... } catch () block.
+         */
+        final int exceptionTableLength = dataInput.readUnsignedShort();
+        exceptionTable = new CodeException[exceptionTableLength];
+        for (int i = 0; i < exceptionTableLength; i++) {
+            exceptionTable[i] = new CodeException(dataInput);
+        }
+        /*
+         * Read all attributes, currently 'LineNumberTable' and 'LocalVariableTable'
+         */
+        attributes = readAttributes(dataInput, getConstantPool(), options);
+        if (options.isSkipping()) {
+            // Some attributes may have been left out
+            super.setLength(calculateLength());
+        }
+    }
+
     /**
      * Sets the attributes for this Code.
      *
      * @param attributes The attributes to set for this Code.
      */
     public void setAttributes(final Attribute[] attributes) {
+        decode();
         this.attributes = attributes != null ? attributes : EMPTY_ARRAY;
         super.setLength(calculateLength()); // Adjust length
     }
@@ -347,6 +478,7 @@ public final class Code extends Attribute {
      * @throws ClassFormatException if the code array is greater than {@link Const#MAX_CODE_SIZE}.
      */
     public void setCode(final byte[] code) {
+        decode();
         this.code = ArrayUtils.nullToEmpty(code);
         Args.requireU4(this.code.length, 0, Const.MAX_CODE_SIZE, "Code length attribute");
         super.setLength(calculateLength()); // Adjust length
@@ -358,6 +490,7 @@ public final class Code extends Attribute {
      * @param exceptionTable exception table.
      */
     public void setExceptionTable(final CodeException[] exceptionTable) {
+        decode();
         this.exceptionTable = exceptionTable != null ? exceptionTable : CodeException.EMPTY_ARRAY;
         super.setLength(calculateLength()); // Adjust length
     }
@@ -368,7 +501,9 @@ public final class Code extends Attribute {
      * @param maxLocals maximum number of local variables.
      */
     public void setMaxLocals(final int maxLocals) {
+        decode();
         this.maxLocals = maxLocals;
+        clearOriginalBytes();
     }
 
     /**
@@ -377,7 +512,9 @@ public final class Code extends Attribute {
      * @param maxStack maximum stack size.
      */
     public void setMaxStack(final int maxStack) {
+        decode();
         this.maxStack = maxStack;
+        clearOriginalBytes();
     }
 
     /**
@@ -395,6 +532,7 @@ public final class Code extends Attribute {
      * @return String representation of code chunk.
      */
     public String toString(final boolean verbose) {
+        decode();
         final StringBuilder buf = new StringBuilder(100); // CHECKSTYLE IGNORE MagicNumber
         buf.append("Code(maxStack = ").append(maxStack).append(", maxLocals = ").append(maxLocals).append(", code_length = ").append(code.length).append(")\n")
             .append(Utility.codeToString(code, super.getConstantPool(), 0, -1, verbose));
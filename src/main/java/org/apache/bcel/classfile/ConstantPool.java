@@ -20,7 +20,9 @@ package org.apache.bcel.classfile;
 
 import java.io.DataInput;
 import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.Iterator;
 
@@ -64,8 +66,87 @@ public class ConstantPool implements Cloneable, Node, Iterable<Constant> {
         return buf.toString();
     }
 
+    /**
+     * Gets the size of the data following the tag byte of a constant pool entry, for all but {@code CONSTANT_Utf8} entries.
+     *
+     * @param tag The tag of the entry.
+     * @return The number of bytes following the tag byte.
+     * @throws ClassFormatException if the tag is not a constant pool tag or is {@code CONSTANT_Utf8}.
+     */
+    private static int getEntrySize(final byte tag) {
+        switch (tag) {
+        case Const.CONSTANT_Class:
+        case Const.CONSTANT_String:
+        case Const.CONSTANT_MethodType:
+        case Const.CONSTANT_Module:
+        case Const.CONSTANT_Package:
+            return 2;
+        case Const.CONSTANT_MethodHandle:
+            return 3;
+        case Const.CONSTANT_Fieldref:
+        case Const.CONSTANT_Methodref:
+        case Const.CONSTANT_InterfaceMethodref:
+        case Const.CONSTANT_NameAndType:
+        case Const.CONSTANT_Integer:
+        case Const.CONSTANT_Float:
+        case Const.CONSTANT_Dynamic:
+        case Const.CONSTANT_InvokeDynamic:
+            return 4;
+        case Const.CONSTANT_Long:
+        case Const.CONSTANT_Double:
+            return 8;
+        default:
+            throw new ClassFormatException("Invalid byte tag in constant pool: " + tag);
+        }
+    }
+
+    /**
+     * The outcome of {@link ConstantPool#startsWith(ConstantPool)} for another pool, valid while neither pool is modified.
+     */
+    private static final class PrefixTest {
+
+        private final ConstantPool prefix;
+        private final int prefixModCount;
+        private final int modCount;
+        private final boolean result;
+
+        PrefixTest(final ConstantPool prefix, final int modCount, final boolean result) {
+            this.prefix = prefix;
+            this.prefixModCount = prefix.modCount;
+            this.modCount = modCount;
+            this.result = result;
+        }
+    }
+
     private Constant[] constantPool;
 
+    /**
+     * Raw bytes of all entries while the pool is read lazily, null otherwise. Never modified once read, so copies may share it. Only read while holding
+     * the lock of this pool.
+     */
+    private byte[] lazyBytes;
+
+    /**
+     * Offsets into {@link #lazyBytes} of each entry's tag byte, -1 for unusable indices following a long or double; the last two elements hold the end offset.
+     * Set to null, after all entries were decoded, while holding the lock of this pool: a reader that sees null needs no lock to read the entries.
+     */
+    private volatile int[] lazyOffsets;
+
+    /**
+     * The attribute names resolved so far, see {@link AttributeResolver}; reset whenever the entries may change.
+     */
+    private AttributeResolver attributeResolver;
+
+    /**
+     * The number of times entries were replaced, see {@link #getModCount()}.
+     */
+    private int modCount;
+
+    /**
+     * The outcome of the last {@link #startsWith(ConstantPool)} test for another pool, if any.
+     */
+    private PrefixTest prefixTest;
+
     /**
      * Constructs a ConstantPool.
      *
@@ -82,6 +163,33 @@ public class ConstantPool implements Cloneable, Node, Iterable<Constant> {
      * @throws IOException Thrown if problem in readUnsignedShort or readConstant.
      */
     public ConstantPool(final DataInput input) throws IOException {
+        this(input, false);
+    }
+
+    /**
+     * Reads constants from given input stream, optionally deferring the decoding of each entry.
+     * <p>
+     * When {@code lazy} is true, the input is scanned once to record the tag and offset of each entry and the raw bytes of the pool are retained.
+     * Each entry is then decoded the first time it is accessed, through {@link #getConstant(int)} and the methods built on it. Entries that are never
+     * accessed are never created, and unread entries are written back verbatim by {@link #dump(DataOutputStream)}. Calling
+     * {@link #getConstantPool()}, {@link #iterator()}, {@link #setConstant(int, Constant)} or {@link #setConstantPool(Constant[])} decodes all
+     * remaining entries and releases the raw bytes.
+     * </p>
+     * <p>
+     * Several threads may read a lazy pool, as they may read one that is decoded immediately: entries are decoded while holding the lock of the pool.
+     * </p>
+     *
+     * @param input Input stream.
+     * @param lazy Whether to decode entries on first access instead of immediately.
+     * @throws IOException Thrown if problem in readUnsignedShort or readConstant.
+     * @throws ClassFormatException if an entry has an unknown tag.
+     * @since 6.13.0
+     */
+    public ConstantPool(final DataInput input, final boolean lazy) throws IOException {
+        if (lazy) {
+            readLazily(input);
+            return;
+        }
         byte tag;
         final int constantPoolCount = input.readUnsignedShort();
         constantPool = new Constant[constantPoolCount];
@@ -213,10 +321,12 @@ public class ConstantPool implements Cloneable, Node, Iterable<Constant> {
      *
      * @return deep copy of this constant pool.
      */
-    public ConstantPool copy() {
+    public synchronized ConstantPool copy() {
         ConstantPool c = null;
         try {
+            // The lazy state is immutable and shared with the copy; holding the lock, it is consistent with the entries
             c = (ConstantPool) clone();
+            c.prefixTest = null;
             c.constantPool = new Constant[constantPool.length];
             for (int i = 1; i < constantPool.length; i++) {
                 if (constantPool[i] != null) {
@@ -240,16 +350,63 @@ public class ConstantPool implements Cloneable, Node, Iterable<Constant> {
          * Constants over the size of the constant pool shall not be written out. This is a redundant measure as the ConstantPoolGen should have already
          * reported an error back in the situation.
          */
+        if (lazyOffsets == null) {
+            dump(file, null, null);
+        } else {
+            synchronized (this) {
+                dump(file, lazyBytes, lazyOffsets);
+            }
+        }
+    }
+
+    private void dump(final DataOutputStream file, final byte[] bytes, final int[] offsets) throws IOException {
         final int size = Math.min(constantPool.length, Const.MAX_CP_ENTRIES);
 
         file.writeShort(size);
         for (int i = 1; i < size; i++) {
             if (constantPool[i] != null) {
                 constantPool[i].dump(file);
+            } else if (offsets != null && offsets[i] >= 0) {
+                // Not decoded, thus not modified: copy the original bytes
+                final int start = offsets[i];
+                file.write(bytes, start, getLazyEnd(bytes, offsets, i) - start);
             }
         }
     }
 
+    /**
+     * Gets the size of the constant pool in binary format, as written by {@link #dump(DataOutputStream)}.
+     *
+     * @return The size in binary format.
+     */
+    int getByteCount() {
+        if (lazyOffsets == null) {
+            return getByteCount(null, null);
+        }
+        synchronized (this) {
+            return getByteCount(lazyBytes, lazyOffsets);
+        }
+    }
+
+    private int getByteCount(final byte[] bytes, final int[] offsets) {
+        final int size = Math.min(constantPool.length, Const.MAX_CP_ENTRIES);
+        int count = 2;
+        for (int i = 1; i < size; i++) {
+            final Constant constant = constantPool[i];
+            if (constant != null) {
+                final byte tag = constant.getTag();
+                count += 1 + (tag == Const.CONSTANT_Utf8 ? 2 + ModifiedUtf8.getEncodedLength(((ConstantUtf8) constant).getBytes()) : getEntrySize(tag));
+            } else if (offsets != null && offsets[i] >= 0) {
+                count += getLazyEnd(bytes, offsets, i) - offsets[i];
+            }
+        }
+        return count;
+    }
+
+    AttributeResolver getAttributeResolver() {
+        return attributeResolver;
+    }
+
     /**
      * Gets constant from constant pool.
      *
@@ -314,19 +471,21 @@ public class ConstantPool implements Cloneable, Node, Iterable<Constant> {
         if (index >= constantPool.length || index < 1) {
             throw new ClassFormatException("Invalid constant pool reference using index: " + index + ". Constant pool size is: " + constantPool.length);
         }
-        if (constantPool[index] != null && !castTo.isAssignableFrom(constantPool[index].getClass())) {
+        final Constant constant = getLazyConstant(index);
+        if (constant != null && !castTo.isAssignableFrom(constant.getClass())) {
             throw new ClassFormatException("Invalid constant pool reference at index: " + index +
-                    ". Expected " + castTo + " but was " + constantPool[index].getClass());
+                    ". Expected " + castTo + " but was " + constant.getClass());
         }
         if (index > 1) {
-            final Constant prev = constantPool[index - 1];
-            if (prev != null && (prev.getTag() == Const.CONSTANT_Double || prev.getTag() == Const.CONSTANT_Long)) {
+            // Without decoding an unread previous entry
+            final byte prevTag = getTag(index - 1);
+            if (prevTag == Const.CONSTANT_Double || prevTag == Const.CONSTANT_Long) {
                 throw new ClassFormatException("Constant pool at index " + index + " is invalid. The index is unused due to the preceeding "
-                        + Const.getConstantName(prev.getTag()) + ".");
+                        + Const.getConstantName(prevTag) + ".");
             }
         }
         // Previous check ensures this won't throw a ClassCastException
-        final T c = castTo.cast(constantPool[index]);
+        final T c = castTo.cast(constant);
         if (c == null) {
             throw new ClassFormatException("Constant pool at index " + index + " is null.");
         }
@@ -352,6 +511,9 @@ public class ConstantPool implements Cloneable, Node, Iterable<Constant> {
      * @see Constant
      */
     public Constant[] getConstantPool() {
+        readAllLazyConstants();
+        // The caller may modify the entries
+        attributeResolver = null;
         return constantPool;
     }
 
@@ -416,9 +578,177 @@ public class ConstantPool implements Cloneable, Node, Iterable<Constant> {
         return constantPool.length;
     }
 
+    /**
+     * Gets the number of times entries were replaced through {@link #setConstant(int, Constant)} or {@link #setConstantPool(Constant[])}. Changes made
+     * directly to the array returned by {@link #getConstantPool()} or to the constants themselves are not counted.
+     *
+     * @return The modification count.
+     */
+    int getModCount() {
+        return modCount;
+    }
+
+    /**
+     * Gets the constant at the given index, decoding it first if the pool is read lazily.
+     *
+     * @param index A valid index in the constant pool.
+     * @return The constant, or null if the index holds no entry.
+     */
+    private Constant getLazyConstant(final int index) {
+        if (lazyOffsets == null) {
+            return constantPool[index];
+        }
+        synchronized (this) {
+            final int[] offsets = lazyOffsets;
+            if (constantPool[index] == null && offsets != null && offsets[index] >= 0) {
+                constantPool[index] = readLazyConstant(lazyBytes, offsets, index);
+            }
+            return constantPool[index];
+        }
+    }
+
+    /**
+     * Gets the tag of the entry at the given index without decoding it.
+     *
+     * @param index A valid index in the constant pool.
+     * @return The tag, or 0 if the index holds no entry.
+     */
+    private byte getTag(final int index) {
+        if (lazyOffsets == null) {
+            final Constant constant = constantPool[index];
+            return constant != null ? constant.getTag() : 0;
+        }
+        synchronized (this) {
+            final Constant constant = constantPool[index];
+            if (constant != null) {
+                return constant.getTag();
+            }
+            final int[] offsets = lazyOffsets;
+            return offsets != null && offsets[index] >= 0 ? lazyBytes[offsets[index]] : 0;
+        }
+    }
+
+    private static int getLazyEnd(final byte[] bytes, final int[] offsets, final int index) {
+        final byte tag = bytes[offsets[index]];
+        return offsets[tag == Const.CONSTANT_Double || tag == Const.CONSTANT_Long ? index + 2 : index + 1];
+    }
+
+    /**
+     * Tests whether entries of this pool are still decoded on first access.
+     *
+     * @return whether entries of this pool are still decoded on first access.
+     * @since 6.13.0
+     */
+    public boolean isLazy() {
+        return lazyOffsets != null;
+    }
+
     @Override
     public Iterator<Constant> iterator() {
-        return Arrays.stream(constantPool).iterator();
+        return Arrays.stream(getConstantPool()).iterator();
+    }
+
+    /**
+     * Decodes all entries not yet accessed and drops the raw bytes.
+     */
+    private void readAllLazyConstants() {
+        if (lazyOffsets == null) {
+            return;
+        }
+        synchronized (this) {
+            final int[] offsets = lazyOffsets;
+            if (offsets != null) {
+                final byte[] bytes = lazyBytes;
+                for (int i = 1; i < constantPool.length; i++) {
+                    if (constantPool[i] == null && offsets[i] >= 0) {
+                        constantPool[i] = readLazyConstant(bytes, offsets, i);
+                    }
+                }
+                lazyBytes = null;
+                // Last, so that readers seeing null see all entries
+                lazyOffsets = null;
+            }
+        }
+    }
+
+    private static Constant readLazyConstant(final byte[] bytes, final int[] offsets, final int index) {
+        final int start = offsets[index];
+        try {
+            return Constant.readConstant(new ByteBufferDataInput(ByteBuffer.wrap(bytes, start, getLazyEnd(bytes, offsets, index) - start)));
+        } catch (final IOException e) {
+            throw new ClassFormatException("Invalid constant pool entry at index " + index, e);
+        }
+    }
+
+    /**
+     * Scans the entries of a constant pool, keeping their raw bytes and offsets for decoding on first access.
+     *
+     * @param input Input positioned at the constant pool count.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    private void readLazily(final DataInput input) throws IOException {
+        final int constantPoolCount = input.readUnsignedShort();
+        constantPool = new Constant[constantPoolCount];
+        // Two extra slots hold the end offset, also for a malformed pool ending in a long or double
+        final int end = Math.max(constantPoolCount, 1);
+        final int[] offsets = new int[end + 2];
+        offsets[0] = -1;
+        if (input instanceof ByteBufferDataInput) {
+            // Scan in place and copy the whole pool at once
+            final ByteBuffer buffer = ((ByteBufferDataInput) input).getBuffer();
+            final int base = buffer.position();
+            int pos = base;
+            for (int i = 1; i < constantPoolCount; i++) {
+                if (pos + 3 > buffer.limit()) {
+                    throw new EOFException("Constant pool entry " + i + " is beyond the end of the class file");
+                }
+                offsets[i] = pos - base;
+                final byte tag = buffer.get(pos);
+                pos += 1 + (tag == Const.CONSTANT_Utf8 ? 2 + buffer.getChar(pos + 1) : getEntrySize(tag));
+                if (tag == Const.CONSTANT_Double || tag == Const.CONSTANT_Long) {
+                    offsets[++i] = -1;
+                }
+            }
+            lazyBytes = new byte[pos - base];
+            input.readFully(lazyBytes);
+            offsets[end] = offsets[end + 1] = lazyBytes.length;
+            lazyOffsets = offsets;
+            return;
+        }
+        byte[] bytes = new byte[Math.max(64, constantPoolCount * 16)];
+        int pos = 0;
+        for (int i = 1; i < constantPoolCount; i++) {
+            offsets[i] = pos;
+            final byte tag = input.readByte();
+            final int size;
+            int headerSize = 1;
+            if (tag == Const.CONSTANT_Utf8) {
+                size = input.readUnsignedShort();
+                headerSize = 3;
+            } else {
+                size = getEntrySize(tag);
+            }
+            if (pos + headerSize + size > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, pos + headerSize + size));
+            }
+            bytes[pos] = tag;
+            if (tag == Const.CONSTANT_Utf8) {
+                bytes[pos + 1] = (byte) (size >>> 8);
+                bytes[pos + 2] = (byte) size;
+            }
+            input.readFully(bytes, pos + headerSize, size);
+            pos += headerSize + size;
+            if (tag == Const.CONSTANT_Double || tag == Const.CONSTANT_Long) {
+                offsets[++i] = -1;
+            }
+        }
+        lazyBytes = bytes.length == pos ? bytes : Arrays.copyOf(bytes, pos);
+        offsets[end] = offsets[end + 1] = pos;
+        lazyOffsets = offsets;
+    }
+
+    void setAttributeResolver(final AttributeResolver attributeResolver) {
+        this.attributeResolver = attributeResolver;
     }
 
     /**
@@ -428,7 +758,10 @@ public class ConstantPool implements Cloneable, Node, Iterable<Constant> {
      * @param constant Constant to set.
      */
     public void setConstant(final int index, final Constant constant) {
+        readAllLazyConstants();
         constantPool[index] = constant;
+        attributeResolver = null;
+        modCount++;
     }
 
     /**
@@ -438,6 +771,34 @@ public class ConstantPool implements Cloneable, Node, Iterable<Constant> {
      */
     public void setConstantPool(final Constant[] constantPool) {
         this.constantPool = constantPool != null ? constantPool : Constant.EMPTY_ARRAY;
+        this.lazyBytes = null;
+        this.lazyOffsets = null;
+        this.attributeResolver = null;
+        this.modCount++;
+    }
+
+    /**
+     * Tests whether this pool holds the same constants as the given one at all indices of the given one, so that these indices refer to the same
+     * constants in both pools. This is the case for the pool itself and for pools built by a {@code ConstantPoolGen} from it, which only appends
+     * new constants.
+     *
+     * @param prefix The other constant pool.
+     * @return whether this pool holds the same constants at all indices of the other pool.
+     */
+    boolean startsWith(final ConstantPool prefix) {
+        if (prefix == this) {
+            return true;
+        }
+        final PrefixTest test = prefixTest;
+        if (test != null && test.prefix == prefix && test.prefixModCount == prefix.modCount && test.modCount == modCount) {
+            return test.result;
+        }
+        boolean result = lazyOffsets == null && prefix.lazyOffsets == null && prefix.constantPool.length <= constantPool.length;
+        for (int i = 1; result && i < prefix.constantPool.length; i++) {
+            result = prefix.constantPool[i] == constantPool[i];
+        }
+        prefixTest = new PrefixTest(prefix, modCount, result);
+        return result;
     }
 
     /**
@@ -447,7 +808,7 @@ public class ConstantPool implements Cloneable, Node, Iterable<Constant> {
     public String toString() {
         final StringBuilder buf = new StringBuilder();
         for (int i = 1; i < constantPool.length; i++) {
-            buf.append(i).append(")").append(constantPool[i]).append("\n");
+            buf.append(i).append(")").append(getLazyConstant(i)).append("\n");
         }
         return buf.toString();
     }
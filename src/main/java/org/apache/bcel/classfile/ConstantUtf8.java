@@ -21,26 +21,34 @@ package org.apache.bcel.classfile;
 import java.io.DataInput;
 import java.io.DataOutputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.lang.ref.WeakReference;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.apache.bcel.Const;
 
 /**
  * Extends the abstract {@link Constant} to represent a reference to a UTF-8 encoded string.
  * <p>
+ * Instances are immutable, so {@link #getInstance(String)} and {@link #getInstance(DataInput)} share them through a cache. The cache is safe to use from
+ * many threads at once without locking: a value is looked up in one of a small number of slots chosen by its hash code, and a miss replaces the slot
+ * entry least recently hit, in the manner of the CLOCK algorithm. The cache refers to its instances weakly, so it never keeps an instance alive on its own.
+ * </p>
+ * <p>
  * The following system properties govern caching this class performs.
  * </p>
  * <ul>
- * <li>{@link #SYS_PROP_CACHE_MAX_ENTRIES} (since 6.4): The size of the cache, by default 0, meaning caching is
- * disabled.</li>
+ * <li>{@link #SYS_PROP_CACHE_MAX_ENTRIES} (since 6.4): The size of the cache, by default 8192 since 6.13.0, rounded up to a power of two; 0 disables
+ * caching.</li>
  * <li>{@link #SYS_PROP_CACHE_MAX_ENTRY_SIZE} (since 6.0): The maximum size of the values to cache, by default 200, 0
  * disables caching. Values larger than this are <em>not</em> cached.</li>
  * <li>{@link #SYS_PROP_STATISTICS} (since 6.0): Prints statistics on the console when the JVM exits.</li>
  * </ul>
  * <p>
+ * The cache statistics are also available from {@link #getCacheHitCount()}, {@link #getCacheMissCount()} and {@link #getCacheEvictionCount()}.
+ * </p>
+ * <p>
  * Here is a sample Maven invocation with caching disabled:
  * </p>
  *
@@ -48,7 +56,7 @@ import org.apache.bcel.Const;
  * mvn test -Dbcel.statistics=true -Dbcel.maxcached.size=0 -Dbcel.maxcached=0
  * </pre>
  * <p>
- * Here is a sample Maven invocation with caching enabled:
+ * Here is a sample Maven invocation with a larger cache:
  * </p>
  *
  * <pre>
@@ -61,35 +69,90 @@ public final class ConstantUtf8 extends Constant {
 
     private static final class Cache {
 
-        private static final boolean BCEL_STATISTICS = Boolean.getBoolean(SYS_PROP_STATISTICS);
-        private static final int MAX_ENTRIES = Integer.getInteger(SYS_PROP_CACHE_MAX_ENTRIES, 0).intValue();
-        private static final int INITIAL_CAPACITY = (int) (MAX_ENTRIES / 0.75);
-
-        private static final HashMap<String, ConstantUtf8> CACHE = new LinkedHashMap<String, ConstantUtf8>(INITIAL_CAPACITY, 0.75f, true) {
+        /**
+         * A cache slot, refers to its instance weakly.
+         */
+        private static final class Entry extends WeakReference<ConstantUtf8> {
 
-            private static final long serialVersionUID = -8506975356158971766L;
+            /** Set when the entry is hit, cleared when the entry is passed over for replacement. */
+            private volatile boolean referenced;
 
-            @Override
-            protected boolean removeEldestEntry(final Map.Entry<String, ConstantUtf8> eldest) {
-                return size() > MAX_ENTRIES;
+            Entry(final ConstantUtf8 referent) {
+                super(referent);
             }
-        };
+        }
+
+        private static final boolean BCEL_STATISTICS = Boolean.getBoolean(SYS_PROP_STATISTICS);
+        private static final int MAX_ENTRIES = Integer.getInteger(SYS_PROP_CACHE_MAX_ENTRIES, 8192).intValue();
 
         // Set the size to 0 or below to skip caching entirely
         private static final int MAX_ENTRY_SIZE = Integer.getInteger(SYS_PROP_CACHE_MAX_ENTRY_SIZE, 200).intValue();
 
+        /** The number of slots a value may be cached in. */
+        private static final int WAYS = 2;
+
+        /** The slots, in groups of {@link #WAYS}; the length is a power of two. */
+        private static final AtomicReferenceArray<Entry> TABLE = new AtomicReferenceArray<>(
+            isEnabled() ? Math.max(WAYS, Integer.highestOneBit(Math.min(MAX_ENTRIES, 1 << 29) * 2 - 1)) : 0);
+
+        static void clear() {
+            for (int i = 0; i < TABLE.length(); i++) {
+                TABLE.set(i, null);
+            }
+        }
+
+        static ConstantUtf8 get(final String value) {
+            final int hash = value.hashCode();
+            final int first = (hash ^ hash >>> 16) & TABLE.length() - WAYS;
+            for (int i = first; i < first + WAYS; i++) {
+                final Entry entry = TABLE.get(i);
+                final ConstantUtf8 cached = entry != null ? entry.get() : null;
+                if (cached != null && cached.value.equals(value)) {
+                    if (!entry.referenced) {
+                        entry.referenced = true;
+                    }
+                    HITS.increment();
+                    return cached;
+                }
+            }
+            MISSES.increment();
+            final ConstantUtf8 result = new ConstantUtf8(value);
+            TABLE.set(victim(first), new Entry(result));
+            return result;
+        }
+
         static boolean isEnabled() {
             return MAX_ENTRIES > 0 && MAX_ENTRY_SIZE > 0;
         }
 
+        /**
+         * Picks the slot to replace in the given group: an empty one if any, else the first one not hit since it was last passed over. Counts the eviction
+         * of a live entry.
+         */
+        private static int victim(final int first) {
+            for (int i = first; i < first + WAYS; i++) {
+                final Entry entry = TABLE.get(i);
+                if (entry == null || entry.get() == null) {
+                    return i;
+                }
+            }
+            EVICTIONS.increment();
+            for (int i = first; i < first + WAYS; i++) {
+                final Entry entry = TABLE.get(i);
+                if (entry == null || !entry.referenced) {
+                    return i;
+                }
+                entry.referenced = false;
+            }
+            return first;
+        }
     }
 
-    private static final Object LOCK = new Object();
-    // TODO these should perhaps be AtomicInt?
-    private static volatile int considered;
-    private static volatile int created;
-    private static volatile int hits;
-    private static volatile int skipped;
+    private static final LongAdder CREATED = new LongAdder();
+    private static final LongAdder EVICTIONS = new LongAdder();
+    private static final LongAdder HITS = new LongAdder();
+    private static final LongAdder MISSES = new LongAdder();
+    private static final LongAdder SKIPPED = new LongAdder();
 
     private static final String SYS_PROP_CACHE_MAX_ENTRIES = "bcel.maxcached";
     private static final String SYS_PROP_CACHE_MAX_ENTRY_SIZE = "bcel.maxcached.size";
@@ -107,19 +170,46 @@ public final class ConstantUtf8 extends Constant {
      * @since 6.4.0
      */
     public static void clearCache() {
-        synchronized (LOCK) {
-            Cache.CACHE.clear();
-        }
+        Cache.clear();
     }
 
     // for access by test code
-    static synchronized void clearStats() {
-        hits = considered = skipped = created = 0;
+    static void clearStats() {
+        CREATED.reset();
+        EVICTIONS.reset();
+        HITS.reset();
+        MISSES.reset();
+        SKIPPED.reset();
+    }
+
+    /**
+     * Gets the number of times a cached instance was replaced by another one, since the class was loaded.
+     *
+     * @return The number of cache evictions.
+     * @since 6.13.0
+     */
+    public static long getCacheEvictionCount() {
+        return EVICTIONS.sum();
+    }
+
+    /**
+     * Gets the number of times a cached instance was found, since the class was loaded.
+     *
+     * @return The number of cache hits.
+     * @since 6.13.0
+     */
+    public static long getCacheHitCount() {
+        return HITS.sum();
     }
 
-    // Avoid Spotbugs complaint about Write to static field
-    private static synchronized void countCreated() {
-        created++;
+    /**
+     * Gets the number of times a value was looked up in the cache but not found, since the class was loaded.
+     *
+     * @return The number of cache misses.
+     * @since 6.13.0
+     */
+    public static long getCacheMissCount() {
+        return MISSES.sum();
     }
 
     /**
@@ -133,23 +223,11 @@ public final class ConstantUtf8 extends Constant {
      * @since 6.0
      */
     public static ConstantUtf8 getCachedInstance(final String value) {
-        synchronized (LOCK) {
-            if (value.length() > Cache.MAX_ENTRY_SIZE) {
-                skipped++;
-                return new ConstantUtf8(value);
-            }
-            considered++;
-            synchronized (ConstantUtf8.class) { // might be better with a specific lock object
-                ConstantUtf8 result = Cache.CACHE.get(value);
-                if (result != null) {
-                    hits++;
-                    return result;
-                }
-                result = new ConstantUtf8(value);
-                Cache.CACHE.put(value, result);
-                return result;
-            }
+        if (value.length() > Cache.MAX_ENTRY_SIZE || !Cache.isEnabled()) {
+            SKIPPED.increment();
+            return new ConstantUtf8(value);
         }
+        return Cache.get(value);
     }
 
     /**
@@ -164,7 +242,7 @@ public final class ConstantUtf8 extends Constant {
      * @since 6.0
      */
     public static ConstantUtf8 getInstance(final DataInput dataInput) throws IOException {
-        return getInstance(dataInput.readUTF());
+        return getInstance(ModifiedUtf8.readUTF(dataInput));
     }
 
     /**
@@ -184,8 +262,9 @@ public final class ConstantUtf8 extends Constant {
     // for access by test code
     static void printStats() {
         final String prefix = "[Apache Commons BCEL]";
-        System.err.printf("%s Cache hit %,d/%,d, %d skipped.%n", prefix, hits, considered, skipped);
-        System.err.printf("%s Total of %,d ConstantUtf8 objects created.%n", prefix, created);
+        final long hits = HITS.sum();
+        System.err.printf("%s Cache hit %,d/%,d, %d skipped, %,d evicted.%n", prefix, hits, hits + MISSES.sum(), SKIPPED.sum(), EVICTIONS.sum());
+        System.err.printf("%s Total of %,d ConstantUtf8 objects created.%n", prefix, CREATED.sum());
         System.err.printf("%s Configuration: %s=%,d, %s=%,d.%n", prefix, SYS_PROP_CACHE_MAX_ENTRIES, Cache.MAX_ENTRIES, SYS_PROP_CACHE_MAX_ENTRY_SIZE,
             Cache.MAX_ENTRY_SIZE);
     }
@@ -209,8 +288,8 @@ public final class ConstantUtf8 extends Constant {
      */
     ConstantUtf8(final DataInput dataInput) throws IOException {
         super(Const.CONSTANT_Utf8);
-        value = dataInput.readUTF();
-        countCreated();
+        value = ModifiedUtf8.readUTF(dataInput);
+        CREATED.increment();
     }
 
     /**
@@ -221,7 +300,7 @@ public final class ConstantUtf8 extends Constant {
     public ConstantUtf8(final String value) {
         super(Const.CONSTANT_Utf8);
         this.value = Objects.requireNonNull(value, "value");
-        countCreated();
+        CREATED.increment();
     }
 
     /**
@@ -131,6 +131,7 @@ public final class ConstantValue extends Attribute {
      */
     public void setConstantValueIndex(final int constantValueIndex) {
         this.constantValueIndex = constantValueIndex;
+        clearOriginalBytes();
     }
 
     /**
@@ -120,6 +120,7 @@ public class EnclosingMethod extends Attribute {
      */
     public final void setEnclosingClassIndex(final int idx) {
         classIndex = idx;
+        clearOriginalBytes();
     }
 
     /**
@@ -129,5 +130,6 @@ public class EnclosingMethod extends Attribute {
      */
     public final void setEnclosingMethodIndex(final int idx) {
         methodIndex = idx;
+        clearOriginalBytes();
     }
 }
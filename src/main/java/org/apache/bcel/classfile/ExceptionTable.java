@@ -165,6 +165,7 @@ public final class ExceptionTable extends Attribute {
      */
     public void setExceptionIndexTable(final int[] exceptionIndexTable) {
         this.exceptionIndexTable = ArrayUtils.nullToEmpty(exceptionIndexTable);
+        clearOriginalBytes();
     }
 
     /**
@@ -80,6 +80,19 @@ public final class Field extends FieldOrMethod {
         super(file, constantPool);
     }
 
+    /**
+     * Constructs object from file stream.
+     *
+     * @param file Input stream.
+     * @param constantPool The constant pool.
+     * @param options How to read the attributes.
+     * @throws IOException Thrown if an I/O error occurs.
+     * @throws ClassFormatException if a class is malformed or cannot be interpreted as a class file.
+     */
+    Field(final DataInput file, final ConstantPool constantPool, final ParseOptions options) throws IOException, ClassFormatException {
+        super(file, constantPool, options);
+    }
+
     /**
      * Initialize from another object. Note that both objects use the same references (shallow copy). Use clone() for a
      * physical copy.
@@ -76,13 +76,21 @@ public abstract class FieldOrMethod extends AccessFlags implements Cloneable, No
      * @throws IOException Thrown if an I/O error occurs.
      */
     protected FieldOrMethod(final DataInput file, final ConstantPool constantPool) throws IOException {
+        this(file, constantPool, ParseOptions.DEFAULT);
+    }
+
+    /**
+     * Constructs object from file stream.
+     *
+     * @param file Input stream.
+     * @param constantPool The constant pool.
+     * @param options How to read the attributes.
+     * @throws IOException Thrown if an I/O error occurs.
+     */
+    FieldOrMethod(final DataInput file, final ConstantPool constantPool, final ParseOptions options) throws IOException {
         this(file.readUnsignedShort(), file.readUnsignedShort(), file.readUnsignedShort(), null, constantPool);
-        final int attributesCount = file.readUnsignedShort();
-        attributes = new Attribute[attributesCount];
-        for (int i = 0; i < attributesCount; i++) {
-            attributes[i] = Attribute.readAttribute(file, constantPool);
-        }
-        this.attributes_count = attributesCount; // init deprecated field
+        attributes = Attribute.readAttributes(file, constantPool, options);
+        this.attributes_count = attributes.length; // init deprecated field
     }
 
     /**
@@ -152,12 +160,24 @@ public abstract class FieldOrMethod extends AccessFlags implements Cloneable, No
      * @throws IOException Thrown if an I/O error occurs.
      */
     public final void dump(final DataOutputStream file) throws IOException {
+        dump(file, constant_pool);
+    }
+
+    /**
+     * Dumps object to file stream on binary format as part of a class file with the given constant pool.
+     *
+     * @param file Output file stream.
+     * @param constantPool The constant pool written to the class file.
+     * @throws IOException Thrown if an I/O error occurs.
+     * @see Attribute#dump(DataOutputStream, ConstantPool)
+     */
+    final void dump(final DataOutputStream file, final ConstantPool constantPool) throws IOException {
         file.writeShort(super.getAccessFlags());
         file.writeShort(name_index);
         file.writeShort(signature_index);
         file.writeShort(attributes_count);
         for (final Attribute attribute : attributes) {
-            attribute.dump(file);
+            attribute.dump(file, constantPool);
         }
     }
 
@@ -203,6 +223,15 @@ public abstract class FieldOrMethod extends AccessFlags implements Cloneable, No
         return attributes;
     }
 
+    /**
+     * Gets the size of this field or method in binary format, as given by the lengths of its attributes.
+     *
+     * @return The size in binary format.
+     */
+    final int getByteCount() {
+        return 6 + Attribute.getByteCount(attributes);
+    }
+
     /**
      * Gets the constant pool used by this object.
      *
@@ -147,6 +147,7 @@ public final class InnerClasses extends Attribute implements Iterable<InnerClass
      */
     public void setInnerClasses(final InnerClass[] innerClasses) {
         this.innerClasses = innerClasses != null ? innerClasses : EMPTY_ARRAY;
+        clearOriginalBytes();
     }
 
     /**
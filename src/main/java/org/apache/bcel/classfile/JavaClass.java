@@ -18,12 +18,13 @@
  */
 package org.apache.bcel.classfile;
 
-import java.io.ByteArrayOutputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -50,7 +51,7 @@ import org.apache.commons.lang3.ArrayUtils;
  */
 public class JavaClass extends AccessFlags implements Cloneable, Node, Comparable<JavaClass> {
 
-    private static final String CLASS_NAME_OBJECT = "java.lang.Object";
+    static final String CLASS_NAME_OBJECT = "java.lang.Object";
 
     /**
      * The standard class file extension.
@@ -334,6 +335,24 @@ public class JavaClass extends AccessFlags implements Cloneable, Node, Comparabl
         }
     }
 
+    /**
+     * Decodes the {@link Code} attributes of all methods whose decoding was deferred, so that this class no longer refers to the buffer it was parsed
+     * from.
+     *
+     * @throws ClassFormatException if a Code attribute is malformed.
+     * @see Code#decode()
+     * @see ParseOptions#setLazyCode(boolean)
+     * @since 6.13.0
+     */
+    public void decodeCode() {
+        for (final Method method : methods) {
+            final Code code = method.getCode();
+            if (code != null) {
+                code.decode();
+            }
+        }
+    }
+
     /**
      * Dumps Java class to output stream in binary format.
      *
@@ -354,16 +373,16 @@ public class JavaClass extends AccessFlags implements Cloneable, Node, Comparabl
         }
         file.writeShort(fields.length);
         for (final Field field : fields) {
-            field.dump(file);
+            field.dump(file, constantPool);
         }
         file.writeShort(methods.length);
         for (final Method method : methods) {
-            method.dump(file);
+            method.dump(file, constantPool);
         }
         if (attributes != null) {
             file.writeShort(attributes.length);
             for (final Attribute attribute : attributes) {
-                attribute.dump(file);
+                attribute.dump(file, constantPool);
             }
         } else {
             file.writeShort(0);
@@ -371,6 +390,25 @@ public class JavaClass extends AccessFlags implements Cloneable, Node, Comparabl
         file.flush();
     }
 
+    /**
+     * Dumps Java class into the given buffer in binary format, starting at its position, without intermediate copies.
+     *
+     * @param buffer The buffer to write.
+     * @throws BufferOverflowException if the buffer has not enough room for the class, in which case the position of the buffer is not changed.
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only.
+     * @throws IOException Thrown if an I/O error occurs.
+     * @since 6.13.0
+     */
+    public void dump(final ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < getByteCount()) {
+            throw new BufferOverflowException();
+        }
+        // Write into a duplicate, in case an attribute writes more than its length: the position only moves once the whole class is written
+        final ByteBuffer duplicate = buffer.duplicate();
+        dump(new DataOutputStream(new ByteBufferOutputStream(duplicate)));
+        buffer.position(duplicate.position());
+    }
+
     /**
      * Dumps class to a file.
      *
@@ -546,15 +584,34 @@ public class JavaClass extends AccessFlags implements Cloneable, Node, Comparabl
      * Gets class in binary format.
      *
      * @return class in binary format.
+     * @throws ClassFormatException if an attribute cannot be written.
      */
     public byte[] getBytes() {
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        try (DataOutputStream dos = new DataOutputStream(baos)) {
+        // Presized from the lengths of the constants and attributes, so that the array is usually neither grown nor copied
+        final ClassBytesOutputStream bytes = new ClassBytesOutputStream(getByteCount());
+        try (DataOutputStream dos = new DataOutputStream(bytes)) {
             dump(dos);
         } catch (final IOException e) {
-            e.printStackTrace();
+            throw new ClassFormatException("Cannot dump " + className + ": " + e.getMessage(), e);
+        }
+        return bytes.getBytes();
+    }
+
+    /**
+     * Gets the size of the class in binary format, as given by the lengths of its constants and attributes.
+     *
+     * @return The size of the class in binary format.
+     */
+    int getByteCount() {
+        // Magic and version, constant pool, access flags, class, super class, interfaces, field count and method count
+        int count = 8 + constantPool.getByteCount() + 6 + 2 + 2 * interfaces.length + 4;
+        for (final Field field : fields) {
+            count += field.getByteCount();
+        }
+        for (final Method method : methods) {
+            count += method.getByteCount();
         }
-        return baos.toByteArray();
+        return count + Attribute.getByteCount(attributes);
     }
 
     /**
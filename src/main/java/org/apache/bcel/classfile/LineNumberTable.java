@@ -201,6 +201,7 @@ public final class LineNumberTable extends Attribute implements Iterable<LineNum
      */
     public void setLineNumberTable(final LineNumber[] lineNumberTable) {
         this.lineNumberTable = lineNumberTable != null ? lineNumberTable : LineNumber.EMPTY_ARRAY;
+        clearOriginalBytes();
     }
 
     /**
@@ -188,6 +188,7 @@ public class LocalVariableTable extends Attribute implements Iterable<LocalVaria
      */
     public final void setLocalVariableTable(final LocalVariable[] localVariableTable) {
         this.localVariableTable = localVariableTable != null ? localVariableTable : EMPTY_ARRAY;
+        clearOriginalBytes();
     }
 
     /**
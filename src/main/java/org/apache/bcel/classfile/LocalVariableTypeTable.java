@@ -171,6 +171,7 @@ public class LocalVariableTypeTable extends Attribute implements Iterable<LocalV
      */
     public final void setLocalVariableTable(final LocalVariable[] localVariableTable) {
         this.localVariableTypeTable = localVariableTable != null ? localVariableTable : EMPTY_ARRAY;
+        clearOriginalBytes();
     }
 
     /**
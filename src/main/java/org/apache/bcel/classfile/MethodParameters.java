@@ -103,5 +103,6 @@ public class MethodParameters extends Attribute implements Iterable<MethodParame
      */
     public void setParameters(final MethodParameter[] parameters) {
         this.parameters = parameters != null ? parameters : EMPTY_ARRAY;
+        clearOriginalBytes();
     }
 }
@@ -0,0 +1,158 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.classfile;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the modified UTF-8 strings of class files, as {@link DataInputStream#readUTF(DataInput)} does.
+ * <p>
+ * Nearly all strings in class files are plain ASCII. These are turned into a {@link String} with a single copy through the ISO-8859-1 charset, which
+ * needs no decoding; only strings with other characters take the general path.
+ * </p>
+ */
+final class ModifiedUtf8 {
+
+    /**
+     * Decodes a modified UTF-8 string.
+     *
+     * @param bytes The encoded bytes.
+     * @param offset The offset of the first encoded byte.
+     * @param length The number of encoded bytes.
+     * @return The decoded string.
+     * @throws UTFDataFormatException if the bytes are not valid modified UTF-8.
+     */
+    static String decode(final byte[] bytes, final int offset, final int length) throws UTFDataFormatException {
+        final int end = offset + length;
+        int i = offset;
+        while (i < end && bytes[i] >= 0) {
+            i++;
+        }
+        if (i == end) {
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        }
+        return decode(bytes, offset, length, i - offset);
+    }
+
+    /**
+     * Decodes a modified UTF-8 string that starts with the given number of ASCII characters.
+     */
+    private static String decode(final byte[] bytes, final int offset, final int length, final int ascii) throws UTFDataFormatException {
+        final char[] chars = new char[length];
+        for (int i = 0; i < ascii; i++) {
+            chars[i] = (char) bytes[offset + i];
+        }
+        int count = ascii;
+        int charCount = ascii;
+        while (count < length) {
+            final int c = bytes[offset + count] & 0xff;
+            switch (c >> 4) {
+            case 0:
+            case 1:
+            case 2:
+            case 3:
+            case 4:
+            case 5:
+            case 6:
+            case 7:
+                // 0xxxxxxx
+                count++;
+                chars[charCount++] = (char) c;
+                break;
+            case 12:
+            case 13: {
+                // 110x xxxx 10xx xxxx
+                count += 2;
+                if (count > length) {
+                    throw new UTFDataFormatException("malformed input: partial character at end");
+                }
+                final int char2 = bytes[offset + count - 1];
+                if ((char2 & 0xC0) != 0x80) {
+                    throw new UTFDataFormatException("malformed input around byte " + count);
+                }
+                chars[charCount++] = (char) ((c & 0x1F) << 6 | char2 & 0x3F);
+                break;
+            }
+            case 14: {
+                // 1110 xxxx 10xx xxxx 10xx xxxx
+                count += 3;
+                if (count > length) {
+                    throw new UTFDataFormatException("malformed input: partial character at end");
+                }
+                final int char2 = bytes[offset + count - 2];
+                final int char3 = bytes[offset + count - 1];
+                if ((char2 & 0xC0) != 0x80 || (char3 & 0xC0) != 0x80) {
+                    throw new UTFDataFormatException("malformed input around byte " + (count - 1));
+                }
+                chars[charCount++] = (char) ((c & 0x0F) << 12 | (char2 & 0x3F) << 6 | char3 & 0x3F);
+                break;
+            }
+            default:
+                // 10xx xxxx, 1111 xxxx
+                throw new UTFDataFormatException("malformed input around byte " + count);
+            }
+        }
+        return new String(chars, 0, charCount);
+    }
+
+    /**
+     * Gets the number of bytes of the modified UTF-8 encoding of a string, as written by {@link java.io.DataOutput#writeUTF(String)} after the length.
+     *
+     * @param value The string.
+     * @return The number of encoded bytes.
+     */
+    static int getEncodedLength(final String value) {
+        final int length = value.length();
+        int count = length;
+        for (int i = 0; i < length; i++) {
+            final char c = value.charAt(i);
+            if (c >= 0x80 || c == 0) {
+                count += c >= 0x800 ? 2 : 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads a modified UTF-8 string preceded by its length in bytes, as {@link DataInput#readUTF()} does.
+     *
+     * @param dataInput The input to read.
+     * @return The decoded string.
+     * @throws IOException if an I/O error occurs.
+     * @throws UTFDataFormatException if the bytes are not valid modified UTF-8.
+     */
+    static String readUTF(final DataInput dataInput) throws IOException {
+        if (dataInput instanceof ByteBufferDataInput) {
+            // Decodes in place
+            return dataInput.readUTF();
+        }
+        final int length = dataInput.readUnsignedShort();
+        final byte[] bytes = new byte[length];
+        dataInput.readFully(bytes);
+        return decode(bytes, 0, length);
+    }
+
+    private ModifiedUtf8() {
+        // utility class
+    }
+}
@@ -122,6 +122,7 @@ public final class ModuleMainClass extends Attribute {
      */
     public void setHostClassIndex(final int mainClassIndex) {
         this.mainClassIndex = mainClassIndex;
+        clearOriginalBytes();
     }
 
     /**
@@ -151,6 +151,7 @@ public final class ModulePackages extends Attribute {
      */
     public void setPackageIndexTable(final int[] packageIndexTable) {
         this.packageIndexTable = ArrayUtils.nullToEmpty(packageIndexTable);
+        clearOriginalBytes();
     }
 
     /**
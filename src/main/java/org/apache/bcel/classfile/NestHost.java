@@ -122,6 +122,7 @@ public final class NestHost extends Attribute {
      */
     public void setHostClassIndex(final int hostClassIndex) {
         this.hostClassIndex = hostClassIndex;
+        clearOriginalBytes();
     }
 
     /**
@@ -152,6 +152,7 @@ public final class NestMembers extends Attribute {
      */
     public void setClasses(final int[] classes) {
         this.classes = ArrayUtils.nullToEmpty(classes);
+        clearOriginalBytes();
     }
 
     /**
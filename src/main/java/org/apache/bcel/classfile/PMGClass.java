@@ -147,6 +147,7 @@ public final class PMGClass extends Attribute {
      */
     public void setPMGClassIndex(final int pmgClassIndex) {
         this.pmgClassIndex = pmgClassIndex;
+        clearOriginalBytes();
     }
 
     /**
@@ -156,6 +157,7 @@ public final class PMGClass extends Attribute {
      */
     public void setPMGIndex(final int pmgIndex) {
         this.pmgIndex = pmgIndex;
+        clearOriginalBytes();
     }
 
     /**
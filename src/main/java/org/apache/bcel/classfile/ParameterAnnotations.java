@@ -131,5 +131,6 @@ public abstract class ParameterAnnotations extends Attribute implements Iterable
      */
     public final void setParameterAnnotationTable(final ParameterAnnotationEntry[] parameterAnnotationTable) {
         this.parameterAnnotationTable = parameterAnnotationTable != null ? parameterAnnotationTable : EMPTY_ARRAY;
+        clearOriginalBytes();
     }
 }
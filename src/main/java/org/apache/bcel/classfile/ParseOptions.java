@@ -0,0 +1,330 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.classfile;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.apache.bcel.Const;
+
+/**
+ * Options that control how {@link ClassParser#parse(ParseOptions)} reads a class file. The default options read everything eagerly, just like
+ * {@link ClassParser#parse()}.
+ * <p>
+ * Attributes of skipped categories are stepped over without being decoded and are left out of the attribute arrays of the parsed {@link JavaClass},
+ * its {@link Field}s, {@link Method}s and {@link Code} attributes, as if the class file did not contain them.
+ * </p>
+ * <p>
+ * Options may be shared by parsers running concurrently, as long as they are not modified while in use.
+ * </p>
+ *
+ * @since 6.13.0
+ */
+public final class ParseOptions {
+
+    /** The default options, used when none are given; never handed out, thus never modified. */
+    static final ParseOptions DEFAULT = new ParseOptions();
+
+    /** The attribute readers; replaced, never modified, so that parsers can use it without locking. */
+    private Map<String, UnknownAttributeReader> attributeReaders = Collections.emptyMap();
+
+    private boolean lazyCode;
+
+    private boolean lazyConstantPool;
+
+    private boolean retainAttributeBytes;
+
+    private boolean skipAnnotations;
+
+    private boolean skipCode;
+
+    private boolean skipDebugInfo;
+
+    private boolean skipFrames;
+
+    private boolean skipUnknownAttributes;
+
+    /**
+     * Constructs options with default values, that is, everything is read eagerly.
+     */
+    public ParseOptions() {
+    }
+
+    /**
+     * Adds a reader for (user-defined) attributes named {@code name}, used by parsers with these options only. Readers for standard attributes such as
+     * "LineNumberTable" are not used, because those are handled internally. A reader added here takes precedence over one added with
+     * {@link Attribute#addAttributeReader(String, UnknownAttributeReader)}, and attributes it reads are never skipped.
+     *
+     * @param name The name of the attribute as stored in the class file.
+     * @param reader The reader object.
+     */
+    public void addAttributeReader(final String name, final UnknownAttributeReader reader) {
+        final Map<String, UnknownAttributeReader> copy = new HashMap<>(attributeReaders);
+        copy.put(Objects.requireNonNull(name, "name"), Objects.requireNonNull(reader, "reader"));
+        attributeReaders = Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Gets the reader added for attributes named {@code name}.
+     *
+     * @param name The name of the attribute as stored in the class file.
+     * @return The reader object, or null if none was added.
+     */
+    public UnknownAttributeReader getAttributeReader(final String name) {
+        return attributeReaders.get(name);
+    }
+
+    /**
+     * Gets the attribute readers.
+     *
+     * @return The attribute readers, not to be modified.
+     */
+    Map<String, UnknownAttributeReader> getAttributeReaders() {
+        return attributeReaders;
+    }
+
+    /**
+     * Tests whether any attributes are skipped.
+     *
+     * @return whether any attributes are skipped.
+     */
+    boolean isSkipping() {
+        return skipAnnotations || skipCode || skipDebugInfo || skipFrames || skipUnknownAttributes;
+    }
+
+    /**
+     * Tests whether attributes with the given tag are skipped.
+     *
+     * @param tag The attribute tag, {@link Const#ATTR_UNKNOWN} for attributes without a known tag or registered reader.
+     * @return whether the attribute is skipped.
+     */
+    boolean isSkipped(final byte tag) {
+        switch (tag) {
+        case Const.ATTR_RUNTIME_VISIBLE_ANNOTATIONS:
+        case Const.ATTR_RUNTIME_INVISIBLE_ANNOTATIONS:
+        case Const.ATTR_RUNTIME_VISIBLE_PARAMETER_ANNOTATIONS:
+        case Const.ATTR_RUNTIME_INVISIBLE_PARAMETER_ANNOTATIONS:
+        case Const.ATTR_ANNOTATION_DEFAULT:
+            return skipAnnotations;
+        case Const.ATTR_CODE:
+            return skipCode;
+        case Const.ATTR_LINE_NUMBER_TABLE:
+        case Const.ATTR_LOCAL_VARIABLE_TABLE:
+        case Const.ATTR_LOCAL_VARIABLE_TYPE_TABLE:
+        case Const.ATTR_SOURCE_FILE:
+            return skipDebugInfo;
+        case Const.ATTR_STACK_MAP:
+        case Const.ATTR_STACK_MAP_TABLE:
+            return skipFrames;
+        case Const.ATTR_UNKNOWN:
+            return skipUnknownAttributes;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Tests whether annotations are skipped.
+     *
+     * @return whether annotations are skipped.
+     */
+    public boolean isSkipAnnotations() {
+        return skipAnnotations;
+    }
+
+    /**
+     * Tests whether method bodies are skipped.
+     *
+     * @return whether method bodies are skipped.
+     */
+    public boolean isSkipCode() {
+        return skipCode;
+    }
+
+    /**
+     * Tests whether debug information is skipped.
+     *
+     * @return whether debug information is skipped.
+     */
+    public boolean isSkipDebugInfo() {
+        return skipDebugInfo;
+    }
+
+    /**
+     * Tests whether stack map frames are skipped.
+     *
+     * @return whether stack map frames are skipped.
+     */
+    public boolean isSkipFrames() {
+        return skipFrames;
+    }
+
+    /**
+     * Tests whether unknown attributes are skipped.
+     *
+     * @return whether unknown attributes are skipped.
+     */
+    public boolean isSkipUnknownAttributes() {
+        return skipUnknownAttributes;
+    }
+
+    /**
+     * Tests whether method bodies are decoded on first access.
+     *
+     * @return whether method bodies are decoded on first access.
+     */
+    public boolean isLazyCode() {
+        return lazyCode;
+    }
+
+    /**
+     * Tests whether constant pool entries are decoded on first access.
+     *
+     * @return whether constant pool entries are decoded on first access.
+     * @see ConstantPool#ConstantPool(java.io.DataInput, boolean)
+     */
+    public boolean isLazyConstantPool() {
+        return lazyConstantPool;
+    }
+
+    /**
+     * Tests whether attributes keep the bytes they were parsed from.
+     *
+     * @return whether attributes keep the bytes they were parsed from.
+     */
+    public boolean isRetainAttributeBytes() {
+        return retainAttributeBytes;
+    }
+
+    /**
+     * Removes the reader for attributes named {@code name} added with {@link #addAttributeReader(String, UnknownAttributeReader)}.
+     *
+     * @param name The name of the attribute as stored in the class file.
+     */
+    public void removeAttributeReader(final String name) {
+        if (attributeReaders.containsKey(name)) {
+            final Map<String, UnknownAttributeReader> copy = new HashMap<>(attributeReaders);
+            copy.remove(name);
+            attributeReaders = Collections.unmodifiableMap(copy);
+        }
+    }
+
+    /**
+     * Sets whether {@link Code} attributes are decoded on first access instead of while parsing.
+     * <p>
+     * A deferred {@link Code} attribute keeps the bytes of its contents and decodes its byte code, exception table and nested attributes, such as
+     * the {@link LineNumberTable} and {@link LocalVariableTable}, the first time any of them is read; the bytes are dropped once decoded. A deferred
+     * attribute that is never decoded is written back verbatim by {@link JavaClass#dump(java.io.DataOutputStream)}. This saves time and memory for
+     * tools that look at signatures and annotations only.
+     * </p>
+     * <p>
+     * When parsing from a {@link java.nio.ByteBuffer} given by the caller, deferred attributes refer to that buffer, which must therefore not be
+     * modified while they are in use, unless they are decoded first with {@link JavaClass#decodeCode()}. When parsing from a stream or a
+     * {@link java.nio.file.Path}, each deferred attribute holds a copy of its contents, and the stream is not read beyond the class file.
+     * </p>
+     *
+     * @param lazyCode whether method bodies are decoded on first access.
+     */
+    public void setLazyCode(final boolean lazyCode) {
+        this.lazyCode = lazyCode;
+    }
+
+    /**
+     * Sets whether constant pool entries are decoded on first access instead of while parsing. This saves time and memory when only a part of the
+     * constant pool is ever looked at, as is typical for dependency analysis. The parsed class may still be read by several threads.
+     *
+     * @param lazyConstantPool whether constant pool entries are decoded on first access.
+     * @see ConstantPool#ConstantPool(java.io.DataInput, boolean)
+     */
+    public void setLazyConstantPool(final boolean lazyConstantPool) {
+        this.lazyConstantPool = lazyConstantPool;
+    }
+
+    /**
+     * Sets whether attributes keep the bytes they were parsed from, so that {@link JavaClass#dump(java.io.DataOutputStream)} copies them instead of
+     * encoding the attributes again. This makes writing back a parsed class with few changes, for example after {@link org.apache.bcel.generic.ClassGen}
+     * regenerated some of its methods, much cheaper.
+     * <p>
+     * The bytes of an attribute are dropped by its setters, and are not used if the constant pool it refers to was modified with
+     * {@link ConstantPool#setConstant(int, Constant)} or {@link ConstantPool#setConstantPool(Constant[])}, or if the class is written with a constant
+     * pool that does not hold the same constants at all of its indices, as a pool built by a {@link org.apache.bcel.generic.ConstantPoolGen} does.
+     * Changes made in place, to arrays returned by getters or to nested objects such as {@link InnerClass} or {@link AnnotationEntry}, are not noticed;
+     * after such a change, pass the modified value to the setter, for example {@code code.setCode(code.getCode())}. Attributes created by an
+     * {@link UnknownAttributeReader} never keep their bytes.
+     * </p>
+     * <p>
+     * When parsing from a {@link java.nio.ByteBuffer} given by the caller, the retained bytes are views of that buffer, which must therefore not be
+     * modified while the attributes are in use. When parsing from a {@link java.nio.file.Path}, they are copied out of the mapping.
+     * </p>
+     *
+     * @param retainAttributeBytes whether attributes keep the bytes they were parsed from.
+     */
+    public void setRetainAttributeBytes(final boolean retainAttributeBytes) {
+        this.retainAttributeBytes = retainAttributeBytes;
+    }
+
+    /**
+     * Sets whether to skip the {@link RuntimeVisibleAnnotations}, {@link RuntimeInvisibleAnnotations}, {@link RuntimeVisibleParameterAnnotations},
+     * {@link RuntimeInvisibleParameterAnnotations} and {@link AnnotationDefault} attributes.
+     *
+     * @param skipAnnotations whether to skip annotations.
+     */
+    public void setSkipAnnotations(final boolean skipAnnotations) {
+        this.skipAnnotations = skipAnnotations;
+    }
+
+    /**
+     * Sets whether to skip {@link Code} attributes, so that all methods look like abstract or native methods.
+     *
+     * @param skipCode whether to skip method bodies.
+     */
+    public void setSkipCode(final boolean skipCode) {
+        this.skipCode = skipCode;
+    }
+
+    /**
+     * Sets whether to skip the {@link LineNumberTable}, {@link LocalVariableTable}, {@link LocalVariableTypeTable} and {@link SourceFile} attributes.
+     *
+     * @param skipDebugInfo whether to skip debug information.
+     */
+    public void setSkipDebugInfo(final boolean skipDebugInfo) {
+        this.skipDebugInfo = skipDebugInfo;
+    }
+
+    /**
+     * Sets whether to skip {@link StackMap} attributes, that is, {@code StackMapTable} attributes, and obsolete {@code StackMap} attributes.
+     *
+     * @param skipFrames whether to skip stack map frames.
+     */
+    public void setSkipFrames(final boolean skipFrames) {
+        this.skipFrames = skipFrames;
+    }
+
+    /**
+     * Sets whether to skip attributes that would be read as {@link Unknown} attributes, that is, non-standard attributes without a registered
+     * {@link UnknownAttributeReader}.
+     *
+     * @param skipUnknownAttributes whether to skip unknown attributes.
+     */
+    public void setSkipUnknownAttributes(final boolean skipUnknownAttributes) {
+        this.skipUnknownAttributes = skipUnknownAttributes;
+    }
+}
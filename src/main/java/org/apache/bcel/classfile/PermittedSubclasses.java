@@ -155,6 +155,7 @@ public final class PermittedSubclasses extends Attribute {
      */
     public void setClasses(final int[] classes) {
         this.classes = ArrayUtils.nullToEmpty(classes);
+        clearOriginalBytes();
     }
 
     /**
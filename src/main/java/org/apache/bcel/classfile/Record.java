@@ -131,6 +131,12 @@ public final class Record extends Attribute {
         return components;
     }
 
+    @Override
+    boolean isUnmodified() {
+        // The components hold attributes that may be modified unnoticed
+        return false;
+    }
+
     /**
      * Converts this instance to a String suitable for debugging.
      *
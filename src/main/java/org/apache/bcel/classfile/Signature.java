@@ -269,6 +269,7 @@ public final class Signature extends Attribute {
      */
     public void setSignatureIndex(final int signatureIndex) {
         this.signatureIndex = signatureIndex;
+        clearOriginalBytes();
     }
 
     /**
@@ -131,6 +131,7 @@ public final class SourceFile extends Attribute {
      */
     public void setSourceFileIndex(final int sourceFileIndex) {
         this.sourceFileIndex = sourceFileIndex;
+        clearOriginalBytes();
     }
 
     /**
@@ -160,6 +160,7 @@ public final class Unknown extends Attribute {
      */
     public void setBytes(final byte[] bytes) {
         this.bytes = bytes;
+        clearOriginalBytes();
     }
 
     /**
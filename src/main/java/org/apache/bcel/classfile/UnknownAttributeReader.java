@@ -21,7 +21,8 @@ package org.apache.bcel.classfile;
 
 /**
  * Unknown (non-standard) attributes may be read via user-defined factory objects that can be registered with the
- * Attribute.addAttributeReader method. These factory objects should implement this interface.
+ * Attribute.addAttributeReader method, or with ParseOptions.addAttributeReader for some parsers only. These factory objects should implement this
+ * interface.
  *
  * @see Attribute
  * @since 6.0
@@ -264,6 +264,52 @@ public class ClassGen extends AccessFlags implements Cloneable {
         }
     }
 
+    /**
+     * Removes the constant pool entries this class does not refer to, and renumbers the references to the others.
+     * <p>
+     * The class name, superclass, interfaces, fields, methods, attributes and annotations are scanned for constant pool references, including the
+     * operands of the byte code, the attributes nested in Code and Record attributes, and the bootstrap methods. The remaining entries keep their
+     * order, so an index never grows and the byte code keeps its size.
+     * </p>
+     * <p>
+     * The class then uses a new {@link ConstantPoolGen}, and its fields, methods and attributes are replaced with copies that refer to it. Generators
+     * such as {@link MethodGen} that still refer to the old pool must therefore be finished first. The contents of attributes whose format BCEL does
+     * not know are copied unchanged, so they must not refer to the constant pool.
+     * </p>
+     *
+     * @return The number of constant pool slots freed.
+     * @throws org.apache.bcel.classfile.ClassFormatException if the class refers to constant pool entries that do not exist.
+     * @since 6.13.0
+     */
+    public int compactConstantPool() {
+        final int[] interfaces = getInterfaces();
+        final Attribute[] annotations = AnnotationEntryGen.getAnnotationAttributes(cp, getAnnotationEntries());
+        final ConstantPoolCompactor compactor = new ConstantPoolCompactor(cp.getFinalConstantPool());
+        compactor.mark(classNameIndex);
+        compactor.mark(superclassNameIndex);
+        for (final int index : interfaces) {
+            compactor.mark(index);
+        }
+        fieldList.forEach(compactor::mark);
+        methodList.forEach(compactor::mark);
+        attributeList.forEach(compactor::mark);
+        for (final Attribute annotation : annotations) {
+            compactor.mark(annotation);
+        }
+        final int oldSize = cp.getSize();
+        cp = new ConstantPoolGen(compactor.compact());
+        classNameIndex = compactor.remap(classNameIndex);
+        superclassNameIndex = compactor.remap(superclassNameIndex);
+        fieldList.replaceAll(compactor::remap);
+        methodList.replaceAll(compactor::remap);
+        final Attribute[] attributes = compactor.remap(getAttributes());
+        attributeList.clear();
+        Collections.addAll(attributeList, attributes);
+        annotationList.clear();
+        Collections.addAll(annotationList, unpackAnnotations(compactor.remap(annotations)));
+        return oldSize - cp.getSize();
+    }
+
     /**
      * Checks if this class contains the given field.
      *
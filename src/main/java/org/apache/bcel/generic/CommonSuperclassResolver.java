@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import org.apache.bcel.Repository;
+
+/**
+ * Finds the first common superclass of two reference types, which is the type of a value that has either type, for example where two branches of
+ * the code join. Used by {@link MethodGen} to compute stack map frames.
+ *
+ * @see ReferenceType#getFirstCommonSuperclass(ReferenceType, org.apache.bcel.util.Repository)
+ * @since 6.13.0
+ */
+@FunctionalInterface
+public interface CommonSuperclassResolver {
+
+    /**
+     * Resolves common superclasses with the classes of the global {@link Repository}.
+     */
+    CommonSuperclassResolver DEFAULT = (t1, t2) -> t1.getFirstCommonSuperclass(t2, Repository.getRepository());
+
+    /**
+     * Creates a resolver that looks up classes in a repository.
+     *
+     * @param repository The repository to look up classes.
+     * @return A new resolver.
+     */
+    static CommonSuperclassResolver of(final org.apache.bcel.util.Repository repository) {
+        return (t1, t2) -> t1.getFirstCommonSuperclass(t2, repository);
+    }
+
+    /**
+     * Gets the first common superclass of two reference types. Either type may be {@link Type#NULL}.
+     *
+     * @param t1 The first type.
+     * @param t2 The second type.
+     * @return The first common superclass.
+     * @throws ClassNotFoundException if a class needed to find the superclass can't be found.
+     */
+    ReferenceType getFirstCommonSuperclass(ReferenceType t1, ReferenceType t2) throws ClassNotFoundException;
+}
@@ -0,0 +1,279 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.util.ByteSequence;
+
+/**
+ * A read-only instruction list that keeps its instructions in arrays instead of {@link InstructionHandle} objects.
+ * <p>
+ * The opcode, the main operand and the byte code offset of each instruction are kept in parallel arrays, next to the byte code itself. Passes that only
+ * read the code, such as an {@link org.apache.bcel.util.InstructionFinder} search or
+ * {@link MethodGen#getMaxStack(ConstantPoolGen, CompactInstructionList, int[])}, can walk these arrays by instruction index without creating an
+ * object per instruction. {@link Instruction} objects are decoded on demand by {@link #getInstruction(int)}, and {@link #toInstructionList()} creates
+ * the handles when the code needs to be changed.
+ * </p>
+ *
+ * @see InstructionList
+ * @since 6.13.0
+ */
+public final class CompactInstructionList {
+
+    /**
+     * Gets the main operand of an instruction.
+     */
+    private static int getOperand(final Instruction instruction) {
+        if (instruction instanceof IndexedInstruction) {
+            return ((IndexedInstruction) instruction).getIndex();
+        }
+        if (instruction instanceof ConstantPushInstruction) {
+            return ((ConstantPushInstruction) instruction).getValue().intValue();
+        }
+        if (instruction instanceof NEWARRAY) {
+            return ((NEWARRAY) instruction).getTypecode();
+        }
+        return 0;
+    }
+
+    private static boolean isBranchOpcode(final short opcode) {
+        switch (opcode) {
+        case Const.RET:
+            return false;
+        case Const.IFNULL:
+        case Const.IFNONNULL:
+        case Const.GOTO_W:
+        case Const.JSR_W:
+            return true;
+        default:
+            return opcode >= Const.IFEQ && opcode <= Const.LOOKUPSWITCH;
+        }
+    }
+
+    private final byte[] code;
+
+    private final int length;
+
+    private final short[] opcodes;
+
+    private final int[] operands;
+
+    private final int[] positions;
+
+    /**
+     * Constructs a compact instruction list from byte code.
+     *
+     * @param code The byte code, which must not be changed afterwards.
+     * @throws ClassGenException if the code is malformed.
+     */
+    public CompactInstructionList(final byte[] code) {
+        this.code = code;
+        // An instruction is at least one byte long
+        final short[] ops = new short[code.length];
+        final int[] args = new int[code.length];
+        final int[] pos = new int[code.length];
+        int count = 0;
+        try (ByteSequence bytes = new ByteSequence(code)) {
+            while (bytes.available() > 0) {
+                pos[count] = bytes.getIndex();
+                final Instruction instruction = Instruction.readInstruction(bytes);
+                ops[count] = instruction.getOpcode();
+                // Branch offsets are relative until all positions are known
+                args[count] = instruction instanceof BranchInstruction ? ((BranchInstruction) instruction).getIndex() : getOperand(instruction);
+                count++;
+            }
+        } catch (final IOException e) {
+            throw new ClassGenException(e.toString(), e);
+        }
+        this.length = count;
+        this.opcodes = Arrays.copyOf(ops, count);
+        this.operands = Arrays.copyOf(args, count);
+        this.positions = Arrays.copyOf(pos, count);
+        for (int i = 0; i < count; i++) {
+            if (isBranch(i)) {
+                operands[i] = findTarget(i, positions[i] + operands[i]);
+            }
+        }
+    }
+
+    /**
+     * Constructs a compact copy of an instruction list. The instruction list is not changed, except that its positions are updated.
+     *
+     * @param il The instruction list to copy.
+     */
+    public CompactInstructionList(final InstructionList il) {
+        this.code = il.getByteCode();
+        this.length = il.getLength();
+        this.opcodes = new short[length];
+        this.operands = new int[length];
+        this.positions = Arrays.copyOf(il.getInstructionPositions(), length);
+        int i = 0;
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext(), i++) {
+            final Instruction instruction = ih.getInstruction();
+            opcodes[i] = instruction.getOpcode();
+            operands[i] = instruction instanceof BranchInstruction ? findTarget(i, ((BranchInstruction) instruction).getTarget().getPosition())
+                : getOperand(instruction);
+        }
+    }
+
+    private int findTarget(final int i, final int position) {
+        final int target = indexOf(position);
+        if (target < 0) {
+            throw new ClassGenException("Couldn't find target " + position + " for branch at " + positions[i]);
+        }
+        return target;
+    }
+
+    /**
+     * Gets a copy of the byte code.
+     *
+     * @return The byte code.
+     */
+    public byte[] getByteCode() {
+        return code.clone();
+    }
+
+    /**
+     * Decodes an instruction. Branch instructions have relative offsets instead of targets, as in {@link InstructionList#getInstructions()}; use
+     * {@link #getOperand(int)} and {@link #getTargets(int)} for their targets.
+     *
+     * @param i The index of the instruction.
+     * @return The instruction.
+     */
+    public Instruction getInstruction(final int i) {
+        try (ByteSequence bytes = new ByteSequence(code)) {
+            bytes.skipBytes(positions[i]);
+            return Instruction.readInstruction(bytes);
+        } catch (final IOException e) {
+            throw new ClassGenException(e.toString(), e);
+        }
+    }
+
+    /**
+     * Gets the number of instructions.
+     *
+     * @return The number of instructions.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Gets the opcode of an instruction, without a {@link Const#WIDE} prefix.
+     *
+     * @param i The index of the instruction.
+     * @return The opcode.
+     */
+    public short getOpcode(final int i) {
+        return opcodes[i];
+    }
+
+    /**
+     * Gets the opcodes of all instructions.
+     *
+     * @return A copy of the opcodes.
+     */
+    public short[] getOpcodes() {
+        return opcodes.clone();
+    }
+
+    /**
+     * Gets the main operand of an instruction:
+     * <ul>
+     * <li>the index of the target instruction of branch instructions, or of the default target of switches;</li>
+     * <li>the constant pool index of {@link CPInstruction}s;</li>
+     * <li>the local variable index of {@link LocalVariableInstruction}s and {@link RET};</li>
+     * <li>the value of {@link ConstantPushInstruction}s, truncated to an {@code int};</li>
+     * <li>the type code of {@link NEWARRAY};</li>
+     * <li>0 otherwise.</li>
+     * </ul>
+     *
+     * @param i The index of the instruction.
+     * @return The operand.
+     */
+    public int getOperand(final int i) {
+        return operands[i];
+    }
+
+    /**
+     * Gets the byte code offset of an instruction.
+     *
+     * @param i The index of the instruction.
+     * @return The byte code offset.
+     */
+    public int getPosition(final int i) {
+        return positions[i];
+    }
+
+    /**
+     * Gets the byte code offsets of all instructions.
+     *
+     * @return A copy of the byte code offsets.
+     */
+    public int[] getPositions() {
+        return positions.clone();
+    }
+
+    /**
+     * Gets the indices of the target instructions of a switch, in the order of its match values, not including the default target.
+     *
+     * @param i The index of the instruction, which must be a {@link Select}.
+     * @return The indices of the target instructions.
+     */
+    public int[] getTargets(final int i) {
+        final int[] offsets = ((Select) getInstruction(i)).getIndices();
+        final int[] targets = new int[offsets.length];
+        for (int j = 0; j < offsets.length; j++) {
+            targets[j] = findTarget(i, positions[i] + offsets[j]);
+        }
+        return targets;
+    }
+
+    /**
+     * Finds the instruction at a byte code offset.
+     *
+     * @param position The byte code offset.
+     * @return The index of the instruction, or a negative value if no instruction starts at the offset.
+     */
+    public int indexOf(final int position) {
+        return Arrays.binarySearch(positions, position);
+    }
+
+    /**
+     * Tests whether an instruction is a branch instruction, including switches.
+     *
+     * @param i The index of the instruction.
+     * @return Whether the instruction is a branch instruction.
+     */
+    public boolean isBranch(final int i) {
+        return isBranchOpcode(opcodes[i]);
+    }
+
+    /**
+     * Creates an instruction list with the same code, with a handle for each instruction.
+     *
+     * @return A new instruction list.
+     */
+    public InstructionList toInstructionList() {
+        return new InstructionList(code);
+    }
+}
@@ -0,0 +1,556 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantClass;
+import org.apache.bcel.classfile.ConstantDouble;
+import org.apache.bcel.classfile.ConstantFloat;
+import org.apache.bcel.classfile.ConstantInteger;
+import org.apache.bcel.classfile.ConstantLong;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantString;
+import org.apache.bcel.classfile.ConstantUtf8;
+
+/**
+ * A {@link ConstantPoolGen} that threads can share, for example to build the methods of a large class in parallel.
+ * <p>
+ * Looking up a constant, and adding one that is already in the pool, do not lock: both consult a concurrent index of the constants. Adding a new
+ * constant appends it while holding the lock of this pool, as do the methods that read the constants, such as {@link #getConstant(int)} and
+ * {@link #getConstantPool()}.
+ * </p>
+ * <p>
+ * The index of a constant added by several threads depends on which thread adds it first. Once the methods are built,
+ * {@link #renumber(int, MethodGen...)} copies the pool to a {@link ConstantPoolGen} whose numbering depends only on the methods, and makes the methods
+ * use it.
+ * </p>
+ *
+ * @since 6.13.0
+ */
+public class ConcurrentConstantPoolGen extends ConstantPoolGen {
+
+    /**
+     * The value of a constant, as the lookup methods compare it.
+     */
+    private static final class Key {
+
+        static Key classKey(final String className) {
+            return new Key(Const.CONSTANT_Class, className, null, null, 0);
+        }
+
+        static Key nameAndTypeKey(final String name, final String signature) {
+            return new Key(Const.CONSTANT_NameAndType, null, name, signature, 0);
+        }
+
+        static Key numberKey(final byte tag, final long bits) {
+            return new Key(tag, null, null, null, bits);
+        }
+
+        static Key refKey(final byte tag, final String className, final String name, final String signature) {
+            return new Key(tag, className, name, signature, 0);
+        }
+
+        static Key stringKey(final byte tag, final String value) {
+            return new Key(tag, null, value, null, 0);
+        }
+
+        private final byte tag;
+
+        /** The class name of class constants and member references, in internal or external form. */
+        private final String className;
+
+        /** The value of Utf8 and String constants, or the name of NameAndType constants and member references. */
+        private final String name;
+
+        private final String signature;
+
+        /** The raw bits of numeric constants. */
+        private final long bits;
+
+        private final int hash;
+
+        private Key(final byte tag, final String className, final String name, final String signature, final long bits) {
+            this.tag = tag;
+            this.className = className;
+            this.name = name;
+            this.signature = signature;
+            this.bits = bits;
+            final int classHash = className != null ? hashClassName(className) : 0;
+            this.hash = 31 * (31 * (31 * (31 * tag + classHash) + Objects.hashCode(name)) + Objects.hashCode(signature)) + Long.hashCode(bits);
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) obj;
+            return tag == other.tag && bits == other.bits && Objects.equals(name, other.name) && Objects.equals(signature, other.signature)
+                && (className == null ? other.className == null : other.className != null && equalsClassName(className, other.className));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Numbers the constants of a pool from a start index, each after the constants it refers to; the constants below the start index keep theirs.
+     */
+    private static final class Numbering {
+
+        private static boolean isWide(final Constant constant) {
+            return constant instanceof ConstantLong || constant instanceof ConstantDouble;
+        }
+
+        private final Constant[] constants;
+
+        /** The new index of each constant, or 0 if it has none yet. */
+        private final int[] indices;
+
+        private final int start;
+
+        private int next;
+
+        Numbering(final Constant[] constants, final int start) {
+            this.constants = constants;
+            this.indices = new int[constants.length];
+            this.start = start;
+            for (int i = 1; i < start; i++) {
+                indices[i] = i;
+            }
+            // The second slot of a long or double just below the start index is taken
+            next = start > 1 && isWide(constants[start - 1]) ? start + 1 : start;
+        }
+
+        void number(final int index) {
+            if (index < start || indices[index] != 0 || constants[index] == null) {
+                return;
+            }
+            final Constant constant = constants[index];
+            forEachReference(constant, this::number);
+            indices[index] = next;
+            next += isWide(constant) ? 2 : 1;
+        }
+
+        Constant[] toArray() {
+            final Constant[] result = new Constant[next];
+            for (int i = 1; i < constants.length; i++) {
+                if (indices[i] != 0 && constants[i] != null) {
+                    result[indices[i]] = copyConstant(constants[i], j -> indices[j]);
+                }
+            }
+            return result;
+        }
+    }
+
+    private final ConcurrentHashMap<Key, Integer> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a new empty constant pool.
+     */
+    public ConcurrentConstantPoolGen() {
+    }
+
+    /**
+     * Constructs a new instance with the given constant pool.
+     *
+     * @param cp The constant pool.
+     */
+    public ConcurrentConstantPoolGen(final ConstantPool cp) {
+        this(new ConstantPoolGen(cp));
+    }
+
+    /**
+     * Constructs a new instance that starts with the constants of another one.
+     *
+     * @param template The constant pool to start with, which must not be changed while this constructor runs.
+     * @see ConstantPoolGen#ConstantPoolGen(ConstantPoolGen)
+     */
+    public ConcurrentConstantPoolGen(final ConstantPoolGen template) {
+        super(template);
+        index();
+    }
+
+    @Override
+    public int addArrayClass(final ArrayType type) {
+        final String signature = type.getSignature();
+        final Key key = Key.classKey(signature);
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addArrayClass(type));
+        }
+    }
+
+    @Override
+    public int addClass(final String str) {
+        final Key key = Key.classKey(str);
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addClass(str));
+        }
+    }
+
+    @Override
+    public int addDouble(final double n) {
+        final Key key = Key.numberKey(Const.CONSTANT_Double, Double.doubleToLongBits(n));
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addDouble(n));
+        }
+    }
+
+    @Override
+    public int addFieldref(final String className, final String fieldName, final String signature) {
+        final Key key = Key.refKey(Const.CONSTANT_Fieldref, className, fieldName, signature);
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addFieldref(className, fieldName, signature));
+        }
+    }
+
+    @Override
+    public int addFloat(final float n) {
+        final Key key = Key.numberKey(Const.CONSTANT_Float, Float.floatToIntBits(n));
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addFloat(n));
+        }
+    }
+
+    @Override
+    public int addInteger(final int n) {
+        final Key key = Key.numberKey(Const.CONSTANT_Integer, n);
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addInteger(n));
+        }
+    }
+
+    @Override
+    public int addInterfaceMethodref(final String className, final String methodName, final String signature) {
+        final Key key = Key.refKey(Const.CONSTANT_InterfaceMethodref, className, methodName, signature);
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addInterfaceMethodref(className, methodName, signature));
+        }
+    }
+
+    @Override
+    public int addLong(final long n) {
+        final Key key = Key.numberKey(Const.CONSTANT_Long, n);
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addLong(n));
+        }
+    }
+
+    @Override
+    public int addMethodref(final String className, final String methodName, final String signature) {
+        final Key key = Key.refKey(Const.CONSTANT_Methodref, className, methodName, signature);
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addMethodref(className, methodName, signature));
+        }
+    }
+
+    @Override
+    public int addNameAndType(final String name, final String signature) {
+        final Key key = Key.nameAndTypeKey(name, signature);
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addNameAndType(name, signature));
+        }
+    }
+
+    @Override
+    public int addString(final String str) {
+        final Key key = Key.stringKey(Const.CONSTANT_String, str);
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addString(str));
+        }
+    }
+
+    @Override
+    public int addUtf8(final String n) {
+        final Key key = Key.stringKey(Const.CONSTANT_Utf8, n);
+        final Integer index = entries.get(key);
+        if (index != null) {
+            return index.intValue();
+        }
+        synchronized (this) {
+            return put(key, super.addUtf8(n));
+        }
+    }
+
+    @Override
+    public synchronized Constant getConstant(final int i) {
+        return super.getConstant(i);
+    }
+
+    @Override
+    public synchronized ConstantPool getConstantPool() {
+        return super.getConstantPool();
+    }
+
+    @Override
+    public synchronized ConstantPool getFinalConstantPool() {
+        return super.getFinalConstantPool();
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return super.getSize();
+    }
+
+    /**
+     * Adds the constants in the pool to the concurrent index, the first of equal constants winning.
+     */
+    private void index() {
+        final int size = super.getSize();
+        for (int i = 1; i < size; i++) {
+            final Key key = toKey(i);
+            if (key != null) {
+                entries.putIfAbsent(key, Integer.valueOf(i));
+            }
+        }
+    }
+
+    private int lookup(final Key key) {
+        final Integer index = entries.get(key);
+        return index != null ? index.intValue() : -1;
+    }
+
+    @Override
+    public int lookupClass(final String str) {
+        return lookup(Key.classKey(str));
+    }
+
+    @Override
+    public int lookupDouble(final double n) {
+        return lookup(Key.numberKey(Const.CONSTANT_Double, Double.doubleToLongBits(n)));
+    }
+
+    @Override
+    public int lookupFieldref(final String className, final String fieldName, final String signature) {
+        return lookup(Key.refKey(Const.CONSTANT_Fieldref, className, fieldName, signature));
+    }
+
+    @Override
+    public int lookupFloat(final float n) {
+        return lookup(Key.numberKey(Const.CONSTANT_Float, Float.floatToIntBits(n)));
+    }
+
+    @Override
+    public int lookupInteger(final int n) {
+        return lookup(Key.numberKey(Const.CONSTANT_Integer, n));
+    }
+
+    @Override
+    public int lookupInterfaceMethodref(final String className, final String methodName, final String signature) {
+        return lookup(Key.refKey(Const.CONSTANT_InterfaceMethodref, className, methodName, signature));
+    }
+
+    @Override
+    public int lookupLong(final long n) {
+        return lookup(Key.numberKey(Const.CONSTANT_Long, n));
+    }
+
+    @Override
+    public int lookupMethodref(final String className, final String methodName, final String signature) {
+        return lookup(Key.refKey(Const.CONSTANT_Methodref, className, methodName, signature));
+    }
+
+    @Override
+    public int lookupNameAndType(final String name, final String signature) {
+        return lookup(Key.nameAndTypeKey(name, signature));
+    }
+
+    @Override
+    public int lookupString(final String str) {
+        return lookup(Key.stringKey(Const.CONSTANT_String, str));
+    }
+
+    @Override
+    public int lookupUtf8(final String n) {
+        return lookup(Key.stringKey(Const.CONSTANT_Utf8, n));
+    }
+
+    private int put(final Key key, final int index) {
+        entries.putIfAbsent(key, Integer.valueOf(index));
+        return index;
+    }
+
+    /**
+     * Copies this pool to a new {@link ConstantPoolGen} in which the numbering does not depend on the order in which threads added the constants, and
+     * makes the given methods use it.
+     * <p>
+     * The constants below {@code start}, such as the ones added before the methods were built in parallel, keep their indices. The others are numbered
+     * in the order in which the instructions of the methods refer to them, method by method, each after the constants it refers to. The constants that no
+     * instruction refers to follow in their current order, so the constants that other parts of the class refer to should be added before the methods
+     * are built in parallel. The constant pool operands of the instructions are changed to refer to the new pool, which the methods are set to use.
+     * </p>
+     * <p>
+     * The methods must not be changed, and this pool must not be used by other threads, while this method runs.
+     * </p>
+     *
+     * @param start The index of the first constant to renumber, between 1 and {@link #getSize()}.
+     * @param methods The methods whose instruction lists refer to this pool.
+     * @return The new pool, to use instead of this one for the rest of the class.
+     * @throws IllegalArgumentException if {@code start} is out of range.
+     */
+    public synchronized ConstantPoolGen renumber(final int start, final MethodGen... methods) {
+        final int size = super.getSize();
+        if (start < 1 || start > size) {
+            throw new IllegalArgumentException("Invalid start index " + start + " for a constant pool of size " + size);
+        }
+        final Numbering numbering = new Numbering(super.getFinalConstantPool().getConstantPool(), start);
+        for (final MethodGen method : methods) {
+            final InstructionList il = method.getInstructionList();
+            if (il != null) {
+                for (final InstructionHandle ih : il) {
+                    if (ih.getInstruction() instanceof CPInstruction) {
+                        numbering.number(((CPInstruction) ih.getInstruction()).getIndex());
+                    }
+                }
+            }
+        }
+        for (int i = start; i < size; i++) {
+            numbering.number(i);
+        }
+        final ConstantPoolGen result = new ConstantPoolGen(numbering.toArray());
+        // An instruction object may occur more than once, but must be changed only once
+        final Set<Instruction> renumbered = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (final MethodGen method : methods) {
+            final InstructionList il = method.getInstructionList();
+            if (il != null) {
+                for (final InstructionHandle ih : il) {
+                    final Instruction instruction = ih.getInstruction();
+                    if (instruction instanceof CPInstruction && renumbered.add(instruction)) {
+                        final CPInstruction cpInstruction = (CPInstruction) instruction;
+                        cpInstruction.setIndex(numbering.indices[cpInstruction.getIndex()]);
+                    }
+                }
+            }
+            method.setConstantPool(result);
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void setConstant(final int i, final Constant c) {
+        super.setConstant(i, c);
+        entries.clear();
+        index();
+    }
+
+    /**
+     * Gets the key under which the lookup methods find a constant of this pool.
+     *
+     * @param i The index of the constant.
+     * @return The key, or null if the lookup methods do not find constants of its type.
+     */
+    private Key toKey(final int i) {
+        final Constant c = super.getConstant(i);
+        if (c == null) {
+            return null;
+        }
+        switch (c.getTag()) {
+        case Const.CONSTANT_Utf8:
+            return Key.stringKey(Const.CONSTANT_Utf8, ((ConstantUtf8) c).getBytes());
+        case Const.CONSTANT_String:
+            return Key.stringKey(Const.CONSTANT_String, utf8(((ConstantString) c).getStringIndex()));
+        case Const.CONSTANT_Class:
+            return Key.classKey(utf8(((ConstantClass) c).getNameIndex()));
+        case Const.CONSTANT_NameAndType:
+            final ConstantNameAndType nameAndType = (ConstantNameAndType) c;
+            return Key.nameAndTypeKey(utf8(nameAndType.getNameIndex()), utf8(nameAndType.getSignatureIndex()));
+        case Const.CONSTANT_Fieldref:
+        case Const.CONSTANT_Methodref:
+        case Const.CONSTANT_InterfaceMethodref:
+            final ConstantCP ref = (ConstantCP) c;
+            final ConstantClass clazz = (ConstantClass) super.getConstant(ref.getClassIndex());
+            final ConstantNameAndType refNameAndType = (ConstantNameAndType) super.getConstant(ref.getNameAndTypeIndex());
+            return Key.refKey(c.getTag(), utf8(clazz.getNameIndex()), utf8(refNameAndType.getNameIndex()), utf8(refNameAndType.getSignatureIndex()));
+        case Const.CONSTANT_Integer:
+            return Key.numberKey(Const.CONSTANT_Integer, ((ConstantInteger) c).getBytes());
+        case Const.CONSTANT_Float:
+            return Key.numberKey(Const.CONSTANT_Float, Float.floatToIntBits(((ConstantFloat) c).getBytes()));
+        case Const.CONSTANT_Long:
+            return Key.numberKey(Const.CONSTANT_Long, ((ConstantLong) c).getBytes());
+        case Const.CONSTANT_Double:
+            return Key.numberKey(Const.CONSTANT_Double, Double.doubleToLongBits(((ConstantDouble) c).getBytes()));
+        default:
+            return null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return super.toString();
+    }
+
+    private String utf8(final int i) {
+        return ((ConstantUtf8) super.getConstant(i)).getBytes();
+    }
+}
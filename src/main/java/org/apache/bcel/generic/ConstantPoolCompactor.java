@@ -0,0 +1,558 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Attribute;
+import org.apache.bcel.classfile.ClassFormatException;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.FieldOrMethod;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.util.ByteSequence;
+
+/**
+ * Removes the entries of a constant pool that nothing refers to, and renumbers the references to the others.
+ * <p>
+ * The references are first marked with {@link #mark(int)}, {@link #mark(Attribute)} and {@link #mark(FieldOrMethod)}, which also mark the entries the
+ * marked constants refer to. {@link #compact()} then builds the pool of the marked entries, in their original order, after which {@link #remap(int)},
+ * {@link #remap(Attribute[])}, {@link #remap(Field)} and {@link #remap(Method)} translate the references to it.
+ * </p>
+ * <p>
+ * Attributes are handled in their class file form, by patching the constant pool indices in a dump of the attribute and reading it back. As entries keep
+ * their order, an index never grows: an {@code ldc} operand still fits in a byte, the code keeps its size, and no offset in the code or its attributes
+ * changes. The contents of attributes whose format is not known here are copied unchanged, so they must not refer to the constant pool.
+ * </p>
+ */
+final class ConstantPoolCompactor {
+
+    private final ConstantPool constantPool;
+
+    /** While marking, 1 for the entries that are referred to; after {@link #compact()}, the new index of each of them. */
+    private final int[] indices;
+
+    private ConstantPool compacted;
+
+    /** The dump of the attribute being walked. */
+    private byte[] bytes;
+
+    /** The position in {@link #bytes}. */
+    private int position;
+
+    /**
+     * Constructs a new instance.
+     *
+     * @param constantPool The constant pool to compact.
+     */
+    ConstantPoolCompactor(final ConstantPool constantPool) {
+        this.constantPool = constantPool;
+        this.indices = new int[constantPool.getLength()];
+    }
+
+    private void annotation() {
+        index();
+        for (int pairs = readU2(); pairs > 0; pairs--) {
+            index();
+            elementValue();
+        }
+    }
+
+    private void annotations() {
+        for (int count = readU2(); count > 0; count--) {
+            annotation();
+        }
+    }
+
+    private void attribute() {
+        final String name = constantPool.getConstantUtf8(readU2(position)).getBytes();
+        index();
+        final int length = readU2() << 16 | readU2();
+        final int end = position + length;
+        switch (name) {
+        case "ConstantValue":
+        case "SourceFile":
+        case "Signature":
+        case "NestHost":
+        case "ModuleMainClass":
+        case "ModuleTarget":
+            index();
+            break;
+        case "Code":
+            code();
+            break;
+        case "Exceptions":
+        case "NestMembers":
+        case "PermittedSubclasses":
+        case "ModulePackages":
+            indices(readU2());
+            break;
+        case "InnerClasses":
+            for (int count = readU2(); count > 0; count--) {
+                indices(3);
+                position += 2;
+            }
+            break;
+        case "EnclosingMethod":
+        case "PMGClass":
+            indices(2);
+            break;
+        case "LocalVariableTable":
+        case "LocalVariableTypeTable":
+            for (int count = readU2(); count > 0; count--) {
+                position += 4;
+                indices(2);
+                position += 2;
+            }
+            break;
+        case "StackMap":
+            for (int count = readU2(); count > 0; count--) {
+                position += 2;
+                verificationTypes(readU2());
+                verificationTypes(readU2());
+            }
+            break;
+        case "StackMapTable":
+            stackMapTable();
+            break;
+        case "RuntimeVisibleAnnotations":
+        case "RuntimeInvisibleAnnotations":
+            annotations();
+            break;
+        case "RuntimeVisibleParameterAnnotations":
+        case "RuntimeInvisibleParameterAnnotations":
+            for (int count = readU1(); count > 0; count--) {
+                annotations();
+            }
+            break;
+        case "RuntimeVisibleTypeAnnotations":
+        case "RuntimeInvisibleTypeAnnotations":
+            for (int count = readU2(); count > 0; count--) {
+                typeAnnotation();
+            }
+            break;
+        case "AnnotationDefault":
+            elementValue();
+            break;
+        case "BootstrapMethods":
+            for (int count = readU2(); count > 0; count--) {
+                index();
+                indices(readU2());
+            }
+            break;
+        case "MethodParameters":
+            for (int count = readU1(); count > 0; count--) {
+                index();
+                position += 2;
+            }
+            break;
+        case "Module":
+            module();
+            break;
+        case "ModuleHashes":
+            index();
+            for (int count = readU2(); count > 0; count--) {
+                index();
+                final int hashLength = readU2();
+                position += hashLength;
+            }
+            break;
+        case "Record":
+            for (int count = readU2(); count > 0; count--) {
+                indices(2);
+                attributes();
+            }
+            break;
+        default:
+            // No constant pool references, or an unknown format
+            break;
+        }
+        position = end;
+    }
+
+    private void attributes() {
+        for (int count = readU2(); count > 0; count--) {
+            attribute();
+        }
+    }
+
+    private void code() {
+        position += 4; // max_stack, max_locals
+        final int codeLength = readU2() << 16 | readU2();
+        final int start = position;
+        final ByteSequence stream = new ByteSequence(Arrays.copyOfRange(bytes, start, start + codeLength));
+        try {
+            while (stream.available() > 0) {
+                position = start + stream.getIndex();
+                final int opcode = readU1();
+                switch (opcode) {
+                case Const.LDC:
+                    index1();
+                    break;
+                case Const.LDC_W:
+                case Const.LDC2_W:
+                case Const.GETSTATIC:
+                case Const.PUTSTATIC:
+                case Const.GETFIELD:
+                case Const.PUTFIELD:
+                case Const.INVOKEVIRTUAL:
+                case Const.INVOKESPECIAL:
+                case Const.INVOKESTATIC:
+                case Const.INVOKEINTERFACE:
+                case Const.INVOKEDYNAMIC:
+                case Const.NEW:
+                case Const.ANEWARRAY:
+                case Const.CHECKCAST:
+                case Const.INSTANCEOF:
+                case Const.MULTIANEWARRAY:
+                    index();
+                    break;
+                default:
+                    break;
+                }
+                Instruction.readInstruction(stream);
+            }
+        } catch (final IOException | ClassGenException e) {
+            throw new ClassFormatException("Invalid byte code: " + e.getMessage(), e);
+        }
+        position = start + codeLength;
+        for (int count = readU2(); count > 0; count--) {
+            position += 6; // start_pc, end_pc, handler_pc
+            index();
+        }
+        attributes();
+    }
+
+    /**
+     * Builds the pool of the marked entries.
+     *
+     * @return The compacted constant pool.
+     */
+    ConstantPool compact() {
+        final Constant[] constants = new Constant[indices.length];
+        int size = 1;
+        for (int i = 1; i < indices.length; i++) {
+            if (indices[i] != 0) {
+                final byte tag = constantPool.getConstant(i).getTag();
+                indices[i] = size;
+                size += tag == Const.CONSTANT_Long || tag == Const.CONSTANT_Double ? 2 : 1;
+            }
+        }
+        for (int i = 1; i < indices.length; i++) {
+            if (indices[i] != 0) {
+                constants[indices[i]] = ConstantPoolGen.copyConstant(constantPool.getConstant(i), this::remap);
+            }
+        }
+        compacted = new ConstantPool(Arrays.copyOf(constants, size));
+        return compacted;
+    }
+
+    private void elementValue() {
+        final int tag = readU1();
+        switch (tag) {
+        case 'B':
+        case 'C':
+        case 'D':
+        case 'F':
+        case 'I':
+        case 'J':
+        case 'S':
+        case 'Z':
+        case 's':
+        case 'c':
+            index();
+            break;
+        case 'e':
+            indices(2);
+            break;
+        case '@':
+            annotation();
+            break;
+        case '[':
+            for (int count = readU2(); count > 0; count--) {
+                elementValue();
+            }
+            break;
+        default:
+            throw new ClassFormatException("Unexpected element value tag in annotation: " + tag);
+        }
+    }
+
+    /**
+     * Marks or remaps the two byte index at the current position.
+     */
+    private void index() {
+        final int index = readU2(position);
+        if (compacted == null) {
+            mark(index);
+        } else {
+            final int newIndex = remap(index);
+            bytes[position] = (byte) (newIndex >>> 8);
+            bytes[position + 1] = (byte) newIndex;
+        }
+        position += 2;
+    }
+
+    /**
+     * Marks or remaps the one byte index of an {@code ldc} at the current position.
+     */
+    private void index1() {
+        final int index = bytes[position] & 0xff;
+        if (compacted == null) {
+            mark(index);
+        } else {
+            bytes[position] = (byte) remap(index);
+        }
+        position++;
+    }
+
+    private void indices(final int count) {
+        for (int i = 0; i < count; i++) {
+            index();
+        }
+    }
+
+    /**
+     * Marks the constant pool entries an attribute refers to.
+     *
+     * @param attribute The attribute.
+     */
+    void mark(final Attribute attribute) {
+        walk(attribute);
+    }
+
+    /**
+     * Marks the constant pool entries a field or method refers to.
+     *
+     * @param fieldOrMethod The field or method.
+     */
+    void mark(final FieldOrMethod fieldOrMethod) {
+        mark(fieldOrMethod.getNameIndex());
+        mark(fieldOrMethod.getSignatureIndex());
+        for (final Attribute attribute : fieldOrMethod.getAttributes()) {
+            mark(attribute);
+        }
+    }
+
+    /**
+     * Marks a constant pool entry, and the entries it refers to.
+     *
+     * @param index The index of the entry, where 0 refers to none.
+     */
+    void mark(final int index) {
+        if (index == 0 || index < indices.length && indices[index] != 0) {
+            return;
+        }
+        final Constant constant = constantPool.getConstant(index);
+        indices[index] = 1;
+        ConstantPoolGen.forEachReference(constant, this::mark);
+    }
+
+    private void module() {
+        index();
+        position += 2; // module_flags
+        index();
+        for (int count = readU2(); count > 0; count--) {
+            index();
+            position += 2; // requires_flags
+            index();
+        }
+        // exports, then opens
+        for (int table = 0; table < 2; table++) {
+            for (int count = readU2(); count > 0; count--) {
+                index();
+                position += 2; // flags
+                indices(readU2());
+            }
+        }
+        indices(readU2());
+        for (int count = readU2(); count > 0; count--) {
+            index();
+            indices(readU2());
+        }
+    }
+
+    private int readU1() {
+        return bytes[position++] & 0xff;
+    }
+
+    private int readU2() {
+        final int value = readU2(position);
+        position += 2;
+        return value;
+    }
+
+    private int readU2(final int at) {
+        return (bytes[at] & 0xff) << 8 | bytes[at + 1] & 0xff;
+    }
+
+    /**
+     * Translates attributes to the compacted pool.
+     *
+     * @param attributes The attributes, referring to the original pool.
+     * @return New attributes, referring to the compacted pool.
+     */
+    Attribute[] remap(final Attribute[] attributes) {
+        final Attribute[] result = new Attribute[attributes.length];
+        for (int i = 0; i < attributes.length; i++) {
+            walk(attributes[i]);
+            try {
+                result[i] = Attribute.readAttribute(new DataInputStream(new ByteArrayInputStream(bytes)), compacted);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Translates a field to the compacted pool.
+     *
+     * @param field The field, referring to the original pool.
+     * @return A new field, referring to the compacted pool.
+     */
+    Field remap(final Field field) {
+        return new Field(field.getAccessFlags(), remap(field.getNameIndex()), remap(field.getSignatureIndex()), remap(field.getAttributes()), compacted);
+    }
+
+    /**
+     * Translates the index of a marked entry to the compacted pool.
+     *
+     * @param index The index in the original pool, where 0 refers to none.
+     * @return The index in the compacted pool.
+     */
+    int remap(final int index) {
+        return index == 0 ? 0 : indices[index];
+    }
+
+    /**
+     * Translates a method to the compacted pool.
+     *
+     * @param method The method, referring to the original pool.
+     * @return A new method, referring to the compacted pool.
+     */
+    Method remap(final Method method) {
+        return new Method(method.getAccessFlags(), remap(method.getNameIndex()), remap(method.getSignatureIndex()), remap(method.getAttributes()),
+            compacted);
+    }
+
+    private void stackMapTable() {
+        for (int count = readU2(); count > 0; count--) {
+            final int frameType = readU1();
+            if (frameType >= Const.SAME_LOCALS_1_STACK_ITEM_FRAME && frameType <= Const.SAME_LOCALS_1_STACK_ITEM_FRAME_MAX) {
+                verificationTypes(1);
+            } else if (frameType == Const.SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED) {
+                position += 2;
+                verificationTypes(1);
+            } else if (frameType >= Const.CHOP_FRAME && frameType <= Const.SAME_FRAME_EXTENDED) {
+                position += 2;
+            } else if (frameType >= Const.APPEND_FRAME && frameType <= Const.APPEND_FRAME_MAX) {
+                position += 2;
+                verificationTypes(frameType - Const.SAME_FRAME_EXTENDED);
+            } else if (frameType == Const.FULL_FRAME) {
+                position += 2;
+                verificationTypes(readU2());
+                verificationTypes(readU2());
+            } else if (frameType > Const.SAME_FRAME_MAX) {
+                throw new ClassFormatException("Invalid frame type found while parsing stack map table: " + frameType);
+            }
+        }
+    }
+
+    private void typeAnnotation() {
+        final int targetType = readU1();
+        switch (targetType) {
+        case 0x00: // type parameter of a class or interface
+        case 0x01: // type parameter of a method
+        case 0x16: // formal parameter
+            position += 1;
+            break;
+        case 0x10: // supertype
+        case 0x11: // type parameter bound of a class or interface
+        case 0x12: // type parameter bound of a method
+        case 0x17: // throws
+        case 0x42: // exception parameter
+        case 0x43: // instanceof
+        case 0x44: // new
+        case 0x45: // constructor reference
+        case 0x46: // method reference
+            position += 2;
+            break;
+        case 0x13: // field
+        case 0x14: // return type
+        case 0x15: // receiver type
+            break;
+        case 0x40: // local variable
+        case 0x41: // resource variable
+            final int tableLength = readU2();
+            position += 6 * tableLength;
+            break;
+        case 0x47: // cast
+        case 0x48: // constructor invocation type argument
+        case 0x49: // method invocation type argument
+        case 0x4A: // constructor reference type argument
+        case 0x4B: // method reference type argument
+            position += 3;
+            break;
+        default:
+            throw new ClassFormatException("Unexpected target type in type annotation: " + targetType);
+        }
+        final int pathLength = readU1();
+        position += 2 * pathLength; // type_path
+        annotation();
+    }
+
+    private void verificationTypes(final int count) {
+        for (int i = 0; i < count; i++) {
+            final int tag = readU1();
+            if (tag == Const.ITEM_Object) {
+                index();
+            } else if (tag == Const.ITEM_NewObject) {
+                position += 2;
+            }
+        }
+    }
+
+    /**
+     * Dumps an attribute and marks or remaps the indices in the dump.
+     */
+    private void walk(final Attribute attribute) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream dataOutput = new DataOutputStream(out)) {
+            attribute.dump(dataOutput);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        bytes = out.toByteArray();
+        position = 0;
+        try {
+            attribute();
+        } catch (final ArrayIndexOutOfBoundsException e) {
+            throw new ClassFormatException("Truncated attribute: " + attribute, e);
+        }
+    }
+}
@@ -19,23 +19,25 @@
 package org.apache.bcel.generic;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
 
 import org.apache.bcel.Const;
 import org.apache.bcel.classfile.Constant;
 import org.apache.bcel.classfile.ConstantCP;
 import org.apache.bcel.classfile.ConstantClass;
 import org.apache.bcel.classfile.ConstantDouble;
-import org.apache.bcel.classfile.ConstantDynamic;
 import org.apache.bcel.classfile.ConstantFieldref;
 import org.apache.bcel.classfile.ConstantFloat;
 import org.apache.bcel.classfile.ConstantInteger;
 import org.apache.bcel.classfile.ConstantInterfaceMethodref;
-import org.apache.bcel.classfile.ConstantInvokeDynamic;
 import org.apache.bcel.classfile.ConstantLong;
+import org.apache.bcel.classfile.ConstantMethodHandle;
+import org.apache.bcel.classfile.ConstantMethodType;
 import org.apache.bcel.classfile.ConstantMethodref;
+import org.apache.bcel.classfile.ConstantModule;
 import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPackage;
 import org.apache.bcel.classfile.ConstantPool;
 import org.apache.bcel.classfile.ConstantString;
 import org.apache.bcel.classfile.ConstantUtf8;
@@ -53,27 +55,144 @@ public class ConstantPoolGen {
 
     private static final int DEFAULT_BUFFER_SIZE = 256;
 
-    private static final String METHODREF_DELIM = ":";
+    /**
+     * Copies a constant, translating the constant pool indices it refers to.
+     *
+     * @param constant A constant.
+     * @param indices Translates an index of the pool of the constant to an index of the pool of the copy.
+     * @return The copy.
+     */
+    static Constant copyConstant(final Constant constant, final IntUnaryOperator indices) {
+        final Constant copy = constant.copy();
+        switch (copy.getTag()) {
+        case Const.CONSTANT_Class:
+            ((ConstantClass) copy).setNameIndex(indices.applyAsInt(((ConstantClass) copy).getNameIndex()));
+            break;
+        case Const.CONSTANT_String:
+            ((ConstantString) copy).setStringIndex(indices.applyAsInt(((ConstantString) copy).getStringIndex()));
+            break;
+        case Const.CONSTANT_Fieldref:
+        case Const.CONSTANT_Methodref:
+        case Const.CONSTANT_InterfaceMethodref:
+            ((ConstantCP) copy).setClassIndex(indices.applyAsInt(((ConstantCP) copy).getClassIndex()));
+            ((ConstantCP) copy).setNameAndTypeIndex(indices.applyAsInt(((ConstantCP) copy).getNameAndTypeIndex()));
+            break;
+        case Const.CONSTANT_Dynamic:
+        case Const.CONSTANT_InvokeDynamic:
+            ((ConstantCP) copy).setNameAndTypeIndex(indices.applyAsInt(((ConstantCP) copy).getNameAndTypeIndex()));
+            break;
+        case Const.CONSTANT_NameAndType:
+            ((ConstantNameAndType) copy).setNameIndex(indices.applyAsInt(((ConstantNameAndType) copy).getNameIndex()));
+            ((ConstantNameAndType) copy).setSignatureIndex(indices.applyAsInt(((ConstantNameAndType) copy).getSignatureIndex()));
+            break;
+        case Const.CONSTANT_MethodHandle:
+            ((ConstantMethodHandle) copy).setReferenceIndex(indices.applyAsInt(((ConstantMethodHandle) copy).getReferenceIndex()));
+            break;
+        case Const.CONSTANT_MethodType:
+            ((ConstantMethodType) copy).setDescriptorIndex(indices.applyAsInt(((ConstantMethodType) copy).getDescriptorIndex()));
+            break;
+        case Const.CONSTANT_Module:
+            ((ConstantModule) copy).setNameIndex(indices.applyAsInt(((ConstantModule) copy).getNameIndex()));
+            break;
+        case Const.CONSTANT_Package:
+            ((ConstantPackage) copy).setNameIndex(indices.applyAsInt(((ConstantPackage) copy).getNameIndex()));
+            break;
+        default:
+            break;
+        }
+        return copy;
+    }
 
-    private static final String IMETHODREF_DELIM = "#";
+    /**
+     * Tests whether two class names are the same, each in internal form, such as {@code java/lang/String}, or external form, such as
+     * {@code java.lang.String}.
+     *
+     * @param name1 A class name.
+     * @param name2 Another class name.
+     * @return whether the names are the same.
+     */
+    static boolean equalsClassName(final String name1, final String name2) {
+        final int length = name1.length();
+        if (length != name2.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            final char c1 = name1.charAt(i);
+            final char c2 = name2.charAt(i);
+            if (c1 != c2 && (c1 == '.' ? '/' : c1) != (c2 == '.' ? '/' : c2)) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-    private static final String FIELDREF_DELIM = "&";
+    /**
+     * Passes the constant pool indices a constant refers to to an action, in the order in which this class adds the constants at these indices.
+     *
+     * @param constant A constant.
+     * @param action The action.
+     */
+    static void forEachReference(final Constant constant, final IntConsumer action) {
+        switch (constant.getTag()) {
+        case Const.CONSTANT_Class:
+            action.accept(((ConstantClass) constant).getNameIndex());
+            break;
+        case Const.CONSTANT_String:
+            action.accept(((ConstantString) constant).getStringIndex());
+            break;
+        case Const.CONSTANT_Fieldref:
+        case Const.CONSTANT_Methodref:
+        case Const.CONSTANT_InterfaceMethodref:
+            action.accept(((ConstantCP) constant).getClassIndex());
+            action.accept(((ConstantCP) constant).getNameAndTypeIndex());
+            break;
+        case Const.CONSTANT_Dynamic:
+        case Const.CONSTANT_InvokeDynamic:
+            // The class index is the index of a bootstrap method
+            action.accept(((ConstantCP) constant).getNameAndTypeIndex());
+            break;
+        case Const.CONSTANT_NameAndType:
+            action.accept(((ConstantNameAndType) constant).getNameIndex());
+            action.accept(((ConstantNameAndType) constant).getSignatureIndex());
+            break;
+        case Const.CONSTANT_MethodHandle:
+            action.accept(((ConstantMethodHandle) constant).getReferenceIndex());
+            break;
+        case Const.CONSTANT_MethodType:
+            action.accept(((ConstantMethodType) constant).getDescriptorIndex());
+            break;
+        case Const.CONSTANT_Module:
+            action.accept(((ConstantModule) constant).getNameIndex());
+            break;
+        case Const.CONSTANT_Package:
+            action.accept(((ConstantPackage) constant).getNameIndex());
+            break;
+        default:
+            break;
+        }
+    }
 
     /**
-     * Builds a lookup key that stays collision-free even when the parts contain the ASCII characters used as
-     * delimiters above. Class, member and signature names read from a class file may legally contain those characters
-     * (the JVMS only forbids {@code . ; [ /} and, for members, {@code < >}), so each part is prefixed with its length
-     * to keep distinct triples distinct.
+     * Hashes a class name the same in internal and external form.
      *
-     * @param parts The key parts.
-     * @return A collision-free key.
+     * @param name A class name.
+     * @return The hash.
      */
-    private static String toKey(final String... parts) {
-        final StringBuilder buf = new StringBuilder();
-        for (final String part : parts) {
-            buf.append(part.length()).append(':').append(part);
+    static int hashClassName(final String name) {
+        int hash = 0;
+        for (int i = 0; i < name.length(); i++) {
+            final char c = name.charAt(i);
+            hash = 31 * hash + (c == '.' ? '/' : c);
         }
-        return buf.toString();
+        return hash;
+    }
+
+    private static int hashNameAndType(final String name, final String signature) {
+        return 31 * name.hashCode() + signature.hashCode();
+    }
+
+    private static int hashRef(final byte tag, final String className, final String name, final String signature) {
+        return 31 * (31 * tag + hashClassName(className)) + hashNameAndType(name, signature);
     }
 
     /**
@@ -94,22 +213,29 @@ public class ConstantPoolGen {
     @Deprecated
     protected int index = 1; // First entry (0) used by JVM
 
-    private final Map<String, Integer> stringTable = new HashMap<>();
+    private final ConstantTable stringTable;
+
+    private final ConstantTable classTable;
+
+    private final ConstantTable utf8Table;
+
+    private final ConstantTable natTable;
 
-    private final Map<String, Integer> classTable = new HashMap<>();
+    private final ConstantTable cpTable;
 
-    private final Map<String, Integer> utf8Table = new HashMap<>();
+    private final NumberTable integerTable;
 
-    private final Map<String, Integer> natTable = new HashMap<>();
+    private final NumberTable floatTable;
 
-    private final Map<String, Integer> cpTable = new HashMap<>();
+    private final NumberTable longTable;
+
+    private final NumberTable doubleTable;
 
     /**
      * Constructs a new empty constant pool.
      */
     public ConstantPoolGen() {
-        size = DEFAULT_BUFFER_SIZE;
-        constants = new Constant[size];
+        this(new Constant[0]);
     }
 
     /**
@@ -118,6 +244,15 @@ public class ConstantPoolGen {
      * @param cs array of given constants, new ones will be appended.
      */
     public ConstantPoolGen(final Constant[] cs) {
+        stringTable = new ConstantTable();
+        classTable = new ConstantTable();
+        utf8Table = new ConstantTable();
+        natTable = new ConstantTable();
+        cpTable = new ConstantTable();
+        integerTable = new NumberTable();
+        floatTable = new NumberTable();
+        longTable = new NumberTable();
+        doubleTable = new NumberTable();
         size = Math.min(Math.max(DEFAULT_BUFFER_SIZE, cs.length + 64), Const.MAX_CP_ENTRIES + 1);
         constants = Arrays.copyOf(cs, size);
 
@@ -131,73 +266,46 @@ public class ConstantPoolGen {
                 final ConstantString s = (ConstantString) c;
                 final ConstantUtf8 u8 = (ConstantUtf8) constants[s.getStringIndex()];
                 final String key = u8.getBytes();
-                if (!stringTable.containsKey(key)) {
-                    stringTable.put(key, Integer.valueOf(i));
+                if (lookupString(key) == -1) {
+                    stringTable.add(key.hashCode(), i);
                 }
             } else if (c instanceof ConstantClass) {
                 final ConstantClass s = (ConstantClass) c;
                 final ConstantUtf8 u8 = (ConstantUtf8) constants[s.getNameIndex()];
-                final String key = u8.getBytes();
-                if (!classTable.containsKey(key)) {
-                    classTable.put(key, Integer.valueOf(i));
+                final String name = u8.getBytes();
+                if (lookupClass(name) == -1) {
+                    classTable.add(hashClassName(name), i);
                 }
             } else if (c instanceof ConstantNameAndType) {
                 final ConstantNameAndType n = (ConstantNameAndType) c;
                 final ConstantUtf8 u8NameIdx = (ConstantUtf8) constants[n.getNameIndex()];
                 final ConstantUtf8 u8SigIdx = (ConstantUtf8) constants[n.getSignatureIndex()];
-                final String key = toKey(u8NameIdx.getBytes(), u8SigIdx.getBytes());
-                if (!natTable.containsKey(key)) {
-                    natTable.put(key, Integer.valueOf(i));
+                final String name = u8NameIdx.getBytes();
+                final String signature = u8SigIdx.getBytes();
+                if (lookupNameAndType(name, signature) == -1) {
+                    natTable.add(hashNameAndType(name, signature), i);
                 }
             } else if (c instanceof ConstantUtf8) {
                 final ConstantUtf8 u = (ConstantUtf8) c;
                 final String key = u.getBytes();
-                if (!utf8Table.containsKey(key)) {
-                    utf8Table.put(key, Integer.valueOf(i));
+                if (lookupUtf8(key) == -1) {
+                    utf8Table.add(key.hashCode(), i);
                 }
-            } else if (c instanceof ConstantCP) {
+            } else if (c instanceof ConstantFieldref || c instanceof ConstantMethodref || c instanceof ConstantInterfaceMethodref) {
                 final ConstantCP m = (ConstantCP) c;
-                final String className;
-                ConstantUtf8 u8;
-
-                if (c instanceof ConstantInvokeDynamic) {
-                    className = Integer.toString(((ConstantInvokeDynamic) m).getBootstrapMethodAttrIndex());
-                } else if (c instanceof ConstantDynamic) {
-                    className = Integer.toString(((ConstantDynamic) m).getBootstrapMethodAttrIndex());
-                } else {
-                    final ConstantClass clazz = (ConstantClass) constants[m.getClassIndex()];
-                    u8 = (ConstantUtf8) constants[clazz.getNameIndex()];
-                    className = Utility.pathToPackage(u8.getBytes());
-                }
-
+                final ConstantClass clazz = (ConstantClass) constants[m.getClassIndex()];
                 final ConstantNameAndType n = (ConstantNameAndType) constants[m.getNameAndTypeIndex()];
-                u8 = (ConstantUtf8) constants[n.getNameIndex()];
-                final String methodName = u8.getBytes();
-                u8 = (ConstantUtf8) constants[n.getSignatureIndex()];
-                final String signature = u8.getBytes();
-
-                // Distinguishes the three kinds of reference that share cpTable.
-                String delim = METHODREF_DELIM;
-                if (c instanceof ConstantInterfaceMethodref) {
-                    delim = IMETHODREF_DELIM;
-                } else if (c instanceof ConstantFieldref) {
-                    delim = FIELDREF_DELIM;
-                }
-                final String key = toKey(delim, className, methodName, signature);
-                if (!cpTable.containsKey(key)) {
-                    cpTable.put(key, Integer.valueOf(i));
+                final String className = ((ConstantUtf8) constants[clazz.getNameIndex()]).getBytes();
+                final String name = ((ConstantUtf8) constants[n.getNameIndex()]).getBytes();
+                final String signature = ((ConstantUtf8) constants[n.getSignatureIndex()]).getBytes();
+                if (lookupRef(c.getTag(), className, name, signature) == -1) {
+                    cpTable.add(hashRef(c.getTag(), className, name, signature), i);
                 }
+            } else {
+                indexNumber(c, i);
             }
 //            else if (c == null) { // entries may be null
 //                // nothing to do
-//            } else if (c instanceof ConstantInteger) {
-//                // nothing to do
-//            } else if (c instanceof ConstantLong) {
-//                // nothing to do
-//            } else if (c instanceof ConstantFloat) {
-//                // nothing to do
-//            } else if (c instanceof ConstantDouble) {
-//                // nothing to do
 //            } else if (c instanceof org.apache.bcel.classfile.ConstantMethodType) {
 //                // TODO should this be handled somehow?
 //            } else if (c instanceof org.apache.bcel.classfile.ConstantMethodHandle) {
@@ -222,6 +330,32 @@ public class ConstantPoolGen {
         this(cp.getConstantPool());
     }
 
+    /**
+     * Constructs a new instance that starts with the constants of another one, such as a template shared by many similar classes.
+     * <p>
+     * Unlike {@link #ConstantPoolGen(ConstantPool)}, this does not index the constants again: the new instance shares the lookup tables of the
+     * template, and copies each of them only when it first adds a constant of its kind. Either pool can be changed afterwards without the other seeing
+     * the change, except for changes made to the shared {@link Constant} objects themselves.
+     * </p>
+     *
+     * @param template The constant pool to start with.
+     * @since 6.13.0
+     */
+    public ConstantPoolGen(final ConstantPoolGen template) {
+        stringTable = template.stringTable.copy();
+        classTable = template.classTable.copy();
+        utf8Table = template.utf8Table.copy();
+        natTable = template.natTable.copy();
+        cpTable = template.cpTable.copy();
+        integerTable = template.integerTable.copy();
+        floatTable = template.floatTable.copy();
+        longTable = template.longTable.copy();
+        doubleTable = template.doubleTable.copy();
+        size = template.size;
+        constants = Arrays.copyOf(template.constants, size);
+        index = template.index;
+    }
+
     /**
      * Add a reference to an array class (for example, String[][]) as needed by MULTIANEWARRAY instruction, for example, to the ConstantPool.
      *
@@ -249,7 +383,8 @@ public class ConstantPoolGen {
      * @return index of entry.
      */
     public int addClass(final String str) {
-        return addClass_(Utility.packageToPath(str));
+        final int cpRet = lookupClass(str);
+        return cpRet != -1 ? cpRet : addClass_(Utility.packageToPath(str));
     }
 
     private int addClass_(final String clazz) {
@@ -261,7 +396,8 @@ public class ConstantPoolGen {
         final ConstantClass c = new ConstantClass(addUtf8(clazz));
         final int ret = index;
         constants[index++] = c;
-        return computeIfAbsent(classTable, clazz, ret);
+        classTable.add(hashClassName(clazz), ret);
+        return ret;
     }
 
     /**
@@ -343,6 +479,7 @@ public class ConstantPoolGen {
         ret = index;
         constants[index] = new ConstantDouble(n);
         index += 2; // Wastes one entry according to spec
+        doubleTable.put(Double.doubleToLongBits(n), ret);
         return ret;
     }
 
@@ -364,7 +501,8 @@ public class ConstantPoolGen {
         final int nameAndTypeIndex = addNameAndType(fieldName, signature);
         final int ret = index;
         constants[index++] = new ConstantFieldref(classIndex, nameAndTypeIndex);
-        return computeIfAbsent(cpTable, toKey(FIELDREF_DELIM, className, fieldName, signature), ret);
+        cpTable.add(hashRef(Const.CONSTANT_Fieldref, className, fieldName, signature), ret);
+        return ret;
     }
 
     /**
@@ -381,6 +519,7 @@ public class ConstantPoolGen {
         adjustSize();
         ret = index;
         constants[index++] = new ConstantFloat(n);
+        floatTable.put(Float.floatToIntBits(n), ret);
         return ret;
     }
 
@@ -398,6 +537,7 @@ public class ConstantPoolGen {
         adjustSize();
         ret = index;
         constants[index++] = new ConstantInteger(n);
+        integerTable.put(n, ret);
         return ret;
     }
 
@@ -429,7 +569,8 @@ public class ConstantPoolGen {
         final int nameAndTypeIndex = addNameAndType(methodName, signature);
         final int ret = index;
         constants[index++] = new ConstantInterfaceMethodref(classIndex, nameAndTypeIndex);
-        return computeIfAbsent(cpTable, toKey(IMETHODREF_DELIM, className, methodName, signature), ret);
+        cpTable.add(hashRef(Const.CONSTANT_InterfaceMethodref, className, methodName, signature), ret);
+        return ret;
     }
 
     /**
@@ -447,6 +588,7 @@ public class ConstantPoolGen {
         ret = index;
         constants[index] = new ConstantLong(n);
         index += 2; // Wastes one entry according to spec
+        longTable.put(n, ret);
         return ret;
     }
 
@@ -478,7 +620,8 @@ public class ConstantPoolGen {
         final int classIndex = addClass(className);
         final int ret = index;
         constants[index++] = new ConstantMethodref(classIndex, nameAndTypeIndex);
-        return computeIfAbsent(cpTable, toKey(METHODREF_DELIM, className, methodName, signature), ret);
+        cpTable.add(hashRef(Const.CONSTANT_Methodref, className, methodName, signature), ret);
+        return ret;
     }
 
     /**
@@ -498,7 +641,8 @@ public class ConstantPoolGen {
         final int signatureIndex = addUtf8(signature);
         ret = index;
         constants[index++] = new ConstantNameAndType(nameIndex, signatureIndex);
-        return computeIfAbsent(natTable, toKey(name, signature), ret);
+        natTable.add(hashNameAndType(name, signature), ret);
+        return ret;
     }
 
     /**
@@ -517,7 +661,8 @@ public class ConstantPoolGen {
         final ConstantString s = new ConstantString(utf8);
         ret = index;
         constants[index++] = s;
-        return computeIfAbsent(stringTable, str, ret);
+        stringTable.add(str.hashCode(), ret);
+        return ret;
     }
 
     /**
@@ -534,7 +679,8 @@ public class ConstantPoolGen {
         adjustSize();
         ret = index;
         constants[index++] = new ConstantUtf8(n);
-        return computeIfAbsent(utf8Table, n, ret);
+        utf8Table.add(n.hashCode(), ret);
+        return ret;
     }
 
     /**
@@ -558,10 +704,6 @@ public class ConstantPoolGen {
         }
     }
 
-    private int computeIfAbsent(final Map<String, Integer> map, final String key, final int value) {
-        return map.computeIfAbsent(key, k -> Integer.valueOf(value));
-    }
-
     /**
      * Gets a constant pool entry at the specified index.
      *
@@ -590,8 +732,26 @@ public class ConstantPoolGen {
         return new ConstantPool(Arrays.copyOf(constants, index));
     }
 
-    private int getIndex(final Map<String, Integer> map, final String key) {
-        return toIndex(map.get(key));
+    /**
+     * Gets the index table for a numeric constant.
+     *
+     * @param c A constant, may be null.
+     * @return The table for the type of the constant, or null if the constant is not numeric.
+     */
+    private NumberTable getNumberTable(final Constant c) {
+        if (c instanceof ConstantInteger) {
+            return integerTable;
+        }
+        if (c instanceof ConstantFloat) {
+            return floatTable;
+        }
+        if (c instanceof ConstantLong) {
+            return longTable;
+        }
+        if (c instanceof ConstantDouble) {
+            return doubleTable;
+        }
+        return null;
     }
 
     /**
@@ -603,6 +763,52 @@ public class ConstantPoolGen {
         return index;
     }
 
+    /**
+     * Adds a numeric constant to its index table, unless an entry at a lower index has the same value, as the lookup methods find the first one.
+     *
+     * @param c A constant, may be null.
+     * @param i The index of the constant.
+     */
+    private void indexNumber(final Constant c, final int i) {
+        final NumberTable table = getNumberTable(c);
+        if (table != null) {
+            final long bits = toBits(c);
+            final int other = table.get(bits);
+            if (other == -1 || other > i) {
+                table.put(bits, i);
+            }
+        }
+    }
+
+    /**
+     * Tests whether the entry at an index is a class constant with the given name.
+     *
+     * @param i An index in the constant pool.
+     * @param name A class name, in internal or external form.
+     * @return whether the entry is a class constant with the given name.
+     */
+    private boolean isClass(final int i, final String name) {
+        final Constant c = i > 0 && i < index ? constants[i] : null;
+        if (c instanceof ConstantClass) {
+            final int nameIndex = ((ConstantClass) c).getNameIndex();
+            final Constant u8 = nameIndex > 0 && nameIndex < index ? constants[nameIndex] : null;
+            return u8 instanceof ConstantUtf8 && equalsClassName(((ConstantUtf8) u8).getBytes(), name);
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether the entry at an index is a Utf8 constant with the given value.
+     *
+     * @param i An index in the constant pool.
+     * @param value A string.
+     * @return whether the entry is a Utf8 constant with the given value.
+     */
+    private boolean isUtf8(final int i, final String value) {
+        final Constant c = i > 0 && i < index ? constants[i] : null;
+        return c instanceof ConstantUtf8 && ((ConstantUtf8) c).getBytes().equals(value);
+    }
+
     /**
      * Look for ConstantClass in ConstantPool named 'str'.
      *
@@ -610,7 +816,14 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupClass(final String str) {
-        return getIndex(classTable, Utility.packageToPath(str));
+        final int hash = hashClassName(str);
+        for (int slot = classTable.slot(hash); classTable.index(slot) != 0; slot = classTable.next(slot)) {
+            final int i = classTable.index(slot);
+            if (classTable.hash(slot) == hash && isClass(i, str)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -620,16 +833,7 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupDouble(final double n) {
-        final long bits = Double.doubleToLongBits(n);
-        for (int i = 1; i < index; i++) {
-            if (constants[i] instanceof ConstantDouble) {
-                final ConstantDouble c = (ConstantDouble) constants[i];
-                if (Double.doubleToLongBits(c.getBytes()) == bits) {
-                    return i;
-                }
-            }
-        }
-        return -1;
+        return doubleTable.get(Double.doubleToLongBits(n));
     }
 
     /**
@@ -641,7 +845,7 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupFieldref(final String className, final String fieldName, final String signature) {
-        return getIndex(cpTable, toKey(FIELDREF_DELIM, className, fieldName, signature));
+        return lookupRef(Const.CONSTANT_Fieldref, className, fieldName, signature);
     }
 
     /**
@@ -651,16 +855,7 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupFloat(final float n) {
-        final int bits = Float.floatToIntBits(n);
-        for (int i = 1; i < index; i++) {
-            if (constants[i] instanceof ConstantFloat) {
-                final ConstantFloat c = (ConstantFloat) constants[i];
-                if (Float.floatToIntBits(c.getBytes()) == bits) {
-                    return i;
-                }
-            }
-        }
-        return -1;
+        return floatTable.get(Float.floatToIntBits(n));
     }
 
     /**
@@ -670,15 +865,7 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupInteger(final int n) {
-        for (int i = 1; i < index; i++) {
-            if (constants[i] instanceof ConstantInteger) {
-                final ConstantInteger c = (ConstantInteger) constants[i];
-                if (c.getBytes() == n) {
-                    return i;
-                }
-            }
-        }
-        return -1;
+        return integerTable.get(n);
     }
 
     /**
@@ -700,7 +887,7 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupInterfaceMethodref(final String className, final String methodName, final String signature) {
-        return getIndex(cpTable, toKey(IMETHODREF_DELIM, className, methodName, signature));
+        return lookupRef(Const.CONSTANT_InterfaceMethodref, className, methodName, signature);
     }
 
     /**
@@ -710,15 +897,7 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupLong(final long n) {
-        for (int i = 1; i < index; i++) {
-            if (constants[i] instanceof ConstantLong) {
-                final ConstantLong c = (ConstantLong) constants[i];
-                if (c.getBytes() == n) {
-                    return i;
-                }
-            }
-        }
-        return -1;
+        return longTable.get(n);
     }
 
     /**
@@ -740,7 +919,7 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupMethodref(final String className, final String methodName, final String signature) {
-        return getIndex(cpTable, toKey(METHODREF_DELIM, className, methodName, signature));
+        return lookupRef(Const.CONSTANT_Methodref, className, methodName, signature);
     }
 
     /**
@@ -751,7 +930,44 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupNameAndType(final String name, final String signature) {
-        return getIndex(natTable, toKey(name, signature));
+        final int hash = hashNameAndType(name, signature);
+        for (int slot = natTable.slot(hash); natTable.index(slot) != 0; slot = natTable.next(slot)) {
+            final int i = natTable.index(slot);
+            if (natTable.hash(slot) == hash && constants[i] instanceof ConstantNameAndType) {
+                final ConstantNameAndType n = (ConstantNameAndType) constants[i];
+                if (isUtf8(n.getNameIndex(), name) && isUtf8(n.getSignatureIndex(), signature)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Looks for a Fieldref, Methodref or InterfaceMethodref constant.
+     *
+     * @param tag The tag of the constant.
+     * @param className The class name, in internal or external form.
+     * @param name The member name.
+     * @param signature The member signature.
+     * @return index on success, -1 otherwise.
+     */
+    private int lookupRef(final byte tag, final String className, final String name, final String signature) {
+        final int hash = hashRef(tag, className, name, signature);
+        for (int slot = cpTable.slot(hash); cpTable.index(slot) != 0; slot = cpTable.next(slot)) {
+            final int i = cpTable.index(slot);
+            if (cpTable.hash(slot) == hash && constants[i] != null && constants[i].getTag() == tag) {
+                final ConstantCP m = (ConstantCP) constants[i];
+                final int nameAndTypeIndex = m.getNameAndTypeIndex();
+                if (isClass(m.getClassIndex(), className) && nameAndTypeIndex < index && constants[nameAndTypeIndex] instanceof ConstantNameAndType) {
+                    final ConstantNameAndType n = (ConstantNameAndType) constants[nameAndTypeIndex];
+                    if (isUtf8(n.getNameIndex(), name) && isUtf8(n.getSignatureIndex(), signature)) {
+                        return i;
+                    }
+                }
+            }
+        }
+        return -1;
     }
 
     /**
@@ -761,7 +977,14 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupString(final String str) {
-        return getIndex(stringTable, str);
+        final int hash = str.hashCode();
+        for (int slot = stringTable.slot(hash); stringTable.index(slot) != 0; slot = stringTable.next(slot)) {
+            final int i = stringTable.index(slot);
+            if (stringTable.hash(slot) == hash && constants[i] instanceof ConstantString && isUtf8(((ConstantString) constants[i]).getStringIndex(), str)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -771,7 +994,14 @@ public class ConstantPoolGen {
      * @return index on success, -1 otherwise.
      */
     public int lookupUtf8(final String n) {
-        return getIndex(utf8Table, n);
+        final int hash = n.hashCode();
+        for (int slot = utf8Table.slot(hash); utf8Table.index(slot) != 0; slot = utf8Table.next(slot)) {
+            final int i = utf8Table.index(slot);
+            if (utf8Table.hash(slot) == hash && isUtf8(i, n)) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
@@ -781,11 +1011,25 @@ public class ConstantPoolGen {
      * @param c new constant pool entry at index i.
      */
     public void setConstant(final int i, final Constant c) {
+        final Constant old = constants[i];
         constants[i] = c;
+        if (i < index) {
+            unindexNumber(old, i);
+            indexNumber(c, i);
+        }
     }
 
-    private int toIndex(final Integer index) {
-        return index != null ? index.intValue() : -1;
+    private static long toBits(final Constant c) {
+        if (c instanceof ConstantInteger) {
+            return ((ConstantInteger) c).getBytes();
+        }
+        if (c instanceof ConstantFloat) {
+            return Float.floatToIntBits(((ConstantFloat) c).getBytes());
+        }
+        if (c instanceof ConstantLong) {
+            return ((ConstantLong) c).getBytes();
+        }
+        return Double.doubleToLongBits(((ConstantDouble) c).getBytes());
     }
 
     /**
@@ -799,4 +1043,26 @@ public class ConstantPoolGen {
         }
         return buf.toString();
     }
+
+    /**
+     * Removes a numeric constant that is replaced from its index table, letting the next entry with the same value take its place.
+     *
+     * @param c The replaced constant, may be null.
+     * @param i The index of the constant.
+     */
+    private void unindexNumber(final Constant c, final int i) {
+        final NumberTable table = getNumberTable(c);
+        if (table != null) {
+            final long bits = toBits(c);
+            if (table.get(bits) == i) {
+                table.remove(bits);
+                for (int j = i + 1; j < index; j++) {
+                    if (getNumberTable(constants[j]) == table && toBits(constants[j]) == bits) {
+                        table.put(bits, j);
+                        break;
+                    }
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,146 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+/**
+ * Finds the constants of a {@link ConstantPoolGen} by a hash of their contents, without building keys.
+ * <p>
+ * An open addressing hash table with linear probing that holds the hash and the index of each constant. The pool walks the slots of a hash, from
+ * {@link #slot(int)} with {@link #next(int)} up to an empty slot, and compares the constants at the indices with matching hashes itself. An index of
+ * 0, which is never used by a constant, marks an empty slot.
+ * </p>
+ * <p>
+ * A {@link #copy()} shares the arrays of the table until either table adds a constant.
+ * </p>
+ */
+final class ConstantTable {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int[] hashes;
+
+    private int[] indices;
+
+    private int count;
+
+    /** Whether the arrays may be shared with a copy. */
+    private boolean shared;
+
+    /**
+     * Constructs an empty table.
+     */
+    ConstantTable() {
+        hashes = new int[INITIAL_CAPACITY];
+        indices = new int[INITIAL_CAPACITY];
+    }
+
+    private ConstantTable(final ConstantTable table) {
+        hashes = table.hashes;
+        indices = table.indices;
+        count = table.count;
+        shared = true;
+    }
+
+    /**
+     * Adds a constant.
+     *
+     * @param hash The hash of the constant.
+     * @param index The index of the constant, greater than 0.
+     */
+    void add(final int hash, final int index) {
+        if (2 * (count + 1) > indices.length) {
+            final int[] oldHashes = hashes;
+            final int[] oldIndices = indices;
+            hashes = new int[oldHashes.length * 2];
+            indices = new int[oldIndices.length * 2];
+            shared = false;
+            for (int i = 0; i < oldIndices.length; i++) {
+                if (oldIndices[i] != 0) {
+                    put(oldHashes[i], oldIndices[i]);
+                }
+            }
+        } else if (shared) {
+            hashes = hashes.clone();
+            indices = indices.clone();
+            shared = false;
+        }
+        put(hash, index);
+        count++;
+    }
+
+    /**
+     * Copies this table.
+     *
+     * @return A table with the same constants.
+     */
+    ConstantTable copy() {
+        shared = true;
+        return new ConstantTable(this);
+    }
+
+    /**
+     * Gets the hash of the constant in a slot.
+     *
+     * @param slot The slot.
+     * @return The hash.
+     */
+    int hash(final int slot) {
+        return hashes[slot];
+    }
+
+    /**
+     * Gets the index of the constant in a slot.
+     *
+     * @param slot The slot.
+     * @return The index, or 0 if the slot is empty.
+     */
+    int index(final int slot) {
+        return indices[slot];
+    }
+
+    /**
+     * Gets the slot following the given one.
+     *
+     * @param slot The slot.
+     * @return The next slot.
+     */
+    int next(final int slot) {
+        return slot + 1 & indices.length - 1;
+    }
+
+    private void put(final int hash, final int index) {
+        int slot = slot(hash);
+        while (indices[slot] != 0) {
+            slot = next(slot);
+        }
+        hashes[slot] = hash;
+        indices[slot] = index;
+    }
+
+    /**
+     * Gets the first slot to look at for constants with the given hash.
+     *
+     * @param hash The hash.
+     * @return The slot.
+     */
+    int slot(final int hash) {
+        final int spread = hash * 0x9E3779B9;
+        return (spread ^ spread >>> 16) & indices.length - 1;
+    }
+}
@@ -18,10 +18,13 @@
  */
 package org.apache.bcel.generic;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
+import java.util.Objects;
 import java.util.Set;
 
 import org.apache.bcel.classfile.Utility;
@@ -52,6 +55,11 @@ public class InstructionHandle {
      */
     static final InstructionTargeter[] EMPTY_INSTRUCTION_TARGETER_ARRAY = {};
 
+    /**
+     * The number of targeters kept in an array before switching to a {@link HashSet}.
+     */
+    private static final int MAX_TARGETER_ARRAY_LENGTH = 8;
+
     /**
      * Factory method.
      */
@@ -59,6 +67,13 @@ public class InstructionHandle {
         return new InstructionHandle(i);
     }
 
+    /**
+     * Tests whether a targeter is already known, the way a {@link HashSet} would.
+     */
+    private static boolean isSameTargeter(final InstructionTargeter t, final Object other) {
+        return t == other || t.hashCode() == other.hashCode() && t.equals(other);
+    }
+
     private InstructionHandle next;
     private InstructionHandle prev;
 
@@ -69,9 +84,20 @@ public class InstructionHandle {
      */
     @Deprecated
     protected int i_position = -1; // byte code offset of instruction
-    private Set<InstructionTargeter> targeters;
+    /**
+     * Null if there are no targeters, the targeter if there is only one, an {@link InstructionTargeter} array holding {@link #targeterCount} targeters,
+     * or a {@link Set} when there are many. Nearly all handles have no targeter or one, such as a branch or a line number.
+     */
+    private Object targeters;
+
+    /** The number of targeters in the array, if {@link #targeters} is an array. */
+    private int targeterCount;
 
-    private Map<Object, Object> attributes;
+    /** Null, or the keys and values of the attributes, alternating. Handles rarely have more than a few attributes. */
+    private Object[] attributes;
+
+    /** The number of keys and values in {@link #attributes}. */
+    private int attributeCount;
 
     /**
      * Constructs an InstructionHandle.
@@ -98,10 +124,18 @@ public class InstructionHandle {
      * @param attr The attribute to associate with this handle.
      */
     public void addAttribute(final Object key, final Object attr) {
+        final int i = indexOfAttribute(key);
+        if (i >= 0) {
+            attributes[i + 1] = attr;
+            return;
+        }
         if (attributes == null) {
-            attributes = new HashMap<>(3);
+            attributes = new Object[4];
+        } else if (attributeCount == attributes.length) {
+            attributes = Arrays.copyOf(attributes, attributeCount * 2);
         }
-        attributes.put(key, attr);
+        attributes[attributeCount++] = key;
+        attributes[attributeCount++] = attr;
     }
 
     /**
@@ -119,12 +153,40 @@ public class InstructionHandle {
      *
      * @param t The instruction targeter.
      */
+    @SuppressWarnings("unchecked")
     public void addTargeter(final InstructionTargeter t) {
         if (targeters == null) {
-            targeters = new HashSet<>();
+            targeters = t;
+        } else if (targeters instanceof InstructionTargeter) {
+            if (!isSameTargeter(t, targeters)) {
+                final InstructionTargeter[] array = new InstructionTargeter[4];
+                array[0] = (InstructionTargeter) targeters;
+                array[1] = t;
+                targeters = array;
+                targeterCount = 2;
+            }
+        } else if (targeters instanceof InstructionTargeter[]) {
+            InstructionTargeter[] array = (InstructionTargeter[]) targeters;
+            for (int i = 0; i < targeterCount; i++) {
+                if (isSameTargeter(t, array[i])) {
+                    return;
+                }
+            }
+            if (targeterCount == MAX_TARGETER_ARRAY_LENGTH) {
+                final Set<InstructionTargeter> set = new HashSet<>(Arrays.asList(array).subList(0, targeterCount));
+                set.add(t);
+                targeters = set;
+                targeterCount = 0;
+                return;
+            }
+            if (targeterCount == array.length) {
+                array = Arrays.copyOf(array, targeterCount * 2);
+                targeters = array;
+            }
+            array[targeterCount++] = t;
+        } else {
+            ((Set<InstructionTargeter>) targeters).add(t);
         }
-        // if (!targeters.contains(t))
-        targeters.add(t);
     }
 
     /**
@@ -136,6 +198,7 @@ public class InstructionHandle {
         instruction = null;
         i_position = -1;
         attributes = null;
+        attributeCount = 0;
         removeAllTargeters();
     }
 
@@ -146,19 +209,24 @@ public class InstructionHandle {
      * @return The attribute value.
      */
     public Object getAttribute(final Object key) {
-        return attributes != null ? attributes.get(key) : null;
+        final int i = indexOfAttribute(key);
+        return i >= 0 ? attributes[i + 1] : null;
     }
 
     /**
      * Gets all attributes associated with this handle.
+     * <p>
+     * The collection is an unmodifiable copy of the attribute values at the time of the call, use {@link #removeAttribute(Object)} to remove one.
+     * </p>
      *
      * @return all attributes associated with this handle.
      */
     public Collection<Object> getAttributes() {
-        if (attributes == null) {
-            attributes = new HashMap<>(3);
+        final List<Object> values = new ArrayList<>(attributeCount / 2);
+        for (int i = 1; i < attributeCount; i += 2) {
+            values.add(attributes[i]);
         }
-        return attributes.values();
+        return Collections.unmodifiableList(values);
     }
 
     /**
@@ -203,13 +271,18 @@ public class InstructionHandle {
      *
      * @return null, if there are no targeters.
      */
+    @SuppressWarnings("unchecked")
     public InstructionTargeter[] getTargeters() {
         if (!hasTargeters()) {
             return EMPTY_INSTRUCTION_TARGETER_ARRAY;
         }
-        final InstructionTargeter[] t = new InstructionTargeter[targeters.size()];
-        targeters.toArray(t);
-        return t;
+        if (targeters instanceof InstructionTargeter) {
+            return new InstructionTargeter[] {(InstructionTargeter) targeters};
+        }
+        if (targeters instanceof InstructionTargeter[]) {
+            return Arrays.copyOf((InstructionTargeter[]) targeters, targeterCount);
+        }
+        return ((Set<InstructionTargeter>) targeters).toArray(EMPTY_INSTRUCTION_TARGETER_ARRAY);
     }
 
     /**
@@ -218,16 +291,24 @@ public class InstructionHandle {
      * @return true if this handle has targeters, false otherwise.
      */
     public boolean hasTargeters() {
-        return targeters != null && !targeters.isEmpty();
+        return targeters != null && !(targeters instanceof Set && ((Set<?>) targeters).isEmpty());
+    }
+
+    private int indexOfAttribute(final Object key) {
+        for (int i = 0; i < attributeCount; i += 2) {
+            if (Objects.equals(key, attributes[i])) {
+                return i;
+            }
+        }
+        return -1;
     }
 
     /**
      * Remove all targeters, if any.
      */
     public void removeAllTargeters() {
-        if (targeters != null) {
-            targeters.clear();
-        }
+        targeters = null;
+        targeterCount = 0;
     }
 
     /**
@@ -236,8 +317,12 @@ public class InstructionHandle {
      * @param key The key object to retrieve the attribute.
      */
     public void removeAttribute(final Object key) {
-        if (attributes != null) {
-            attributes.remove(key);
+        final int i = indexOfAttribute(key);
+        if (i >= 0) {
+            attributeCount -= 2;
+            System.arraycopy(attributes, i + 2, attributes, i, attributeCount - i);
+            attributes[attributeCount] = null;
+            attributes[attributeCount + 1] = null;
         }
     }
 
@@ -246,9 +331,27 @@ public class InstructionHandle {
      *
      * @param t The instruction targeter.
      */
+    @SuppressWarnings("unchecked")
     public void removeTargeter(final InstructionTargeter t) {
-        if (targeters != null) {
-            targeters.remove(t);
+        if (targeters instanceof InstructionTargeter) {
+            if (isSameTargeter(t, targeters)) {
+                targeters = null;
+            }
+        } else if (targeters instanceof InstructionTargeter[]) {
+            final InstructionTargeter[] array = (InstructionTargeter[]) targeters;
+            for (int i = 0; i < targeterCount; i++) {
+                if (isSameTargeter(t, array[i])) {
+                    targeterCount--;
+                    System.arraycopy(array, i + 1, array, i, targeterCount - i);
+                    array[targeterCount] = null;
+                    if (targeterCount == 0) {
+                        targeters = null;
+                    }
+                    return;
+                }
+            }
+        } else if (targeters != null) {
+            ((Set<InstructionTargeter>) targeters).remove(t);
         }
     }
 
@@ -28,6 +28,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.function.Consumer;
 
 import org.apache.bcel.Const;
 import org.apache.bcel.classfile.Constant;
@@ -87,6 +88,14 @@ public class InstructionList implements Iterable<InstructionHandle> {
 
     private int[] bytePositions; // byte code offsets corresponding to instructions
 
+    private InstructionHandle[] byteHandles; // handles at the offsets in bytePositions, to look them up while positions are up to date
+
+    /** Whether edits made through this list may have made positions out of date, see {@link #updatePositions()}. */
+    private boolean positionsDirty = true;
+
+    /** If positions are dirty, the last handle whose position is still up to date, like the positions of all handles before it, or null. */
+    private InstructionHandle positionsValidUntil;
+
     private List<InstructionListObserver> observers;
 
     /**
@@ -141,6 +150,7 @@ public class InstructionList implements Iterable<InstructionHandle> {
             throw new ClassGenException(e.toString(), e);
         }
         bytePositions = Arrays.copyOf(pos, count); // Trim to proper size
+        byteHandles = Arrays.copyOf(ihs, count);
         /*
          * Pass 2: Look for BranchInstruction and update their targets, that is, convert offsets to instruction handles.
          */
@@ -171,6 +181,7 @@ public class InstructionList implements Iterable<InstructionHandle> {
                 }
             }
         }
+        positionsDirty = false;
     }
 
     /**
@@ -280,6 +291,7 @@ public class InstructionList implements Iterable<InstructionHandle> {
      * @param ih instruction to append.
      */
     private void append(final InstructionHandle ih) {
+        invalidatePositions(end);
         if (isEmpty()) {
             start = end = ih;
             ih.setNext(ih.setPrev(null));
@@ -344,6 +356,8 @@ public class InstructionList implements Iterable<InstructionHandle> {
         if (il.isEmpty()) {
             return ih;
         }
+        invalidatePositions(ih);
+        il.resetPositions();
         final InstructionHandle next = ih.getNext();
         final InstructionHandle ret = il.start;
         ih.setNext(il.start);
@@ -373,6 +387,8 @@ public class InstructionList implements Iterable<InstructionHandle> {
             return null;
         }
         if (isEmpty()) {
+            invalidatePositions(null);
+            il.resetPositions();
             start = il.start;
             end = il.end;
             length = il.length;
@@ -383,6 +399,8 @@ public class InstructionList implements Iterable<InstructionHandle> {
     }
 
     private void clear() {
+        invalidatePositions(null);
+        byteHandles = null;
         start = end = null;
         length = 0;
     }
@@ -533,14 +551,151 @@ public class InstructionList implements Iterable<InstructionHandle> {
         clear();
     }
 
+    /**
+     * Edits this list in a batch: the insertions and deletions made through the given {@link InstructionListEdit} are applied in a single pass over the
+     * list once {@code edits} returns. Instead of throwing a {@link TargetLostException}, deleted instructions pass their targeters on to the instruction
+     * that takes their place, except that exception handler and local variable ranges shrink to the instructions that remain. The positions are then
+     * updated with {@link #updatePositions()} and the observers are notified once.
+     * <p>
+     * A range none of whose instructions remains is detached from this list and must be removed from its {@link MethodGen}, see
+     * {@link #edit(Consumer, Consumer)}.
+     * </p>
+     * <p>
+     * For example, to replace every {@code NOP} with two {@code NOP}s:
+     * </p>
+     * <pre>
+     * il.edit(edit -&gt; {
+     *     for (InstructionHandle ih : il) {
+     *         if (ih.getInstruction().getOpcode() == Const.NOP) {
+     *             edit.append(ih, InstructionConst.NOP);
+     *         }
+     *     }
+     * });
+     * </pre>
+     *
+     * @param edits Makes the edits, which must only refer to handles of this list.
+     * @throws ClassGenException if an edit refers to a handle that is not in this list, in which case this list is not changed.
+     * @since 6.13.0
+     */
+    public void edit(final Consumer<InstructionListEdit> edits) {
+        edit(edits, null);
+    }
+
+    /**
+     * Edits this list in a batch like {@link #edit(Consumer)}, and passes the exception handler and local variable ranges none of whose instructions
+     * remains to a callback. For example:
+     *
+     * <pre>
+     * il.edit(edits, range -&gt; {
+     *     if (range instanceof CodeExceptionGen) {
+     *         mg.removeExceptionHandler((CodeExceptionGen) range);
+     *     } else {
+     *         mg.removeLocalVariable((LocalVariableGen) range);
+     *     }
+     * });
+     * </pre>
+     *
+     * @param edits Makes the edits, which must only refer to handles of this list.
+     * @param emptied Receives each {@link CodeExceptionGen} and {@link LocalVariableGen} that became empty, after it was detached from this list and
+     *        once the edits are applied; may be null.
+     * @throws ClassGenException if an edit refers to a handle that is not in this list, in which case this list is not changed.
+     * @since 6.13.0
+     */
+    public void edit(final Consumer<InstructionListEdit> edits, final Consumer<InstructionTargeter> emptied) {
+        final InstructionListEdit edit = new InstructionListEdit();
+        edits.accept(edit);
+        final Map<InstructionHandle, InstructionListEdit.Change> changes = edit.close();
+        if (changes.isEmpty()) {
+            return;
+        }
+        int found = 0;
+        for (InstructionHandle ih = start; ih != null; ih = ih.getNext()) {
+            if (changes.containsKey(ih)) {
+                found++;
+            }
+        }
+        if (found != changes.size()) {
+            throw new ClassGenException("Edit of handles that are not in this instruction list");
+        }
+        // Deleted branches release their targets first, like in remove()
+        changes.forEach((ih, change) -> {
+            if (change.isDeleted()) {
+                ih.getInstruction().dispose();
+            }
+        });
+        final List<InstructionHandle> lost = new ArrayList<>(); // deleted handles that are still targeted
+        final List<InstructionTargeter> empty = new ArrayList<>(); // ranges that no longer contain any instruction
+        InstructionHandle validUntil = null;
+        boolean changed = false;
+        InstructionHandle first = null;
+        InstructionHandle last = null;
+        int count = 0;
+        InstructionHandle next;
+        for (InstructionHandle ih = start; ih != null; ih = next) {
+            next = ih.getNext();
+            final InstructionListEdit.Change change = changes.get(ih);
+            if (change == null && !changed) {
+                validUntil = ih;
+            }
+            changed |= change != null;
+            final InstructionList before = change != null ? change.getBefore() : null;
+            if (before != null && !before.isEmpty()) {
+                first = first != null ? first : before.start;
+                last = link(last, before.start, before.end, lost);
+                count += before.length;
+            }
+            if (change == null || !change.isDeleted()) {
+                first = first != null ? first : ih;
+                last = link(last, ih, ih, lost);
+                count++;
+            } else if (ih.hasTargeters()) {
+                shrinkRanges(ih, last, changes, empty);
+                lost.add(ih);
+            } else {
+                ih.dispose();
+            }
+            final InstructionList after = change != null ? change.getAfter() : null;
+            if (after != null && !after.isEmpty()) {
+                first = first != null ? first : after.start;
+                last = link(last, after.start, after.end, lost);
+                count += after.length;
+            }
+        }
+        if (last != null) {
+            last.setNext(null);
+            redirectTargeters(lost, last);
+        }
+        start = first;
+        end = last;
+        length = count;
+        invalidatePositions(validUntil);
+        changes.values().forEach(change -> {
+            if (change.getBefore() != null) {
+                change.getBefore().clear();
+            }
+            if (change.getAfter() != null) {
+                change.getAfter().clear();
+            }
+        });
+        updatePositions();
+        update();
+        if (emptied != null) {
+            empty.forEach(emptied);
+        }
+    }
+
     /**
      * Gets instruction handle for instruction at byte code position pos. This only works properly, if the list is freshly
-     * initialized from a byte array or setPositions() has been called before this method.
+     * initialized from a byte array or setPositions() has been called before this method. The handle is then found by a
+     * binary search, unless the list was edited since.
      *
      * @param pos byte code position to search for.
      * @return target position's instruction handle if available.
      */
     public InstructionHandle findHandle(final int pos) {
+        if (!positionsDirty && byteHandles != null) {
+            return byteHandles.length > 0 ? findHandle(byteHandles, bytePositions, byteHandles.length, pos) : null;
+        }
         final int[] positions = bytePositions;
         InstructionHandle ih = start;
         for (int i = 0; i < length; i++) {
@@ -751,6 +906,7 @@ public class InstructionList implements Iterable<InstructionHandle> {
      * @param ih instruction to insert.
      */
     private void insert(final InstructionHandle ih) {
+        invalidatePositions(null);
         if (isEmpty()) {
             start = end = ih;
             ih.setNext(ih.setPrev(null));
@@ -816,6 +972,8 @@ public class InstructionList implements Iterable<InstructionHandle> {
             return ih;
         }
         final InstructionHandle prev = ih.getPrev();
+        invalidatePositions(prev);
+        il.resetPositions();
         final InstructionHandle ret = il.start;
         ih.setPrev(il.end);
         il.end.setNext(ih);
@@ -844,6 +1002,45 @@ public class InstructionList implements Iterable<InstructionHandle> {
         return insert(start, il);
     }
 
+    /**
+     * Notes that the positions after a handle may be out of date, after an edit made through this list.
+     *
+     * @param prev The last handle before the edit, or null if the edit is at the start of the list.
+     */
+    private void invalidatePositions(final InstructionHandle prev) {
+        if (!positionsDirty) {
+            positionsDirty = true;
+            positionsValidUntil = prev;
+        } else if (positionsValidUntil != null && (prev == null || prev.getPosition() >= 0 && prev.getPosition() < positionsValidUntil.getPosition())) {
+            // A handle without a position comes after the first edit, as does a handle with a higher, possibly outdated, position
+            positionsValidUntil = prev;
+        }
+    }
+
+    /**
+     * Links handles after the last handle of a list being edited, see {@link #edit(Consumer)}.
+     *
+     * @param last The last handle of the edited list, or null if it has none yet.
+     * @param first The first handle to link.
+     * @param end The last handle to link, which may be first.
+     * @param lost Deleted handles whose targeters move to the first linked handle.
+     * @return The new last handle.
+     */
+    private static InstructionHandle link(final InstructionHandle last, final InstructionHandle first, final InstructionHandle end,
+        final List<InstructionHandle> lost) {
+        first.setPrev(last);
+        if (last != null) {
+            last.setNext(first);
+        }
+        redirectTargeters(lost, first);
+        return end;
+    }
+
+    private static boolean isDeleted(final InstructionHandle ih, final Map<InstructionHandle, InstructionListEdit.Change> changes) {
+        final InstructionListEdit.Change change = changes.get(ih);
+        return change != null && change.isDeleted();
+    }
+
     /**
      * Tests for empty list.
      *
@@ -924,6 +1121,8 @@ public class InstructionList implements Iterable<InstructionHandle> {
         }
         // Step 2: Temporarily remove the given instructions from the list
         final InstructionHandle prev = start.getPrev();
+        invalidatePositions(prev);
+        invalidatePositions(target);
         InstructionHandle next = end.getNext();
         if (prev != null) {
             prev.setNext(next);
@@ -969,6 +1168,10 @@ public class InstructionList implements Iterable<InstructionHandle> {
                 final BranchInstruction b = (BranchInstruction) i;
                 final InstructionHandle target = b.getTarget();
                 if (target == oldTarget) {
+                    if (b instanceof GotoInstruction || b instanceof JsrInstruction) {
+                        // The new offset may not fit in a short
+                        invalidatePositions(ih.getPrev());
+                    }
                     b.setTarget(newTarget);
                 }
                 if (b instanceof Select) { // Either LOOKUPSWITCH or TABLESWITCH
@@ -1032,6 +1235,7 @@ public class InstructionList implements Iterable<InstructionHandle> {
      * @param next where to end deleting (successor, exclusive).
      */
     private void remove(final InstructionHandle prev, InstructionHandle next) throws TargetLostException {
+        invalidatePositions(prev);
         final InstructionHandle first;
         final InstructionHandle last; // First and last deleted instruction
         if (prev == null && next == null) {
@@ -1078,6 +1282,25 @@ public class InstructionList implements Iterable<InstructionHandle> {
         }
     }
 
+    /**
+     * Moves the targeters of deleted handles to a handle that takes their place, and disposes of the deleted handles.
+     *
+     * @param lost The deleted handles, emptied by this method.
+     * @param ih The handle that takes their place.
+     */
+    private static void redirectTargeters(final List<InstructionHandle> lost, final InstructionHandle ih) {
+        if (lost.isEmpty()) {
+            return;
+        }
+        for (final InstructionHandle deleted : lost) {
+            for (final InstructionTargeter targeter : deleted.getTargeters()) {
+                targeter.updateTarget(deleted, ih);
+            }
+            deleted.dispose();
+        }
+        lost.clear();
+    }
+
     /**
      * Remove observer for this object.
      *
@@ -1099,6 +1322,10 @@ public class InstructionList implements Iterable<InstructionHandle> {
         for (InstructionHandle ih = start; ih != null; ih = ih.getNext()) {
             final Instruction i = ih.getInstruction();
             if (i instanceof CPInstruction) {
+                if (i instanceof LDC) {
+                    // The new index may need LDC_W
+                    invalidatePositions(ih.getPrev());
+                }
                 final CPInstruction ci = (CPInstruction) i;
                 final Constant c = oldCp.getConstant(ci.getIndex());
                 ci.setIndex(newCp.addConstant(c, oldCp));
@@ -1106,6 +1333,15 @@ public class InstructionList implements Iterable<InstructionHandle> {
         }
     }
 
+    /**
+     * Clears the positions of the handles of this list, before they are moved to another list.
+     */
+    private void resetPositions() {
+        for (InstructionHandle ih = start; ih != null; ih = ih.getNext()) {
+            ih.setPosition(-1);
+        }
+    }
+
     /**
      * Sets positions with no sanity checks.
      */
@@ -1188,13 +1424,53 @@ public class InstructionList implements Iterable<InstructionHandle> {
          * Pass 3: Update position numbers (which may have changed due to the preceding expansions), like pass 1.
          */
         index = count = 0;
+        final InstructionHandle[] ihs = new InstructionHandle[length];
         for (InstructionHandle ih = start; ih != null; ih = ih.getNext()) {
             final Instruction i = ih.getInstruction();
             ih.setPosition(index);
+            ihs[count] = ih;
             pos[count++] = index;
             index += i.getLength();
         }
         bytePositions = Arrays.copyOfRange(pos, 0, count); // Trim to proper size
+        byteHandles = Arrays.copyOfRange(ihs, 0, count);
+        positionsDirty = false;
+        positionsValidUntil = null;
+    }
+
+    /**
+     * Moves the ends of the ranges that end at a deleted handle back to the previous remaining handle. A range whose start is deleted as well, and not
+     * yet moved to a remaining handle, contains no instruction any more: it is detached and added to the empty ranges.
+     *
+     * @param deleted The deleted handle.
+     * @param previous The last remaining handle before it, or null.
+     * @param changes The changes of the edit.
+     * @param empty Receives the empty ranges.
+     */
+    private static void shrinkRanges(final InstructionHandle deleted, final InstructionHandle previous,
+        final Map<InstructionHandle, InstructionListEdit.Change> changes, final List<InstructionTargeter> empty) {
+        for (final InstructionTargeter targeter : deleted.getTargeters()) {
+            if (targeter instanceof CodeExceptionGen && ((CodeExceptionGen) targeter).getEndPC() == deleted) {
+                final CodeExceptionGen ceg = (CodeExceptionGen) targeter;
+                if (previous == null || isDeleted(ceg.getStartPC(), changes)) {
+                    ceg.setStartPC(null);
+                    ceg.setEndPC(null);
+                    ceg.setHandlerPC(null);
+                    empty.add(ceg);
+                } else {
+                    ceg.setEndPC(previous);
+                }
+            } else if (targeter instanceof LocalVariableGen && ((LocalVariableGen) targeter).getEnd() == deleted) {
+                final LocalVariableGen lvg = (LocalVariableGen) targeter;
+                if (previous == null || isDeleted(lvg.getStart(), changes)) {
+                    lvg.setStart(null);
+                    lvg.setEnd(null);
+                    empty.add(lvg);
+                } else {
+                    lvg.setEnd(previous);
+                }
+            }
+        }
     }
 
     /**
@@ -1236,5 +1512,106 @@ public class InstructionList implements Iterable<InstructionHandle> {
             }
         }
     }
+
+    /**
+     * Updates the positions after edits made through this list, like {@link #setPositions()}, but starting at the first instruction that may have moved.
+     * The instructions before it keep their positions, and only the branches and branch targets after it take part in the expansion of branches, so
+     * reading positions after each of many small edits costs much less than calling {@link #setPositions()} each time.
+     * <p>
+     * Only edits made through the methods of this list are tracked. After changing an instruction in a way that changes its length, for example by
+     * replacing the instruction of a handle, or by setting an index that needs a wide instruction, call {@link #setPositions()} instead.
+     * </p>
+     *
+     * @since 6.13.0
+     */
+    public void updatePositions() {
+        if (!positionsDirty) {
+            return;
+        }
+        final InstructionHandle last = positionsValidUntil;
+        final int count = last != null && bytePositions != null && byteHandles != null ? Arrays.binarySearch(bytePositions, last.getPosition()) + 1 : 0;
+        if (count <= 0) {
+            setPositions(false);
+            return;
+        }
+        final int tailStart = last.getPosition() + last.getInstruction().getLength();
+        final int[] pos = new int[length];
+        final InstructionHandle[] ihs = new InstructionHandle[length];
+        System.arraycopy(bytePositions, 0, pos, 0, count);
+        System.arraycopy(byteHandles, 0, ihs, 0, count);
+        /*
+         * Pass 1: Set position numbers after the last handle that did not move, and sum up the maximum number of bytes an
+         * instruction may be shifted. Only branches and branch targets take part in pass 2.
+         */
+        final List<InstructionHandle> branchesAndTargets = new ArrayList<>();
+        int index = tailStart;
+        int n = count;
+        int maxAdditionalBytes = 0;
+        for (InstructionHandle ih = last.getNext(); ih != null; ih = ih.getNext()) {
+            final Instruction i = ih.getInstruction();
+            ih.setPosition(index);
+            ihs[n] = ih;
+            pos[n++] = index;
+            switch (i.getOpcode()) {
+            case Const.JSR:
+            case Const.GOTO:
+                maxAdditionalBytes += 2;
+                break;
+            case Const.TABLESWITCH:
+            case Const.LOOKUPSWITCH:
+                maxAdditionalBytes += 3;
+                break;
+            default:
+                break;
+            }
+            if (ih instanceof BranchHandle || ih.hasTargeters()) {
+                branchesAndTargets.add(ih);
+            }
+            index += i.getLength();
+        }
+        /*
+         * Pass 2: Expand the variable-length (Branch) Instructions. Other handles only shift, which pass 3 takes care of.
+         */
+        int additionalBytes = 0;
+        boolean resized = false;
+        for (final InstructionHandle ih : branchesAndTargets) {
+            final int delta = ih.updatePosition(additionalBytes, maxAdditionalBytes);
+            additionalBytes += delta;
+            resized |= delta != 0;
+        }
+        /*
+         * Pass 3: Update position numbers, like pass 1, if the length of any instruction changed, switch padding may also shrink.
+         */
+        if (resized) {
+            n = count;
+            index = tailStart;
+            for (InstructionHandle ih = last.getNext(); ih != null; ih = ih.getNext()) {
+                ih.setPosition(index);
+                pos[n++] = index;
+                index += ih.getInstruction().getLength();
+            }
+        }
+        /*
+         * An unconditional branch before the moved instructions that jumps over them may now be too far for a short offset,
+         * then its expansion moves more instructions.
+         */
+        for (final InstructionHandle ih : branchesAndTargets) {
+            for (final InstructionTargeter t : ih.getTargeters()) {
+                if (t instanceof BranchInstruction) {
+                    final BranchInstruction bi = (BranchInstruction) t;
+                    final short opcode = bi.getOpcode();
+                    if ((opcode == Const.GOTO || opcode == Const.JSR) && bi.getPosition() < tailStart
+                        && Math.abs(bi.getTargetOffset()) >= Short.MAX_VALUE) {
+                        setPositions(false);
+                        return;
+                    }
+                }
+            }
+        }
+        bytePositions = n == pos.length ? pos : Arrays.copyOf(pos, n);
+        byteHandles = n == ihs.length ? ihs : Arrays.copyOf(ihs, n);
+        positionsDirty = false;
+        positionsValidUntil = null;
+    }
 }
 
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A batch of insertions and deletions on an {@link InstructionList}, collected by {@link InstructionList#edit(java.util.function.Consumer)} and applied
+ * in a single pass over the list when the batch is complete.
+ * <p>
+ * The handles given to the methods of this class must be in the list when the edit is applied. Instructions inserted before or appended after the
+ * same handle end up in the order in which they were added. The handles returned for new instructions may be used as branch targets, but not as the
+ * position of other edits of the same batch.
+ * </p>
+ * <p>
+ * Instead of throwing a {@link TargetLostException}, deleting an instruction that is still targeted moves its targeters to the next instruction that
+ * remains in the list, or that was inserted at its place, or else to the last instruction of the list. If no instruction remains, the targeters keep
+ * their targets. The ends of exception handler and local variable ranges move back to the previous remaining instruction instead, so that a range
+ * never grows; a range none of whose instructions remains is detached, see
+ * {@link InstructionList#edit(java.util.function.Consumer, java.util.function.Consumer)}.
+ * </p>
+ *
+ * @since 6.13.0
+ */
+public final class InstructionListEdit {
+
+    /**
+     * The changes at a handle of the list.
+     */
+    static final class Change {
+
+        private InstructionList before;
+        private InstructionList after;
+        private boolean deleted;
+
+        /**
+         * Gets the instructions to append after the handle.
+         *
+         * @return The instructions, or null.
+         */
+        InstructionList getAfter() {
+            return after;
+        }
+
+        /**
+         * Gets the instructions to insert before the handle.
+         *
+         * @return The instructions, or null.
+         */
+        InstructionList getBefore() {
+            return before;
+        }
+
+        /**
+         * Tests whether the handle is deleted.
+         *
+         * @return Whether the handle is deleted.
+         */
+        boolean isDeleted() {
+            return deleted;
+        }
+    }
+
+    private Map<InstructionHandle, Change> changes = new IdentityHashMap<>();
+
+    InstructionListEdit() {
+    }
+
+    private InstructionList after(final InstructionHandle ih) {
+        final Change change = change(ih);
+        if (change.after == null) {
+            change.after = new InstructionList();
+        }
+        return change.after;
+    }
+
+    /**
+     * Appends an instruction after a handle of the list.
+     *
+     * @param ih where to append the instruction.
+     * @param i Instruction to append.
+     * @return The handle of the appended instruction.
+     */
+    public BranchHandle append(final InstructionHandle ih, final BranchInstruction i) {
+        return after(ih).append(i);
+    }
+
+    /**
+     * Appends an instruction after a handle of the list.
+     *
+     * @param ih where to append the instruction.
+     * @param i Instruction to append.
+     * @return The handle of the appended instruction.
+     */
+    public InstructionHandle append(final InstructionHandle ih, final Instruction i) {
+        return after(ih).append(i);
+    }
+
+    /**
+     * Appends instructions after a handle of the list. Consumes the argument list, that is, it becomes empty.
+     *
+     * @param ih where to append the instructions.
+     * @param il Instructions to append.
+     * @return The handle of the first appended instruction, or ih if the argument list is empty.
+     */
+    public InstructionHandle append(final InstructionHandle ih, final InstructionList il) {
+        if (il == null) {
+            throw new ClassGenException("Appending null InstructionList");
+        }
+        final InstructionHandle first = after(ih).append(il);
+        return first != null ? first : ih;
+    }
+
+    private InstructionList before(final InstructionHandle ih) {
+        final Change change = change(ih);
+        if (change.before == null) {
+            change.before = new InstructionList();
+        }
+        return change.before;
+    }
+
+    private Change change(final InstructionHandle ih) {
+        if (changes == null) {
+            throw new ClassGenException("The edit has already been applied");
+        }
+        if (ih == null) {
+            throw new ClassGenException("Invalid null handle");
+        }
+        return changes.computeIfAbsent(ih, k -> new Change());
+    }
+
+    /**
+     * Ends the edit.
+     *
+     * @return The changes by handle.
+     */
+    Map<InstructionHandle, Change> close() {
+        final Map<InstructionHandle, Change> result = changes;
+        changes = null;
+        return result;
+    }
+
+    /**
+     * Deletes a handle from the list.
+     *
+     * @param ih The handle to delete.
+     */
+    public void delete(final InstructionHandle ih) {
+        change(ih).deleted = true;
+    }
+
+    /**
+     * Deletes the handles from one handle to another, inclusive.
+     *
+     * @param from The first handle to delete.
+     * @param to The last handle to delete.
+     */
+    public void delete(final InstructionHandle from, final InstructionHandle to) {
+        for (InstructionHandle ih = from; ih != to.getNext(); ih = ih.getNext()) {
+            if (ih == null) {
+                throw new ClassGenException("Invalid range: From " + from + " to " + to);
+            }
+            delete(ih);
+        }
+    }
+
+    /**
+     * Inserts an instruction before a handle of the list.
+     *
+     * @param ih where to insert the instruction.
+     * @param i Instruction to insert.
+     * @return The handle of the inserted instruction.
+     */
+    public BranchHandle insert(final InstructionHandle ih, final BranchInstruction i) {
+        return before(ih).append(i);
+    }
+
+    /**
+     * Inserts an instruction before a handle of the list.
+     *
+     * @param ih where to insert the instruction.
+     * @param i Instruction to insert.
+     * @return The handle of the inserted instruction.
+     */
+    public InstructionHandle insert(final InstructionHandle ih, final Instruction i) {
+        return before(ih).append(i);
+    }
+
+    /**
+     * Inserts instructions before a handle of the list. Consumes the argument list, that is, it becomes empty.
+     *
+     * @param ih where to insert the instructions.
+     * @param il Instructions to insert.
+     * @return The handle of the first inserted instruction, or ih if the argument list is empty.
+     */
+    public InstructionHandle insert(final InstructionHandle ih, final InstructionList il) {
+        if (il == null) {
+            throw new ClassGenException("Inserting null InstructionList");
+        }
+        final InstructionHandle first = before(ih).append(il);
+        return first != null ? first : ih;
+    }
+}
@@ -20,12 +20,13 @@ package org.apache.bcel.generic;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Hashtable;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.Stack;
 import java.util.stream.Collectors;
 
 import org.apache.bcel.Const;
@@ -34,6 +35,10 @@ import org.apache.bcel.classfile.Annotations;
 import org.apache.bcel.classfile.Attribute;
 import org.apache.bcel.classfile.Code;
 import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.ConstantUtf8;
 import org.apache.bcel.classfile.ExceptionTable;
 import org.apache.bcel.classfile.LineNumber;
 import org.apache.bcel.classfile.LineNumberTable;
@@ -44,6 +49,7 @@ import org.apache.bcel.classfile.Method;
 import org.apache.bcel.classfile.ParameterAnnotationEntry;
 import org.apache.bcel.classfile.ParameterAnnotations;
 import org.apache.bcel.classfile.RuntimeVisibleParameterAnnotations;
+import org.apache.bcel.classfile.StackMap;
 import org.apache.bcel.classfile.Utility;
 import org.apache.bcel.util.BCELComparator;
 import org.apache.commons.lang3.ArrayUtils;
@@ -62,44 +68,306 @@ import org.apache.commons.lang3.stream.Streams;
  */
 public class MethodGen extends FieldGenOrMethodGen {
 
-    static final class BranchStack {
+    /**
+     * Computes the maximum stack depth and the number of local variables of an instruction list.
+     * <p>
+     * The instructions are read once, in list order, into arrays of stack deltas, opcodes and branch target indices, and the local variables they use
+     * are counted. The control flow is then followed over basic blocks, each of which is visited once, with the stack depth on entry of the first path
+     * that reaches it.
+     * </p>
+     */
+    static final class CodeSizes {
 
-        private final Stack<BranchTarget> branchTargets = new Stack<>();
-        private final Hashtable<InstructionHandle, BranchTarget> visitedTargets = new Hashtable<>();
+        private static boolean endsFlow(final short opcode) {
+            return opcode == Const.ATHROW || opcode == Const.RET || opcode >= Const.IRETURN && opcode <= Const.RETURN;
+        }
 
-        public BranchTarget pop() {
-            if (!branchTargets.empty()) {
-                return branchTargets.pop();
+        /**
+         * Gets the stack delta of an instruction of a compact instruction list from its opcode and operand, looking at the constant pool only for field
+         * and method references.
+         */
+        private static int getStackDelta(final ConstantPoolGen cp, final CompactInstructionList il, final int i) {
+            final short opcode = il.getOpcode(i);
+            switch (opcode) {
+            case Const.GETSTATIC:
+                return getFieldSize(cp, il.getOperand(i));
+            case Const.PUTSTATIC:
+                return -getFieldSize(cp, il.getOperand(i));
+            case Const.GETFIELD:
+                return getFieldSize(cp, il.getOperand(i)) - 1;
+            case Const.PUTFIELD:
+                return -getFieldSize(cp, il.getOperand(i)) - 1;
+            case Const.INVOKEVIRTUAL:
+            case Const.INVOKESPECIAL:
+            case Const.INVOKEINTERFACE:
+            case Const.INVOKESTATIC:
+            case Const.INVOKEDYNAMIC: {
+                final String signature = getSignature(cp, il.getOperand(i));
+                // The object reference, unless static
+                final int self = opcode == Const.INVOKESTATIC || opcode == Const.INVOKEDYNAMIC ? 0 : 1;
+                return Type.getReturnTypeSize(signature) - Type.getArgumentTypesSize(signature) - self;
             }
-            return null;
+            case Const.MULTIANEWARRAY:
+                // The number of dimensions is not the main operand
+                return 1 - ((MULTIANEWARRAY) il.getInstruction(i)).getDimensions();
+            default:
+                return Const.getProduceStack(opcode) - Const.getConsumeStack(opcode);
+            }
+        }
+
+        private static int getFieldSize(final ConstantPoolGen cp, final int index) {
+            return Type.size(Type.getTypeSize(getSignature(cp, index)));
         }
 
-        public void push(final InstructionHandle target, final int stackDepth) {
-            if (visited(target)) {
-                return;
+        private static String getSignature(final ConstantPoolGen cp, final int index) {
+            final ConstantPool pool = cp.getConstantPool();
+            final ConstantCP cmr = (ConstantCP) pool.getConstant(index);
+            final ConstantNameAndType cnat = (ConstantNameAndType) pool.getConstant(cmr.getNameAndTypeIndex());
+            return ((ConstantUtf8) pool.getConstant(cnat.getSignatureIndex())).getBytes();
+        }
+
+        private final int maxStack;
+        private final int maxLocals;
+        private final int[] deltas;
+        private final short[] opcodes;
+        private final int[] targets;
+        private final int[][] switchTargets;
+        private final BitSet leaders;
+        private BitSet visited;
+        private int[] entryDepths;
+        private int[] worklist;
+        private int worklistSize;
+
+        /** The handles of an instruction list, to find the index of a branch target. */
+        private final InstructionHandle[] handles;
+
+        /** The positions of the handles as they are, which may be outdated: only used to guess the index of a handle. */
+        private final int[] positions;
+
+        /** The indices of the handles by identity, built when a guess fails. */
+        private Map<InstructionHandle, Integer> indices;
+
+        /**
+         * Computes the maximum stack depth of a compact instruction list from its opcodes and operands, without decoding instructions except for
+         * {@link MULTIANEWARRAY} and switches. Local variables are not counted.
+         *
+         * @param cp The constant pool generator.
+         * @param il The instruction list.
+         * @param handlers The indices of the first instructions of the exception handlers.
+         * @throws ClassGenException if a handler index is out of range.
+         */
+        CodeSizes(final ConstantPoolGen cp, final CompactInstructionList il, final int[] handlers) {
+            final int n = il.getLength();
+            deltas = new int[n];
+            opcodes = il.getOpcodes();
+            targets = new int[n];
+            switchTargets = new int[n][];
+            leaders = new BitSet(n);
+            handles = null;
+            positions = null;
+            for (int i = 0; i < n; i++) {
+                final short opcode = opcodes[i];
+                deltas[i] = getStackDelta(cp, il, i);
+                if (il.isBranch(i)) {
+                    // The targets of a switch are decoded once, here
+                    branch(i, il.getOperand(i), opcode == Const.TABLESWITCH || opcode == Const.LOOKUPSWITCH ? il.getTargets(i) : null);
+                } else if (endsFlow(opcode)) {
+                    leaders.set(i + 1);
+                }
             }
-            branchTargets.push(visit(target, stackDepth));
+            for (final int handler : handlers) {
+                if (handler < 0 || handler >= n) {
+                    throw new ClassGenException("Handler not in the instruction list: " + handler);
+                }
+            }
+            maxLocals = -1;
+            maxStack = run(handlers);
         }
 
-        private BranchTarget visit(final InstructionHandle target, final int stackDepth) {
-            final BranchTarget bt = new BranchTarget(target, stackDepth);
-            visitedTargets.put(target, bt);
-            return bt;
+        /**
+         * Computes the sizes. Neither the instruction list nor its positions are changed, and the positions need not be up to date.
+         *
+         * @param cp The constant pool generator.
+         * @param il The instruction list.
+         * @param et The exception handlers.
+         * @param minLocals The number of local variables used by the arguments, or -1 to skip counting local variables.
+         */
+        CodeSizes(final ConstantPoolGen cp, final InstructionList il, final CodeExceptionGen[] et, final int minLocals) {
+            final int n = il.getLength();
+            deltas = new int[n];
+            opcodes = new short[n];
+            targets = new int[n];
+            switchTargets = new int[n][];
+            leaders = new BitSet(n);
+            handles = new InstructionHandle[n];
+            positions = new int[n];
+            int i = 0;
+            for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext(), i++) {
+                handles[i] = ih;
+                positions[i] = ih.getPosition();
+            }
+            int locals = minLocals;
+            for (i = 0; i < n; i++) {
+                final Instruction instruction = handles[i].getInstruction();
+                locals = read(cp, i, instruction, locals);
+                if (instruction instanceof BranchInstruction) {
+                    int[] selectIndices = null;
+                    if (instruction instanceof Select) {
+                        final InstructionHandle[] selectTargets = ((Select) instruction).getTargets();
+                        selectIndices = new int[selectTargets.length];
+                        for (int j = 0; j < selectTargets.length; j++) {
+                            selectIndices[j] = indexOf(selectTargets[j]);
+                        }
+                    }
+                    branch(i, indexOf(((BranchInstruction) instruction).getTarget()), selectIndices);
+                }
+            }
+            maxLocals = locals;
+            // Exception handlers aren't (necessarily) branched to explicitly
+            final int[] handlers = new int[et.length];
+            int count = 0;
+            for (final CodeExceptionGen element : et) {
+                final InstructionHandle handlerPc = element.getHandlerPC();
+                if (handlerPc != null) {
+                    handlers[count++] = indexOf(handlerPc);
+                }
+            }
+            maxStack = run(count == handlers.length ? handlers : Arrays.copyOf(handlers, count));
         }
 
-        private boolean visited(final InstructionHandle target) {
-            return visitedTargets.get(target) != null;
+        /**
+         * Records a branch instruction.
+         *
+         * @param i The index of the instruction.
+         * @param target The index of its target, or default target.
+         * @param indices The indices of the other targets of a switch, or null.
+         */
+        private void branch(final int i, final int target, final int[] indices) {
+            if (indices != null) {
+                switchTargets[i] = indices;
+                for (final int index : indices) {
+                    leaders.set(index);
+                }
+            }
+            targets[i] = target;
+            leaders.set(target);
+            leaders.set(i + 1);
         }
-    }
 
-    static final class BranchTarget {
+        int getMaxLocals() {
+            return maxLocals;
+        }
 
-        final InstructionHandle target;
-        final int stackDepth;
+        int getMaxStack() {
+            return maxStack;
+        }
 
-        BranchTarget(final InstructionHandle target, final int stackDepth) {
-            this.target = target;
-            this.stackDepth = stackDepth;
+        private int indexOf(final InstructionHandle ih) {
+            if (ih == null) {
+                throw new ClassGenException("Branch target or handler not in the instruction list: null");
+            }
+            // The positions are usually up to date, so that a binary search finds the handle
+            final int guess = Arrays.binarySearch(positions, ih.getPosition());
+            if (guess >= 0 && handles[guess] == ih) {
+                return guess;
+            }
+            if (indices == null) {
+                indices = new IdentityHashMap<>(handles.length * 2);
+                for (int i = 0; i < handles.length; i++) {
+                    indices.put(handles[i], i);
+                }
+            }
+            final Integer index = indices.get(ih);
+            if (index == null) {
+                throw new ClassGenException("Branch target or handler not in the instruction list: " + ih);
+            }
+            return index.intValue();
+        }
+
+        private void push(final int index, final int stackDepth) {
+            if (!visited.get(index)) {
+                visited.set(index);
+                entryDepths[index] = stackDepth;
+                worklist[worklistSize++] = index;
+            }
+        }
+
+        /**
+         * Records the opcode and stack delta of an instruction, and counts the local variables it uses.
+         *
+         * @return The number of local variables used so far, or -1 if not counted.
+         */
+        private int read(final ConstantPoolGen cp, final int i, final Instruction instruction, final int locals) {
+            opcodes[i] = instruction.getOpcode();
+            deltas[i] = instruction.produceStack(cp) - instruction.consumeStack(cp);
+            if (!(instruction instanceof BranchInstruction) && endsFlow(opcodes[i])) {
+                leaders.set(i + 1);
+            }
+            if (locals >= 0 && (instruction instanceof LocalVariableInstruction || instruction instanceof RET || instruction instanceof IINC)) {
+                return Math.max(locals, ((IndexedInstruction) instruction).getIndex() + ((TypedInstruction) instruction).getType(cp).getSize());
+            }
+            return locals;
+        }
+
+        private int run(final int[] handlers) {
+            final int n = deltas.length;
+            visited = new BitSet(n);
+            entryDepths = new int[n];
+            worklist = new int[n];
+            // The stack of an exception handler holds the exception object
+            for (final int handler : handlers) {
+                push(handler, 1);
+            }
+            if (n > 0) {
+                push(0, 0);
+            }
+            int max = 0;
+            while (worklistSize > 0) {
+                int i = worklist[--worklistSize];
+                int stackDepth = entryDepths[i];
+                for (;; i++) {
+                    stackDepth += deltas[i];
+                    if (stackDepth > max) {
+                        max = stackDepth;
+                    }
+                    final short opcode = opcodes[i];
+                    if (opcode == Const.TABLESWITCH || opcode == Const.LOOKUPSWITCH) {
+                        for (final int target : switchTargets[i]) {
+                            push(target, stackDepth);
+                        }
+                        push(targets[i], stackDepth);
+                        break;
+                    }
+                    if (opcode == Const.GOTO || opcode == Const.GOTO_W) {
+                        push(targets[i], stackDepth);
+                        break;
+                    }
+                    if (opcode == Const.JSR || opcode == Const.JSR_W) {
+                        // the subroutine returns to the next instruction, without the return address
+                        if (i + 1 < n) {
+                            push(i + 1, stackDepth - 1);
+                        }
+                        push(targets[i], stackDepth);
+                        break;
+                    }
+                    if (opcode >= Const.IFEQ && opcode <= Const.IF_ACMPNE || opcode == Const.IFNULL || opcode == Const.IFNONNULL) {
+                        // explore the fall through case first
+                        push(targets[i], stackDepth);
+                        if (i + 1 < n) {
+                            push(i + 1, stackDepth);
+                        }
+                        break;
+                    }
+                    if (endsFlow(opcode) || i + 1 == n) {
+                        break;
+                    }
+                    if (leaders.get(i + 1)) {
+                        push(i + 1, stackDepth);
+                        break;
+                    }
+                }
+            }
+            return max;
         }
     }
 
@@ -142,70 +410,22 @@ public class MethodGen extends FieldGenOrMethodGen {
      * @return maximum stack depth used by method.
      */
     public static int getMaxStack(final ConstantPoolGen cp, final InstructionList il, final CodeExceptionGen[] et) {
-        final BranchStack branchTargets = new BranchStack();
-        /*
-         * Initially, populate the branch stack with the exception handlers, because these aren't (necessarily) branched to
-         * explicitly. in each case, the stack will have depth 1, containing the exception object.
-         */
-        for (final CodeExceptionGen element : et) {
-            final InstructionHandle handlerPc = element.getHandlerPC();
-            if (handlerPc != null) {
-                branchTargets.push(handlerPc, 1);
-            }
-        }
-        int stackDepth = 0;
-        int maxStackDepth = 0;
-        InstructionHandle ih = il.getStart();
-        while (ih != null) {
-            final Instruction instruction = ih.getInstruction();
-            final short opcode = instruction.getOpcode();
-            final int delta = instruction.produceStack(cp) - instruction.consumeStack(cp);
-            stackDepth += delta;
-            if (stackDepth > maxStackDepth) {
-                maxStackDepth = stackDepth;
-            }
-            // choose the next instruction based on whether current is a branch.
-            if (instruction instanceof BranchInstruction) {
-                final BranchInstruction branch = (BranchInstruction) instruction;
-                if (instruction instanceof Select) {
-                    // explore all of the select's targets. the default target is handled below.
-                    final Select select = (Select) branch;
-                    final InstructionHandle[] targets = select.getTargets();
-                    for (final InstructionHandle target : targets) {
-                        branchTargets.push(target, stackDepth);
-                    }
-                    // nothing to fall through to.
-                    ih = null;
-                } else if (!(branch instanceof IfInstruction)) {
-                    // if an instruction that comes back to following PC,
-                    // push next instruction, with stack depth reduced by 1.
-                    if (opcode == Const.JSR || opcode == Const.JSR_W) {
-                        branchTargets.push(ih.getNext(), stackDepth - 1);
-                    }
-                    ih = null;
-                }
-                // for all branches, the target of the branch is pushed on the branch stack.
-                // conditional branches have a fall through case, selects don't, and
-                // jsr/jsr_w return to the next instruction.
-                branchTargets.push(branch.getTarget(), stackDepth);
-            } else // check for instructions that terminate the method.
-            if (opcode == Const.ATHROW || opcode == Const.RET || opcode >= Const.IRETURN && opcode <= Const.RETURN) {
-                ih = null;
-            }
-            // normal case, go to the next instruction.
-            if (ih != null) {
-                ih = ih.getNext();
-            }
-            // if we have no more instructions, see if there are any deferred branches to explore.
-            if (ih == null) {
-                final BranchTarget bt = branchTargets.pop();
-                if (bt != null) {
-                    ih = bt.target;
-                    stackDepth = bt.stackDepth;
-                }
-            }
-        }
-        return maxStackDepth;
+        return new CodeSizes(cp, il, et, -1).getMaxStack();
+    }
+
+    /**
+     * Computes stack usage of a compact instruction list by performing control flow analysis, as
+     * {@link #getMaxStack(ConstantPoolGen, InstructionList, CodeExceptionGen[])} does, without creating instruction handles.
+     *
+     * @param cp The constant pool generator.
+     * @param il The instruction list.
+     * @param handlers The indices of the first instructions of the exception handlers, see {@link CompactInstructionList#indexOf(int)}.
+     * @return maximum stack depth used by method.
+     * @throws ClassGenException if a handler index is out of range.
+     * @since 6.13.0
+     */
+    public static int getMaxStack(final ConstantPoolGen cp, final CompactInstructionList il, final int[] handlers) {
+        return new CodeSizes(cp, il, handlers).getMaxStack();
     }
 
     /**
@@ -225,6 +445,8 @@ public class MethodGen extends FieldGenOrMethodGen {
     private InstructionList il;
 
     private boolean stripAttributes;
+    private boolean computeFrames;
+    private CommonSuperclassResolver commonSuperclassResolver = CommonSuperclassResolver.DEFAULT;
     private LocalVariableTypeTable localVariableTypeTable;
     private final List<LocalVariableGen> variableList = new ArrayList<>();
 
@@ -700,6 +922,17 @@ public class MethodGen extends FieldGenOrMethodGen {
         return argNames.clone();
     }
 
+    /**
+     * Gets the number of local variables used by this and the arguments.
+     */
+    int getArgumentsSize() {
+        int size = isStatic() ? 0 : 1;
+        for (final Type argType : argTypes) {
+            size += argType.getSize();
+        }
+        return size;
+    }
+
     /**
      * Gets the argument type at the specified index.
      *
@@ -888,6 +1121,16 @@ public class MethodGen extends FieldGenOrMethodGen {
          * Also updates positions of instructions, that is, their indices
          */
         final byte[] byteCode = il != null ? il.getByteCode() : null;
+        StackMap smt = null;
+        if (computeFrames && byteCode != null && !isAbstract() && !isNative()) {
+            codeAttrsList.removeIf(StackMap.class::isInstance);
+            smt = getStackMap(cp);
+            if (smt.getMapLength() > 0) {
+                addCodeAttribute(smt);
+            } else {
+                smt = null;
+            }
+        }
         LineNumberTable lnt = null;
         LocalVariableTable lvt = null;
         /*
@@ -951,6 +1194,9 @@ public class MethodGen extends FieldGenOrMethodGen {
         if (lnt != null) {
             removeCodeAttribute(lnt);
         }
+        if (smt != null) {
+            removeCodeAttribute(smt);
+        }
         if (code != null) {
             removeAttribute(code);
         }
@@ -976,6 +1222,24 @@ public class MethodGen extends FieldGenOrMethodGen {
         return Type.getMethodSignature(super.getType(), argTypes);
     }
 
+    /**
+     * Computes the 'StackMapTable' attribute of this method by type inference over its instructions and exception handlers, see
+     * {@link #setComputeFrames(boolean)}. Updates the positions of the instruction list, whose instructions must not be changed before the attribute
+     * is used.
+     *
+     * @param cp The constant pool generator, to which the classes used in the frames are added.
+     * @return 'StackMapTable' attribute of this method, which has no entries if no frames are needed.
+     * @throws ClassGenException if the frames can't be computed, for example because the code has unreachable instructions, uses JSR or RET, or a
+     *         class needed to merge reference types can't be found.
+     * @since 6.13.0
+     */
+    public StackMap getStackMap(final ConstantPoolGen cp) {
+        if (il == null) {
+            throw new ClassGenException("Method " + getName() + " has no instructions");
+        }
+        return new StackMapComputer(this, cp, commonSuperclassResolver).compute();
+    }
+
     /**
      * Return value as defined by given BCELComparator strategy. By default return the hash code of the method's name XOR
      * signature.
@@ -1178,6 +1442,29 @@ public class MethodGen extends FieldGenOrMethodGen {
         this.className = className;
     }
 
+    /**
+     * Sets how {@link #getStackMap(ConstantPoolGen)} finds the type of reference values where paths join. The default is
+     * {@link CommonSuperclassResolver#DEFAULT}, which looks up classes in the global {@link org.apache.bcel.Repository}.
+     *
+     * @param resolver The resolver.
+     * @since 6.13.0
+     */
+    public void setCommonSuperclassResolver(final CommonSuperclassResolver resolver) {
+        this.commonSuperclassResolver = Objects.requireNonNull(resolver, "resolver");
+    }
+
+    /**
+     * Sets whether {@link #getMethod()} computes the 'StackMapTable' attribute of the code with {@link #getStackMap(ConstantPoolGen)}, replacing any
+     * stack map read from the original method, which no longer matches the code once it has been changed. Class files of version 50 and later may
+     * then be checked by the type checking verifier, and class files of version 51 and later need the attribute. Off by default.
+     *
+     * @param flag whether to compute the stack map frames.
+     * @since 6.13.0
+     */
+    public void setComputeFrames(final boolean flag) {
+        computeFrames = flag;
+    }
+
     /**
      * Sets the instruction list.
      *
@@ -1192,10 +1479,7 @@ public class MethodGen extends FieldGenOrMethodGen {
      */
     public void setMaxLocals() { // TODO could be package-protected? (some tests would need repackaging)
         if (il != null) {
-            int max = isStatic() ? 0 : 1;
-            for (final Type argType : argTypes) {
-                max += argType.getSize();
-            }
+            int max = getArgumentsSize();
             for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
                 final Instruction ins = ih.getInstruction();
                 if (ins instanceof LocalVariableInstruction || ins instanceof RET || ins instanceof IINC) {
@@ -1220,6 +1504,23 @@ public class MethodGen extends FieldGenOrMethodGen {
         maxLocals = m;
     }
 
+    /**
+     * Computes max. stack size by performing control flow analysis, and the maximum number of local variables, in one pass over the instruction list.
+     * This gives the same results as {@link #setMaxStack()} followed by {@link #setMaxLocals()}.
+     *
+     * @since 6.13.0
+     */
+    public void setMaxStackAndLocals() {
+        if (il != null) {
+            final CodeSizes sizes = new CodeSizes(super.getConstantPool(), il, getExceptionHandlers(), getArgumentsSize());
+            maxStack = sizes.getMaxStack();
+            maxLocals = sizes.getMaxLocals();
+        } else {
+            maxStack = 0;
+            maxLocals = 0;
+        }
+    }
+
     /**
      * Computes max. stack size by performing control flow analysis.
      */
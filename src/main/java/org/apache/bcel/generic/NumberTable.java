@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+/**
+ * Maps the raw bits of numeric constants to their indices in a {@link ConstantPoolGen}, without boxing.
+ * <p>
+ * An open addressing hash table with linear probing; an index of 0, which is never used by a constant, marks an empty slot. A {@link #copy()}
+ * shares the arrays of the table until either table changes.
+ * </p>
+ */
+final class NumberTable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static int slot(final long bits, final int mask) {
+        final long hash = bits * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & mask;
+    }
+
+    private long[] keys;
+
+    private int[] values;
+
+    private int count;
+
+    /** Whether the arrays may be shared with a copy. */
+    private boolean shared;
+
+    /**
+     * Copies this table.
+     *
+     * @return A table with the same mappings.
+     */
+    NumberTable copy() {
+        final NumberTable copy = new NumberTable();
+        if (keys != null) {
+            copy.keys = keys;
+            copy.values = values;
+            copy.count = count;
+            copy.shared = true;
+            shared = true;
+        }
+        return copy;
+    }
+
+    /**
+     * Gets the index mapped to the given bits.
+     *
+     * @param bits The raw bits of a constant.
+     * @return The index, or -1 if there is none.
+     */
+    int get(final long bits) {
+        if (count == 0) {
+            return -1;
+        }
+        final int mask = keys.length - 1;
+        for (int slot = slot(bits, mask);; slot = slot + 1 & mask) {
+            final int value = values[slot];
+            if (value == 0) {
+                return -1;
+            }
+            if (keys[slot] == bits) {
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Maps the given bits to the given index, replacing any previous index.
+     *
+     * @param bits The raw bits of a constant.
+     * @param index The index of the constant, greater than 0.
+     */
+    void put(final long bits, final int index) {
+        if (keys == null) {
+            keys = new long[INITIAL_CAPACITY];
+            values = new int[INITIAL_CAPACITY];
+        } else if (2 * (count + 1) > keys.length) {
+            resize();
+        } else {
+            unshare();
+        }
+        final int mask = keys.length - 1;
+        int slot = slot(bits, mask);
+        while (values[slot] != 0) {
+            if (keys[slot] == bits) {
+                values[slot] = index;
+                return;
+            }
+            slot = slot + 1 & mask;
+        }
+        keys[slot] = bits;
+        values[slot] = index;
+        count++;
+    }
+
+    /**
+     * Removes the mapping of the given bits, if any.
+     *
+     * @param bits The raw bits of a constant.
+     */
+    void remove(final long bits) {
+        if (count == 0) {
+            return;
+        }
+        unshare();
+        final int mask = keys.length - 1;
+        int slot = slot(bits, mask);
+        while (keys[slot] != bits || values[slot] == 0) {
+            if (values[slot] == 0) {
+                return;
+            }
+            slot = slot + 1 & mask;
+        }
+        // Moves back the following entries of the same probe sequence, so that no empty slot breaks it
+        int gap = slot;
+        for (int next = gap + 1 & mask; values[next] != 0; next = next + 1 & mask) {
+            final int home = slot(keys[next], mask);
+            if ((next - home & mask) >= (next - gap & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        values[gap] = 0;
+        count--;
+    }
+
+    private void resize() {
+        final long[] oldKeys = keys;
+        final int[] oldValues = values;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        count = 0;
+        shared = false;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != 0) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private void unshare() {
+        if (shared) {
+            keys = keys.clone();
+            values = values.clone();
+            shared = false;
+        }
+    }
+}
@@ -0,0 +1,515 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.bcel.Const;
+
+/**
+ * Rewrites short instruction sequences of a method into shorter equivalent ones, as generated code often contains them.
+ * <p>
+ * The rules to apply are given by {@link Rule}. They are applied in rounds until none matches any more, since one rewrite can make another one
+ * possible. Instructions are deleted with {@link InstructionList#edit(java.util.function.Consumer)}, so that branches and line numbers move to the
+ * instruction that takes the place of a deleted one. Exception handler and local variable ranges shrink to the instructions that remain, and are
+ * removed when none does.
+ * </p>
+ * <p>
+ * The maximum stack size and number of local variables never grow; call {@link MethodGen#setMaxStackAndLocals()} to tighten them. A stack map copied
+ * from the original method is not updated, see {@link MethodGen#setComputeFrames(boolean)}.
+ * </p>
+ * <p>
+ * The {@link Statistics} add up over all the methods optimized by an instance. Instances are not thread-safe.
+ * </p>
+ *
+ * @since 6.13.0
+ */
+public class PeepholeOptimizer {
+
+    /**
+     * The rewrite rules.
+     */
+    public enum Rule {
+
+        /**
+         * Replaces a conditional branch on a constant, like {@code iconst_0; ifeq L} or {@code aconst_null; ifnonnull L}, with a {@code goto} when the
+         * branch is taken and removes it otherwise.
+         */
+        CONSTANT_BRANCH,
+
+        /**
+         * Removes {@code dup; pop} and {@code dup2; pop2}.
+         */
+        DUP_POP,
+
+        /**
+         * Makes branches to a {@code goto} branch to its target instead.
+         */
+        GOTO_CHAIN,
+
+        /**
+         * Removes a {@code goto} to the next instruction.
+         */
+        GOTO_NEXT,
+
+        /**
+         * Removes a {@code checkcast} that always succeeds: to {@code java.lang.Object}, after {@code aconst_null}, or after a {@code checkcast} to the
+         * same type.
+         */
+        REDUNDANT_CHECKCAST,
+
+        /**
+         * Removes {@code store x; load x} when the load is the only read of the local variable {@code x}, which must not be in the local variable table,
+         * so that the value simply stays on the stack.
+         */
+        STORE_LOAD,
+
+        /**
+         * Removes the instructions that can't be reached, like the {@code goto}s that {@link #GOTO_CHAIN} bypasses or the code after a
+         * {@link #CONSTANT_BRANCH} that is always taken.
+         */
+        UNREACHABLE_CODE
+    }
+
+    /**
+     * Counts the rewrites made by a {@link PeepholeOptimizer}.
+     */
+    public static final class Statistics {
+
+        private final int[] counts = new int[Rule.values().length];
+        private int methodCount;
+        private int bytesSaved;
+
+        Statistics() {
+        }
+
+        /**
+         * Gets the number of bytes by which the code of the optimized methods shrank.
+         *
+         * @return The number of bytes saved.
+         */
+        public int getBytesSaved() {
+            return bytesSaved;
+        }
+
+        /**
+         * Gets the number of times a rule was applied.
+         *
+         * @param rule The rule.
+         * @return The number of rewrites by the rule.
+         */
+        public int getCount(final Rule rule) {
+            return counts[rule.ordinal()];
+        }
+
+        /**
+         * Gets the number of methods optimized, whether they changed or not.
+         *
+         * @return The number of methods.
+         */
+        public int getMethodCount() {
+            return methodCount;
+        }
+
+        /**
+         * Gets the number of rewrites by all rules.
+         *
+         * @return The number of rewrites.
+         */
+        public int getTotalCount() {
+            int total = 0;
+            for (final int count : counts) {
+                total += count;
+            }
+            return total;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder buf = new StringBuilder("Statistics [methods=").append(methodCount).append(", bytesSaved=").append(bytesSaved);
+            for (final Rule rule : Rule.values()) {
+                buf.append(", ").append(rule).append('=').append(counts[rule.ordinal()]);
+            }
+            return buf.append(']').toString();
+        }
+    }
+
+    /**
+     * Gets the last target of a chain of {@code goto}s.
+     *
+     * @param target The target of a branch.
+     * @param limit The number of instructions, after which a chain must be a loop.
+     * @return The target of the last {@code goto} from target on, or target if it is not a {@code goto} or the chain is a loop.
+     */
+    private static InstructionHandle followGotos(final InstructionHandle target, final int limit) {
+        InstructionHandle ih = target;
+        for (int steps = 0; ih.getInstruction() instanceof GotoInstruction; steps++) {
+            if (steps == limit) {
+                return target;
+            }
+            ih = ((GotoInstruction) ih.getInstruction()).getTarget();
+        }
+        return ih;
+    }
+
+    private static int getCodeSize(final InstructionList il) {
+        final InstructionHandle end = il.getEnd();
+        return end == null ? 0 : end.getPosition() + end.getInstruction().getLength();
+    }
+
+    /**
+     * Tests whether the given handle is reached other than from the previous instruction, that is, is the target of a branch or the start of an
+     * exception handler. The stack at such an instruction must not change.
+     */
+    private static boolean isJumpTarget(final InstructionHandle ih) {
+        if (ih.hasTargeters()) {
+            for (final InstructionTargeter targeter : ih.getTargeters()) {
+                if (targeter instanceof BranchInstruction || targeter instanceof CodeExceptionGen && ((CodeExceptionGen) targeter).getHandlerPC() == ih) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether an instruction protected by an exception handler is reached.
+     */
+    private static boolean isReached(final CodeExceptionGen ceg, final Set<InstructionHandle> reached) {
+        for (InstructionHandle ih = ceg.getStartPC(); ih != null; ih = ih.getNext()) {
+            if (reached.contains(ih)) {
+                return true;
+            }
+            if (ih == ceg.getEndPC()) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tests whether a conditional branch on a constant is taken.
+     *
+     * @return Whether the branch is taken, or null if it is not a known constant branch.
+     */
+    private static Boolean taken(final Instruction push, final Instruction branch) {
+        final short opcode = branch.getOpcode();
+        if (push.getOpcode() == Const.ACONST_NULL) {
+            return opcode == Const.IFNULL ? Boolean.TRUE : opcode == Const.IFNONNULL ? Boolean.FALSE : null;
+        }
+        if (!(push instanceof ICONST || push instanceof BIPUSH || push instanceof SIPUSH)) {
+            return null;
+        }
+        final int value = ((ConstantPushInstruction) push).getValue().intValue();
+        switch (opcode) {
+        case Const.IFEQ:
+            return value == 0;
+        case Const.IFNE:
+            return value != 0;
+        case Const.IFLT:
+            return value < 0;
+        case Const.IFGE:
+            return value >= 0;
+        case Const.IFGT:
+            return value > 0;
+        case Const.IFLE:
+            return value <= 0;
+        default:
+            return null;
+        }
+    }
+
+    private final Set<Rule> rules;
+
+    private final Statistics statistics = new Statistics();
+
+    /**
+     * Constructs an optimizer that applies all rules.
+     */
+    public PeepholeOptimizer() {
+        this(EnumSet.allOf(Rule.class));
+    }
+
+    /**
+     * Constructs an optimizer that applies the given rules.
+     *
+     * @param rules The rules to apply.
+     */
+    public PeepholeOptimizer(final Set<Rule> rules) {
+        this.rules = EnumSet.noneOf(Rule.class);
+        this.rules.addAll(rules);
+    }
+
+    /**
+     * Counts the reads of each local variable slot, or returns null if the method uses subroutines.
+     */
+    private int[] countReads(final MethodGen mg) {
+        final ConstantPoolGen cp = mg.getConstantPool();
+        int[] reads = new int[Math.max(mg.getMaxLocals(), 1)];
+        for (InstructionHandle ih = mg.getInstructionList().getStart(); ih != null; ih = ih.getNext()) {
+            final Instruction i = ih.getInstruction();
+            if (i instanceof RET) {
+                return null;
+            }
+            if (i instanceof LoadInstruction || i instanceof IINC) {
+                final LocalVariableInstruction lvi = (LocalVariableInstruction) i;
+                final int end = lvi.getIndex() + lvi.getType(cp).getSize();
+                if (end > reads.length) {
+                    final int[] larger = new int[Math.max(end, reads.length * 2)];
+                    System.arraycopy(reads, 0, larger, 0, reads.length);
+                    reads = larger;
+                }
+                for (int slot = lvi.getIndex(); slot < end; slot++) {
+                    reads[slot]++;
+                }
+            }
+        }
+        return reads;
+    }
+
+    /**
+     * Gets the statistics of the methods optimized so far.
+     *
+     * @return The statistics.
+     */
+    public Statistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Tests whether a rule is applied.
+     *
+     * @param rule The rule.
+     * @return Whether the rule is applied.
+     */
+    public boolean isEnabled(final Rule rule) {
+        return rules.contains(rule);
+    }
+
+    /**
+     * Marks the instructions that are not reached from the start of the method as deleted.
+     */
+    private void markUnreachable(final MethodGen mg, final Set<InstructionHandle> deleted) {
+        final InstructionList il = mg.getInstructionList();
+        final CodeExceptionGen[] handlers = mg.getExceptionHandlers();
+        final Set<InstructionHandle> reached = Collections.newSetFromMap(new IdentityHashMap<>());
+        final List<InstructionHandle> worklist = new ArrayList<>();
+        worklist.add(il.getStart());
+        boolean changed = true;
+        while (changed) {
+            while (!worklist.isEmpty()) {
+                final InstructionHandle ih = worklist.remove(worklist.size() - 1);
+                if (ih == null || !reached.add(ih)) {
+                    continue;
+                }
+                final Instruction i = ih.getInstruction();
+                if (i instanceof BranchInstruction) {
+                    worklist.add(((BranchInstruction) i).getTarget());
+                    if (i instanceof Select) {
+                        worklist.addAll(Arrays.asList(((Select) i).getTargets()));
+                    }
+                }
+                if (i instanceof JsrInstruction || !(i instanceof UnconditionalBranch || i instanceof ReturnInstruction || i instanceof RET
+                    || i instanceof Select)) {
+                    worklist.add(ih.getNext());
+                }
+            }
+            // A handler is reached when an instruction it protects is
+            changed = false;
+            for (final CodeExceptionGen ceg : handlers) {
+                if (!reached.contains(ceg.getHandlerPC()) && isReached(ceg, reached)) {
+                    worklist.add(ceg.getHandlerPC());
+                    changed = true;
+                }
+            }
+        }
+        boolean inRun = false;
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+            final boolean unreachable = !reached.contains(ih);
+            if (unreachable) {
+                deleted.add(ih);
+                if (!inRun) {
+                    record(Rule.UNREACHABLE_CODE);
+                }
+            }
+            inRun = unreachable;
+        }
+    }
+
+    /**
+     * Optimizes the code of a method in place.
+     *
+     * @param mg The method, which may have no code.
+     * @return The number of rewrites.
+     */
+    public int optimize(final MethodGen mg) {
+        final InstructionList il = mg.getInstructionList();
+        statistics.methodCount++;
+        if (il == null || il.isEmpty()) {
+            return 0;
+        }
+        il.updatePositions();
+        final int size = getCodeSize(il);
+        final int before = statistics.getTotalCount();
+        int done;
+        do {
+            done = statistics.getTotalCount();
+            if (isEnabled(Rule.GOTO_CHAIN)) {
+                shortenGotoChains(il);
+            }
+            rewrite(mg);
+        } while (statistics.getTotalCount() > done);
+        statistics.bytesSaved += size - getCodeSize(il);
+        return statistics.getTotalCount() - before;
+    }
+
+    private void record(final Rule rule) {
+        statistics.counts[rule.ordinal()]++;
+    }
+
+    /**
+     * Makes one round of the rewrites that delete instructions, such that no instruction takes part in more than one of them.
+     */
+    private void rewrite(final MethodGen mg) {
+        final InstructionList il = mg.getInstructionList();
+        final ConstantPoolGen cp = mg.getConstantPool();
+        final Set<InstructionHandle> deleted = Collections.newSetFromMap(new IdentityHashMap<>());
+        final int[] reads = isEnabled(Rule.STORE_LOAD) ? countReads(mg) : null;
+        final int[] pairedReads = reads != null ? new int[reads.length] : null;
+        final List<InstructionHandle> stores = new ArrayList<>();
+        il.edit(edit -> {
+            if (isEnabled(Rule.UNREACHABLE_CODE)) {
+                markUnreachable(mg, deleted);
+            }
+            for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+                if (deleted.contains(ih)) {
+                    continue;
+                }
+                final Instruction i = ih.getInstruction();
+                final InstructionHandle next = ih.getNext();
+                final Instruction n = next != null && !deleted.contains(next) ? next.getInstruction() : null;
+                if (i instanceof GotoInstruction && isEnabled(Rule.GOTO_NEXT) && ((GotoInstruction) i).getTarget() == next) {
+                    deleted.add(ih);
+                    record(Rule.GOTO_NEXT);
+                } else if (i.getOpcode() == Const.CHECKCAST && isEnabled(Rule.REDUNDANT_CHECKCAST)
+                        && Type.OBJECT.equals(((CHECKCAST) i).getType(cp))) {
+                    deleted.add(ih);
+                    record(Rule.REDUNDANT_CHECKCAST);
+                } else if (n == null || isJumpTarget(next)) {
+                    continue; // the second instruction of a pair must only be reached from the first one
+                } else if (isEnabled(Rule.DUP_POP)
+                    && (i.getOpcode() == Const.DUP && n.getOpcode() == Const.POP || i.getOpcode() == Const.DUP2 && n.getOpcode() == Const.POP2)) {
+                    deleted.add(ih);
+                    deleted.add(next);
+                    record(Rule.DUP_POP);
+                } else if (isEnabled(Rule.REDUNDANT_CHECKCAST) && n.getOpcode() == Const.CHECKCAST && (i.getOpcode() == Const.ACONST_NULL
+                    || i.getOpcode() == Const.CHECKCAST && ((CHECKCAST) i).getIndex() == ((CHECKCAST) n).getIndex())) {
+                    deleted.add(next);
+                    record(Rule.REDUNDANT_CHECKCAST);
+                } else if (isEnabled(Rule.CONSTANT_BRANCH) && n instanceof IfInstruction && taken(i, n) != null) {
+                    if (taken(i, n)) {
+                        // The targeters of the deleted pair move on to the goto
+                        edit.append(next, new GOTO(((IfInstruction) n).getTarget()));
+                    }
+                    deleted.add(ih);
+                    deleted.add(next);
+                    record(Rule.CONSTANT_BRANCH);
+                } else if (reads != null && i instanceof StoreInstruction && n instanceof LoadInstruction
+                    && ((StoreInstruction) i).getIndex() == ((LoadInstruction) n).getIndex()
+                    && ((StoreInstruction) i).getType(cp).equals(((LoadInstruction) n).getType(cp))) {
+                    // Only a candidate until all the reads of the variable are known to be paired
+                    final StoreInstruction store = (StoreInstruction) i;
+                    for (int slot = store.getIndex(); slot < store.getIndex() + store.getType(cp).getSize(); slot++) {
+                        pairedReads[slot]++;
+                    }
+                    stores.add(ih);
+                    deleted.add(ih);
+                    deleted.add(next);
+                }
+            }
+            final LocalVariableGen[] lvgs = stores.isEmpty() ? null : mg.getLocalVariables();
+            for (final InstructionHandle ih : stores) {
+                final StoreInstruction store = (StoreInstruction) ih.getInstruction();
+                final int from = store.getIndex();
+                final int to = from + store.getType(cp).getSize();
+                boolean removable = true;
+                for (int slot = from; slot < to; slot++) {
+                    removable &= reads[slot] == pairedReads[slot];
+                }
+                for (final LocalVariableGen lvg : lvgs) {
+                    removable &= lvg.getIndex() + lvg.getType().getSize() <= from || to <= lvg.getIndex();
+                }
+                if (removable) {
+                    record(Rule.STORE_LOAD);
+                } else {
+                    deleted.remove(ih);
+                    deleted.remove(ih.getNext());
+                }
+            }
+            if (!deleted.isEmpty()) {
+                deleted.forEach(edit::delete);
+            }
+        }, range -> {
+            if (range instanceof CodeExceptionGen) {
+                mg.removeExceptionHandler((CodeExceptionGen) range);
+            } else {
+                mg.removeLocalVariable((LocalVariableGen) range);
+            }
+        });
+    }
+
+    /**
+     * Makes branches to a {@code goto} branch to the target of the {@code goto}.
+     */
+    private void shortenGotoChains(final InstructionList il) {
+        final int limit = il.getLength();
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext()) {
+            final Instruction i = ih.getInstruction();
+            if (i instanceof Select) {
+                final Select select = (Select) i;
+                final InstructionHandle[] targets = select.getTargets();
+                for (int j = 0; j < targets.length; j++) {
+                    final InstructionHandle target = followGotos(targets[j], limit);
+                    if (target != targets[j]) {
+                        select.setTarget(j, target);
+                        record(Rule.GOTO_CHAIN);
+                    }
+                }
+                final InstructionHandle target = followGotos(select.getTarget(), limit);
+                if (target != select.getTarget()) {
+                    select.setTarget(target);
+                    record(Rule.GOTO_CHAIN);
+                }
+            } else if (i instanceof BranchInstruction && !(i instanceof JsrInstruction)) {
+                final BranchInstruction branch = (BranchInstruction) i;
+                final InstructionHandle target = followGotos(branch.getTarget(), limit);
+                if (target != branch.getTarget()) {
+                    branch.setTarget(target);
+                    record(Rule.GOTO_CHAIN);
+                }
+            }
+        }
+    }
+}
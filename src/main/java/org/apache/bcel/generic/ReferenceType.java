@@ -18,6 +18,9 @@
  */
 package org.apache.bcel.generic;
 
+import java.util.HashSet;
+import java.util.Set;
+
 import org.apache.bcel.Const;
 import org.apache.bcel.Repository;
 import org.apache.bcel.classfile.JavaClass;
@@ -120,6 +123,51 @@ public abstract class ReferenceType extends Type {
         return getFirstCommonSuperclassInternal(t);
     }
 
+    /**
+     * Gets the first common superclass of this type and t, like {@link #getFirstCommonSuperclass(ReferenceType)}, but looks up classes in the given
+     * repository instead of the global {@link Repository}. Arrays of the same number of dimensions with class basic types have an array of the first
+     * common superclass of their basic types as common superclass.
+     *
+     * @param t The other type.
+     * @param repository The repository to look up classes.
+     * @return The first common superclass.
+     * @throws ClassNotFoundException if this type, t, or one of their superclasses can't be found.
+     * @since 6.13.0
+     */
+    public ReferenceType getFirstCommonSuperclass(final ReferenceType t, final org.apache.bcel.util.Repository repository) throws ClassNotFoundException {
+        if (equals(NULL)) {
+            return t;
+        }
+        if (t.equals(NULL) || equals(t)) {
+            return this;
+        }
+        if (this instanceof ArrayType && t instanceof ArrayType) {
+            final ArrayType arrType1 = (ArrayType) this;
+            final ArrayType arrType2 = (ArrayType) t;
+            if (arrType1.getDimensions() == arrType2.getDimensions() && arrType1.getBasicType() instanceof ObjectType
+                && arrType2.getBasicType() instanceof ObjectType) {
+                return new ArrayType(((ObjectType) arrType1.getBasicType()).getFirstCommonSuperclass((ObjectType) arrType2.getBasicType(), repository),
+                    arrType1.getDimensions());
+            }
+        }
+        if (!(this instanceof ObjectType) || !(t instanceof ObjectType)) {
+            return OBJECT;
+        }
+        JavaClass thiz = repository.loadClass(((ObjectType) this).getClassName());
+        JavaClass other = repository.loadClass(((ObjectType) t).getClassName());
+        if (thiz.isInterface() || other.isInterface()) {
+            return OBJECT;
+        }
+        final Set<String> thisSups = new HashSet<>();
+        while (thisSups.add(thiz.getClassName()) && !OBJECT.getClassName().equals(thiz.getClassName())) {
+            thiz = repository.loadClass(thiz.getSuperclassName());
+        }
+        while (!thisSups.contains(other.getClassName())) {
+            other = repository.loadClass(other.getSuperclassName());
+        }
+        return ObjectType.getInstance(other.getClassName());
+    }
+
     private ReferenceType getFirstCommonSuperclassInternal(final ReferenceType t) throws ClassNotFoundException {
         if (this instanceof ObjectType && ((ObjectType) this).referencesInterfaceExact()
             || t instanceof ObjectType && ((ObjectType) t).referencesInterfaceExact()) {
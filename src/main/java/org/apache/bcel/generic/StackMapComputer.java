@@ -0,0 +1,651 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.Constant;
+import org.apache.bcel.classfile.ConstantCP;
+import org.apache.bcel.classfile.ConstantNameAndType;
+import org.apache.bcel.classfile.ConstantPool;
+import org.apache.bcel.classfile.StackMap;
+import org.apache.bcel.classfile.StackMapEntry;
+import org.apache.bcel.classfile.StackMapType;
+
+/**
+ * Computes the stack map frames of a method by type inference over its instruction list and exception handlers.
+ * <p>
+ * The types of the local variables and stack slots are inferred at each instruction until they don't change any more. Where paths join, reference
+ * types merge to their first common superclass, as found by a {@link CommonSuperclassResolver}, and other differing types merge to top. Frames are
+ * emitted, in the compressed form of the StackMapTable attribute, at branch targets, exception handlers and instructions that follow an
+ * unconditional branch.
+ * </p>
+ *
+ * @see MethodGen#getStackMap(ConstantPoolGen)
+ */
+final class StackMapComputer {
+
+    /**
+     * The types of the local variables and the stack at an instruction. Values of type long and double take two slots, the second of which is top.
+     */
+    private static final class Frame {
+
+        private final Type[] locals;
+        private final Type[] stack;
+        private int stackSize;
+
+        Frame(final Frame frame) {
+            locals = frame.locals.clone();
+            stack = frame.stack.clone();
+            stackSize = frame.stackSize;
+        }
+
+        Frame(final int maxLocals, final int maxStack) {
+            locals = new Type[maxLocals];
+            Arrays.fill(locals, TOP);
+            stack = new Type[maxStack];
+        }
+
+        /**
+         * Initializes an object in all slots that hold it.
+         */
+        void initialize(final Uninitialized type) {
+            for (int i = 0; i < locals.length; i++) {
+                if (type.equals(locals[i])) {
+                    locals[i] = type.initialized;
+                }
+            }
+            for (int i = 0; i < stackSize; i++) {
+                if (type.equals(stack[i])) {
+                    stack[i] = type.initialized;
+                }
+            }
+        }
+
+        Type load(final int index) {
+            if (index >= locals.length) {
+                throw new ClassGenException("Local variable " + index + " out of range");
+            }
+            return locals[index];
+        }
+
+        Type pop() {
+            if (stackSize == 0) {
+                throw new ClassGenException("Stack underflow");
+            }
+            return stack[--stackSize];
+        }
+
+        void pop(final int slots) {
+            if (slots > stackSize) {
+                throw new ClassGenException("Stack underflow");
+            }
+            stackSize -= slots;
+        }
+
+        void push(final Type type) {
+            pushSlot(type);
+            if (type.getSize() == 2) {
+                pushSlot(TOP);
+            }
+        }
+
+        void pushSlot(final Type type) {
+            if (stackSize == stack.length) {
+                throw new ClassGenException("Stack overflow");
+            }
+            stack[stackSize++] = type;
+        }
+
+        void store(final int index, final Type type) {
+            if (index + type.getSize() > locals.length) {
+                throw new ClassGenException("Local variable " + index + " out of range");
+            }
+            if (index > 0 && locals[index - 1].getSize() == 2) {
+                locals[index - 1] = TOP; // the second half of a long or double is overwritten
+            }
+            locals[index] = type;
+            if (type.getSize() == 2) {
+                locals[index + 1] = TOP;
+            }
+        }
+    }
+
+    /**
+     * The type of an object created by NEW, or of this in a constructor, until its constructor is called.
+     */
+    private static final class Uninitialized extends ReferenceType {
+
+        private final InstructionHandle newHandle; // null for this
+        private final ObjectType initialized;
+
+        Uninitialized(final InstructionHandle newHandle, final ObjectType initialized) {
+            super(Const.T_OBJECT, "<uninitialized " + initialized.getClassName() + ">");
+            this.newHandle = newHandle;
+            this.initialized = initialized;
+        }
+
+        @Override
+        public boolean equals(final Object type) {
+            return type instanceof Uninitialized && ((Uninitialized) type).newHandle == newHandle && ((Uninitialized) type).initialized.equals(initialized);
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(newHandle) ^ initialized.hashCode();
+        }
+    }
+
+    private static final Type TOP = Type.UNKNOWN;
+
+    private static final ObjectType METHOD_HANDLE = ObjectType.getInstance("java.lang.invoke.MethodHandle");
+
+    private static final ObjectType METHOD_TYPE = ObjectType.getInstance("java.lang.invoke.MethodType");
+
+    private static boolean isUnconditional(final short opcode) {
+        return opcode == Const.GOTO || opcode == Const.GOTO_W || opcode == Const.ATHROW || opcode == Const.TABLESWITCH || opcode == Const.LOOKUPSWITCH
+            || opcode >= Const.IRETURN && opcode <= Const.RETURN;
+    }
+
+    /**
+     * Lists the types of slots, with one entry for long and double values.
+     */
+    private static List<Type> types(final Type[] slots, final int size) {
+        final List<Type> types = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            types.add(slots[i]);
+            if (slots[i].getSize() == 2) {
+                i++;
+            }
+        }
+        return types;
+    }
+
+    private final ConstantPoolGen cp;
+    private final CommonSuperclassResolver resolver;
+    private final MethodGen mg;
+    private InstructionHandle[] handles;
+    private int[] positions;
+    private Frame[] frames;
+    private final BitSet queued = new BitSet();
+    private int[] worklist;
+    private int worklistSize;
+
+    /**
+     * Constructs a computer of the frames of a method.
+     *
+     * @param mg The method, which must have an instruction list.
+     * @param cp The constant pool generator, to which the class types of the frames are added.
+     * @param resolver Finds the type of values where paths join.
+     */
+    StackMapComputer(final MethodGen mg, final ConstantPoolGen cp, final CommonSuperclassResolver resolver) {
+        this.mg = mg;
+        this.cp = cp;
+        this.resolver = resolver;
+    }
+
+    /**
+     * Computes the stack map frames. Updates the positions of the instruction list, whose instructions must not be changed before the frames are
+     * used.
+     *
+     * @return The stack map, which has no entries if the method has no branches or exception handlers.
+     * @throws ClassGenException if the types can't be inferred, for example because the code has unreachable instructions, uses JSR or RET, or a
+     *         class needed to merge reference types can't be found.
+     */
+    StackMap compute() {
+        final InstructionList il = mg.getInstructionList();
+        final CodeExceptionGen[] handlers = mg.getExceptionHandlers();
+        il.updatePositions();
+        final Frame initial = initialFrame(new MethodGen.CodeSizes(cp, il, handlers, mg.getArgumentsSize()));
+        positions = il.getInstructionPositions();
+        final int n = positions.length;
+        handles = new InstructionHandle[n];
+        final BitSet needsFrame = new BitSet(n);
+        int i = 0;
+        for (InstructionHandle ih = il.getStart(); ih != null; ih = ih.getNext(), i++) {
+            final Instruction instruction = ih.getInstruction();
+            handles[i] = ih;
+            if (instruction instanceof JsrInstruction || instruction instanceof RET) {
+                throw new ClassGenException("Stack map frames can't be computed for subroutines: " + ih);
+            }
+            if (instruction instanceof BranchInstruction) {
+                if (instruction instanceof Select) {
+                    for (final InstructionHandle target : ((Select) instruction).getTargets()) {
+                        needsFrame.set(indexOf(target));
+                    }
+                }
+                needsFrame.set(indexOf(((BranchInstruction) instruction).getTarget()));
+            }
+            if (isUnconditional(instruction.getOpcode()) && i + 1 < n) {
+                needsFrame.set(i + 1);
+            }
+        }
+        final int[] handlerStarts = new int[handlers.length];
+        final int[] handlerEnds = new int[handlers.length];
+        final int[] handlerPcs = new int[handlers.length];
+        for (int h = 0; h < handlers.length; h++) {
+            handlerStarts[h] = indexOf(handlers[h].getStartPC());
+            handlerEnds[h] = indexOf(handlers[h].getEndPC());
+            handlerPcs[h] = indexOf(handlers[h].getHandlerPC());
+            needsFrame.set(handlerPcs[h]);
+        }
+        frames = new Frame[n];
+        worklist = new int[n];
+        if (n > 0) {
+            merge(initial, 0);
+        }
+        while (worklistSize > 0) {
+            i = worklist[--worklistSize];
+            queued.clear(i);
+            final Frame in = frames[i];
+            for (int h = 0; h < handlers.length; h++) {
+                if (handlerStarts[h] <= i && i <= handlerEnds[h]) {
+                    final Frame caught = new Frame(in);
+                    caught.stackSize = 0;
+                    final ObjectType catchType = handlers[h].getCatchType();
+                    caught.push(catchType != null ? catchType : Type.THROWABLE);
+                    merge(caught, handlerPcs[h]);
+                }
+            }
+            final Frame out = new Frame(in);
+            final Instruction instruction = handles[i].getInstruction();
+            execute(handles[i], out);
+            if (instruction instanceof BranchInstruction) {
+                if (instruction instanceof Select) {
+                    for (final InstructionHandle target : ((Select) instruction).getTargets()) {
+                        merge(out, indexOf(target));
+                    }
+                }
+                merge(out, indexOf(((BranchInstruction) instruction).getTarget()));
+            }
+            if (!isUnconditional(instruction.getOpcode()) && i + 1 < n) {
+                merge(out, i + 1);
+            }
+        }
+        return encode(initial, needsFrame);
+    }
+
+    private StackMapEntry encode(final Frame frame, final List<Type> previous, final int offsetDelta) {
+        final List<Type> locals = types(frame.locals, frame.locals.length);
+        while (!locals.isEmpty() && locals.get(locals.size() - 1).equals(TOP)) {
+            locals.remove(locals.size() - 1);
+        }
+        final List<Type> stack = types(frame.stack, frame.stackSize);
+        final int tag;
+        StackMapType[] localTypes = null;
+        StackMapType[] stackTypes = null;
+        final int chopped = previous.size() - locals.size();
+        if (stack.isEmpty() && locals.equals(previous)) {
+            tag = offsetDelta <= Const.SAME_FRAME_MAX ? Const.SAME_FRAME + offsetDelta : Const.SAME_FRAME_EXTENDED;
+        } else if (stack.size() == 1 && locals.equals(previous)) {
+            tag = offsetDelta <= Const.SAME_LOCALS_1_STACK_ITEM_FRAME_MAX - Const.SAME_LOCALS_1_STACK_ITEM_FRAME
+                ? Const.SAME_LOCALS_1_STACK_ITEM_FRAME + offsetDelta
+                : Const.SAME_LOCALS_1_STACK_ITEM_FRAME_EXTENDED;
+            stackTypes = toStackMapTypes(stack);
+        } else if (stack.isEmpty() && chopped > 0 && chopped <= Const.SAME_FRAME_EXTENDED - Const.CHOP_FRAME && previous.subList(0, locals.size()).equals(locals)) {
+            tag = Const.SAME_FRAME_EXTENDED - chopped;
+        } else if (stack.isEmpty() && chopped < 0 && -chopped <= Const.FULL_FRAME - Const.APPEND_FRAME && locals.subList(0, previous.size()).equals(previous)) {
+            tag = Const.SAME_FRAME_EXTENDED - chopped;
+            localTypes = toStackMapTypes(locals.subList(previous.size(), locals.size()));
+        } else {
+            tag = Const.FULL_FRAME;
+            localTypes = toStackMapTypes(locals);
+            stackTypes = toStackMapTypes(stack);
+        }
+        previous.clear();
+        previous.addAll(locals);
+        return new StackMapEntry(tag, offsetDelta, localTypes, stackTypes, null);
+    }
+
+    private StackMap encode(final Frame initial, final BitSet needsFrame) {
+        final List<StackMapEntry> entries = new ArrayList<>();
+        final List<Type> previous = types(initial.locals, initial.locals.length);
+        while (!previous.isEmpty() && previous.get(previous.size() - 1).equals(TOP)) {
+            previous.remove(previous.size() - 1);
+        }
+        int previousOffset = -1;
+        for (int i = needsFrame.nextSetBit(0); i >= 0; i = needsFrame.nextSetBit(i + 1)) {
+            if (frames[i] == null) {
+                throw new ClassGenException("Stack map frames can't be computed for unreachable code: " + handles[i]);
+            }
+            entries.add(encode(frames[i], previous, positions[i] - previousOffset - 1));
+            previousOffset = positions[i];
+        }
+        final int nameIndex = cp.addUtf8(Const.getAttributeName(Const.ATTR_STACK_MAP_TABLE));
+        final ConstantPool constantPool = cp.getConstantPool();
+        final StackMapEntry[] table = entries.toArray(new StackMapEntry[entries.size()]);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (final StackMapEntry entry : table) {
+                entry.setConstantPool(constantPool);
+                for (final StackMapType type : entry.getTypesOfLocals()) {
+                    type.setConstantPool(constantPool);
+                }
+                for (final StackMapType type : entry.getTypesOfStackItems()) {
+                    type.setConstantPool(constantPool);
+                }
+                entry.dump(out);
+            }
+        } catch (final IOException e) {
+            throw new ClassGenException(e.toString(), e);
+        }
+        return new StackMap(nameIndex, 2 + bytes.size(), table, constantPool);
+    }
+
+    private void execute(final InstructionHandle ih, final Frame frame) {
+        final Instruction instruction = ih.getInstruction();
+        final short opcode = instruction.getOpcode();
+        if (instruction instanceof LoadInstruction) {
+            final int index = ((LoadInstruction) instruction).getIndex();
+            frame.push(instruction instanceof ALOAD ? frame.load(index) : ((LoadInstruction) instruction).getType(cp));
+        } else if (instruction instanceof StoreInstruction) {
+            final Type type;
+            if (instruction instanceof ASTORE) {
+                type = frame.pop(); // the reference may be uninitialized
+            } else {
+                type = ((StoreInstruction) instruction).getType(cp);
+                frame.pop(type.getSize());
+            }
+            frame.store(((StoreInstruction) instruction).getIndex(), type);
+        } else if (instruction instanceof StackInstruction) {
+            executeStackInstruction(opcode, frame);
+        } else if (instruction instanceof LDC || instruction instanceof LDC2_W) {
+            frame.push(ldcType(((CPInstruction) instruction).getIndex()));
+        } else if (opcode >= Const.IALOAD && opcode <= Const.SALOAD) {
+            frame.pop();
+            final Type array = frame.pop();
+            if (opcode != Const.AALOAD) {
+                frame.push(((ArrayInstruction) instruction).getType(cp).normalizeForStackOrLocal());
+            } else {
+                frame.push(array instanceof ArrayType ? ((ArrayType) array).getElementType() : Type.NULL);
+            }
+        } else if (instruction instanceof InvokeInstruction) {
+            final InvokeInstruction invoke = (InvokeInstruction) instruction;
+            if (opcode == Const.INVOKESPECIAL && Const.CONSTRUCTOR_NAME.equals(invoke.getMethodName(cp))) {
+                frame.pop(invoke.consumeStack(cp) - 1);
+                final Type receiver = frame.pop();
+                if (receiver instanceof Uninitialized) {
+                    frame.initialize((Uninitialized) receiver);
+                }
+            } else {
+                frame.pop(invoke.consumeStack(cp));
+            }
+            final Type returnType = invoke.getReturnType(cp);
+            if (returnType != Type.VOID) {
+                frame.push(returnType.normalizeForStackOrLocal());
+            }
+        } else if (opcode == Const.ATHROW) {
+            frame.pop(); // the exception is rethrown, no value is produced here
+        } else {
+            frame.pop(instruction.consumeStack(cp));
+            if (instruction.produceStack(cp) > 0) {
+                frame.push(producedType(ih));
+            }
+        }
+    }
+
+    private void executeStackInstruction(final short opcode, final Frame frame) {
+        final Type v1;
+        final Type v2;
+        final Type v3;
+        final Type v4;
+        switch (opcode) {
+        case Const.POP:
+            frame.pop(1);
+            break;
+        case Const.POP2:
+            frame.pop(2);
+            break;
+        case Const.DUP:
+            v1 = frame.pop();
+            frame.pushSlot(v1);
+            frame.pushSlot(v1);
+            break;
+        case Const.DUP_X1:
+            v1 = frame.pop();
+            v2 = frame.pop();
+            frame.pushSlot(v1);
+            frame.pushSlot(v2);
+            frame.pushSlot(v1);
+            break;
+        case Const.DUP_X2:
+            v1 = frame.pop();
+            v2 = frame.pop();
+            v3 = frame.pop();
+            frame.pushSlot(v1);
+            frame.pushSlot(v3);
+            frame.pushSlot(v2);
+            frame.pushSlot(v1);
+            break;
+        case Const.DUP2:
+            v1 = frame.pop();
+            v2 = frame.pop();
+            frame.pushSlot(v2);
+            frame.pushSlot(v1);
+            frame.pushSlot(v2);
+            frame.pushSlot(v1);
+            break;
+        case Const.DUP2_X1:
+            v1 = frame.pop();
+            v2 = frame.pop();
+            v3 = frame.pop();
+            frame.pushSlot(v2);
+            frame.pushSlot(v1);
+            frame.pushSlot(v3);
+            frame.pushSlot(v2);
+            frame.pushSlot(v1);
+            break;
+        case Const.DUP2_X2:
+            v1 = frame.pop();
+            v2 = frame.pop();
+            v3 = frame.pop();
+            v4 = frame.pop();
+            frame.pushSlot(v2);
+            frame.pushSlot(v1);
+            frame.pushSlot(v4);
+            frame.pushSlot(v3);
+            frame.pushSlot(v2);
+            frame.pushSlot(v1);
+            break;
+        case Const.SWAP:
+            v1 = frame.pop();
+            v2 = frame.pop();
+            frame.pushSlot(v1);
+            frame.pushSlot(v2);
+            break;
+        default:
+            throw new ClassGenException("Unexpected stack instruction " + Const.getOpcodeName(opcode));
+        }
+    }
+
+    private int indexOf(final InstructionHandle ih) {
+        final int index = ih != null ? Arrays.binarySearch(positions, ih.getPosition()) : -1;
+        if (index < 0 || handles[index] != null && handles[index] != ih) {
+            throw new ClassGenException("Branch target or handler not in the instruction list: " + ih);
+        }
+        return index;
+    }
+
+    private Frame initialFrame(final MethodGen.CodeSizes sizes) {
+        final Frame frame = new Frame(sizes.getMaxLocals(), sizes.getMaxStack());
+        int index = 0;
+        if (!mg.isStatic()) {
+            final ObjectType thisType = ObjectType.getInstance(mg.getClassName());
+            final boolean uninitializedThis = Const.CONSTRUCTOR_NAME.equals(mg.getName()) && !Type.OBJECT.equals(thisType);
+            frame.store(index++, uninitializedThis ? new Uninitialized(null, thisType) : thisType);
+        }
+        for (final Type argType : mg.getArgumentTypes()) {
+            frame.store(index, argType.normalizeForStackOrLocal());
+            index += argType.getSize();
+        }
+        return frame;
+    }
+
+    private Type ldcType(final int index) {
+        final ConstantPool constantPool = cp.getConstantPool();
+        final Constant c = constantPool.getConstant(index);
+        switch (c.getTag()) {
+        case Const.CONSTANT_Integer:
+            return Type.INT;
+        case Const.CONSTANT_Float:
+            return Type.FLOAT;
+        case Const.CONSTANT_Long:
+            return Type.LONG;
+        case Const.CONSTANT_Double:
+            return Type.DOUBLE;
+        case Const.CONSTANT_String:
+            return Type.STRING;
+        case Const.CONSTANT_Class:
+            return Type.CLASS;
+        case Const.CONSTANT_MethodType:
+            return METHOD_TYPE;
+        case Const.CONSTANT_MethodHandle:
+            return METHOD_HANDLE;
+        case Const.CONSTANT_Dynamic:
+            final ConstantNameAndType nameAndType = constantPool.getConstant(((ConstantCP) c).getNameAndTypeIndex(), Const.CONSTANT_NameAndType,
+                ConstantNameAndType.class);
+            return Type.getType(nameAndType.getSignature(constantPool)).normalizeForStackOrLocal();
+        default:
+            throw new ClassGenException("Unexpected constant at " + index + ": " + c);
+        }
+    }
+
+    /**
+     * Merges a frame into the frame of an instruction, and queues the instruction if its frame changed.
+     */
+    private void merge(final Frame frame, final int index) {
+        final Frame target = frames[index];
+        boolean changed = false;
+        if (target == null) {
+            frames[index] = new Frame(frame);
+            changed = true;
+        } else {
+            if (target.stackSize != frame.stackSize) {
+                throw new ClassGenException("Inconsistent stack height " + frame.stackSize + " != " + target.stackSize + " at " + handles[index]);
+            }
+            for (int i = 0; i < target.locals.length; i++) {
+                changed |= merge(target.locals, i, frame.locals[i]);
+            }
+            for (int i = 0; i < target.stackSize; i++) {
+                changed |= merge(target.stack, i, frame.stack[i]);
+            }
+        }
+        if (changed && !queued.get(index)) {
+            queued.set(index);
+            worklist[worklistSize++] = index;
+        }
+    }
+
+    private boolean merge(final Type[] slots, final int i, final Type type) {
+        final Type merged = merge(slots[i], type);
+        if (merged.equals(slots[i])) {
+            return false;
+        }
+        slots[i] = merged;
+        return true;
+    }
+
+    private Type merge(final Type type1, final Type type2) {
+        if (type1.equals(type2)) {
+            return type1;
+        }
+        if (type1 instanceof ReferenceType && type2 instanceof ReferenceType && !(type1 instanceof Uninitialized) && !(type2 instanceof Uninitialized)) {
+            try {
+                final ReferenceType merged = resolver.getFirstCommonSuperclass((ReferenceType) type1, (ReferenceType) type2);
+                return merged != null ? merged : Type.OBJECT;
+            } catch (final ClassNotFoundException e) {
+                throw new ClassGenException("Can't merge " + type1 + " and " + type2 + ": " + e.getMessage(), e);
+            }
+        }
+        return TOP;
+    }
+
+    /**
+     * Gets the type of the value pushed by an instruction that isn't handled separately in {@link #execute(InstructionHandle, Frame)}.
+     */
+    private Type producedType(final InstructionHandle ih) {
+        final Instruction instruction = ih.getInstruction();
+        switch (instruction.getOpcode()) {
+        case Const.ACONST_NULL:
+            return Type.NULL;
+        case Const.NEW:
+            return new Uninitialized(ih, ((NEW) instruction).getLoadClassType(cp));
+        case Const.NEWARRAY:
+            return ((NEWARRAY) instruction).getType();
+        case Const.ANEWARRAY:
+            return new ArrayType(((ANEWARRAY) instruction).getType(cp), 1);
+        case Const.ARRAYLENGTH:
+        case Const.INSTANCEOF:
+        case Const.LCMP:
+        case Const.FCMPL:
+        case Const.FCMPG:
+        case Const.DCMPL:
+        case Const.DCMPG:
+            return Type.INT;
+        default:
+            // constants, arithmetic, conversions, fields, CHECKCAST and MULTIANEWARRAY
+            return ((TypedInstruction) instruction).getType(cp).normalizeForStackOrLocal();
+        }
+    }
+
+    private StackMapType[] toStackMapTypes(final List<Type> types) {
+        final StackMapType[] result = new StackMapType[types.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = toStackMapType(types.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Converts a type. Its constant pool is set once all classes have been added to the pool.
+     */
+    private StackMapType toStackMapType(final Type type) {
+        switch (type.getType()) {
+        case Const.T_INT:
+            return new StackMapType(Const.ITEM_Integer, -1, null);
+        case Const.T_FLOAT:
+            return new StackMapType(Const.ITEM_Float, -1, null);
+        case Const.T_LONG:
+            return new StackMapType(Const.ITEM_Long, -1, null);
+        case Const.T_DOUBLE:
+            return new StackMapType(Const.ITEM_Double, -1, null);
+        case Const.T_ARRAY:
+            return new StackMapType(Const.ITEM_Object, cp.addArrayClass((ArrayType) type), null);
+        case Const.T_OBJECT:
+            if (type instanceof Uninitialized) {
+                final InstructionHandle newHandle = ((Uninitialized) type).newHandle;
+                return newHandle == null ? new StackMapType(Const.ITEM_InitObject, -1, null)
+                    : new StackMapType(Const.ITEM_NewObject, newHandle.getPosition(), null);
+            }
+            if (type instanceof ObjectType) {
+                return new StackMapType(Const.ITEM_Object, cp.addClass((ObjectType) type), null);
+            }
+            return new StackMapType(Const.ITEM_Null, -1, null); // Type.NULL
+        default:
+            return new StackMapType(Const.ITEM_Bogus, -1, null);
+        }
+    }
+}
@@ -29,6 +29,7 @@ import java.util.regex.Pattern;
 
 import org.apache.bcel.Const;
 import org.apache.bcel.generic.ClassGenException;
+import org.apache.bcel.generic.CompactInstructionList;
 import org.apache.bcel.generic.InstructionHandle;
 import org.apache.bcel.generic.InstructionList;
 import org.apache.commons.lang3.StringUtils;
@@ -233,7 +234,9 @@ public class InstructionFinder {
         return buf.toString();
     }
 
-    private final InstructionList il;
+    private final CompactInstructionList code;
+
+    private InstructionList il;
 
     private String ilString; // instruction list as string
 
@@ -241,22 +244,45 @@ public class InstructionFinder {
 
     // list to array
 
+    /**
+     * Constructs an InstructionFinder for a compact instruction list. The instruction handles are only created if a search that returns handles is made,
+     * {@link #searchIndices(String)} does not need them.
+     *
+     * @param code compact instruction list to search for given patterns.
+     * @since 6.13.0
+     */
+    public InstructionFinder(final CompactInstructionList code) {
+        this.code = code;
+        final int size = code.getLength();
+        final char[] buf = new char[size];
+        for (int i = 0; i < size; i++) {
+            buf[i] = makeChar(code.getOpcode(i));
+        }
+        ilString = new String(buf);
+    }
+
     /**
      * Constructs an InstructionFinder.
      *
      * @param il instruction list to search for given patterns.
      */
     public InstructionFinder(final InstructionList il) {
+        this.code = null;
         this.il = il;
         reread();
     }
 
     /**
-     * Gets the inquired instruction list.
+     * Gets the inquired instruction list. If this finder was constructed for a compact instruction list, the instruction list is created from it on the
+     * first call.
      *
      * @return The inquired instruction list.
      */
     public final InstructionList getInstructionList() {
+        if (il == null) {
+            il = code.toInstructionList();
+            reread();
+        }
         return il;
     }
 
@@ -271,7 +297,7 @@ public class InstructionFinder {
      * Reread the instruction list, for example, after you've altered the list upon a match.
      */
     public final void reread() {
-        final int size = il.getLength();
+        final int size = getInstructionList().getLength();
         final char[] buf = new char[size]; // Create a string with length equal to il length
         handles = il.getInstructionHandles();
         // Map opcodes to characters
@@ -288,7 +314,7 @@ public class InstructionFinder {
      * @return iterator of matches where e.nextElement() returns an array of instruction handles describing the matched area.
      */
     public final Iterator<InstructionHandle[]> search(final String pattern) {
-        return search(pattern, il.getStart(), null);
+        return search(pattern, getInstructionList().getStart(), null);
     }
 
     /**
@@ -299,7 +325,7 @@ public class InstructionFinder {
      * @return instruction handle or 'null' if the match failed.
      */
     public final Iterator<InstructionHandle[]> search(final String pattern, final CodeConstraint constraint) {
-        return search(pattern, il.getStart(), constraint);
+        return search(pattern, getInstructionList().getStart(), constraint);
     }
 
     /**
@@ -342,6 +368,7 @@ public class InstructionFinder {
      */
     public final Iterator<InstructionHandle[]> search(final String pattern, final InstructionHandle from, final CodeConstraint constraint) {
         final String search = compilePattern(pattern);
+        getInstructionList();
         int start = -1;
         for (int i = 0; i < handles.length; i++) {
             if (handles[i] == from) {
@@ -368,6 +395,25 @@ public class InstructionFinder {
         return matches.iterator();
     }
 
+    /**
+     * Searches for the given pattern like {@link #search(String)}, but returns instruction indices instead of instruction handles, so that a compact
+     * instruction list is searched without creating handles.
+     *
+     * @param pattern The instruction pattern to search for, where case is ignored.
+     * @return iterator of matches, each an array of two elements: the index of the first matched instruction and the number of matched instructions.
+     * @since 6.13.0
+     */
+    public final Iterator<int[]> searchIndices(final String pattern) {
+        final Matcher matcher = Pattern.compile(compilePattern(pattern)).matcher(ilString);
+        final List<int[]> matches = new ArrayList<>();
+        int start = 0;
+        while (start < ilString.length() && matcher.find(start)) {
+            matches.add(new int[] {matcher.start(), matcher.end() - matcher.start()});
+            start = matcher.end();
+        }
+        return matches.iterator();
+    }
+
     /*
      * Internal debugging routines.
      */
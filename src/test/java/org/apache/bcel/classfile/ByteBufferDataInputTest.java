@@ -0,0 +1,45 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.classfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+class ByteBufferDataInputTest {
+
+    @Test
+    void testReadLine() throws IOException {
+        final byte[] bytes = "one\ntwo\r\nthree\rfour\r\r\né\n".getBytes(StandardCharsets.ISO_8859_1);
+        final ByteBufferDataInput input = new ByteBufferDataInput(ByteBuffer.wrap(bytes));
+        @SuppressWarnings("deprecation")
+        final DataInputStream expected = new DataInputStream(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < 8; i++) {
+            @SuppressWarnings("deprecation")
+            final String line = expected.readLine();
+            assertEquals(line, input.readLine());
+        }
+    }
+}
@@ -19,8 +19,31 @@
 
 package org.apache.bcel.classfile;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.bcel.generic.InstructionList;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -28,8 +51,196 @@ import org.junit.jupiter.api.Test;
  */
 class ClassParserTest {
 
+    /**
+     * Records the components of a class in visiting order.
+     */
+    private static final class RecordingVisitor extends EmptyVisitor {
+
+        private final List<String> events = new ArrayList<>();
+
+        @Override
+        public void visitCode(final Code obj) {
+            events.add("code " + obj.getCode().length);
+        }
+
+        @Override
+        public void visitConstantUtf8(final ConstantUtf8 obj) {
+            events.add("utf8 " + obj.getBytes());
+        }
+
+        @Override
+        public void visitField(final Field obj) {
+            events.add("field " + obj.getName());
+        }
+
+        @Override
+        public void visitJavaClass(final JavaClass obj) {
+            events.add("class " + obj.getClassName());
+        }
+
+        @Override
+        public void visitLineNumber(final LineNumber obj) {
+            events.add("line " + obj.getLineNumber());
+        }
+
+        @Override
+        public void visitMethod(final Method obj) {
+            events.add("method " + obj.getName());
+        }
+
+        @Override
+        public void visitSourceFile(final SourceFile obj) {
+            events.add("source " + obj.getSourceFileName());
+        }
+    }
+
+
+    private static final Path SIMPLE_RECORD = Paths.get("src/test/resources/record/SimpleRecord.class");
+
+    private static void assertSameClass(final JavaClass expected, final JavaClass actual) {
+        assertEquals(expected.getClassName(), actual.getClassName());
+        assertEquals(expected.getSuperclassName(), actual.getSuperclassName());
+        assertEquals(expected.getMethods().length, actual.getMethods().length);
+        assertEquals(expected.toString(), actual.toString());
+        assertArrayEquals(expected.getBytes(), actual.getBytes());
+    }
+
+    private static List<String> members(final RecordingVisitor visitor) {
+        return visitor.events.stream().filter(e -> e.startsWith("field ") || e.startsWith("method ")).collect(Collectors.toList());
+    }
+
+    @Test
+    void testAccept() throws Exception {
+        final JavaClass clazz = new ClassParser(SIMPLE_RECORD).parse();
+        final RecordingVisitor expected = new RecordingVisitor();
+        new DescendingVisitor(clazz, expected).visit();
+        final RecordingVisitor actual = new RecordingVisitor();
+        final int[] instructions = new int[1];
+        final org.apache.bcel.generic.Visitor instructionVisitor = (org.apache.bcel.generic.Visitor) Proxy.newProxyInstance(getClass().getClassLoader(),
+            new Class<?>[] { org.apache.bcel.generic.Visitor.class }, (proxy, method, args) -> {
+                if (method.getName().equals("visit" + args[0].getClass().getSimpleName())) {
+                    instructions[0]++;
+                }
+                return null;
+            });
+        new ClassParser(SIMPLE_RECORD).accept(actual, instructionVisitor, new ParseOptions());
+        // Same components, but the constant pool comes first, as in the class file
+        assertEquals(expected.events.get(0), actual.events.get(0));
+        assertEquals(expected.events.size(), actual.events.size());
+        assertEquals(new HashSet<>(expected.events), new HashSet<>(actual.events));
+        assertEquals(members(expected), members(actual));
+        int expectedInstructions = 0;
+        for (final Method method : clazz.getMethods()) {
+            if (method.getCode() != null) {
+                expectedInstructions += new InstructionList(method.getCode().getCode()).getLength();
+            }
+        }
+        assertEquals(expectedInstructions, instructions[0]);
+        // Skipped attributes are not visited
+        final RecordingVisitor skipping = new RecordingVisitor();
+        final ParseOptions options = new ParseOptions();
+        options.setSkipCode(true);
+        new ClassParser(SIMPLE_RECORD).accept(skipping, instructionVisitor, options);
+        assertTrue(skipping.events.stream().noneMatch(e -> e.startsWith("code ") || e.startsWith("line ")));
+    }
+
+    @Test
+    void testParseAllDirectory() throws Exception {
+        final List<String> names = new ArrayList<>();
+        final List<String> errors = new ArrayList<>();
+        ClassParser.parseAll(Paths.get("src/test/resources/org/apache/commons/bcel"), ForkJoinPool.commonPool(), c -> names.add(c.getClassName()),
+            (name, e) -> {
+                assertInstanceOf(ClassFormatException.class, e);
+                errors.add(name);
+            });
+        assertEquals(Collections.emptyList(), names);
+        assertEquals(Collections.singletonList("classfile/CodeCtor.class"), errors);
+    }
+
+    @Test
+    void testParseAllJar() throws Exception {
+        final Path jar = Paths.get("src/test/resources/sealed/sealed-demo-jdk21.0.8.jar");
+        final List<String> expected = Arrays.asList("org.jd.core.v1.SealedDemo$Circle", "org.jd.core.v1.SealedDemo$Rectangle",
+            "org.jd.core.v1.SealedDemo$Shape", "org.jd.core.v1.SealedDemo");
+        final List<String> ordered = new ArrayList<>();
+        ClassParser.parseAll(jar, ForkJoinPool.commonPool(), new ParseOptions(), true, c -> ordered.add(c.getClassName()), (name, e) -> fail(name));
+        assertEquals(expected, ordered);
+        final List<String> unordered = new ArrayList<>();
+        ClassParser.parseAll(jar, ForkJoinPool.commonPool(), c -> unordered.add(c.getClassName()), (name, e) -> fail(name));
+        assertEquals(new HashSet<>(expected), new HashSet<>(unordered));
+        assertEquals(expected.size(), unordered.size());
+    }
+
+    @Test
+    void testParseAllJmod() throws Exception {
+        final List<JavaClass> classes = new ArrayList<>();
+        ClassParser.parseAll(Paths.get("src/test/resources/jpms/empty/empty.jmod"), Runnable::run, classes::add, (name, e) -> fail(name));
+        assertEquals(1, classes.size());
+        assertEquals("module-info", classes.get(0).getClassName());
+        assertEquals("classes/module-info.class", classes.get(0).getFileName());
+    }
+
+    @Test
+    void testParseByteBuffer() throws Exception {
+        final byte[] bytes = Files.readAllBytes(SIMPLE_RECORD);
+        final JavaClass expected = new ClassParser(new ByteArrayInputStream(bytes), "SimpleRecord.class").parse();
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        assertSameClass(expected, new ClassParser(buffer, "SimpleRecord.class").parse());
+        // The caller's buffer is left untouched
+        assertEquals(0, buffer.position());
+        final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length + 3);
+        direct.put(new byte[3]).put(bytes).position(3);
+        assertSameClass(expected, new ClassParser(direct, "SimpleRecord.class").parse());
+    }
+
     @Test
     void testParseInvalidClass() {
         assertThrows(ClassFormatException.class, () -> new ClassParser("src/test/resources/org/apache/commons/bcel/classfile/CodeCtor.class").parse());
     }
+
+    @Test
+    void testParseMappedFile() throws Exception {
+        final JavaClass expected = new ClassParser(SIMPLE_RECORD.toString()).parse();
+        final JavaClass actual = new ClassParser(SIMPLE_RECORD).parse();
+        assertSameClass(expected, actual);
+        assertEquals(SIMPLE_RECORD.toString(), actual.getFileName());
+    }
+
+    @Test
+    void testReadSummary() throws Exception {
+        try (Stream<Path> paths = Files.list(Paths.get("target/test-classes/org/apache/bcel/data"))) {
+            for (final Path path : (Iterable<Path>) paths.filter(p -> p.toString().endsWith(".class"))::iterator) {
+                final JavaClass expected = new ClassParser(path.toString()).parse();
+                final ClassSummary actual = new ClassParser(path).readSummary();
+                assertEquals(expected.getClassName(), actual.getClassName());
+                assertEquals(expected.getSuperclassName(), actual.getSuperclassName());
+                assertArrayEquals(expected.getInterfaceNames(), actual.getInterfaceNames());
+                assertEquals(expected.getAccessFlags(), actual.getAccessFlags());
+                assertEquals(expected.getMajor(), actual.getMajor());
+                assertEquals(expected.getMinor(), actual.getMinor());
+                assertEquals(path.toString(), actual.getFileName());
+            }
+        }
+    }
+
+    @Test
+    void testReadSummaryStopsAfterInterfaces() throws Exception {
+        final JavaClass expected = new ClassParser(SIMPLE_RECORD.toString()).parse();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(SIMPLE_RECORD))) {
+            final ClassSummary summary = new ClassParser(in, "SimpleRecord.class").readSummary();
+            assertEquals("SimpleRecord", summary.getClassName());
+            assertEquals("java.lang.Record", summary.getSuperclassName());
+            assertEquals(0, summary.getInterfaceNames().length);
+            assertEquals("public final class SimpleRecord extends java.lang.Record", summary.toString());
+            // The stream is left at the fields count
+            assertEquals(expected.getFields().length, in.readUnsignedShort());
+        }
+    }
+
+    @Test
+    void testParseTruncatedByteBuffer() throws Exception {
+        final byte[] bytes = Files.readAllBytes(SIMPLE_RECORD);
+        final byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+        assertThrows(EOFException.class, () -> new ClassParser(ByteBuffer.wrap(truncated), "SimpleRecord.class").parse());
+    }
 }
@@ -19,7 +19,20 @@
 
 package org.apache.bcel.classfile;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.apache.bcel.Const;
 import org.apache.bcel.util.SyntheticRepository;
@@ -27,6 +40,76 @@ import org.junit.jupiter.api.Test;
 
 public class CodeTest {
 
+    private static final Path CLASS_FILE = Paths.get("target/test-classes/org/apache/bcel/classfile/CodeTest.class");
+
+    @Test
+    void testDecodeCode() throws Exception {
+        final byte[] bytes = Files.readAllBytes(CLASS_FILE);
+        final JavaClass eager = new ClassParser(new ByteArrayInputStream(bytes), "CodeTest.class").parse();
+        final ParseOptions options = new ParseOptions();
+        options.setLazyCode(true);
+        final byte[] buffer = bytes.clone();
+        final JavaClass lazy = new ClassParser(ByteBuffer.wrap(buffer), "CodeTest.class").parse(options);
+        lazy.decodeCode();
+        // The decoded class no longer refers to the buffer
+        Arrays.fill(buffer, (byte) 0);
+        for (int i = 0; i < lazy.getMethods().length; i++) {
+            assertFalse(lazy.getMethods()[i].getCode().isDeferred());
+            assertEquals(eager.getMethods()[i].getCode().toString(), lazy.getMethods()[i].getCode().toString());
+        }
+        assertArrayEquals(bytes, lazy.getBytes());
+    }
+
+    @Test
+    void testLazyCode() throws Exception {
+        final byte[] bytes = Files.readAllBytes(CLASS_FILE);
+        final JavaClass eager = new ClassParser(new ByteArrayInputStream(bytes), "CodeTest.class").parse();
+        final ParseOptions options = new ParseOptions();
+        options.setLazyCode(true);
+        for (final JavaClass lazy : new JavaClass[] { new ClassParser(new ByteArrayInputStream(bytes), "CodeTest.class").parse(options),
+                new ClassParser(ByteBuffer.wrap(bytes), "CodeTest.class").parse(options), new ClassParser(CLASS_FILE).parse(options) }) {
+            final Method[] methods = lazy.getMethods();
+            for (final Method method : methods) {
+                assertTrue(method.getCode().isDeferred());
+            }
+            // Undecoded bodies are written back as they were read
+            assertArrayEquals(bytes, lazy.getBytes());
+            final Code code = methods[1].getCode();
+            final Code copy = (Code) code.copy(lazy.getConstantPool());
+            assertTrue(copy.isDeferred());
+            assertNotNull(code.getLineNumberTable());
+            assertFalse(code.isDeferred());
+            assertTrue(copy.isDeferred());
+            for (int i = 0; i < methods.length; i++) {
+                final Code expected = eager.getMethods()[i].getCode();
+                assertEquals(expected.getLength(), methods[i].getCode().getLength());
+                assertEquals(expected.toString(), methods[i].getCode().toString());
+                assertArrayEquals(expected.getCode(), methods[i].getCode().getCode());
+            }
+            assertEquals(copy.toString(), code.toString());
+            assertArrayEquals(bytes, lazy.getBytes());
+        }
+    }
+
+    @Test
+    void testLazyCodeReadsClassFileOnly() throws Exception {
+        final byte[] bytes = Files.readAllBytes(CLASS_FILE);
+        final byte[] trailer = { 1, 2, 3 };
+        final byte[] input = Arrays.copyOf(bytes, bytes.length + trailer.length);
+        System.arraycopy(trailer, 0, input, bytes.length, trailer.length);
+        final ParseOptions options = new ParseOptions();
+        options.setLazyCode(true);
+        try (DataInputStream stream = new DataInputStream(new ByteArrayInputStream(input))) {
+            final JavaClass lazy = new ClassParser(stream, "CodeTest.class").parse(options);
+            assertTrue(lazy.getMethods()[0].getCode().isDeferred());
+            // The bytes following the class file are left in the stream
+            final byte[] rest = new byte[trailer.length];
+            stream.readFully(rest);
+            assertArrayEquals(trailer, rest);
+            assertArrayEquals(bytes, lazy.getBytes());
+        }
+    }
+
     @Test
     void testSetCode() throws ClassNotFoundException {
         assertThrows(ClassFormatException.class,
@@ -19,12 +19,24 @@
 
 package org.apache.bcel.classfile;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.bcel.AbstractTest;
 import org.apache.bcel.Const;
@@ -102,6 +114,38 @@ class ConstantPoolTest extends AbstractTest {
         }
     }
 
+    @Test
+    void testClassWithLongConstantPoolItemLazy() throws IOException {
+        final byte[] bytes = Files.readAllBytes(Paths.get("target/test-classes/org/apache/bcel/classfile/ClassWithLongConstantPoolItem.class"));
+        final JavaClass eager = new ClassParser(new ByteArrayInputStream(bytes), "ClassWithLongConstantPoolItem.class").parse();
+        final ParseOptions options = new ParseOptions();
+        options.setLazyConstantPool(true);
+        for (final JavaClass lazy : new JavaClass[] { new ClassParser(new ByteArrayInputStream(bytes), "ClassWithLongConstantPoolItem.class").parse(options),
+                new ClassParser(ByteBuffer.wrap(bytes), "ClassWithLongConstantPoolItem.class").parse(options) }) {
+            final ConstantPool pool = lazy.getConstantPool();
+            assertTrue(pool.isLazy());
+            assertEquals(eager.getConstantPool().getLength(), pool.getLength());
+            assertEquals(eager.getClassName(), lazy.getClassName());
+            // Unread entries are written back as they were read
+            assertArrayEquals(bytes, lazy.getBytes());
+            for (int i = 1; i < pool.getLength(); i++) {
+                final Constant constant = pool.getConstant(i);
+                assertEquals(eager.getConstantPool().getConstant(i), constant);
+                if (constant instanceof ConstantLong) {
+                    assertEquals(42L, ((ConstantLong) constant).getBytes());
+                    final int unused = i + 1;
+                    assertThrows(ClassFormatException.class, () -> pool.getConstant(unused));
+                    i++;
+                }
+            }
+            assertEquals(eager.getConstantPool().toString(), pool.toString());
+            assertArrayEquals(bytes, lazy.getBytes());
+            pool.getConstantPool();
+            assertFalse(pool.isLazy());
+            assertArrayEquals(bytes, lazy.getBytes());
+        }
+    }
+
     @Test
     void testConstantToString() throws ClassNotFoundException {
         final JavaClass clazz = getTestJavaClass(PACKAGE_BASE_NAME + ".data.SimpleClassWithDefaultConstructor");
@@ -130,6 +174,41 @@ class ConstantPoolTest extends AbstractTest {
         }
     }
 
+    @Test
+    void testLazyConcurrentReads() throws Exception {
+        final byte[] bytes = Files.readAllBytes(Paths.get("target/test-classes/org/apache/bcel/classfile/ConstantPoolTest.class"));
+        final Constant[] expected = new ClassParser(ByteBuffer.wrap(bytes), "ConstantPoolTest.class").parse().getConstantPool().getConstantPool();
+        final ParseOptions options = new ParseOptions();
+        options.setLazyConstantPool(true);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (int round = 0; round < 20; round++) {
+                final JavaClass lazy = new ClassParser(ByteBuffer.wrap(bytes), "ConstantPoolTest.class").parse(options);
+                final List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    final int thread = t;
+                    futures.add(executor.submit(() -> {
+                        if (thread == 0) {
+                            lazy.getConstantPool().getConstantPool();
+                        }
+                        for (int i = 1; i < expected.length; i++) {
+                            if (expected[i] != null) {
+                                assertEquals(expected[i].toString(), lazy.getConstantPool().getConstant(i).toString());
+                            }
+                        }
+                        assertArrayEquals(bytes, lazy.getBytes());
+                        return null;
+                    }));
+                }
+                for (final Future<?> future : futures) {
+                    future.get();
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     void testTooManyConstants() throws ClassNotFoundException {
         final JavaClass clazz = getTestJavaClass(PACKAGE_BASE_NAME + ".data.SimpleClassWithDefaultConstructor");
@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bcel.classfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ConstantUtf8}.
+ */
+class ConstantUtf8Test {
+
+    @Test
+    void testCacheConcurrently() throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 10_000; i++) {
+                        final String value = "concurrent" + i % 500;
+                        assertEquals(value, ConstantUtf8.getInstance(value).getBytes());
+                    }
+                }));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testCacheEviction() {
+        ConstantUtf8.clearCache();
+        final long evictions = ConstantUtf8.getCacheEvictionCount();
+        final List<ConstantUtf8> live = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            live.add(ConstantUtf8.getInstance("evict" + i));
+        }
+        // The cache is bounded, so most of these live instances have been replaced
+        assertTrue(ConstantUtf8.getCacheEvictionCount() - evictions > 50_000);
+        assertEquals("evict0", live.get(0).getBytes());
+    }
+
+    @Test
+    void testCacheHit() {
+        ConstantUtf8.clearCache();
+        final long hits = ConstantUtf8.getCacheHitCount();
+        final long misses = ConstantUtf8.getCacheMissCount();
+        final ConstantUtf8 first = ConstantUtf8.getInstance("java/lang/Object");
+        assertEquals(misses + 1, ConstantUtf8.getCacheMissCount());
+        final ConstantUtf8 second = ConstantUtf8.getInstance(new String("java/lang/Object"));
+        assertSame(first, second);
+        assertEquals(hits + 1, ConstantUtf8.getCacheHitCount());
+        ConstantUtf8.clearCache();
+        assertNotSame(first, ConstantUtf8.getInstance("java/lang/Object"));
+    }
+
+    @Test
+    void testLargeValuesAreNotCached() {
+        final String value = StringUtils.repeat('x', 1000);
+        final long misses = ConstantUtf8.getCacheMissCount();
+        assertNotSame(ConstantUtf8.getInstance(value), ConstantUtf8.getInstance(value));
+        assertEquals(misses, ConstantUtf8.getCacheMissCount());
+    }
+}
@@ -19,16 +19,22 @@
 
 package org.apache.bcel.classfile;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
 
 import org.apache.bcel.Const;
 import org.apache.bcel.Repository;
@@ -39,6 +45,7 @@ import org.apache.bcel.generic.MethodGen;
 import org.apache.bcel.generic.Type;
 import org.apache.bcel.util.ClassPath;
 import org.apache.bcel.util.SyntheticRepository;
+import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.SystemProperties;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -144,6 +151,50 @@ class JavaClassTest {
         return Repository.lookupClass(clazz.getName()).findField("nonExistentField", Type.INT);
     }
 
+    @Test
+    void testDumpByteBufferOverflow() throws Exception {
+        final JavaClass clazz = Repository.lookupClass(JavaClassTest.class);
+        final ByteBuffer buffer = ByteBuffer.allocate(clazz.getBytes().length - 1);
+        assertThrows(BufferOverflowException.class, () -> clazz.dump(buffer));
+        assertEquals(0, buffer.position());
+    }
+
+    @Test
+    void testDumpInconsistentAttributeLength() throws Exception {
+        final JavaClass clazz = Repository.lookupClass(JavaClassTest.class).copy();
+        final byte[] expected = clazz.getBytes();
+        final ConstantPool cp = clazz.getConstantPool();
+        final int nameIndex = cp.getConstant(clazz.getClassNameIndex(), ConstantClass.class).getNameIndex();
+        // Writes 4 bytes more than its length of 0
+        final Attribute attribute = new Attribute(Const.ATTR_UNKNOWN, nameIndex, 0, cp) {
+            @Override
+            public void accept(final Visitor v) {
+                // empty
+            }
+
+            @Override
+            public Attribute copy(final ConstantPool constantPool) {
+                return this;
+            }
+
+            @Override
+            public void dump(final DataOutputStream file) throws IOException {
+                super.dump(file);
+                file.writeInt(0);
+            }
+        };
+        clazz.setAttributes(ArrayUtils.add(clazz.getAttributes(), attribute));
+        final byte[] bytes = clazz.getBytes();
+        assertEquals(expected.length + 10, bytes.length);
+        final ByteBuffer small = ByteBuffer.allocate(expected.length + 6);
+        assertThrows(BufferOverflowException.class, () -> clazz.dump(small));
+        assertEquals(0, small.position());
+        final ByteBuffer large = ByteBuffer.allocate(bytes.length + 1);
+        clazz.dump(large);
+        assertEquals(bytes.length, large.position());
+        assertArrayEquals(bytes, Arrays.copyOf(large.array(), bytes.length));
+    }
+
     @Test
     void testFindFieldCustomClass() throws Exception {
         final byte[] classABytes = createClass("CyclicClassA", "CyclicClassB");
@@ -223,6 +274,26 @@ class JavaClassTest {
         assertNotNull(Repository.lookupClass(clazz.getName()).getAllInterfaces());
     }
 
+    @ParameterizedTest
+    @MethodSource("org.apache.bcel.Java8PublicClasses#getAll")
+    void testGetBytes(final Class<?> clazz) throws Exception {
+        final JavaClass javaClass = Repository.lookupClass(clazz);
+        final byte[] bytes = javaClass.getBytes();
+        // The array is allocated with the exact size up front
+        assertEquals(javaClass.getByteCount(), bytes.length);
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        javaClass.dump(baos);
+        assertArrayEquals(baos.toByteArray(), bytes);
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length + 4);
+        buffer.position(2);
+        javaClass.dump(buffer);
+        assertEquals(bytes.length + 2, buffer.position());
+        final byte[] dumped = new byte[bytes.length];
+        buffer.position(2);
+        buffer.get(dumped);
+        assertArrayEquals(bytes, dumped);
+    }
+
     @ParameterizedTest
     @MethodSource("org.apache.bcel.Java8PublicClasses#getAll")
     void testGetSuperClassesAll(final Class<?> clazz) throws ClassNotFoundException {
@@ -0,0 +1,88 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bcel.classfile;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ModifiedUtf8}.
+ */
+class ModifiedUtf8Test {
+
+    private static final String[] VALUES = { "", "java/lang/Object", "(Ljava/lang/String;)V", "café", "\u0000", "a\u0000b", "中文",
+        "😀 smile", "mixed ASCII then ÿĀ߿ࠀ￿" };
+
+    private static byte[] encode(final String value) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream dataOut = new DataOutputStream(out)) {
+            dataOut.writeUTF(value);
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    void testDecode() throws IOException {
+        for (final String value : VALUES) {
+            final byte[] bytes = encode(value);
+            assertEquals(value, ModifiedUtf8.readUTF(new DataInputStream(new ByteArrayInputStream(bytes))));
+            assertEquals(value, ModifiedUtf8.readUTF(new ByteBufferDataInput(ByteBuffer.wrap(bytes))));
+            final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes).flip();
+            assertEquals(value, ModifiedUtf8.readUTF(new ByteBufferDataInput(direct)));
+            assertEquals(value, ConstantUtf8.getInstance(new DataInputStream(new ByteArrayInputStream(bytes))).getBytes());
+        }
+    }
+
+    @Test
+    void testDecodeInPlace() throws IOException {
+        final byte[] bytes = encode("Code");
+        final byte[] padded = new byte[bytes.length + 4];
+        System.arraycopy(bytes, 0, padded, 2, bytes.length);
+        final ByteBufferDataInput dataInput = new ByteBufferDataInput(ByteBuffer.wrap(padded, 2, bytes.length + 2));
+        assertEquals("Code", dataInput.readUTF());
+        assertEquals(bytes.length, dataInput.getPosition());
+    }
+
+    @Test
+    void testMalformed() {
+        // Continuation byte without lead byte, truncated two and three byte sequences, bad continuation byte, four byte form
+        final byte[][] malformed = { { 'a', (byte) 0x80 }, { 'a', (byte) 0xC3 }, { (byte) 0xE4, (byte) 0xB8 }, { (byte) 0xC3, 'a' },
+            { (byte) 0xF0, (byte) 0x9F, (byte) 0x98, (byte) 0x80 } };
+        for (final byte[] bytes : malformed) {
+            final byte[] encoded = new byte[bytes.length + 2];
+            encoded[1] = (byte) bytes.length;
+            System.arraycopy(bytes, 0, encoded, 2, bytes.length);
+            assertThrows(UTFDataFormatException.class, () -> new DataInputStream(new ByteArrayInputStream(encoded)).readUTF());
+            assertThrows(UTFDataFormatException.class, () -> ModifiedUtf8.readUTF(new DataInputStream(new ByteArrayInputStream(encoded))));
+            assertThrows(UTFDataFormatException.class, () -> ModifiedUtf8.readUTF(new ByteBufferDataInput(ByteBuffer.wrap(encoded))));
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.bcel.classfile;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.generic.ClassGen;
+import org.apache.bcel.generic.ConstantPoolGen;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ParseOptions}.
+ */
+class ParseOptionsTest {
+
+    private static final String ANNOTATED_CLASS = "target/test-classes/org/apache/bcel/data/SimpleAnnotatedClass.class";
+
+    private static JavaClass parse(final ParseOptions options) throws IOException {
+        return new ClassParser(new ByteArrayInputStream(Files.readAllBytes(Paths.get(ANNOTATED_CLASS))), ANNOTATED_CLASS).parse(options);
+    }
+
+    private static byte[] classWithCustomAttribute() {
+        final ClassGen classGen = new ClassGen("Custom", "java.lang.Object", "Custom.java", Const.ACC_PUBLIC, null);
+        final ConstantPoolGen cp = classGen.getConstantPool();
+        classGen.addAttribute(new Unknown(cp.addUtf8("Custom"), 3, new byte[] { 1, 2, 3 }, cp.getConstantPool()));
+        classGen.addAttribute(new Unknown(cp.addUtf8("Other"), 1, new byte[] { 4 }, cp.getConstantPool()));
+        return classGen.getJavaClass().getBytes();
+    }
+
+    private static int firstLine(final JavaClass clazz) {
+        return clazz.getMethods()[0].getLineNumberTable().getLineNumberTable()[0].getLineNumber();
+    }
+
+    private static JavaClass reparse(final JavaClass clazz) throws IOException {
+        return new ClassParser(ByteBuffer.wrap(clazz.getBytes()), ANNOTATED_CLASS).parse();
+    }
+
+    private static List<String> names(final JavaClass clazz) {
+        return Stream.of(clazz.getAttributes()).map(Attribute::getName).collect(Collectors.toList());
+    }
+
+    @Test
+    void testAttributeReader() throws IOException {
+        final byte[] bytes = classWithCustomAttribute();
+        final AtomicInteger calls = new AtomicInteger();
+        final ParseOptions options = new ParseOptions();
+        options.setSkipUnknownAttributes(true);
+        options.addAttributeReader("Custom", (nameIndex, length, dataInput, constantPool) -> {
+            calls.incrementAndGet();
+            final byte[] data = new byte[length];
+            try {
+                dataInput.readFully(data);
+            } catch (final IOException e) {
+                throw new ClassFormatException(e);
+            }
+            return new Unknown(nameIndex, length, data, constantPool);
+        });
+        assertNotNull(options.getAttributeReader("Custom"));
+        // The reader is used, and its attribute is not skipped as an unknown one
+        final JavaClass clazz = new ClassParser(ByteBuffer.wrap(bytes), "Custom.class").parse(options);
+        assertEquals(1, calls.get());
+        assertEquals(Arrays.asList("SourceFile", "Custom"), names(clazz));
+        // Other parsers do not see the reader
+        assertEquals(Arrays.asList("SourceFile", "Custom", "Other"), names(new ClassParser(ByteBuffer.wrap(bytes), "Custom.class").parse()));
+        assertEquals(1, calls.get());
+        options.removeAttributeReader("Custom");
+        assertNull(options.getAttributeReader("Custom"));
+        assertEquals(Arrays.asList("SourceFile"), names(new ClassParser(ByteBuffer.wrap(bytes), "Custom.class").parse(options)));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testDefaults() throws IOException {
+        final JavaClass clazz = parse(new ParseOptions());
+        assertEquals(1, clazz.getAnnotationEntries().length);
+        assertEquals("SimpleAnnotatedClass.java", clazz.getSourceFileName());
+        assertNotNull(clazz.getMethods()[0].getCode());
+        assertNotNull(clazz.getMethods()[0].getLineNumberTable());
+        assertArrayEquals(Files.readAllBytes(Paths.get(ANNOTATED_CLASS)), clazz.getBytes());
+    }
+
+    @Test
+    void testRetainAttributeBytes() throws IOException {
+        final ParseOptions options = new ParseOptions();
+        options.setRetainAttributeBytes(true);
+        final JavaClass clazz = parse(options);
+        assertArrayEquals(Files.readAllBytes(Paths.get(ANNOTATED_CLASS)), clazz.getBytes());
+        final LineNumberTable lineNumberTable = clazz.getMethods()[0].getLineNumberTable();
+        final LineNumber lineNumber = lineNumberTable.getLineNumberTable()[0];
+        final int line = lineNumber.getLineNumber();
+        // Changes made in place are not noticed, so the original bytes are written
+        lineNumber.setLineNumber(line + 100);
+        assertEquals(line, firstLine(reparse(clazz)));
+        // The setter drops the original bytes of the table and thus of its Code attribute
+        lineNumberTable.setLineNumberTable(lineNumberTable.getLineNumberTable());
+        assertEquals(line + 100, firstLine(reparse(clazz)));
+    }
+
+    @Test
+    void testRetainAttributeBytesConstantPool() throws IOException {
+        final ParseOptions options = new ParseOptions();
+        options.setRetainAttributeBytes(true);
+        final JavaClass clazz = parse(options);
+        final LineNumber lineNumber = clazz.getMethods()[0].getLineNumberTable().getLineNumberTable()[0];
+        final int line = lineNumber.getLineNumber();
+        // Not noticed, so this shows whether the original bytes are written
+        lineNumber.setLineNumber(line + 100);
+        // A pool built by ConstantPoolGen holds the same constants at the original indices
+        final ClassGen classGen = new ClassGen(clazz);
+        final ConstantPoolGen cp = classGen.getConstantPool();
+        cp.addUtf8("Added");
+        assertEquals(line, firstLine(reparse(classGen.getJavaClass())));
+        // Unless some are replaced
+        cp.setConstant(1, cp.getConstant(1).copy());
+        assertEquals(line + 100, firstLine(reparse(classGen.getJavaClass())));
+        // Entries replaced in the pool of the attribute are noticed as well
+        assertEquals(line, firstLine(reparse(clazz)));
+        clazz.getConstantPool().setConstant(1, clazz.getConstantPool().getConstant(1).copy());
+        assertEquals(line + 100, firstLine(reparse(clazz)));
+    }
+
+    @Test
+    void testSkipAnnotations() throws IOException {
+        final ParseOptions options = new ParseOptions();
+        options.setSkipAnnotations(true);
+        final JavaClass clazz = parse(options);
+        assertEquals(0, clazz.getAnnotationEntries().length);
+        assertEquals("SimpleAnnotatedClass.java", clazz.getSourceFileName());
+    }
+
+    @Test
+    void testSkipCode() throws IOException {
+        final ParseOptions options = new ParseOptions();
+        options.setSkipCode(true);
+        final JavaClass clazz = parse(options);
+        assertEquals("<init>", clazz.getMethods()[0].getName());
+        assertNull(clazz.getMethods()[0].getCode());
+        assertEquals(0, clazz.getMethods()[0].getAttributes().length);
+    }
+
+    @Test
+    void testSkipDebugInfo() throws IOException {
+        final ParseOptions options = new ParseOptions();
+        options.setSkipDebugInfo(true);
+        final JavaClass clazz = parse(options);
+        assertEquals("<Unknown>", clazz.getSourceFileName());
+        final Code code = clazz.getMethods()[0].getCode();
+        assertNull(code.getLineNumberTable());
+        assertNull(code.getLocalVariableTable());
+        // The dumped class is consistent
+        final JavaClass reparsed = new ClassParser(ByteBuffer.wrap(clazz.getBytes()), ANNOTATED_CLASS).parse();
+        assertEquals(code.toString(), reparsed.getMethods()[0].getCode().toString());
+        assertEquals(code.getLength(), reparsed.getMethods()[0].getCode().getLength());
+    }
+}
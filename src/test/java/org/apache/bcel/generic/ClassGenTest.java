@@ -19,9 +19,21 @@
 
 package org.apache.bcel.generic;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.classfile.ClassParser;
+import org.apache.bcel.classfile.ConstantValue;
+import org.apache.bcel.classfile.Field;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.apache.bcel.util.SyntheticRepository;
 import org.junit.jupiter.api.Test;
 
 /**
@@ -37,4 +49,70 @@ class ClassGenTest {
         assertFalse(ClassGen.getComparator().equals(obj, null));
         assertFalse(ClassGen.getComparator().equals(null, obj));
     }
+
+    @Test
+    void testCompactConstantPool() throws Exception {
+        final ClassGen cg = new ClassGen("p.A", "java.lang.Object", "A.java", Const.ACC_PUBLIC, new String[] {"java.lang.Runnable"});
+        final ConstantPoolGen cp = cg.getConstantPool();
+        for (int i = 0; i < 300; i++) {
+            cp.addString("dead" + i);
+        }
+        cp.addLong(42);
+        final FieldGen field = new FieldGen(Const.ACC_STATIC | Const.ACC_FINAL, Type.LONG, "f", cp);
+        field.setInitValue(7L);
+        cg.addField(field.getField());
+        final InstructionList il = new InstructionList();
+        il.append(new LDC(cp.addString("live")));
+        il.append(InstructionConst.POP);
+        il.append(new GETSTATIC(cp.addFieldref("p.A", "f", "J")));
+        il.append(InstructionConst.POP2);
+        il.append(InstructionConst.RETURN);
+        final MethodGen mg = new MethodGen(Const.ACC_PUBLIC, Type.VOID, Type.NO_ARGS, null, "run", "p.A", il, cp);
+        mg.setMaxStack();
+        final Method method = mg.getMethod();
+        final byte[] code = method.getCode().getCode();
+        assertEquals(Const.LDC_W, code[0] & 0xff);
+        cg.addMethod(method);
+
+        // Adds the interfaces to the pool
+        cg.getInterfaces();
+        final int oldSize = cp.getSize();
+        final int freed = cg.compactConstantPool();
+        final ConstantPoolGen compacted = cg.getConstantPool();
+        assertEquals(oldSize - compacted.getSize(), freed);
+        assertTrue(freed >= 302);
+        assertEquals(-1, compacted.lookupString("dead0"));
+        assertEquals(-1, compacted.lookupLong(42));
+
+        final JavaClass clazz = new ClassParser(new ByteArrayInputStream(cg.getJavaClass().getBytes()), "A.class").parse();
+        assertEquals("p.A", clazz.getClassName());
+        assertEquals("java.lang.Object", clazz.getSuperclassName());
+        assertArrayEquals(new String[] {"java.lang.Runnable"}, clazz.getInterfaceNames());
+        assertEquals("A.java", clazz.getSourceFileName());
+        final Field f = clazz.getFields()[0];
+        assertEquals("f", f.getName());
+        assertEquals("7", ((ConstantValue) f.getAttributes()[0]).toString());
+        // The code keeps its size, with the operands pointing to the same constants
+        final Method run = clazz.getMethods()[0];
+        assertEquals(code.length, run.getCode().getCode().length);
+        final InstructionList compactedList = new InstructionList(run.getCode().getCode());
+        final ConstantPoolGen parsed = new ConstantPoolGen(clazz.getConstantPool());
+        final InstructionHandle[] handles = compactedList.getInstructionHandles();
+        assertEquals("live", ((LDC) handles[0].getInstruction()).getValue(parsed));
+        assertEquals("f", ((GETSTATIC) handles[2].getInstruction()).getFieldName(parsed));
+        assertEquals(0, cg.compactConstantPool());
+    }
+
+    @Test
+    void testCompactConstantPoolKeepsAnnotations() throws Exception {
+        final JavaClass javaClass = SyntheticRepository.getInstance().loadClass("org.apache.bcel.data.ComplexAnnotatedClass");
+        final ClassGen cg = new ClassGen(javaClass);
+        final String annotations = Arrays.toString(cg.getAnnotationEntries());
+        cg.setMethods(null);
+        assertTrue(cg.compactConstantPool() > 0);
+        assertEquals(-1, cg.getConstantPool().lookupUtf8("<init>"));
+        assertEquals(annotations, Arrays.toString(cg.getAnnotationEntries()));
+        final JavaClass clazz = new ClassParser(new ByteArrayInputStream(cg.getJavaClass().getBytes()), "ComplexAnnotatedClass.class").parse();
+        assertEquals(annotations, Arrays.toString(new ClassGen(clazz).getAnnotationEntries()));
+    }
 }
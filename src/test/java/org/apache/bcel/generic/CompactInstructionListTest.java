@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.Code;
+import org.apache.bcel.classfile.CodeException;
+import org.apache.bcel.classfile.JavaClass;
+import org.apache.bcel.classfile.Method;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link CompactInstructionList}.
+ */
+class CompactInstructionListTest {
+
+    @Test
+    void testGetMaxStack() throws ClassNotFoundException {
+        final JavaClass clazz = Repository.lookupClass("java.lang.String");
+        final ConstantPoolGen cpg = new ConstantPoolGen(clazz.getConstantPool());
+        for (final Method method : clazz.getMethods()) {
+            final Code code = method.getCode();
+            if (code == null) {
+                continue;
+            }
+            final CompactInstructionList compact = new CompactInstructionList(code.getCode());
+            final CodeException[] exceptions = code.getExceptionTable();
+            final int[] handlers = new int[exceptions.length];
+            Arrays.setAll(handlers, i -> compact.indexOf(exceptions[i].getHandlerPC()));
+            final MethodGen mg = new MethodGen(method, clazz.getClassName(), cpg);
+            assertEquals(code.getMaxStack(), MethodGen.getMaxStack(cpg, compact, handlers), method.toString());
+            assertEquals(MethodGen.getMaxStack(cpg, mg.getInstructionList(), mg.getExceptionHandlers()), MethodGen.getMaxStack(cpg, compact, handlers));
+        }
+        assertThrows(ClassGenException.class, () -> MethodGen.getMaxStack(cpg, new CompactInstructionList(new byte[] {(byte) Const.RETURN}), new int[] {1}));
+    }
+
+    @Test
+    void testOperands() {
+        final ConstantPoolGen cpg = new ConstantPoolGen();
+        final InstructionList il = new InstructionList();
+        final InstructionHandle loop = il.append(new ILOAD(300));
+        il.append(new PUSH(cpg, 1000));
+        il.append(new PUSH(cpg, "constant"));
+        il.append(InstructionConst.POP);
+        final InstructionHandle last = il.append(InstructionConst.RETURN);
+        il.insert(last, new IF_ICMPLT(loop));
+        il.insert(last, new TABLESWITCH(new int[] {1, 2}, new InstructionHandle[] {loop, last}, last));
+        final CompactInstructionList code = new CompactInstructionList(il);
+        assertEquals(il.getLength(), code.getLength());
+        assertArrayEquals(il.getByteCode(), code.getByteCode());
+        assertArrayEquals(il.getInstructionPositions(), code.getPositions());
+        assertEquals(Const.ILOAD, code.getOpcode(0));
+        assertEquals(300, code.getOperand(0));
+        assertEquals(1000, code.getOperand(1));
+        assertEquals(cpg.lookupString("constant"), code.getOperand(2));
+        assertTrue(code.isBranch(4));
+        assertEquals(0, code.getOperand(4));
+        assertEquals(6, code.getOperand(5));
+        assertArrayEquals(new int[] {0, 6}, code.getTargets(5));
+        assertFalse(code.isBranch(6));
+        assertEquals(new ILOAD(300), code.getInstruction(0));
+        assertEquals(code.getPosition(6), code.getInstruction(5).getLength() + code.getPosition(5));
+        assertEquals(6, code.indexOf(code.getPosition(6)));
+        assertTrue(code.indexOf(1) < 0);
+        assertArrayEquals(code.getByteCode(), new CompactInstructionList(code.getByteCode()).getByteCode());
+    }
+
+    @Test
+    void testRoundTrip() throws ClassNotFoundException {
+        final JavaClass clazz = Repository.lookupClass("java.lang.String");
+        for (final Method method : clazz.getMethods()) {
+            final Code code = method.getCode();
+            if (code == null) {
+                continue;
+            }
+            final InstructionList il = new InstructionList(code.getCode());
+            final CompactInstructionList fromBytes = new CompactInstructionList(code.getCode());
+            final CompactInstructionList fromList = new CompactInstructionList(il);
+            assertEquals(il.getLength(), fromBytes.getLength());
+            assertArrayEquals(fromBytes.getOpcodes(), fromList.getOpcodes());
+            assertArrayEquals(fromBytes.getPositions(), fromList.getPositions());
+            final InstructionHandle[] handles = il.getInstructionHandles();
+            for (int i = 0; i < handles.length; i++) {
+                assertEquals(fromList.getOperand(i), fromBytes.getOperand(i));
+                final Instruction instruction = handles[i].getInstruction();
+                if (instruction instanceof BranchInstruction) {
+                    assertEquals(handles[fromBytes.getOperand(i)], ((BranchInstruction) instruction).getTarget());
+                }
+            }
+            assertArrayEquals(code.getCode(), fromBytes.toInstructionList().getByteCode());
+        }
+    }
+}
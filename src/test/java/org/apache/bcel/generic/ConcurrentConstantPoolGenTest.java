@@ -0,0 +1,178 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.Repository;
+import org.apache.bcel.classfile.ConstantPool;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ConcurrentConstantPoolGen}.
+ */
+class ConcurrentConstantPoolGenTest {
+
+    private static final int THREADS = 8;
+
+    private static int add(final ConstantPoolGen cpg, final int i) {
+        switch (i % 4) {
+        case 0:
+            return cpg.addMethodref("pkg.Class" + i % 7, "method" + i, "()V");
+        case 1:
+            return cpg.addString("string" + i);
+        case 2:
+            return cpg.addLong(i);
+        default:
+            return cpg.addFieldref("pkg/Class" + i % 5, "field" + i, "I");
+        }
+    }
+
+    private static MethodGen buildMethod(final ConstantPoolGen cpg, final boolean reversed) {
+        if (reversed) {
+            // Add the constants the other way round, as another thread could have done
+            cpg.addFieldref("pkg.Class1", "field1", "I");
+            cpg.addLong(42);
+            cpg.addMethodref("java.io.PrintStream", "println", "(Ljava/lang/String;)V");
+            cpg.addString("hello");
+        }
+        final InstructionFactory factory = new InstructionFactory(cpg);
+        final InstructionList il = new InstructionList();
+        il.append(new PUSH(cpg, "hello"));
+        il.append(factory.createInvoke("java.io.PrintStream", "println", Type.VOID, new Type[] {Type.STRING}, Const.INVOKEVIRTUAL));
+        il.append(new PUSH(cpg, 42L));
+        il.append(InstructionConst.POP2);
+        il.append(factory.createGetStatic("pkg.Class1", "field1", Type.INT));
+        il.append(InstructionConst.POP);
+        il.append(InstructionConst.RETURN);
+        return new MethodGen(Const.ACC_STATIC, Type.VOID, Type.NO_ARGS, null, "run", "Test", il, cpg);
+    }
+
+    private static byte[] dump(final ConstantPoolGen cpg) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        cpg.getFinalConstantPool().dump(new DataOutputStream(bytes));
+        return bytes.toByteArray();
+    }
+
+    @Test
+    void testParallelAdds() throws Exception {
+        final ConcurrentConstantPoolGen cpg = new ConcurrentConstantPoolGen();
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final List<Future<int[]>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                final long seed = t;
+                futures.add(executor.submit(() -> {
+                    final List<Integer> order = new ArrayList<>();
+                    for (int i = 0; i < 1000; i++) {
+                        order.add(Integer.valueOf(i));
+                    }
+                    Collections.shuffle(order, new Random(seed));
+                    final int[] indices = new int[order.size()];
+                    for (final Integer i : order) {
+                        indices[i.intValue()] = add(cpg, i.intValue());
+                    }
+                    return indices;
+                }));
+            }
+            final int[] expected = futures.get(0).get();
+            for (final Future<int[]> future : futures) {
+                assertArrayEquals(expected, future.get());
+            }
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], add(cpg, i));
+            }
+        } finally {
+            executor.shutdown();
+        }
+        final ConstantPoolGen sequential = new ConstantPoolGen();
+        for (int i = 0; i < 1000; i++) {
+            add(sequential, i);
+        }
+        assertEquals(sequential.getSize(), cpg.getSize());
+    }
+
+    @Test
+    void testRenumber() throws IOException {
+        final ConcurrentConstantPoolGen first = new ConcurrentConstantPoolGen();
+        final ConcurrentConstantPoolGen second = new ConcurrentConstantPoolGen();
+        final int testClass = first.addClass("Test");
+        second.addClass("Test");
+        final int start = first.getSize();
+        final MethodGen firstMethod = buildMethod(first, false);
+        final MethodGen secondMethod = buildMethod(second, true);
+        assertEquals(first.getSize(), second.getSize());
+        final ConstantPoolGen firstResult = first.renumber(start, firstMethod);
+        final ConstantPoolGen secondResult = second.renumber(start, secondMethod);
+        assertArrayEquals(dump(firstResult), dump(secondResult));
+        assertArrayEquals(firstMethod.getInstructionList().getByteCode(), secondMethod.getInstructionList().getByteCode());
+        assertSame(firstResult, firstMethod.getConstantPool());
+        assertEquals(testClass, firstResult.lookupClass("Test"));
+        final LDC ldc = (LDC) firstMethod.getInstructionList().getStart().getInstruction();
+        assertEquals("hello", ldc.getValue(firstResult));
+        assertEquals(first.getSize(), firstResult.getSize());
+    }
+
+    @Test
+    void testRenumberKeepsParsedConstants() throws ClassNotFoundException {
+        // A pool parsed from a class file refers forward, for example from a class constant to its name
+        final ConstantPool cp = Repository.lookupClass(ConstantPoolGen.class).getConstantPool();
+        final int size = cp.getLength();
+        for (final int start : new int[] {size, size / 2}) {
+            final ConstantPoolGen result = new ConcurrentConstantPoolGen(cp).renumber(start);
+            for (int i = 1; i < start; i++) {
+                assertEquals(String.valueOf(cp.getConstant(i)), String.valueOf(result.getConstant(i)), "index " + i);
+            }
+            assertEquals(size, result.getSize());
+        }
+    }
+
+    @Test
+    void testRenumberInvalidStart() {
+        final ConcurrentConstantPoolGen cpg = new ConcurrentConstantPoolGen();
+        cpg.addUtf8("test");
+        assertThrows(IllegalArgumentException.class, () -> cpg.renumber(0));
+        assertThrows(IllegalArgumentException.class, () -> cpg.renumber(cpg.getSize() + 1));
+    }
+
+    @Test
+    void testTemplate() {
+        final ConstantPoolGen template = new ConstantPoolGen();
+        final int methodref = template.addMethodref("java.lang.Object", "hashCode", "()I");
+        final ConcurrentConstantPoolGen cpg = new ConcurrentConstantPoolGen(template);
+        assertEquals(methodref, cpg.lookupMethodref("java/lang/Object", "hashCode", "()I"));
+        assertEquals(methodref, cpg.addMethodref("java.lang.Object", "hashCode", "()I"));
+        assertEquals(template.getSize(), cpg.getSize());
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import org.apache.bcel.classfile.ConstantDouble;
+import org.apache.bcel.classfile.ConstantInteger;
+import org.apache.bcel.classfile.ConstantLong;
+import org.apache.bcel.classfile.ConstantPool;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link ConstantPoolGen}.
+ */
+class ConstantPoolGenTest {
+
+    @Test
+    void testClassNameForms() {
+        final ConstantPoolGen cpg = new ConstantPoolGen();
+        final int clazz = cpg.addClass("java.lang.Object");
+        assertEquals(clazz, cpg.lookupClass("java/lang/Object"));
+        assertEquals(clazz, cpg.addClass("java/lang/Object"));
+        final int methodref = cpg.addMethodref("java.lang.Object", "hashCode", "()I");
+        assertEquals(methodref, cpg.lookupMethodref("java/lang/Object", "hashCode", "()I"));
+        assertEquals(-1, cpg.lookupMethodref("java.lang.Objects", "hashCode", "()I"));
+    }
+
+    @Test
+    void testCopiedPoolFindsFirstNumbers() {
+        final ConstantPool constantPool = new ConstantPool(null, new ConstantInteger(7), new ConstantInteger(7), new ConstantLong(7), null,
+            new ConstantDouble(7));
+        final ConstantPoolGen cpg = new ConstantPoolGen(constantPool);
+        assertEquals(1, cpg.lookupInteger(7));
+        assertEquals(3, cpg.lookupLong(7));
+        assertEquals(5, cpg.lookupDouble(7));
+        assertEquals(-1, cpg.lookupFloat(7));
+        assertEquals(1, cpg.addInteger(7));
+        assertEquals(6, cpg.addFloat(7));
+    }
+
+    @Test
+    void testCopiedPoolFindsRefs() {
+        final ConstantPoolGen source = new ConstantPoolGen();
+        final int methodref = source.addMethodref("java.lang.String", "length", "()I");
+        final int fieldref = source.addFieldref("p.A", "f", "I");
+        final int interfaceMethodref = source.addInterfaceMethodref("java.lang.Runnable", "run", "()V");
+        final int arrayClass = source.addArrayClass(new ArrayType(Type.STRING, 2));
+        final ConstantPoolGen cpg = new ConstantPoolGen(source.getFinalConstantPool());
+        assertEquals(methodref, cpg.lookupMethodref("java.lang.String", "length", "()I"));
+        assertEquals(fieldref, cpg.lookupFieldref("p.A", "f", "I"));
+        assertEquals(interfaceMethodref, cpg.lookupInterfaceMethodref("java.lang.Runnable", "run", "()V"));
+        assertEquals(-1, cpg.lookupMethodref("java.lang.Runnable", "run", "()V"));
+        assertEquals(-1, cpg.lookupFieldref("p.A", "f", "J"));
+        assertEquals(arrayClass, cpg.lookupClass("[[Ljava.lang.String;"));
+        assertEquals(cpg.lookupNameAndType("length", "()I"), source.lookupNameAndType("length", "()I"));
+        assertEquals(source.getSize(), cpg.getSize());
+        assertEquals(methodref, cpg.addMethodref("java.lang.String", "length", "()I"));
+        assertEquals(source.getSize(), cpg.getSize());
+    }
+
+    @Test
+    void testManyNumbers() {
+        final ConstantPoolGen cpg = new ConstantPoolGen();
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(-1, cpg.lookupInteger(i));
+            final int index = cpg.addInteger(i);
+            assertEquals(index, cpg.lookupInteger(i));
+            assertEquals(index, cpg.addInteger(i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(i + 1, cpg.lookupInteger(i));
+            assertEquals(-1, cpg.lookupLong(i));
+        }
+        assertEquals(10_001, cpg.getSize());
+    }
+
+    @Test
+    void testNumbersByBits() {
+        final ConstantPoolGen cpg = new ConstantPoolGen();
+        final int nan = cpg.addDouble(Double.NaN);
+        assertEquals(nan, cpg.addDouble(0.0 / 0.0));
+        assertNotEquals(cpg.addDouble(0.0), cpg.addDouble(-0.0));
+        assertNotEquals(cpg.addFloat(0.0f), cpg.addFloat(-0.0f));
+        assertEquals(cpg.addFloat(Float.NaN), cpg.lookupFloat(Float.intBitsToFloat(0x7fc00000)));
+        // The same bits of another type are another constant
+        assertNotEquals(cpg.addLong(Double.doubleToLongBits(Double.NaN)), nan);
+        assertNotEquals(cpg.addInteger(1), cpg.addLong(1));
+    }
+
+    @Test
+    void testSetConstant() {
+        final ConstantPoolGen cpg = new ConstantPoolGen();
+        final int first = cpg.addInteger(1);
+        final int second = cpg.addInteger(2);
+        // The lookup finds the first entry with a value
+        cpg.setConstant(first, new ConstantInteger(2));
+        assertEquals(first, cpg.lookupInteger(2));
+        assertEquals(-1, cpg.lookupInteger(1));
+        // Replacing it lets the next one take over
+        cpg.setConstant(first, new ConstantLong(1));
+        assertEquals(second, cpg.lookupInteger(2));
+        assertEquals(first, cpg.lookupLong(1));
+    }
+
+    @Test
+    void testTemplate() {
+        final ConstantPoolGen template = new ConstantPoolGen();
+        final int methodref = template.addMethodref("java.lang.Object", "hashCode", "()I");
+        final int string = template.addString("shared");
+        final int number = template.addLong(1);
+        final int size = template.getSize();
+        final ConstantPoolGen first = new ConstantPoolGen(template);
+        final ConstantPoolGen second = new ConstantPoolGen(template);
+        assertEquals(size, first.getSize());
+        assertEquals(methodref, first.addMethodref("java.lang.Object", "hashCode", "()I"));
+        assertEquals(string, first.lookupString("shared"));
+        assertEquals(number, first.lookupLong(1));
+        assertEquals(size, first.getSize());
+        // Each pool adds its own constants at the same indices without seeing the others
+        final int own = first.addMethodref("p.First", "run", "()V");
+        assertEquals(own, second.addMethodref("p.Second", "run", "()V"));
+        assertEquals(-1, second.lookupMethodref("p.First", "run", "()V"));
+        assertEquals(-1, template.lookupMethodref("p.First", "run", "()V"));
+        assertEquals(-1, template.lookupUtf8("p/Second"));
+        template.addString("template");
+        assertEquals(-1, first.lookupString("template"));
+        assertEquals(-1, template.lookupClass("p.First"));
+        assertEquals(second.lookupClass("p.Second"), first.lookupClass("p.First"));
+        assertEquals(first.addLong(2), second.addLong(3));
+        assertEquals(-1, first.lookupLong(3));
+        assertEquals(-1, template.lookupLong(2));
+    }
+}
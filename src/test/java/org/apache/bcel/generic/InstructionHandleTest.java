@@ -18,8 +18,18 @@
  */
 package org.apache.bcel.generic;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
@@ -27,6 +37,24 @@ class InstructionHandleTest {
 
     // Test that setInstruction only allows Instructions that are not BranchInstructions
 
+    @Test
+    void testAttributes() {
+        final InstructionHandle ih = InstructionHandle.getInstructionHandle(new NOP());
+        assertNull(ih.getAttribute("a"));
+        assertTrue(ih.getAttributes().isEmpty());
+        for (int i = 0; i < 5; i++) {
+            ih.addAttribute("key" + i, Integer.valueOf(i));
+        }
+        ih.addAttribute("key1", "one");
+        assertEquals("one", ih.getAttribute("key1"));
+        assertEquals(5, ih.getAttributes().size());
+        ih.removeAttribute("key0");
+        assertNull(ih.getAttribute("key0"));
+        assertEquals(Integer.valueOf(4), ih.getAttribute("key4"));
+        assertEquals(Arrays.asList("one", 2, 3, 4), new ArrayList<>(ih.getAttributes()));
+        assertThrows(UnsupportedOperationException.class, () -> ih.getAttributes().remove("one"));
+    }
+
     @Test
     void testBCEL195() {
         final InstructionList il = new InstructionList();
@@ -35,6 +63,31 @@ class InstructionHandleTest {
         new TABLESWITCH(new int[0], InstructionHandle.EMPTY_ARRAY, ih);
     }
 
+    @Test
+    void testTargeters() {
+        final InstructionHandle ih = InstructionHandle.getInstructionHandle(new NOP());
+        assertFalse(ih.hasTargeters());
+        final List<LineNumberGen> targeters = new ArrayList<>();
+        for (int count = 1; count <= 20; count++) {
+            final LineNumberGen targeter = new LineNumberGen(ih, count);
+            targeters.add(targeter);
+            ih.addTargeter(targeter);
+            assertEquals(new HashSet<>(targeters), new HashSet<>(Arrays.asList(ih.getTargeters())));
+        }
+        for (int count = 20; count > 0; count--) {
+            final LineNumberGen targeter = targeters.remove(count % targeters.size());
+            ih.removeTargeter(targeter);
+            ih.removeTargeter(targeter);
+            assertEquals(new HashSet<>(targeters), new HashSet<>(Arrays.asList(ih.getTargeters())));
+        }
+        assertFalse(ih.hasTargeters());
+        final LineNumberGen first = new LineNumberGen(ih, 1);
+        final LineNumberGen second = new LineNumberGen(ih, 2);
+        assertArrayEquals(new InstructionTargeter[] {first, second}, ih.getTargeters());
+        ih.removeAllTargeters();
+        assertArrayEquals(new InstructionTargeter[0], ih.getTargeters());
+    }
+
     @Test
     void testGetIHnull() {
         assertThrows(ClassGenException.class, () -> InstructionHandle.getInstructionHandle(null));
@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bcel.Const;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests {@link InstructionList}.
+ */
+class InstructionListTest {
+
+    private static int[] positions(final InstructionList il) {
+        final InstructionHandle[] handles = il.getInstructionHandles();
+        final int[] positions = new int[handles.length];
+        for (int i = 0; i < handles.length; i++) {
+            positions[i] = handles[i].getPosition();
+        }
+        return positions;
+    }
+
+    @Test
+    void testEdit() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle load = il.append(new ILOAD(1));
+        final InstructionHandle branch = il.append(new IFEQ(null));
+        final InstructionHandle add = il.append(InstructionConst.IADD);
+        final InstructionHandle pop = il.append(InstructionConst.POP);
+        final InstructionHandle ret = il.append(InstructionConst.RETURN);
+        ((BranchInstruction) branch.getInstruction()).setTarget(add);
+        final BranchHandle jump = il.insert(ret, new GOTO(pop));
+        final AtomicInteger notified = new AtomicInteger();
+        il.addObserver(list -> notified.incrementAndGet());
+        final InstructionHandle[] added = new InstructionHandle[3];
+        il.edit(edit -> {
+            edit.delete(add, pop);
+            added[0] = edit.append(branch, InstructionConst.ICONST_1);
+            added[1] = edit.append(branch, InstructionConst.ICONST_2);
+            added[2] = edit.insert(ret, InstructionConst.NOP);
+        });
+        assertEquals(1, notified.get());
+        assertArrayEquals(new InstructionHandle[] {load, branch, added[0], added[1], jump, added[2], ret}, il.getInstructionHandles());
+        assertEquals(7, il.getLength());
+        // The targeters of the deleted instructions move to the next remaining one
+        assertSame(jump, jump.getTarget());
+        assertSame(jump, ((BranchInstruction) branch.getInstruction()).getTarget());
+        assertNull(add.getInstruction());
+        assertNull(pop.getInstruction());
+        final int[] positions = positions(il);
+        il.setPositions();
+        assertArrayEquals(positions, positions(il));
+    }
+
+    @Test
+    void testEditForeignHandle() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle nop = il.append(InstructionConst.NOP);
+        il.append(InstructionConst.RETURN);
+        final InstructionHandle foreign = new InstructionList(InstructionConst.NOP).getStart();
+        assertThrows(ClassGenException.class, () -> il.edit(edit -> {
+            edit.delete(nop);
+            edit.append(foreign, InstructionConst.POP);
+        }));
+        assertEquals(2, il.getLength());
+        assertSame(nop, il.getStart());
+        final InstructionListEdit[] applied = new InstructionListEdit[1];
+        il.edit(edit -> applied[0] = edit);
+        assertThrows(ClassGenException.class, () -> applied[0].delete(nop));
+    }
+
+    @Test
+    void testEditRangeEnds() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle load = il.append(new ALOAD(0));
+        final InstructionHandle pop = il.append(InstructionConst.POP);
+        final InstructionHandle nop = il.append(InstructionConst.NOP);
+        final InstructionHandle aconstNull = il.append(InstructionConst.ACONST_NULL);
+        final InstructionHandle ret = il.append(InstructionConst.ARETURN);
+        final InstructionHandle handler = il.append(InstructionConst.ARETURN);
+        final CodeExceptionGen shrunk = new CodeExceptionGen(load, pop, handler, null);
+        final CodeExceptionGen emptied = new CodeExceptionGen(nop, nop, handler, null);
+        final LocalVariableGen variable = new LocalVariableGen(1, "o", Type.OBJECT, pop, aconstNull);
+        final BranchHandle jump = il.append(new GOTO(pop));
+        final List<InstructionTargeter> empty = new ArrayList<>();
+        il.edit(edit -> {
+            edit.delete(pop);
+            edit.delete(nop);
+        }, empty::add);
+        // The end of a range moves back and its start moves forward, so that no instruction joins the range
+        assertSame(load, shrunk.getStartPC());
+        assertSame(load, shrunk.getEndPC());
+        assertSame(aconstNull, variable.getStart());
+        assertSame(aconstNull, variable.getEnd());
+        assertSame(aconstNull, jump.getTarget());
+        // A range without instructions is detached and reported
+        assertEquals(Arrays.asList(emptied), empty);
+        assertNull(emptied.getStartPC());
+        assertNull(emptied.getEndPC());
+        assertNull(emptied.getHandlerPC());
+        assertArrayEquals(new InstructionTargeter[] {shrunk}, handler.getTargeters());
+        assertArrayEquals(new InstructionHandle[] {load, aconstNull, ret, handler, jump}, il.getInstructionHandles());
+    }
+
+    @Test
+    void testEditRedirectsToLast() {
+        final InstructionList il = new InstructionList();
+        final BranchHandle jump = il.append(new GOTO(null));
+        final InstructionHandle ret = il.append(InstructionConst.RETURN);
+        jump.setTarget(ret);
+        il.edit(edit -> edit.delete(ret));
+        assertSame(jump, il.getEnd());
+        assertSame(jump, jump.getTarget());
+    }
+
+    @Test
+    void testFindHandle() {
+        final InstructionList il = new InstructionList();
+        assertNull(il.findHandle(0));
+        final InstructionHandle first = il.append(new ILOAD(10));
+        final InstructionHandle second = il.append(new ILOAD(300));
+        final InstructionHandle third = il.append(InstructionConst.IRETURN);
+        il.setPositions();
+        assertSame(first, il.findHandle(0));
+        assertSame(second, il.findHandle(2));
+        assertSame(third, il.findHandle(6));
+        assertNull(il.findHandle(1));
+        assertNull(il.findHandle(7));
+        final InstructionList copy = new InstructionList(il.getByteCode());
+        final InstructionHandle[] handles = copy.getInstructionHandles();
+        for (final InstructionHandle ih : handles) {
+            assertSame(ih, copy.findHandle(ih.getPosition()));
+        }
+        final InstructionHandle inserted = il.insert(second, InstructionConst.NOP);
+        il.updatePositions();
+        assertSame(inserted, il.findHandle(2));
+        assertSame(second, il.findHandle(3));
+        assertSame(third, il.findHandle(7));
+    }
+
+    @Test
+    void testUpdatePositions() throws TargetLostException {
+        final Random random = new Random(42);
+        final InstructionList il = new InstructionList();
+        il.append(InstructionConst.RETURN);
+        for (int step = 0; step < 2000; step++) {
+            final InstructionHandle[] handles = il.getInstructionHandles();
+            final InstructionHandle ih = handles[random.nextInt(handles.length)];
+            switch (random.nextInt(8)) {
+            case 0:
+                il.insert(ih, new GOTO(handles[random.nextInt(handles.length)]));
+                break;
+            case 1:
+                il.append(ih, new TABLESWITCH(new int[] {0}, new InstructionHandle[] {handles[random.nextInt(handles.length)]}, ih));
+                break;
+            case 2:
+                il.insert(ih, new ILOAD(random.nextInt(300)));
+                break;
+            case 3:
+                if (!ih.hasTargeters() && ih != il.getEnd()) {
+                    il.delete(ih);
+                }
+                break;
+            case 4:
+                final InstructionHandle target = handles[random.nextInt(handles.length)];
+                if (target != ih && ih != il.getEnd()) {
+                    il.move(ih, target);
+                }
+                break;
+            case 5:
+                final InstructionList inserted = new InstructionList();
+                inserted.append(InstructionConst.NOP);
+                inserted.append(new IFEQ(ih));
+                il.insert(ih, inserted);
+                break;
+            default:
+                il.append(ih, InstructionConst.NOP);
+                break;
+            }
+            if (random.nextInt(3) == 0) {
+                il.updatePositions();
+                final int[] positions = positions(il);
+                final int[] bytePositions = il.getInstructionPositions().clone();
+                assertArrayEquals(positions, bytePositions);
+                il.setPositions();
+                assertArrayEquals(positions(il), positions);
+                assertArrayEquals(il.getInstructionPositions(), bytePositions);
+                final InstructionHandle any = il.getInstructionHandles()[random.nextInt(il.getLength())];
+                assertSame(any, il.findHandle(any.getPosition()));
+            }
+        }
+    }
+
+    @Test
+    void testUpdatePositionsWidensEarlierGoto() {
+        final InstructionList il = new InstructionList();
+        il.append(InstructionConst.NOP);
+        final InstructionHandle end = il.append(InstructionConst.RETURN);
+        final BranchHandle jump = il.insert(end, new GOTO(end));
+        il.updatePositions();
+        assertEquals(Const.GOTO, jump.getInstruction().getOpcode());
+        final InstructionList nops = new InstructionList();
+        for (int i = 0; i < Short.MAX_VALUE; i++) {
+            nops.append(InstructionConst.NOP);
+        }
+        il.append(jump, nops);
+        il.updatePositions();
+        assertEquals(Const.GOTO_W, jump.getInstruction().getOpcode());
+        assertEquals(end.getPosition() - jump.getPosition(), ((BranchInstruction) jump.getInstruction()).getTargetOffset());
+        final int[] positions = positions(il);
+        il.setPositions();
+        assertArrayEquals(positions, positions(il));
+    }
+}
@@ -30,6 +30,7 @@ import static org.junit.jupiter.api.Assertions.fail;
 import java.util.Arrays;
 import java.util.List;
 
+import org.apache.bcel.Const;
 import org.apache.bcel.Repository;
 import org.apache.bcel.classfile.JavaClass;
 import org.apache.bcel.classfile.Method;
@@ -58,6 +59,101 @@ class MethodGenTest {
         }
     }
 
+    private static byte[] createFramesExample(final boolean computeFrames) {
+        final ClassGen cg = new ClassGen("FramesExample", "java.lang.Object", "FramesExample.java", Const.ACC_PUBLIC, null);
+        cg.setMajor(Const.MAJOR_1_8);
+        final ConstantPoolGen cp = cg.getConstantPool();
+        final InstructionFactory factory = new InstructionFactory(cg);
+        // size(boolean): a LinkedList or an ArrayList, merged to AbstractList
+        InstructionList il = new InstructionList();
+        il.append(new ILOAD(0));
+        final BranchHandle ifArrayList = il.append(new IFEQ(null));
+        il.append(factory.createNew("java.util.LinkedList"));
+        il.append(InstructionConst.DUP);
+        il.append(factory.createInvoke("java.util.LinkedList", Const.CONSTRUCTOR_NAME, Type.VOID, Type.NO_ARGS, Const.INVOKESPECIAL));
+        final BranchHandle toSize = il.append(new GOTO(null));
+        ifArrayList.setTarget(il.append(factory.createNew("java.util.ArrayList")));
+        il.append(InstructionConst.DUP);
+        il.append(factory.createInvoke("java.util.ArrayList", Const.CONSTRUCTOR_NAME, Type.VOID, Type.NO_ARGS, Const.INVOKESPECIAL));
+        toSize.setTarget(il.append(factory.createInvoke("java.util.AbstractList", "size", Type.INT, Type.NO_ARGS, Const.INVOKEVIRTUAL)));
+        il.append(InstructionConst.IRETURN);
+        addMethod(cg, new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.INT, new Type[] {Type.BOOLEAN}, null, "size", cg.getClassName(), il, cp),
+            computeFrames);
+        // text(boolean): an uninitialized StringBuilder on the stack where the branches join
+        il = new InstructionList();
+        il.append(factory.createNew("java.lang.StringBuilder"));
+        il.append(InstructionConst.DUP);
+        il.append(new ILOAD(0));
+        final BranchHandle ifNo = il.append(new IFEQ(null));
+        il.append(new PUSH(cp, "yes"));
+        final BranchHandle toInit = il.append(new GOTO(null));
+        ifNo.setTarget(il.append(new PUSH(cp, "no")));
+        toInit.setTarget(il.append(factory.createInvoke("java.lang.StringBuilder", Const.CONSTRUCTOR_NAME, Type.VOID, new Type[] {Type.STRING},
+            Const.INVOKESPECIAL)));
+        il.append(factory.createInvoke("java.lang.StringBuilder", "toString", Type.STRING, Type.NO_ARGS, Const.INVOKEVIRTUAL));
+        il.append(InstructionConst.ARETURN);
+        addMethod(cg, new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.STRING, new Type[] {Type.BOOLEAN}, null, "text", cg.getClassName(), il, cp),
+            computeFrames);
+        // parse(String): an exception handler
+        il = new InstructionList();
+        final InstructionHandle tryStart = il.append(new ALOAD(0));
+        il.append(factory.createInvoke("java.lang.Integer", "parseInt", Type.INT, new Type[] {Type.STRING}, Const.INVOKESTATIC));
+        final InstructionHandle tryEnd = il.append(InstructionConst.IRETURN);
+        final InstructionHandle handler = il.append(new ASTORE(1));
+        il.append(InstructionConst.ICONST_M1);
+        il.append(InstructionConst.IRETURN);
+        MethodGen mg = new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.INT, new Type[] {Type.STRING}, null, "parse", cg.getClassName(), il, cp);
+        mg.addExceptionHandler(tryStart, tryEnd, handler, ObjectType.getInstance("java.lang.NumberFormatException"));
+        addMethod(cg, mg, computeFrames);
+        // sum(int): a loop with long and int local variables
+        il = new InstructionList();
+        il.append(InstructionConst.LCONST_0);
+        il.append(new LSTORE(1));
+        il.append(InstructionConst.ICONST_0);
+        il.append(new ISTORE(3));
+        final InstructionHandle loop = il.append(new ILOAD(3));
+        il.append(new ILOAD(0));
+        final BranchHandle exit = il.append(new IF_ICMPGE(null));
+        il.append(new LLOAD(1));
+        il.append(new ILOAD(3));
+        il.append(InstructionConst.I2L);
+        il.append(InstructionConst.LADD);
+        il.append(new LSTORE(1));
+        il.append(new IINC(3, 1));
+        il.append(new GOTO(loop));
+        exit.setTarget(il.append(new LLOAD(1)));
+        il.append(InstructionConst.LRETURN);
+        addMethod(cg, new MethodGen(Const.ACC_PUBLIC | Const.ACC_STATIC, Type.LONG, new Type[] {Type.INT}, null, "sum", cg.getClassName(), il, cp),
+            computeFrames);
+        // <init>(boolean): an uninitialized this where the branches join
+        il = new InstructionList();
+        il.append(new ALOAD(0));
+        il.append(new ILOAD(1));
+        final BranchHandle toSuper = il.append(new IFEQ(null));
+        il.append(InstructionConst.NOP);
+        toSuper.setTarget(il.append(factory.createInvoke("java.lang.Object", Const.CONSTRUCTOR_NAME, Type.VOID, Type.NO_ARGS, Const.INVOKESPECIAL)));
+        il.append(InstructionConst.RETURN);
+        addMethod(cg, new MethodGen(Const.ACC_PUBLIC, Type.VOID, new Type[] {Type.BOOLEAN}, null, Const.CONSTRUCTOR_NAME, cg.getClassName(), il, cp),
+            computeFrames);
+        return cg.getJavaClass().getBytes();
+    }
+
+    private static void addMethod(final ClassGen cg, final MethodGen mg, final boolean computeFrames) {
+        mg.setComputeFrames(computeFrames);
+        mg.setMaxStackAndLocals();
+        cg.addMethod(mg.getMethod());
+    }
+
+    private static Class<?> defineClass(final String name, final byte[] bytes) throws ClassNotFoundException {
+        final ClassLoader loader = new ClassLoader(MethodGenTest.class.getClassLoader()) {
+            @Override
+            protected Class<?> findClass(final String className) throws ClassNotFoundException {
+                return name.equals(className) ? defineClass(className, bytes, 0, bytes.length) : super.findClass(className);
+            }
+        };
+        return Class.forName(name, true, loader);
+    }
+
     private MethodGen getMethod(final Class<?> cls, final String name) throws ClassNotFoundException {
         final JavaClass jc = Repository.lookupClass(cls);
         final ConstantPoolGen cp = new ConstantPoolGen(jc.getConstantPool());
@@ -90,6 +186,50 @@ class MethodGenTest {
         }
     }
 
+    @Test
+    void testComputeFrames() throws Exception {
+        final Class<?> cls = defineClass("FramesExample", createFramesExample(true));
+        assertEquals(0, cls.getMethod("size", boolean.class).invoke(null, true));
+        assertEquals(0, cls.getMethod("size", boolean.class).invoke(null, false));
+        assertEquals("yes", cls.getMethod("text", boolean.class).invoke(null, true));
+        assertEquals("no", cls.getMethod("text", boolean.class).invoke(null, false));
+        assertEquals(12, cls.getMethod("parse", String.class).invoke(null, "12"));
+        assertEquals(-1, cls.getMethod("parse", String.class).invoke(null, "twelve"));
+        assertEquals(10L, cls.getMethod("sum", int.class).invoke(null, 5));
+        assertNotNull(cls.getConstructor(boolean.class).newInstance(true));
+        // without frames, the class can't be verified
+        assertThrows(VerifyError.class, () -> defineClass("FramesExample", createFramesExample(false)));
+    }
+
+    @Test
+    void testComputeFramesUnreachableCode() {
+        final ConstantPoolGen cp = new ConstantPoolGen();
+        final InstructionList il = new InstructionList();
+        il.append(InstructionConst.RETURN);
+        il.append(InstructionConst.RETURN);
+        final MethodGen mg = new MethodGen(Const.ACC_STATIC, Type.VOID, Type.NO_ARGS, null, "m", "C", il, cp);
+        mg.setComputeFrames(true);
+        assertThrows(ClassGenException.class, mg::getMethod);
+        mg.setComputeFrames(false);
+        assertNotNull(mg.getMethod());
+    }
+
+    @Test
+    void testGetMaxStackLeavesListUnchanged() {
+        final InstructionList il = new InstructionList();
+        final BranchHandle jump = il.append(new GOTO(null));
+        for (int i = 0; i < Short.MAX_VALUE; i++) {
+            il.append(InstructionConst.NOP);
+        }
+        jump.setTarget(il.append(InstructionConst.ICONST_0));
+        il.append(InstructionConst.IRETURN);
+        final int position = il.getEnd().getPosition();
+        assertEquals(1, MethodGen.getMaxStack(new ConstantPoolGen(), il, new CodeExceptionGen[0]));
+        // a pure query: the goto isn't widened to a goto_w, and the positions stay as they were
+        assertEquals(Const.GOTO, jump.getInstruction().getOpcode());
+        assertEquals(position, il.getEnd().getPosition());
+    }
+
     @Test
     void testInvalidNullMethodBody_EmptyStaticInit() throws Exception {
         testInvalidNullMethodBody("org.apache.bcel.generic.EmptyStaticInit");
@@ -143,4 +283,48 @@ class MethodGenTest {
         assertNull(lv.getStart(), "scope start");
         assertNull(lv.getEnd(), "scope end");
     }
+
+    @Test
+    void testSetMaxStackAndLocals() throws Exception {
+        final JavaClass jc = Repository.lookupClass(InstructionList.class);
+        final ConstantPoolGen cp = new ConstantPoolGen(jc.getConstantPool());
+        for (final Method method : jc.getMethods()) {
+            if (method.getCode() == null) {
+                continue;
+            }
+            final MethodGen mg = new MethodGen(method, jc.getClassName(), cp);
+            mg.setMaxStackAndLocals();
+            assertEquals(method.getCode().getMaxStack(), mg.getMaxStack(), method.toString());
+            assertEquals(method.getCode().getMaxLocals(), mg.getMaxLocals(), method.toString());
+            mg.setMaxStack();
+            mg.setMaxLocals();
+            assertEquals(method.getCode().getMaxStack(), mg.getMaxStack(), method.toString());
+            assertEquals(method.getCode().getMaxLocals(), mg.getMaxLocals(), method.toString());
+        }
+    }
+
+    @Test
+    void testSetMaxStackAndLocalsWithHandler() {
+        final ConstantPoolGen cp = new ConstantPoolGen();
+        final InstructionList il = new InstructionList();
+        final InstructionHandle start = il.append(new LCONST(1));
+        il.append(new LSTORE(3));
+        final InstructionHandle ret = il.append(InstructionConst.RETURN);
+        // the handler is only reached through the exception table, with the exception on the stack
+        final InstructionHandle handler = il.append(InstructionConst.DUP);
+        il.append(InstructionConst.DUP);
+        il.append(InstructionConst.POP2);
+        il.append(InstructionConst.ATHROW);
+        final MethodGen mg = new MethodGen(Const.ACC_STATIC, Type.VOID, new Type[] {Type.INT}, null, "m", "C", il, cp);
+        mg.addExceptionHandler(start, ret, handler, null);
+        mg.setMaxStackAndLocals();
+        assertEquals(3, mg.getMaxStack());
+        assertEquals(5, mg.getMaxLocals());
+        mg.setMaxStack(0);
+        mg.setMaxLocals(0);
+        mg.setMaxStack();
+        mg.setMaxLocals();
+        assertEquals(3, mg.getMaxStack());
+        assertEquals(5, mg.getMaxLocals());
+    }
 }
@@ -22,11 +22,30 @@ package org.apache.bcel.generic;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 import java.math.BigDecimal;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedList;
 
+import org.apache.bcel.util.SyntheticRepository;
 import org.junit.jupiter.api.Test;
 
 class ObjectTypeTest {
 
+    @Test
+    void testGetFirstCommonSuperclassRepository() throws ClassNotFoundException {
+        final SyntheticRepository repository = SyntheticRepository.getInstance();
+        final ObjectType arrayList = ObjectType.getInstance(ArrayList.class.getName());
+        final ObjectType linkedList = ObjectType.getInstance(LinkedList.class.getName());
+        final ObjectType abstractList = ObjectType.getInstance(AbstractList.class.getName());
+        assertEquals(abstractList, arrayList.getFirstCommonSuperclass(linkedList, repository));
+        assertEquals(abstractList, linkedList.getFirstCommonSuperclass(abstractList, repository));
+        assertEquals(arrayList, Type.NULL.getFirstCommonSuperclass(arrayList, repository));
+        assertEquals(Type.OBJECT, arrayList.getFirstCommonSuperclass(Type.STRING, repository));
+        assertEquals(Type.OBJECT, arrayList.getFirstCommonSuperclass(ObjectType.getInstance(Runnable.class.getName()), repository));
+        assertEquals(new ArrayType(abstractList, 2), new ArrayType(arrayList, 2).getFirstCommonSuperclass(new ArrayType(linkedList, 2), repository));
+        assertEquals(Type.OBJECT, new ArrayType(Type.INT, 1).getFirstCommonSuperclass(new ArrayType(Type.LONG, 1), repository));
+    }
+
     @Test
     void testGetClassName() {
         final String className = BigDecimal.class.getName();
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.bcel.generic;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+
+import org.apache.bcel.Const;
+import org.apache.bcel.generic.PeepholeOptimizer.Rule;
+import org.apache.bcel.generic.PeepholeOptimizer.Statistics;
+import org.junit.jupiter.api.Test;
+
+class PeepholeOptimizerTest {
+
+    private static final ConstantPoolGen CP = new ConstantPoolGen();
+
+    private static short[] getOpcodes(final MethodGen mg) {
+        final Instruction[] instructions = mg.getInstructionList().getInstructions();
+        final short[] opcodes = new short[instructions.length];
+        for (int i = 0; i < instructions.length; i++) {
+            opcodes[i] = instructions[i].getOpcode();
+        }
+        return opcodes;
+    }
+
+    private static MethodGen newMethod(final Type returnType, final InstructionList il) {
+        return new MethodGen(Const.ACC_STATIC, returnType, new Type[] {Type.INT, Type.OBJECT}, null, "m", "C", il, CP);
+    }
+
+    @Test
+    void testConstantBranch() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle start = il.append(InstructionConst.ICONST_1);
+        final BranchHandle ifne = il.append(new IFNE(null));
+        il.append(InstructionConst.ICONST_0);
+        final BranchHandle notTaken = il.append(new IFNE(null));
+        il.append(InstructionConst.ICONST_2);
+        il.append(InstructionConst.IRETURN);
+        final InstructionHandle target = il.append(InstructionConst.ICONST_3);
+        il.append(InstructionConst.IRETURN);
+        ifne.setTarget(target);
+        notTaken.setTarget(target);
+        final MethodGen mg = newMethod(Type.INT, il);
+        final BranchHandle loop = il.append(new GOTO(start));
+        final PeepholeOptimizer optimizer = new PeepholeOptimizer(EnumSet.of(Rule.CONSTANT_BRANCH));
+        assertEquals(2, optimizer.optimize(mg));
+        assertArrayEquals(new short[] {Const.GOTO, Const.ICONST_2, Const.IRETURN, Const.ICONST_3, Const.IRETURN, Const.GOTO}, getOpcodes(mg));
+        // the goto takes the place of the constant
+        assertSame(il.getStart(), loop.getTarget());
+        assertSame(target, ((BranchInstruction) il.getStart().getInstruction()).getTarget());
+    }
+
+    @Test
+    void testConstantBranchNull() {
+        final InstructionList il = new InstructionList();
+        il.append(InstructionConst.ACONST_NULL);
+        final BranchHandle ifnonnull = il.append(new IFNONNULL(null));
+        il.append(InstructionConst.RETURN);
+        ifnonnull.setTarget(il.append(InstructionConst.RETURN));
+        final MethodGen mg = newMethod(Type.VOID, il);
+        final PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        assertEquals(2, optimizer.optimize(mg));
+        assertArrayEquals(new short[] {Const.RETURN}, getOpcodes(mg));
+        assertEquals(1, optimizer.getStatistics().getCount(Rule.CONSTANT_BRANCH));
+        assertEquals(1, optimizer.getStatistics().getCount(Rule.UNREACHABLE_CODE));
+    }
+
+    @Test
+    void testDupPop() {
+        final InstructionList il = new InstructionList();
+        il.append(new ALOAD(1));
+        il.append(InstructionConst.DUP);
+        il.append(InstructionConst.POP);
+        il.append(new LLOAD(2));
+        il.append(InstructionConst.DUP2);
+        il.append(InstructionConst.POP2);
+        il.append(InstructionConst.POP2);
+        il.append(InstructionConst.ARETURN);
+        final MethodGen mg = newMethod(Type.OBJECT, il);
+        final PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        assertEquals(2, optimizer.optimize(mg));
+        assertArrayEquals(new short[] {Const.ALOAD_1, Const.LLOAD_2, Const.POP2, Const.ARETURN}, getOpcodes(mg));
+        assertEquals(2, optimizer.getStatistics().getCount(Rule.DUP_POP));
+        assertEquals(4, optimizer.getStatistics().getBytesSaved());
+    }
+
+    @Test
+    void testDupPopJumpTarget() {
+        final InstructionList il = new InstructionList();
+        il.append(new ALOAD(1));
+        il.append(new ALOAD(1));
+        il.append(new ILOAD(0));
+        final BranchHandle ifeq = il.append(new IFEQ(null));
+        il.append(InstructionConst.DUP);
+        ifeq.setTarget(il.append(InstructionConst.POP));
+        il.append(InstructionConst.ARETURN);
+        final MethodGen mg = newMethod(Type.OBJECT, il);
+        assertEquals(0, new PeepholeOptimizer().optimize(mg));
+        assertEquals(7, il.getLength());
+    }
+
+    @Test
+    void testExceptionHandlerRanges() {
+        final InstructionList il = new InstructionList();
+        final InstructionHandle load = il.append(new ALOAD(1));
+        final InstructionHandle dup = il.append(InstructionConst.DUP);
+        final InstructionHandle pop = il.append(InstructionConst.POP);
+        final InstructionHandle ret = il.append(InstructionConst.ARETURN);
+        final InstructionHandle handler = il.append(InstructionConst.ARETURN);
+        final MethodGen mg = newMethod(Type.OBJECT, il);
+        final CodeExceptionGen shrunk = mg.addExceptionHandler(load, pop, handler, null);
+        final CodeExceptionGen removed = mg.addExceptionHandler(dup, pop, handler, null);
+        final LocalVariableGen lvg = mg.addLocalVariable("o", Type.OBJECT, dup, ret);
+        new PeepholeOptimizer().optimize(mg);
+        assertSame(load, shrunk.getStartPC());
+        assertSame(load, shrunk.getEndPC());
+        assertSame(handler, shrunk.getHandlerPC());
+        assertArrayEquals(new CodeExceptionGen[] {shrunk}, mg.getExceptionHandlers());
+        assertNull(removed.getStartPC());
+        assertNull(removed.getHandlerPC());
+        assertFalse(Arrays.asList(handler.getTargeters()).contains(removed));
+        assertSame(ret, lvg.getStart());
+        assertSame(ret, lvg.getEnd());
+    }
+
+    @Test
+    void testGotoChain() {
+        final InstructionList il = new InstructionList();
+        il.append(new ILOAD(0));
+        final BranchHandle ifeq = il.append(new IFEQ(null));
+        il.append(new ILOAD(0));
+        final InstructionHandle[] targets = new InstructionHandle[2];
+        final BranchHandle select = il.append(new TABLESWITCH(new int[] {0, 1}, targets, null));
+        final BranchHandle first = il.append(new GOTO(null));
+        final BranchHandle second = il.append(new GOTO(null));
+        final BranchHandle loop = il.append(new GOTO(null));
+        final InstructionHandle ret = il.append(InstructionConst.RETURN);
+        ifeq.setTarget(first);
+        ((Select) select.getInstruction()).setTarget(0, first);
+        ((Select) select.getInstruction()).setTarget(1, loop);
+        select.setTarget(second);
+        first.setTarget(second);
+        second.setTarget(ret);
+        loop.setTarget(loop);
+        final MethodGen mg = newMethod(Type.VOID, il);
+        final PeepholeOptimizer optimizer = new PeepholeOptimizer(EnumSet.of(Rule.GOTO_CHAIN));
+        assertEquals(4, optimizer.optimize(mg));
+        assertSame(ret, ifeq.getTarget());
+        assertSame(ret, first.getTarget());
+        assertArrayEquals(new InstructionHandle[] {ret, loop}, ((Select) select.getInstruction()).getTargets());
+        assertSame(ret, select.getTarget());
+        assertSame(loop, loop.getTarget());
+    }
+
+    @Test
+    void testGotoNext() {
+        final InstructionList il = new InstructionList();
+        il.append(new ILOAD(0));
+        final BranchHandle ifeq = il.append(new IFEQ(null));
+        il.append(InstructionConst.ICONST_1);
+        il.append(InstructionConst.IRETURN);
+        final BranchHandle gotoNext = il.append(new GOTO(null));
+        final InstructionHandle next = il.append(InstructionConst.ICONST_0);
+        il.append(InstructionConst.IRETURN);
+        ifeq.setTarget(gotoNext);
+        gotoNext.setTarget(next);
+        final MethodGen mg = newMethod(Type.INT, il);
+        final PeepholeOptimizer optimizer = new PeepholeOptimizer(EnumSet.of(Rule.GOTO_NEXT));
+        assertEquals(1, optimizer.optimize(mg));
+        assertSame(next, ifeq.getTarget());
+        assertEquals(6, il.getLength());
+        assertEquals(3, optimizer.getStatistics().getBytesSaved());
+        assertEquals(1, optimizer.getStatistics().getTotalCount());
+    }
+
+    @Test
+    void testRedundantCheckcast() {
+        final InstructionList il = new InstructionList();
+        final InstructionFactory factory = new InstructionFactory(CP);
+        il.append(new ALOAD(1));
+        il.append(factory.createCheckCast(Type.STRING));
+        il.append(factory.createCheckCast(Type.STRING));
+        il.append(factory.createCheckCast(Type.OBJECT));
+        il.append(InstructionConst.POP);
+        il.append(InstructionConst.ACONST_NULL);
+        il.append(factory.createCheckCast(Type.STRING));
+        il.append(new ALOAD(1));
+        il.append(factory.createCheckCast(Type.STRING));
+        il.append(factory.createCheckCast(new ObjectType("java.lang.StringBuilder")));
+        il.append(InstructionConst.POP);
+        il.append(InstructionConst.ARETURN);
+        final MethodGen mg = newMethod(Type.OBJECT, il);
+        final PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        assertEquals(3, optimizer.optimize(mg));
+        assertArrayEquals(new short[] {Const.ALOAD_1, Const.CHECKCAST, Const.POP, Const.ACONST_NULL, Const.ALOAD_1, Const.CHECKCAST, Const.CHECKCAST,
+            Const.POP, Const.ARETURN}, getOpcodes(mg));
+        assertEquals(3, optimizer.getStatistics().getCount(Rule.REDUNDANT_CHECKCAST));
+    }
+
+    @Test
+    void testRules() {
+        final PeepholeOptimizer optimizer = new PeepholeOptimizer(EnumSet.of(Rule.DUP_POP));
+        assertTrue(optimizer.isEnabled(Rule.DUP_POP));
+        assertFalse(optimizer.isEnabled(Rule.GOTO_NEXT));
+        final InstructionList il = new InstructionList();
+        final BranchHandle gotoNext = il.append(new GOTO(null));
+        gotoNext.setTarget(il.append(InstructionConst.ICONST_0));
+        il.append(InstructionConst.DUP);
+        il.append(InstructionConst.POP);
+        il.append(InstructionConst.IRETURN);
+        final MethodGen mg = newMethod(Type.INT, il);
+        assertEquals(1, optimizer.optimize(mg));
+        assertArrayEquals(new short[] {Const.GOTO, Const.ICONST_0, Const.IRETURN}, getOpcodes(mg));
+        final Statistics statistics = optimizer.getStatistics();
+        assertEquals(1, statistics.getMethodCount());
+        assertEquals(0, statistics.getCount(Rule.GOTO_NEXT));
+        assertEquals(0, optimizer.optimize(new MethodGen(Const.ACC_ABSTRACT, Type.VOID, Type.NO_ARGS, null, "m", "C", null, CP)));
+        assertEquals(2, statistics.getMethodCount());
+    }
+
+    @Test
+    void testStoreLoad() {
+        final InstructionList il = new InstructionList();
+        il.append(new LLOAD(2));
+        il.append(new LSTORE(4));
+        il.append(new LLOAD(4));
+        il.append(new ISTORE(6));
+        il.append(new ILOAD(6));
+        il.append(new ILOAD(6));
+        il.append(new ALOAD(1));
+        il.append(new ASTORE(7));
+        il.append(new ALOAD(7));
+        il.append(InstructionConst.ARETURN);
+        final MethodGen mg = new MethodGen(Const.ACC_STATIC, Type.OBJECT, new Type[] {Type.INT, Type.OBJECT, Type.LONG}, null, "m", "C", il, CP);
+        // slot 7 is a variable of the source code
+        mg.addLocalVariable("o", Type.OBJECT, 7, il.getStart(), il.getEnd());
+        final PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        assertEquals(1, optimizer.optimize(mg));
+        assertArrayEquals(new short[] {Const.LLOAD_2, Const.ISTORE, Const.ILOAD, Const.ILOAD, Const.ALOAD_1, Const.ASTORE, Const.ALOAD, Const.ARETURN},
+            getOpcodes(mg));
+        assertEquals(1, optimizer.getStatistics().getCount(Rule.STORE_LOAD));
+    }
+
+    @Test
+    void testUnreachableCode() {
+        final InstructionList il = new InstructionList();
+        il.append(new ILOAD(0));
+        final BranchHandle ifeq = il.append(new IFEQ(null));
+        il.append(InstructionConst.RETURN);
+        final BranchHandle chain = il.append(new GOTO(null));
+        final InstructionHandle dead = il.append(new ALOAD(1));
+        il.append(InstructionConst.ATHROW);
+        final InstructionHandle handler = il.append(InstructionConst.ATHROW);
+        final InstructionHandle ret = il.append(InstructionConst.RETURN);
+        ifeq.setTarget(chain);
+        chain.setTarget(ret);
+        final MethodGen mg = newMethod(Type.VOID, il);
+        final CodeExceptionGen ceg = mg.addExceptionHandler(dead, dead.getNext(), handler, null);
+        final PeepholeOptimizer optimizer = new PeepholeOptimizer();
+        assertEquals(2, optimizer.optimize(mg));
+        assertArrayEquals(new short[] {Const.ILOAD_0, Const.IFEQ, Const.RETURN, Const.RETURN}, getOpcodes(mg));
+        assertSame(ret, ifeq.getTarget());
+        assertEquals(0, mg.getExceptionHandlers().length);
+        assertNull(ceg.getHandlerPC());
+        assertEquals(1, optimizer.getStatistics().getCount(Rule.GOTO_CHAIN));
+        assertEquals(1, optimizer.getStatistics().getCount(Rule.UNREACHABLE_CODE));
+    }
+}
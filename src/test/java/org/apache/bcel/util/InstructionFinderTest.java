@@ -19,11 +19,14 @@
 
 package org.apache.bcel.util;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 
 import java.util.Iterator;
 
 import org.apache.bcel.AbstractTest;
+import org.apache.bcel.generic.CompactInstructionList;
 import org.apache.bcel.generic.IADD;
 import org.apache.bcel.generic.ILOAD;
 import org.apache.bcel.generic.ISTORE;
@@ -48,4 +51,21 @@ class InstructionFinderTest extends AbstractTest {
         assertEquals(ihs[0].getInstruction(), new ILOAD(2));
         assertEquals(ihs[1].getInstruction(), new IADD());
     }
+
+    @Test
+    void testSearchCompact() {
+        final InstructionList il = new InstructionList();
+        il.append(new ILOAD(1));
+        il.append(new ILOAD(2));
+        il.append(new IADD());
+        il.append(new ISTORE(3));
+        final InstructionFinder finder = new InstructionFinder(new CompactInstructionList(il));
+
+        final Iterator<int[]> it = finder.searchIndices("ILOAD IADD");
+        assertArrayEquals(new int[] {1, 2}, it.next());
+        assertFalse(it.hasNext());
+        final InstructionHandle[] ihs = finder.search("ILOAD IADD").next();
+        assertEquals(ihs[0].getInstruction(), new ILOAD(2));
+        assertEquals(ihs[1].getInstruction(), new IADD());
+    }
 }